@@ -0,0 +1,62 @@
+/* 
+ * Copyright 2012 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.imageplayground.codegen;
+
+import java.io.File;
+
+import android.os.Environment;
+import android.test.InstrumentationTestCase;
+import android.util.Log;
+
+import com.google.imageplayground.util.FrameRecorder;
+import com.google.imageplayground.util.FrameStore;
+
+/** Replays every recording in the app's recordings directory through a fixed script with the dex-compiled
+ * runtime and logs the steady-state frame rate. Recordings are made with the Record Frames menu item; if there
+ * are none the test does nothing. There are no assertions on speed.
+ */
+public class ReplayBenchmark extends InstrumentationTestCase {
+    
+    static final String SCRIPT = "return color(red(x+1, y), green(x, y+1), blue(x-1, y))";
+    static final int LOOPS = 3;
+    static final int WARMUP_FRAMES = 10;
+    
+    static File recordingDirectory() {
+        return new File(Environment.getExternalStorageDirectory(), "ImagePlayground" + File.separator + "recordings");
+    }
+    
+    public void testReplayRecordings() throws Exception {
+        File[] files = recordingDirectory().listFiles();
+        if (files==null) return;
+        for(File file : files) {
+            if (!file.getName().endsWith(FrameRecorder.FILE_EXTENSION)) continue;
+            DexImageScript script = DexImageScript.createScript(
+                    getInstrumentation().getTargetContext().getCacheDir(), SCRIPT);
+            assertNotNull(script);
+            script.setRandomSeed(1);
+            try {
+                FrameReplayer replayer = new FrameReplayer(script, FrameStore.openRecording(file));
+                replayer.setLoops(LOOPS);
+                replayer.setWarmupFrames(WARMUP_FRAMES);
+                Log.i("ReplayBenchmark", file.getName() + ": " + replayer.run());
+            }
+            finally {
+                script.shutdown();
+            }
+        }
+    }
+}
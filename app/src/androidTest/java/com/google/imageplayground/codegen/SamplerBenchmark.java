@@ -0,0 +1,93 @@
+/* 
+ * Copyright 2012 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.imageplayground.codegen;
+
+import android.util.Log;
+
+import com.google.imageplayground.util.YuvUtils;
+
+import junit.framework.TestCase;
+
+/** Compares the cost of reading each color channel separately with getred/getgreen/getblue against reading
+ * a packed color with getcolor and extracting the channels, over a 3x3 neighborhood of every pixel.
+ * Timings are written to the log; there are no assertions on speed.
+ */
+public class SamplerBenchmark extends TestCase {
+    
+    static final int WIDTH = 640;
+    static final int HEIGHT = 480;
+    static final int WARMUP_ITERATIONS = 3;
+    static final int MEASURED_ITERATIONS = 5;
+    
+    DexImageScript script;
+    int sink;
+    
+    @Override protected void setUp() {
+        script = DexImageScriptTest.createScriptWithImage(WIDTH, HEIGHT);
+    }
+    
+    int sumPerChannel() {
+        int sum = 0;
+        for(int row=0; row<HEIGHT; row++) {
+            for(int col=0; col<WIDTH; col++) {
+                for(int dr=-1; dr<=1; dr++) {
+                    for(int dc=-1; dc<=1; dc++) {
+                        sum += script.script_getred(row+dr, col+dc) + script.script_getgreen(row+dr, col+dc) + 
+                                script.script_getblue(row+dr, col+dc);
+                    }
+                }
+            }
+        }
+        return sum;
+    }
+    
+    int sumPacked() {
+        int sum = 0;
+        for(int row=0; row<HEIGHT; row++) {
+            for(int col=0; col<WIDTH; col++) {
+                for(int dr=-1; dr<=1; dr++) {
+                    for(int dc=-1; dc<=1; dc++) {
+                        int color = script.script_getcolor(row+dr, col+dc);
+                        sum += (0xff & (color>>16)) + (0xff & (color>>8)) + (0xff & color);
+                    }
+                }
+            }
+        }
+        return sum;
+    }
+    
+    long nanosPerPixel(boolean packed) {
+        for(int i=0; i<WARMUP_ITERATIONS; i++) {
+            sink += (packed) ? sumPacked() : sumPerChannel();
+        }
+        long t1 = System.nanoTime();
+        for(int i=0; i<MEASURED_ITERATIONS; i++) {
+            sink += (packed) ? sumPacked() : sumPerChannel();
+        }
+        return (System.nanoTime() - t1) / ((long)MEASURED_ITERATIONS * WIDTH * HEIGHT);
+    }
+    
+    public void testPerChannelVsPackedSampling() {
+        // both patterns must produce the same channel values for the comparison to be meaningful
+        assertEquals(sumPerChannel(), sumPacked());
+        
+        long perChannel = nanosPerPixel(false);
+        long packed = nanosPerPixel(true);
+        Log.i("SamplerBenchmark", String.format("%dx%d 3x3 neighborhood: per-channel %d ns/pixel, packed %d ns/pixel (%d)", 
+                WIDTH, HEIGHT, perChannel, packed, YuvUtils.bufferSize(WIDTH, HEIGHT) + (sink & 1)));
+    }
+}
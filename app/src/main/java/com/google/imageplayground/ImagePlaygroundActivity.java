@@ -24,11 +24,18 @@ import java.text.SimpleDateFormat;
 import java.util.Date;
 
 import com.google.imageplayground.codegen.DexImageScript;
+import com.google.imageplayground.codegen.FrameStats;
+import com.google.imageplayground.drawing.BitmapOutputSurface;
 import com.google.imageplayground.scripts.ScriptFile;
 import com.google.imageplayground.scripts.ScriptList;
+import com.google.imageplayground.scripts.ScriptSaver;
 import com.google.imageplayground.util.ARManager;
 import com.google.imageplayground.util.AndroidUtils;
+import com.google.imageplayground.util.AndroidLogHandler;
 import com.google.imageplayground.util.CameraUtils;
+import com.google.imageplayground.util.FaceFinder;
+import com.google.imageplayground.util.FrameRecorder;
+import com.google.imageplayground.util.Logging;
 import com.google.imageplayground.util.ShutterButton;
 import com.google.imageplayground.util.ShutterButton.OnShutterButtonListener;
 
@@ -80,11 +87,19 @@ public class ImagePlaygroundActivity extends Activity implements Camera.PreviewC
 	ScriptFile currentScriptFile;
 	
 	Handler handler = new Handler();
+	// writes edited scripts and preferences in the background; shared so a recreated activity doesn't start a thread
+	static ScriptSaver scriptSaver = new ScriptSaver();
+	// how long a new activity waits for writes still pending from a previous one
+	static final long WRITE_TIMEOUT_MILLIS = 2000;
 	
     static DateFormat FILENAME_DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd-HH-mm-ss");
     static String BASE_DIR = Environment.getExternalStorageDirectory() + File.separator + "ImagePlayground";
     static String BASE_PICTURE_DIR = BASE_DIR + File.separator + "images";
     static String BASE_SCRIPT_DIR = BASE_DIR + File.separator + "scripts";
+    static String BASE_RECORDING_DIR = BASE_DIR + File.separator + "recordings";
+    
+    // raw camera frames are appended here while the Record Frames menu item is checked
+    FrameRecorder frameRecorder;
     
     static String thumbnailDirectory() {
     	return BASE_DIR + File.separator + "thumbnails";
@@ -93,6 +108,7 @@ public class ImagePlaygroundActivity extends Activity implements Camera.PreviewC
     /** Called when the activity is first created. */
     @Override public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        Logging.setHandler(new AndroidLogHandler());
         setContentView(R.layout.main);
         
         cameraView = (SurfaceView)findViewById(R.id.cameraView);
@@ -125,15 +141,21 @@ public class ImagePlaygroundActivity extends Activity implements Camera.PreviewC
     
     @Override public void onPause() {
     	arManager.stopCamera();
+    	// no more frames until onResume restarts the camera, and the script's threads restart with the next frame
+    	if (dexScript!=null) dexScript.shutdown();
+    	stopRecording();
     	String scriptPath = null;
         if (currentScriptFile!=null) {
-            currentScriptFile.saveScriptContent(scriptField.getText().toString());
+            scriptSaver.saveScriptLater(currentScriptFile, scriptField.getText().toString());
             scriptPath = currentScriptFile.getDirectoryPath();
         }
         SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(getBaseContext());
         SharedPreferences.Editor editor = prefs.edit();
         editor.putString(CURRENT_SCRIPT_PATH_PREF, scriptPath);
-        editor.commit();
+        commitLater(CURRENT_SCRIPT_PATH_PREF, editor);
+        // starts saving now and syncs the scripts saved since the last pause, on the saver thread so pausing 
+        // doesn't wait for the disk
+        scriptSaver.flush();
         
     	super.onPause();
     }
@@ -180,9 +202,15 @@ public class ImagePlaygroundActivity extends Activity implements Camera.PreviewC
     
     @Override public boolean onCreateOptionsMenu(Menu menu) {
         this.getMenuInflater().inflate(R.menu.main_menu, menu);
+        menu.findItem(R.id.menu_item_stats).setChecked(resultView.getShowFrameStats());
         return true;
     }
     
+    @Override public boolean onPrepareOptionsMenu(Menu menu) {
+        menu.findItem(R.id.menu_item_record).setChecked(frameRecorder!=null);
+        return super.onPrepareOptionsMenu(menu);
+    }
+    
     @Override public boolean onOptionsItemSelected(MenuItem item) {
         switch (item.getItemId()) {
             case R.id.menu_item_save:
@@ -194,20 +222,59 @@ public class ImagePlaygroundActivity extends Activity implements Camera.PreviewC
             case R.id.menu_item_load:
                 loadScript();
                 return true;
+            case R.id.menu_item_stats:
+                item.setChecked(!item.isChecked());
+                setShowFrameStats(item.isChecked());
+                SharedPreferences.Editor editor = PreferenceManager.getDefaultSharedPreferences(getBaseContext()).edit();
+                editor.putBoolean(SHOW_FRAME_STATS_PREF, item.isChecked());
+                commitLater(SHOW_FRAME_STATS_PREF, editor);
+                return true;
+            case R.id.menu_item_record:
+                if (frameRecorder!=null) {
+                    stopRecording();
+                }
+                else {
+                    startRecording();
+                }
+                item.setChecked(frameRecorder!=null);
+                return true;
         }
         return super.onOptionsItemSelected(item);
     }
     
     void updateFromPreferences() {
+        // a previous instance of the activity may have preference writes pending
+        if (scriptSaver.hasPendingWrites()) {
+            scriptSaver.flush();
+            scriptSaver.waitForWrites(WRITE_TIMEOUT_MILLIS);
+        }
         SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(getBaseContext());
         this.userScript = prefs.getString("script", "return gray(y)");
         scriptField.setText(this.userScript);
+        setShowFrameStats(prefs.getBoolean(SHOW_FRAME_STATS_PREF, false));
     }
     
+    // only updates the views, the menu handler saves the preference
+    void setShowFrameStats(boolean value) {
+        resultView.setShowFrameStats(value);
+        fullScreenResultView.setShowFrameStats(value);
+    }
+    
+    // called from the camera thread for each edit, the preference is written once the edits pause
     void saveScript(String script) {
     	SharedPreferences.Editor editor = PreferenceManager.getDefaultSharedPreferences(getBaseContext()).edit();
     	editor.putString("script", script);
-    	editor.commit();
+    	commitLater("script", editor);
+    }
+    
+    // Commits preference changes on the ScriptSaver thread, replacing a pending commit with the same key. 
+    // SharedPreferences.Editor.apply would do this but needs API level 9.
+    void commitLater(String key, final SharedPreferences.Editor editor) {
+        scriptSaver.writeLater(key, new ScriptSaver.Write() {
+            public void write(boolean sync) {
+                editor.commit();
+            }
+        });
     }
     
     void updateScriptNameField() {
@@ -216,10 +283,15 @@ public class ImagePlaygroundActivity extends Activity implements Camera.PreviewC
         scriptNameField.setText(msg);
     }
     
+    // written without the usual delay, because the flag has to be saved before a new script can crash the app
     void updateScriptUntestedPref(boolean value) {
-        SharedPreferences.Editor editor = PreferenceManager.getDefaultSharedPreferences(getBaseContext()).edit();
+        final SharedPreferences.Editor editor = PreferenceManager.getDefaultSharedPreferences(getBaseContext()).edit();
         editor.putBoolean(SCRIPT_UNTESTED_PREF, value);
-        editor.commit();
+        scriptSaver.writeSoon(SCRIPT_UNTESTED_PREF, new ScriptSaver.Write() {
+            public void write(boolean sync) {
+                editor.commit();
+            }
+        });
     }
     
     // adjusts right LinearLayout to shrink preview and computed images so that they have a correct aspect ratio
@@ -264,7 +336,8 @@ public class ImagePlaygroundActivity extends Activity implements Camera.PreviewC
     
     void saveScript() {
         if (currentScriptFile!=null) {
-            currentScriptFile.saveScriptContent(scriptField.getText().toString());
+            scriptSaver.saveScriptLater(currentScriptFile, scriptField.getText().toString());
+            scriptSaver.flush();
         }
         else {
             final EditText nameField = new EditText(this);
@@ -292,7 +365,7 @@ public class ImagePlaygroundActivity extends Activity implements Camera.PreviewC
     
     void newScript() {
         if (currentScriptFile!=null) {
-            currentScriptFile.saveScriptContent(scriptField.getText().toString());
+            scriptSaver.saveScriptLater(currentScriptFile, scriptField.getText().toString());
         }
         currentScriptFile = null;
         scriptField.setText("");
@@ -326,6 +399,31 @@ public class ImagePlaygroundActivity extends Activity implements Camera.PreviewC
         }
     }
 
+    void startRecording() {
+        File dir = new File(BASE_RECORDING_DIR);
+        dir.mkdirs();
+        File file = new File(dir, FILENAME_DATE_FORMAT.format(new Date()) + FrameRecorder.FILE_EXTENSION);
+        try {
+            frameRecorder = new FrameRecorder(file);
+            Toast.makeText(this, "Recording to " + file.getPath(), Toast.LENGTH_SHORT).show();
+        }
+        catch(IOException ex) {
+            Log.e("ImagePlayground", "Error starting recording", ex);
+            Toast.makeText(this, "Unable to record frames", Toast.LENGTH_SHORT).show();
+        }
+    }
+    
+    void stopRecording() {
+        if (frameRecorder==null) return;
+        try {
+            frameRecorder.close();
+        }
+        catch(IOException ex) {
+            Log.e("ImagePlayground", "Error finishing recording", ex);
+        }
+        frameRecorder = null;
+    }
+    
     String savePicture(String dir, String imageName) throws IOException {
         Bitmap bitmap = fullScreenResultView.getBitmap();
         if (bitmap!=null) {
@@ -388,6 +486,7 @@ public class ImagePlaygroundActivity extends Activity implements Camera.PreviewC
     }
     
     DexImageScript dexScript = null;
+    BitmapOutputSurface outputSurface = new BitmapOutputSurface();
     String lastUserScript = "";
     // To protect against infinite loops, set a flag when the script changes, and unset it only if the script
     // successfully produces several frames in a certain time limit. On startup, if the flag is set, the script
@@ -398,6 +497,7 @@ public class ImagePlaygroundActivity extends Activity implements Camera.PreviewC
     static final int REQUIRED_NEW_SCRIPT_FRAMES = 10;
     static final long NEW_SCRIPT_DEADLINE = 5000;
     static final String SCRIPT_UNTESTED_PREF = "scriptUntested";
+    static final String SHOW_FRAME_STATS_PREF = "showFrameStats";
     boolean adjustedLayoutForCameraPreview = false;
 
 	@Override public void onPreviewFrame(byte[] data, Camera camera) {
@@ -406,6 +506,15 @@ public class ImagePlaygroundActivity extends Activity implements Camera.PreviewC
 		    adjustLayoutForCameraPreviewSize(size.width, size.height);
 		    adjustedLayoutForCameraPreview = true;
 		}
+		if (frameRecorder!=null) {
+		    try {
+		        frameRecorder.addFrame(data, size.width, size.height, System.nanoTime());
+		    }
+		    catch(IOException ex) {
+		        Log.e("ImagePlayground", "Error recording frame", ex);
+		        stopRecording();
+		    }
+		}
 		try {
 		    if (!isTextEditorExpanded()) {
 	            String userScript = scriptField.getText().toString();
@@ -417,11 +526,18 @@ public class ImagePlaygroundActivity extends Activity implements Camera.PreviewC
 	                
 	                lastUserScript = userScript;
 	                saveScript(userScript);
-	                dexScript = DexImageScript.createScript(this, userScript);
+	                // the old script's worker and face detection threads would otherwise never exit
+	                if (dexScript!=null) dexScript.shutdown();
+	                dexScript = DexImageScript.createScript(getCacheDir(), userScript);
+	                if (dexScript!=null) dexScript.setFaceLocator(new FaceFinder());
+	                FrameStats frameStats = (dexScript!=null) ? dexScript.getFrameStats() : null;
+	                resultView.setFrameStats(frameStats);
+	                fullScreenResultView.setFrameStats(frameStats);
 	            }
 	            Bitmap bitmap = null;
 	            if (dexScript != null) {
-	                bitmap = dexScript.getBitmapForImageData(data, size.width, size.height);
+	                dexScript.renderFrame(data, size.width, size.height, outputSurface);
+	                bitmap = outputSurface.getBitmap();
 	                if (bitmap!=null) {
 	                    // clear untested flag if script has successfully generated enough bitmaps
 	                    ++newScriptFrames;
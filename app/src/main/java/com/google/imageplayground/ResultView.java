@@ -19,32 +19,120 @@ package com.google.imageplayground;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.Paint;
 import android.graphics.Rect;
 import android.util.AttributeSet;
 import android.view.View;
 
+import com.google.imageplayground.codegen.FrameStats;
+
 public class ResultView extends View {
 	
 	Bitmap bitmap;
+	Rect bitmapRect = new Rect();
+	
+	// timings to show on top of the bitmap, if showFrameStats is set
+	FrameStats frameStats;
+	boolean showFrameStats = false;
+	long lastDrawNanos;
+	Paint statsTextPaint;
+	Paint statsBackgroundPaint;
+	StringBuilder statsText = new StringBuilder();
 
 	public ResultView(Context context, AttributeSet attrs) {
 		super(context, attrs);
 	}
 	
 	public void updateBitmap(Bitmap value) {
+		long t1 = System.nanoTime();
 		this.bitmap = value;
 		this.postInvalidate();
+		FrameStats stats = frameStats;
+		if (stats!=null) {
+		    stats.addStageTime(FrameStats.Stage.VIEW_INVALIDATE, System.nanoTime()-t1);
+		}
 	}
 	
 	public Bitmap getBitmap() {
 		return bitmap;
 	}
 	
+	public void setFrameStats(FrameStats value) {
+	    this.frameStats = value;
+	}
+	
+	public boolean getShowFrameStats() {
+	    return showFrameStats;
+	}
+	
+	/** Sets whether frame timings from the FrameStats passed to setFrameStats are drawn over the image. */
+	public void setShowFrameStats(boolean value) {
+	    this.showFrameStats = value;
+	    this.postInvalidate();
+	}
+	
 	@Override
 	public void onDraw(Canvas canvas) {
 		if (bitmap!=null) {
-			canvas.drawBitmap(bitmap, null, new Rect(0, 0, getWidth(), getHeight()), null);
+		    long t1 = System.nanoTime();
+		    bitmapRect.set(0, 0, getWidth(), getHeight());
+			canvas.drawBitmap(bitmap, null, bitmapRect, null);
+			lastDrawNanos = System.nanoTime() - t1;
+		}
+		if (showFrameStats && frameStats!=null) {
+		    drawFrameStats(canvas);
 		}
 	}
+	
+	void drawFrameStats(Canvas canvas) {
+	    if (statsTextPaint==null) {
+	        float density = getResources().getDisplayMetrics().density;
+	        statsTextPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+	        statsTextPaint.setARGB(255, 255, 255, 255);
+	        statsTextPaint.setTextSize(12*density);
+	        statsBackgroundPaint = new Paint();
+	        statsBackgroundPaint.setARGB(160, 0, 0, 0);
+	    }
+	    String[] lines = frameStatsLines();
+	    float lineHeight = statsTextPaint.getTextSize() * 1.2f;
+	    float padding = lineHeight / 4;
+	    float width = 0;
+	    for(String line : lines) {
+	        width = Math.max(width, statsTextPaint.measureText(line));
+	    }
+	    canvas.drawRect(0, 0, width + 2*padding, lines.length*lineHeight + 2*padding, statsBackgroundPaint);
+	    for(int i=0; i<lines.length; i++) {
+	        canvas.drawText(lines[i], padding, padding + (i+1)*lineHeight - statsTextPaint.descent(), statsTextPaint);
+	    }
+	}
+	
+	String[] frameStatsLines() {
+	    FrameStats stats = frameStats;
+	    String[] lines = new String[FrameStats.Stage.values().length + 4];
+	    int index = 0;
+	    statsText.setLength(0);
+	    long fpsTenths = Math.round(stats.getFramesPerSecond()*10);
+	    lines[index++] = statsText.append("fps ").append(fpsTenths/10).append('.').append(fpsTenths%10).toString();
+	    statsText.setLength(0);
+	    lines[index++] = appendMillis(statsText.append("frame "), stats.getTotalNanos(1)).append(" ms").toString();
+	    for(FrameStats.Stage stage : FrameStats.Stage.values()) {
+	        statsText.setLength(0);
+	        statsText.append(stage.name().toLowerCase()).append(' ');
+	        lines[index++] = appendMillis(statsText, stats.getStageNanos(1, stage)).toString();
+	    }
+	    statsText.setLength(0);
+	    statsText.append("workers ");
+	    appendMillis(statsText, stats.getMinWorkerNanos(1)).append('-');
+	    lines[index++] = appendMillis(statsText, stats.getMaxWorkerNanos(1)).toString();
+	    statsText.setLength(0);
+	    lines[index++] = appendMillis(statsText.append("view "), lastDrawNanos).toString();
+	    return lines;
+	}
+	
+	// appends nanoseconds as milliseconds with one decimal place
+	static StringBuilder appendMillis(StringBuilder sb, long nanos) {
+	    long tenths = (nanos + 50000) / 100000;
+	    return sb.append(tenths/10).append('.').append(tenths%10);
+	}
 
 }
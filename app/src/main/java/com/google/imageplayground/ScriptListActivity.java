@@ -18,10 +18,13 @@ package com.google.imageplayground;
 
 import java.io.File;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+import com.google.imageplayground.scripts.ScriptContentCache;
 import com.google.imageplayground.scripts.ScriptFile;
 import com.google.imageplayground.scripts.ScriptList;
 
@@ -30,12 +33,16 @@ import android.content.Context;
 import android.content.Intent;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.view.View;
+import android.view.ViewGroup;
 import android.widget.AdapterView;
+import android.widget.BaseAdapter;
 import android.widget.EditText;
-import android.widget.ListAdapter;
 import android.widget.ListView;
-import android.widget.SimpleAdapter;
+import android.widget.TextView;
 
 public class ScriptListActivity extends Activity {
     
@@ -45,13 +52,44 @@ public class ScriptListActivity extends Activity {
         return intent;
     }
     
+    // scripts are added to the list in pages, so the first rows show before a large library is fully added
+    static final int PAGE_SIZE = 50;
+    // scripts on each side of the selected one whose contents are read ahead
+    static final int PREFETCH_DISTANCE = 2;
+    // how long the search field has to be idle before searching, so typing a word runs one search rather than one per key
+    static final long SEARCH_DELAY_MILLIS = 300;
+    
+    /** Receives a script's content on the UI thread once it's been read. */
+    interface ContentLoadListener {
+        void scriptContentLoaded(ScriptFile scriptFile, String content);
+    }
+    
     ListView scriptListView;
     EditText scriptTextView;
+    EditText scriptSearchField;
     
     String scriptDirectoryPath;
     ScriptList scriptList;
-    List scriptFileMaps;
+    List<ScriptFile> scriptFiles = new ArrayList<ScriptFile>();
+    ScriptFileAdapter scriptFileAdapter;
     ScriptFile selectedScript;
+    
+    Handler handler = new Handler();
+    // reads the script list and script contents off the UI thread, in the order requested
+    ExecutorService loadExecutor = Executors.newSingleThreadExecutor();
+    ScriptContentCache contentCache = new ScriptContentCache();
+    // directory paths of scripts whose contents are queued to be read, only accessed on the UI thread
+    Set<String> pendingContentLoads = new HashSet<String>();
+    // incremented when the list is reloaded, so pages from an earlier load are ignored and queued loads that are 
+    // already out of date are skipped; only changed on the UI thread
+    volatile int listGeneration = 0;
+    // query from the search field, the list shows all scripts if it's blank
+    String searchText = "";
+    Runnable searchRunnable = new Runnable() {
+        public void run() {
+            updateScriptList();
+        }
+    };
 
     @Override
     public void onCreate(Bundle savedInstanceState) {
@@ -65,42 +103,141 @@ public class ScriptListActivity extends Activity {
         SyntaxHighlighter.watchTextField(scriptTextView);
         
         scriptListView = (ListView)findViewById(R.id.scriptListView);
+        scriptFileAdapter = new ScriptFileAdapter();
+        scriptListView.setAdapter(scriptFileAdapter);
         scriptListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
             public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
                 handleScriptListSelection(position);
             }
         });
         
+        scriptSearchField = (EditText)findViewById(R.id.scriptSearchField);
+        scriptSearchField.addTextChangedListener(new TextWatcher() {
+            public void afterTextChanged(Editable s) {
+                searchText = s.toString();
+                handler.removeCallbacks(searchRunnable);
+                handler.postDelayed(searchRunnable, SEARCH_DELAY_MILLIS);
+            }
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
+            public void onTextChanged(CharSequence s, int start, int before, int count) {}
+        });
+        
         this.scriptDirectoryPath = this.getIntent().getStringExtra("scriptDirectory");
-        scriptList = new ScriptList(this.scriptDirectoryPath);
         updateScriptList();
     }
     
+    @Override public void onDestroy() {
+        listGeneration++;
+        handler.removeCallbacks(searchRunnable);
+        loadExecutor.shutdownNow();
+        super.onDestroy();
+    }
+    
+    /** Starts reading the script list in the background, or searching it if there's search text; the list view is 
+     * filled in as pages of scripts arrive.
+     */
     void updateScriptList() {
-        scriptList = new ScriptList(this.scriptDirectoryPath);
-        scriptFileMaps = new ArrayList();
+        final int generation = ++listGeneration;
+        final String query = searchText;
+        scriptFiles.clear();
+        scriptFileAdapter.notifyDataSetChanged();
         
-        for(ScriptFile sf : scriptList.getScriptFiles()) {
-            Map dmap = new HashMap();
-            dmap.put("title", sf.getScriptName());
-            dmap.put("scriptFile", sf);
-            scriptFileMaps.add(dmap);
+        scriptList = new ScriptList(this.scriptDirectoryPath);
+        // the list comes from the library index; if scripts changed outside the app it's shown again once they're read
+        scriptList.setListener(new ScriptList.Listener() {
+            public void scriptFilesChanged(ScriptList changedList) {
+                handler.post(new Runnable() {
+                    public void run() {
+                        if (generation==listGeneration) updateScriptList();
+                    }
+                });
+            }
+        });
+        final ScriptList loadingList = scriptList;
+        loadExecutor.execute(new Runnable() {
+            public void run() {
+                // a later keystroke or reload has replaced this list before it started
+                if (generation!=listGeneration) return;
+                // the first search builds the library's search index, later ones only read scripts changed since
+                List<ScriptFile> allScriptFiles = (query.trim().length()==0) ? 
+                        loadingList.getScriptFiles() : loadingList.search(query);
+                for(int start=0; start<allScriptFiles.size(); start+=PAGE_SIZE) {
+                    final List<ScriptFile> page = new ArrayList<ScriptFile>(
+                            allScriptFiles.subList(start, Math.min(start+PAGE_SIZE, allScriptFiles.size())));
+                    handler.post(new Runnable() {
+                        public void run() {
+                            if (generation==listGeneration) {
+                                scriptFiles.addAll(page);
+                                scriptFileAdapter.notifyDataSetChanged();
+                            }
+                        }
+                    });
+                }
+            }
+        });
+    }
+    
+    /** Reads the script's content in the background if it's not cached, and then passes it to onLoad on the UI 
+     * thread. The content is passed directly since the cache may have evicted it again by the time onLoad runs.
+     */
+    void loadScriptContent(final ScriptFile scriptFile, final ContentLoadListener onLoad) {
+        String cachedContent = contentCache.getInMemoryContent(scriptFile);
+        if (cachedContent!=null) {
+            if (onLoad!=null) onLoad.scriptContentLoaded(scriptFile, cachedContent);
+            return;
         }
-        
-        ListAdapter adapter = new SimpleAdapter(this, scriptFileMaps, 
-                R.layout.script_list_row, 
-                new String[] {"title"}, 
-                new int[] {R.id.listrow_text1});
-        
-        scriptListView.setAdapter(adapter);
+        // a script already queued will update the list when it's read, so only a new onLoad needs another task
+        final String key = scriptFile.getDirectoryPath();
+        if (loadExecutor.isShutdown() || (onLoad==null && pendingContentLoads.contains(key))) return;
+        pendingContentLoads.add(key);
+        final boolean hadPreview = (contentCache.getInMemoryPreview(scriptFile)!=null);
+        loadExecutor.execute(new Runnable() {
+            public void run() {
+                final String content = contentCache.getContent(scriptFile);
+                handler.post(new Runnable() {
+                    public void run() {
+                        pendingContentLoads.remove(key);
+                        // redrawing the list calls getView for every visible row, so only do it when one of them 
+                        // can now show a preview it didn't have
+                        if (!hadPreview && isScriptVisible(key)) scriptFileAdapter.notifyDataSetChanged();
+                        if (onLoad!=null) onLoad.scriptContentLoaded(scriptFile, content);
+                    }
+                });
+            }
+        });
+    }
+    
+    boolean isScriptVisible(String directoryPath) {
+        int last = Math.min(scriptListView.getLastVisiblePosition(), scriptFiles.size()-1);
+        for(int i=Math.max(0, scriptListView.getFirstVisiblePosition()); i<=last; i++) {
+            if (scriptFiles.get(i).getDirectoryPath().equals(directoryPath)) return true;
+        }
+        return false;
     }
     
     void handleScriptListSelection(int position) {
-        selectedScript = (ScriptFile)((Map)scriptFileMaps.get(position)).get("scriptFile");
-        scriptTextView.setText(selectedScript.getScriptContent());
+        final ScriptFile scriptFile = scriptFiles.get(position);
+        selectedScript = scriptFile;
+        String content = contentCache.getInMemoryContent(scriptFile);
+        scriptTextView.setText((content!=null) ? content : "");
+        if (content==null) {
+            loadScriptContent(scriptFile, new ContentLoadListener() {
+                public void scriptContentLoaded(ScriptFile loadedFile, String loadedContent) {
+                    if (selectedScript==loadedFile) {
+                        scriptTextView.setText(loadedContent);
+                    }
+                }
+            });
+        }
+        // the next selection is likely to be nearby
+        for(int distance=1; distance<=PREFETCH_DISTANCE; distance++) {
+            if (position+distance < scriptFiles.size()) loadScriptContent(scriptFiles.get(position+distance), null);
+            if (position-distance >= 0) loadScriptContent(scriptFiles.get(position-distance), null);
+        }
     }
     
     public void onClick_loadScript(View view) {
+        if (selectedScript==null) return;
         Intent intent = new Intent();
         intent.setData(Uri.fromFile(new File(selectedScript.getDirectoryPath())));
         
@@ -111,4 +248,33 @@ public class ScriptListActivity extends Activity {
     public void onClick_deleteScript(View view) {
         
     }
+    
+    // Shows the name of each script and a preview of its content, which is read in the background the first time
+    // the row is shown.
+    class ScriptFileAdapter extends BaseAdapter {
+        public int getCount() {
+            return scriptFiles.size();
+        }
+        
+        public Object getItem(int position) {
+            return scriptFiles.get(position);
+        }
+        
+        public long getItemId(int position) {
+            return position;
+        }
+        
+        public View getView(int position, View convertView, ViewGroup parent) {
+            View view = (convertView!=null) ? convertView : 
+                    getLayoutInflater().inflate(R.layout.script_list_row, parent, false);
+            ScriptFile scriptFile = scriptFiles.get(position);
+            ((TextView)view.findViewById(R.id.listrow_text1)).setText(scriptFile.getScriptName());
+            String preview = contentCache.getInMemoryPreview(scriptFile);
+            ((TextView)view.findViewById(R.id.listrow_text2)).setText((preview!=null) ? preview : "");
+            if (preview==null) {
+                loadScriptContent(scriptFile, null);
+            }
+            return view;
+        }
+    }
 }
@@ -0,0 +1,127 @@
+/* 
+ * Copyright 2012 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.imageplayground.drawing;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Paint.Style;
+
+/**
+ * OutputSurface that copies script output into a Bitmap and draws commands on it with a Canvas. The bitmap is 
+ * reused between frames as long as the size doesn't change.
+ */
+public class BitmapOutputSurface implements OutputSurface {
+    
+    Bitmap bitmap;
+    Canvas canvas;
+    Paint paint;
+    // endpoints for consecutive LINE commands, passed to Canvas.drawLines in a single call
+    float[] linePoints = new float[64 * 4];
+    
+    /** Returns the bitmap containing the most recent frame, or null if no frame has been drawn. */
+    public Bitmap getBitmap() {
+        return bitmap;
+    }
+    
+    public void setPixels(int[] pixels, int width, int height) {
+        if (bitmap==null || bitmap.getWidth()!=width || bitmap.getHeight()!=height) {
+            bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            canvas = null;
+        }
+        bitmap.setPixels(pixels, 0, width, 0, 0, width, height);
+    }
+    
+    /** Performs all commands in order. Runs of consecutive LINE commands are drawn with a single call to 
+     * Canvas.drawLines.
+     */
+    public void drawCommands(DrawCommandBuffer commands) {
+        if (canvas==null) canvas = new Canvas(bitmap);
+        if (paint==null) paint = new Paint();
+        paint.reset();
+        paint.setARGB(255, 255, 255, 255);
+        
+        int numCommands = commands.size();
+        int i = 0;
+        while (i < numCommands) {
+            DrawOperation operation = commands.getOperation(i);
+            if (operation==DrawOperation.LINE) {
+                int runEnd = i + 1;
+                while (runEnd < numCommands && commands.getOperation(runEnd)==DrawOperation.LINE) {
+                    runEnd++;
+                }
+                drawLines(commands, i, runEnd);
+                i = runEnd;
+            }
+            else {
+                execute(operation, commands.getArgument(i, 0), commands.getArgument(i, 1), 
+                        commands.getArgument(i, 2), commands.getArgument(i, 3));
+                i++;
+            }
+        }
+    }
+    
+    void execute(DrawOperation operation, int arg0, int arg1, int arg2, int arg3) {
+        switch(operation) {
+            case SET_PAINT:
+                // red, green, blue, alpha
+                paint.setARGB(arg3, arg0, arg1, arg2);
+                break;
+            case LINE:
+                canvas.drawLine(arg0, arg1, arg2, arg3, paint);
+                break;
+            case FILL_RECT:
+                paint.setStyle(Style.FILL);
+                canvas.drawRect(arg0, arg1, arg2, arg3, paint);
+                break;
+            case FRAME_RECT:
+                paint.setStyle(Style.STROKE);
+                canvas.drawRect(arg0, arg1, arg2, arg3, paint);
+                break;
+            case FILL_CIRCLE:
+                paint.setStyle(Style.FILL);
+                canvas.drawCircle(arg0, arg1, arg2, paint);
+                break;
+            case FRAME_CIRCLE:
+                paint.setStyle(Style.STROKE);
+                canvas.drawCircle(arg0, arg1, arg2, paint);
+                break;
+            case DRAW_NUMBER:
+                // TODO: font/size support
+                canvas.drawText(String.valueOf(arg2), arg0, arg1, paint);
+                break;
+            case DRAW_CHAR:
+                canvas.drawText(String.valueOf((char)arg2), arg0, arg1, paint);
+                break;
+        }
+    }
+    
+    void drawLines(DrawCommandBuffer commands, int start, int end) {
+        int numPoints = 4 * (end - start);
+        if (numPoints > linePoints.length) {
+            linePoints = new float[Math.max(numPoints, 2 * linePoints.length)];
+        }
+        int pointIndex = 0;
+        for(int i=start; i<end; i++) {
+            linePoints[pointIndex++] = commands.getArgument(i, 0);
+            linePoints[pointIndex++] = commands.getArgument(i, 1);
+            linePoints[pointIndex++] = commands.getArgument(i, 2);
+            linePoints[pointIndex++] = commands.getArgument(i, 3);
+        }
+        canvas.drawLines(linePoints, 0, numPoints, paint);
+    }
+}
@@ -16,20 +16,15 @@
 
 package com.google.imageplayground.util;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.InputStream;
+import android.util.Log;
 
-public class JavaUtils {
+/** Sends messages from Logging to the Android log. */
+public class AndroidLogHandler implements Logging.Handler {
     
-    public static byte[] bytesForInputStream(InputStream in) throws IOException {
-        ByteArrayOutputStream os = new ByteArrayOutputStream();
-        byte[] buffer = new byte[8192];
-        int bytesRead = 0;
-        while ((bytesRead = in.read(buffer, 0, buffer.length)) >= 0) {
-            os.write(buffer, 0, bytesRead);
+    public void log(int level, String tag, String message, Throwable ex) {
+        if (ex!=null) {
+            message = message + "\n" + Log.getStackTraceString(ex);
         }
-        return os.toByteArray();
+        Log.println(level, tag, message);
     }
-
 }
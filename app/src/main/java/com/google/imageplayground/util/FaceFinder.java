@@ -16,23 +16,19 @@
 
 package com.google.imageplayground.util;
 
-import java.io.ByteArrayOutputStream;
+import java.nio.ShortBuffer;
 
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.graphics.ImageFormat;
 import android.graphics.PointF;
-import android.graphics.Rect;
-import android.graphics.YuvImage;
 import android.media.FaceDetector;
 import android.media.FaceDetector.Face;
 
 /**
  * Wrapper for the FaceDetector API which simplifies its use.
  */
-public class FaceFinder {
+public class FaceFinder implements FaceLocator {
     
-    static final int DEFAULT_MAX_FACES = 10;
+    public static final int DEFAULT_MAX_FACES = 10;
     static final int DEFAULT_FACE_BITMAP_WIDTH = 320;
     
     int maxFaces;
@@ -46,6 +42,12 @@ public class FaceFinder {
     int bitmapScale;
     PointF facePoint = new PointF();
     
+    // reused between calls as long as the image size doesn't change
+    Bitmap faceBitmap;
+    short[] facePixels;
+    ShortBuffer facePixelBuffer;
+    int[] faceRowSums;
+    
     /**
      * @param maxFaces maximum number of faces to detect in an image
      * @param faceBitmapWidth minimum width of the bitmap to detect faces in. An input image that
@@ -73,26 +75,30 @@ public class FaceFinder {
      * @return number of faces detected in the image
      */
     public int findFacesInCameraData(byte[] data, int width, int height) {
-        YuvImage yuvImage = new YuvImage(data, ImageFormat.NV21, width, height, null);
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        yuvImage.compressToJpeg(new Rect(0, 0, width, height), 90, out);
-        byte[] jpegData = out.toByteArray();
+        // we don't need a large bitmap to detect faces, and only the brightness values are used.
+        // FaceDetector requires an RGB_565 bitmap with an even width.
+        int scale = Math.max(1, width / faceBitmapWidth);
+        int bitmapWidth = (width / scale) & ~1;
+        int bitmapHeight = height / scale;
         
-        BitmapFactory.Options options = new BitmapFactory.Options();
-        options.inPreferredConfig = Bitmap.Config.RGB_565;
-        // we don't need a large bitmap to detect faces
-        options.inSampleSize = width / faceBitmapWidth;
-
-        Bitmap faceBitmap = BitmapFactory.decodeByteArray(jpegData, 0, jpegData.length, options);
+        if (faceBitmap==null || faceBitmap.getWidth()!=bitmapWidth || faceBitmap.getHeight()!=bitmapHeight) {
+            faceBitmap = Bitmap.createBitmap(bitmapWidth, bitmapHeight, Bitmap.Config.RGB_565);
+            facePixels = new short[bitmapWidth * bitmapHeight];
+            facePixelBuffer = ShortBuffer.wrap(facePixels);
+            faceRowSums = new int[bitmapWidth];
+        }
+        YuvUtils.downsampleLumaToRgb565(data, width, height, scale, facePixels, bitmapWidth, bitmapHeight, faceRowSums);
+        facePixelBuffer.rewind();
+        faceBitmap.copyPixelsFromBuffer(facePixelBuffer);
 
-        if (detector==null || detectorWidth!=faceBitmap.getWidth() || detectorHeight!=faceBitmap.getHeight()) {
-            detector = new FaceDetector(faceBitmap.getWidth(), faceBitmap.getHeight(), faces.length);
-            detectorWidth = faceBitmap.getWidth();
-            detectorHeight = faceBitmap.getHeight();
+        if (detector==null || detectorWidth!=bitmapWidth || detectorHeight!=bitmapHeight) {
+            detector = new FaceDetector(bitmapWidth, bitmapHeight, faces.length);
+            detectorWidth = bitmapWidth;
+            detectorHeight = bitmapHeight;
         }
         
         this.numFaces = detector.findFaces(faceBitmap, this.faces);
-        bitmapScale = width / faceBitmap.getWidth();
+        bitmapScale = scale;
         return numFaces;
     }
     
@@ -0,0 +1,313 @@
+/* 
+ * Copyright 2012 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.imageplayground.batch;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.imageplayground.codegen.DexImageScript;
+import com.google.imageplayground.codegen.InterpretedImageScript;
+import com.google.imageplayground.scripts.ScriptFile;
+import com.google.imageplayground.util.JavaUtils;
+
+/**
+ * Runs a script over every image in a directory and writes the outputs to another directory. The work is split 
+ * into a pipeline of three stages: a pool of threads decodes inputs to NV21, a single thread runs the script on 
+ * each frame in input order (the script spreads each frame across all cores with its own workers, and keeps state 
+ * between frames like the app does), and a pool of threads encodes the outputs. Each stage only gets a bounded 
+ * number of frames ahead of the next, so memory use doesn't depend on the number of inputs.
+ */
+public class BatchRenderer {
+    
+    static final String USAGE = 
+            "Usage: BatchRenderer [options] <script> <input dir> <output dir>\n" +
+            "  <script> is a script directory as saved by the app, or a text file\n" +
+            "Options:\n" +
+            "  --format png|raw   output format, raw is big-endian ARGB ints (default png)\n" +
+            "  --size WxH         size of .nv21 inputs that don't have one in their names\n" +
+            "  --threads N        threads for each of the decode and encode stages (default: number of cores)\n" +
+            "  --queue N          maximum frames waiting between stages (default: 2 per thread)\n" +
+            "  --seed N           seed random functions, so output doesn't depend on thread scheduling\n";
+    
+    DexImageScript script;
+    FrameCodec codec;
+    int threads = Runtime.getRuntime().availableProcessors();
+    int queueSize = 0;
+    
+    AtomicInteger completed = new AtomicInteger();
+    AtomicInteger failed = new AtomicInteger();
+    // total time spent in each stage, summed over threads
+    AtomicLong decodeNanos = new AtomicLong();
+    AtomicLong computeNanos = new AtomicLong();
+    AtomicLong encodeNanos = new AtomicLong();
+    
+    public BatchRenderer(DexImageScript script, FrameCodec codec) {
+        this.script = script;
+        this.codec = codec;
+        // drawing functions can't use Canvas here
+        script.setUseSoftwareRasterizer(true);
+    }
+    
+    public void setThreads(int value) {
+        threads = Math.max(1, value);
+    }
+    
+    /** Sets the maximum number of frames waiting between stages, or 0 to use twice the number of threads. */
+    public void setQueueSize(int value) {
+        queueSize = Math.max(0, value);
+    }
+    
+    /** Returns the script source from a script directory, or the contents of a text file. */
+    public static String readScript(File file) throws IOException {
+        if (file.isDirectory()) {
+            ScriptFile scriptFile = ScriptFile.loadFromDirectory(file);
+            if (scriptFile==null) throw new IOException("Not a script directory: " + file);
+            return scriptFile.getScriptContent();
+        }
+        return JavaUtils.readFileAsString(file);
+    }
+    
+    /** Returns the files in the directory that look like inputs, sorted by name so frame order is predictable. */
+    public static List<File> inputFiles(File inputDir) {
+        List<File> files = new ArrayList<File>();
+        File[] children = inputDir.listFiles();
+        if (children!=null) {
+            Arrays.sort(children);
+            for(File f : children) {
+                if (FrameCodec.isInputFile(f)) files.add(f);
+            }
+        }
+        return files;
+    }
+    
+    /** Processes all the inputs and waits for the outputs to be written. Failures are reported and counted, but 
+     * don't stop the other inputs from being processed.
+     */
+    public void render(List<File> inputs, final File outputDir) throws InterruptedException {
+        int capacity = (queueSize>0) ? queueSize : 2*threads;
+        ExecutorService decodeExecutor = Executors.newFixedThreadPool(threads);
+        final ExecutorService encodeExecutor = Executors.newFixedThreadPool(threads);
+        // futures are queued in input order, so the compute thread takes frames in order even if they're decoded
+        // out of order. A null frame marks the end.
+        final BlockingQueue<Future<FrameCodec.Frame>> decodedFrames = 
+                new ArrayBlockingQueue<Future<FrameCodec.Frame>>(capacity);
+        final Semaphore encodePermits = new Semaphore(capacity);
+        
+        Thread computeThread = new Thread("BatchRenderer compute") {
+            public void run() {
+                try {
+                    while (true) {
+                        FrameCodec.Frame frame;
+                        try {
+                            frame = decodedFrames.take().get();
+                        }
+                        catch(ExecutionException ex) {
+                            reportFailure(ex.getCause());
+                            continue;
+                        }
+                        if (frame==null) break;
+                        
+                        encodePermits.acquire();
+                        try {
+                            long t1 = System.nanoTime();
+                            // the script reuses its output buffer, so each frame needs its own copy for encoding
+                            frame.pixels = script.computeOutputPixels(frame.data, frame.width, frame.height).clone();
+                            frame.data = null;
+                            computeNanos.addAndGet(System.nanoTime()-t1);
+                            encodeExecutor.execute(encodeTask(frame, outputDir, encodePermits));
+                        }
+                        catch(Throwable ex) {
+                            // includes Errors such as StackOverflowError from a script, which only fail this frame
+                            encodePermits.release();
+                            reportFailure(ex);
+                        }
+                    }
+                }
+                catch(InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        computeThread.start();
+        
+        try {
+            for(final File input : inputs) {
+                Future<FrameCodec.Frame> decoded = decodeExecutor.submit(new Callable<FrameCodec.Frame>() {
+                    public FrameCodec.Frame call() throws Exception {
+                        long t1 = System.nanoTime();
+                        try {
+                            return codec.decode(input);
+                        }
+                        catch(Exception ex) {
+                            throw new IOException("Failed to read " + input + ": " + ex.getMessage(), ex);
+                        }
+                        finally {
+                            decodeNanos.addAndGet(System.nanoTime()-t1);
+                        }
+                    }
+                });
+                if (!queueFrame(decodedFrames, decoded, computeThread)) break;
+            }
+            queueFrame(decodedFrames, decodeExecutor.submit(new Callable<FrameCodec.Frame>() {
+                public FrameCodec.Frame call() {
+                    return null;
+                }
+            }), computeThread);
+            
+            computeThread.join();
+            encodeExecutor.shutdown();
+            encodeExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+        finally {
+            // stops the compute thread if this was interrupted, and doesn't affect it if it already finished
+            computeThread.interrupt();
+            decodeExecutor.shutdownNow();
+            encodeExecutor.shutdown();
+            script.shutdown();
+        }
+    }
+    
+    // Adds a frame for the compute thread, waiting while the queue is full. Returns false without adding it if the
+    // compute thread has stopped, so a compute thread that died can't leave this waiting forever.
+    static boolean queueFrame(BlockingQueue<Future<FrameCodec.Frame>> decodedFrames, Future<FrameCodec.Frame> frame, 
+            Thread computeThread) throws InterruptedException {
+        while (!decodedFrames.offer(frame, 100, TimeUnit.MILLISECONDS)) {
+            if (!computeThread.isAlive()) {
+                frame.cancel(true);
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    Runnable encodeTask(final FrameCodec.Frame frame, final File outputDir, final Semaphore encodePermits) {
+        return new Runnable() {
+            public void run() {
+                long t1 = System.nanoTime();
+                try {
+                    codec.encode(frame, codec.outputFileFor(frame.inputFile, outputDir));
+                    completed.incrementAndGet();
+                }
+                catch(Exception ex) {
+                    reportFailure(new IOException("Failed to write output for " + frame.inputFile + ": " + ex.getMessage(), ex));
+                }
+                finally {
+                    encodeNanos.addAndGet(System.nanoTime()-t1);
+                    encodePermits.release();
+                }
+            }
+        };
+    }
+    
+    void reportFailure(Throwable ex) {
+        failed.incrementAndGet();
+        // Errors such as StackOverflowError usually have no message
+        System.err.println((ex.getMessage()!=null) ? ex.getMessage() : ex.toString());
+    }
+    
+    static String stageSummary(String name, long nanos, int frames) {
+        return String.format("  %-8s %8.2f ms/image", name, (frames>0) ? nanos / 1e6 / frames : 0.0);
+    }
+    
+    public static void main(String[] args) throws Exception {
+        FrameCodec.OutputFormat format = FrameCodec.OutputFormat.PNG;
+        int rawWidth = 0, rawHeight = 0, threads = 0, queueSize = 0;
+        Long seed = null;
+        List<String> paths = new ArrayList<String>();
+        try {
+            for(int i=0; i<args.length; i++) {
+                String arg = args[i];
+                if ("--format".equals(arg)) {
+                    format = FrameCodec.OutputFormat.valueOf(args[++i].toUpperCase());
+                }
+                else if ("--size".equals(arg)) {
+                    String[] size = args[++i].toLowerCase().split("x");
+                    rawWidth = Integer.parseInt(size[0]);
+                    rawHeight = Integer.parseInt(size[1]);
+                }
+                else if ("--threads".equals(arg)) {
+                    threads = Integer.parseInt(args[++i]);
+                }
+                else if ("--queue".equals(arg)) {
+                    queueSize = Integer.parseInt(args[++i]);
+                }
+                else if ("--seed".equals(arg)) {
+                    seed = Long.parseLong(args[++i]);
+                }
+                else if (arg.startsWith("--")) {
+                    throw new IllegalArgumentException("Unknown option " + arg);
+                }
+                else {
+                    paths.add(arg);
+                }
+            }
+            if (paths.size()!=3) throw new IllegalArgumentException("Expected 3 arguments");
+        }
+        catch(RuntimeException ex) {
+            System.err.println(ex.getMessage()!=null ? ex.getMessage() : ex.toString());
+            System.err.print(USAGE);
+            System.exit(2);
+            return;
+        }
+        
+        File inputDir = new File(paths.get(1)), outputDir = new File(paths.get(2));
+        List<File> inputs = inputFiles(inputDir);
+        if (inputs.isEmpty()) {
+            System.err.println("No input images in " + inputDir);
+            System.exit(1);
+        }
+        outputDir.mkdirs();
+        
+        // compiled once and reused for every image
+        DexImageScript script = InterpretedImageScript.createScript(readScript(new File(paths.get(0))));
+        if (script==null) {
+            System.err.println("Script failed to compile");
+            System.exit(1);
+        }
+        if (seed!=null) script.setRandomSeed(seed);
+        
+        BatchRenderer renderer = new BatchRenderer(script, new FrameCodec(rawWidth, rawHeight, format));
+        if (threads>0) renderer.setThreads(threads);
+        renderer.setQueueSize(queueSize);
+        
+        long t1 = System.nanoTime();
+        renderer.render(inputs, outputDir);
+        double seconds = (System.nanoTime()-t1) / 1e9;
+        
+        int completed = renderer.completed.get();
+        System.out.println(String.format("%d images in %.2f s, %.2f images/sec%s", completed, seconds, 
+                completed / seconds, (renderer.failed.get()>0) ? ", " + renderer.failed.get() + " failed" : ""));
+        System.out.println(stageSummary("decode", renderer.decodeNanos.get(), inputs.size()));
+        System.out.println(stageSummary("compute", renderer.computeNanos.get(), completed));
+        System.out.println(stageSummary("encode", renderer.encodeNanos.get(), completed));
+        System.exit(renderer.failed.get()>0 ? 1 : 0);
+    }
+}
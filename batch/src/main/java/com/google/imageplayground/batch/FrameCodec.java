@@ -0,0 +1,161 @@
+/* 
+ * Copyright 2012 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.imageplayground.batch;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.imageio.ImageIO;
+
+import com.google.imageplayground.util.YuvUtils;
+
+/**
+ * Reads input images as NV21 data and writes script output. Inputs are either images that ImageIO can read (PNG, 
+ * JPEG, etc), or raw NV21 dumps with a .nv21 extension. The size of a raw dump comes from a WIDTHxHEIGHT suffix 
+ * in its name like "frame_640x480.nv21", or from the default size if there's no suffix.
+ */
+public class FrameCodec {
+    
+    public static enum OutputFormat {
+        // PNG with alpha, like the app's ARGB_8888 bitmaps
+        PNG("png"),
+        // width*height big-endian ARGB ints
+        RAW("argb");
+        
+        public final String extension;
+        
+        private OutputFormat(String extension) {
+            this.extension = extension;
+        }
+    }
+    
+    /** An input image and, after the script runs, its output. */
+    public static class Frame {
+        public final File inputFile;
+        public final int width;
+        public final int height;
+        // NV21 data starting at index 0, always a heap buffer so the script samples its array without copying it
+        public ByteBuffer data;
+        public int[] pixels;
+        
+        public Frame(File inputFile, int width, int height, ByteBuffer data) {
+            this.inputFile = inputFile;
+            this.width = width;
+            this.height = height;
+            this.data = data;
+        }
+    }
+    
+    static final String RAW_EXTENSION = ".nv21";
+    static final Pattern RAW_SIZE_PATTERN = Pattern.compile("(\\d+)x(\\d+)\\.nv21$");
+    
+    int defaultWidth;
+    int defaultHeight;
+    OutputFormat outputFormat;
+    
+    /** defaultWidth and defaultHeight are used for raw inputs without a size in their names, 0 if there's no default. */
+    public FrameCodec(int defaultWidth, int defaultHeight, OutputFormat outputFormat) {
+        this.defaultWidth = defaultWidth;
+        this.defaultHeight = defaultHeight;
+        this.outputFormat = outputFormat;
+    }
+    
+    /** Returns true if the file has an extension this class can probably decode. */
+    public static boolean isInputFile(File file) {
+        String name = file.getName().toLowerCase();
+        return file.isFile() && (name.endsWith(RAW_EXTENSION) || name.endsWith(".png") || 
+                name.endsWith(".jpg") || name.endsWith(".jpeg") || name.endsWith(".bmp") || name.endsWith(".gif"));
+    }
+    
+    public Frame decode(File file) throws IOException {
+        if (file.getName().toLowerCase().endsWith(RAW_EXTENSION)) {
+            return decodeRaw(file);
+        }
+        BufferedImage image = ImageIO.read(file);
+        if (image==null) {
+            throw new IOException("Unsupported image format: " + file);
+        }
+        int width = image.getWidth(), height = image.getHeight();
+        int[] argb = image.getRGB(0, 0, width, height, null, 0, width);
+        byte[] data = new byte[YuvUtils.bufferSize(width, height)];
+        YuvUtils.argbToNv21(argb, width, height, data);
+        return new Frame(file, width, height, ByteBuffer.wrap(data));
+    }
+    
+    Frame decodeRaw(File file) throws IOException {
+        int width = defaultWidth, height = defaultHeight;
+        Matcher matcher = RAW_SIZE_PATTERN.matcher(file.getName().toLowerCase());
+        if (matcher.find()) {
+            width = Integer.parseInt(matcher.group(1));
+            height = Integer.parseInt(matcher.group(2));
+        }
+        if (width<=0 || height<=0) {
+            throw new IOException("No size for raw input " + file + ", name it like frame_640x480.nv21 or use --size");
+        }
+        // only the first frame is used, so read just its bytes rather than the whole file
+        byte[] data = new byte[YuvUtils.bufferSize(width, height)];
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+        try {
+            if (input.length() < data.length) {
+                throw new IOException("Raw input " + file + " is too small for " + width + "x" + height);
+            }
+            input.readFully(data);
+        }
+        finally {
+            input.close();
+        }
+        return new Frame(file, width, height, ByteBuffer.wrap(data));
+    }
+    
+    /** Returns the file that output for the input file is written to. */
+    public File outputFileFor(File inputFile, File outputDir) {
+        String name = inputFile.getName();
+        int dot = name.lastIndexOf('.');
+        if (dot>0) name = name.substring(0, dot);
+        return new File(outputDir, name + "." + outputFormat.extension);
+    }
+    
+    public void encode(Frame frame, File outputFile) throws IOException {
+        if (outputFormat==OutputFormat.PNG) {
+            BufferedImage image = new BufferedImage(frame.width, frame.height, BufferedImage.TYPE_INT_ARGB);
+            image.setRGB(0, 0, frame.width, frame.height, frame.pixels, 0, frame.width);
+            if (!ImageIO.write(image, "png", outputFile)) {
+                throw new IOException("No PNG writer available");
+            }
+        }
+        else {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(outputFile)));
+            try {
+                int size = frame.width * frame.height;
+                for(int i=0; i<size; i++) {
+                    out.writeInt(frame.pixels[i]);
+                }
+            }
+            finally {
+                out.close();
+            }
+        }
+    }
+}
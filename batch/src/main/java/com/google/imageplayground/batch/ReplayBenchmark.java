@@ -0,0 +1,97 @@
+/* 
+ * Copyright 2012 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.imageplayground.batch;
+
+import java.io.File;
+
+import com.google.imageplayground.codegen.DexImageScript;
+import com.google.imageplayground.codegen.FrameReplayer;
+import com.google.imageplayground.codegen.FrameStats;
+import com.google.imageplayground.codegen.InterpretedImageScript;
+import com.google.imageplayground.util.FrameStore;
+
+/**
+ * Replays a recording made with the app's Record Frames menu item through a script and prints the frame rate and
+ * average stage timings, for comparing runtime changes on identical input.
+ */
+public class ReplayBenchmark {
+    
+    static final String USAGE = 
+            "Usage: ReplayBenchmark [options] <script> <recording>\n" +
+            "Options:\n" +
+            "  --realtime    deliver frames at the recorded rate instead of as fast as possible\n" +
+            "  --loops N     play the recording N times (default 1)\n" +
+            "  --warmup N    frames to run before timing starts (default 10)\n" +
+            "  --seed N      seed random functions so every run computes the same output\n";
+    
+    public static void main(String[] args) throws Exception {
+        boolean realTime = false;
+        int loops = 1, warmup = 10;
+        Long seed = null;
+        String scriptPath = null, recordingPath = null;
+        try {
+            for(int i=0; i<args.length; i++) {
+                String arg = args[i];
+                if ("--realtime".equals(arg)) realTime = true;
+                else if ("--loops".equals(arg)) loops = Integer.parseInt(args[++i]);
+                else if ("--warmup".equals(arg)) warmup = Integer.parseInt(args[++i]);
+                else if ("--seed".equals(arg)) seed = Long.parseLong(args[++i]);
+                else if (arg.startsWith("--")) throw new IllegalArgumentException("Unknown option " + arg);
+                else if (scriptPath==null) scriptPath = arg;
+                else if (recordingPath==null) recordingPath = arg;
+                else throw new IllegalArgumentException("Too many arguments");
+            }
+            if (recordingPath==null) throw new IllegalArgumentException("Expected 2 arguments");
+        }
+        catch(RuntimeException ex) {
+            System.err.println(ex.getMessage()!=null ? ex.getMessage() : ex.toString());
+            System.err.print(USAGE);
+            System.exit(2);
+            return;
+        }
+        
+        DexImageScript script = InterpretedImageScript.createScript(BatchRenderer.readScript(new File(scriptPath)));
+        if (script==null) {
+            System.err.println("Script failed to compile");
+            System.exit(1);
+        }
+        if (seed!=null) script.setRandomSeed(seed);
+        script.setUseSoftwareRasterizer(true);
+        
+        FrameReplayer replayer = new FrameReplayer(script, FrameStore.openRecording(new File(recordingPath)));
+        replayer.setRealTime(realTime);
+        replayer.setLoops(loops);
+        replayer.setWarmupFrames(warmup);
+        FrameReplayer.Result result = replayer.run();
+        script.shutdown();
+        
+        System.out.println(result);
+        FrameStats stats = script.getFrameStats();
+        int frames = stats.getNumberOfCompletedFrames();
+        for(FrameStats.Stage stage : FrameStats.Stage.values()) {
+            long total = 0;
+            for(int i=1; i<=frames; i++) {
+                total += stats.getStageNanos(i, stage);
+            }
+            if (total > 0) {
+                System.out.println(String.format("  %-12s %8.2f ms/frame (last %d frames)", 
+                        stage.name().toLowerCase(), total / 1e6 / frames, frames));
+            }
+        }
+        System.exit(0);
+    }
+}
@@ -0,0 +1,88 @@
+/* 
+ * Copyright 2012 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.imageplayground.batch;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import com.google.imageplayground.codegen.DexImageScript;
+import com.google.imageplayground.util.YuvUtils;
+
+import junit.framework.TestCase;
+
+public class BatchRendererTest extends TestCase {
+    
+    File inputDir, outputDir;
+    
+    @Override protected void setUp() throws IOException {
+        inputDir = File.createTempFile("BatchRendererTest", "");
+        inputDir.delete();
+        inputDir.mkdirs();
+        outputDir = new File(inputDir, "out");
+        outputDir.mkdirs();
+        for(int i=0; i<4; i++) {
+            FileOutputStream output = new FileOutputStream(new File(inputDir, "frame" + i + "_8x6.nv21"));
+            try {
+                output.write(new byte[YuvUtils.bufferSize(8, 6)]);
+            }
+            finally {
+                output.close();
+            }
+        }
+    }
+    
+    @Override protected void tearDown() {
+        for(File dir : new File[] {outputDir, inputDir}) {
+            for(File file : dir.listFiles()) file.delete();
+            dir.delete();
+        }
+    }
+    
+    BatchRenderer render(DexImageScript script) throws InterruptedException {
+        BatchRenderer renderer = new BatchRenderer(script, new FrameCodec(0, 0, FrameCodec.OutputFormat.RAW));
+        renderer.setThreads(2);
+        List<File> inputs = BatchRenderer.inputFiles(inputDir);
+        assertEquals(4, inputs.size());
+        renderer.render(inputs, outputDir);
+        return renderer;
+    }
+    
+    public void testRendersAllFrames() throws Exception {
+        BatchRenderer renderer = render(new DexImageScript() {
+            @Override public int getOutputColorForGrayscaleInput(int y, int row, int col, int width, int height) {
+                return 0xff000000 | col;
+            }
+        });
+        assertEquals(4, renderer.completed.get());
+        assertEquals(0, renderer.failed.get());
+        assertEquals(4, outputDir.listFiles().length);
+    }
+    
+    public void testPerPixelErrorsFailFrames() throws Exception {
+        // throws on the script's worker threads rather than the compute thread
+        BatchRenderer renderer = render(new DexImageScript() {
+            @Override public int getOutputColorForGrayscaleInput(int y, int row, int col, int width, int height) {
+                return 255 / (col-col);
+            }
+        });
+        assertTrue(renderer.failed.get()>0);
+        assertEquals(0, renderer.completed.get());
+        assertEquals(0, outputDir.listFiles().length);
+    }
+}
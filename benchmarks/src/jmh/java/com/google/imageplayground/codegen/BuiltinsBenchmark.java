@@ -0,0 +1,162 @@
+/* 
+ * Copyright 2012 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.imageplayground.codegen;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.google.imageplayground.util.SyntheticFrames;
+
+/** Calls individual builtins once for every pixel of a 640x480 frame, which is how scripts use them. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BuiltinsBenchmark {
+    
+    static final int WIDTH = 640;
+    static final int HEIGHT = 480;
+    
+    DexImageScript script;
+    
+    @Setup
+    public void setup() {
+        script = new DexImageScript();
+        script.imageData = SyntheticFrames.createFrame(WIDTH, HEIGHT, 1);
+        script.imageWidth = WIDTH;
+        script.imageHeight = HEIGHT;
+        script.setRandomSeed(1);
+    }
+    
+    @Benchmark
+    public int getbright() {
+        int sum = 0;
+        for(int row=0; row<HEIGHT; row++) {
+            for(int col=0; col<WIDTH; col++) {
+                sum += script.script_getbright(row, col);
+            }
+        }
+        return sum;
+    }
+    
+    @Benchmark
+    public int uncheckedGetbright() {
+        int sum = 0;
+        for(int row=0; row<HEIGHT; row++) {
+            for(int col=0; col<WIDTH; col++) {
+                sum += script.unchecked_getbright(row, col);
+            }
+        }
+        return sum;
+    }
+    
+    @Benchmark
+    public int getcolor() {
+        int sum = 0;
+        for(int row=0; row<HEIGHT; row++) {
+            for(int col=0; col<WIDTH; col++) {
+                sum += script.script_getcolor(row, col);
+            }
+        }
+        return sum;
+    }
+    
+    // what getcolor replaces, three separate conversions
+    @Benchmark
+    public int getredGetgreenGetblue() {
+        int sum = 0;
+        for(int row=0; row<HEIGHT; row++) {
+            for(int col=0; col<WIDTH; col++) {
+                sum += script.script_getred(row, col) + script.script_getgreen(row, col) + script.script_getblue(row, col);
+            }
+        }
+        return sum;
+    }
+    
+    @Benchmark
+    public int rgb() {
+        int sum = 0;
+        for(int row=0; row<HEIGHT; row++) {
+            for(int col=0; col<WIDTH; col++) {
+                sum += script.script_rgb(row, col, row+col);
+            }
+        }
+        return sum;
+    }
+    
+    @Benchmark
+    public int sinmult() {
+        int sum = 0;
+        for(int row=0; row<HEIGHT; row++) {
+            int angle = row << 20;
+            for(int col=0; col<WIDTH; col++) {
+                sum += script.script_sinmult(angle + (col<<16), 255);
+            }
+        }
+        return sum;
+    }
+    
+    @Benchmark
+    public int hypot() {
+        int sum = 0;
+        for(int row=0; row<HEIGHT; row++) {
+            for(int col=0; col<WIDTH; col++) {
+                sum += script.script_hypot(col - WIDTH/2, row - HEIGHT/2);
+            }
+        }
+        return sum;
+    }
+    
+    @Benchmark
+    public int atan2() {
+        int sum = 0;
+        for(int row=0; row<HEIGHT; row++) {
+            for(int col=0; col<WIDTH; col++) {
+                sum += script.script_atan2(row - HEIGHT/2, col - WIDTH/2);
+            }
+        }
+        return sum;
+    }
+    
+    @Benchmark
+    public int random() {
+        int sum = 0;
+        for(int row=0; row<HEIGHT; row++) {
+            for(int col=0; col<WIDTH; col++) {
+                sum += script.script_random(256);
+            }
+        }
+        return sum;
+    }
+    
+    @Benchmark
+    public int hashnoise() {
+        int sum = 0;
+        for(int row=0; row<HEIGHT; row++) {
+            for(int col=0; col<WIDTH; col++) {
+                sum += script.script_hashnoise(row, col, 7);
+            }
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,129 @@
+/* 
+ * Copyright 2012 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.imageplayground.codegen;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.google.imageplayground.util.SyntheticFrames;
+
+/** Runs the computeOutputPixels loops with hand-written equivalents of generated scripts, since generating 
+ * classes with dexmaker needs a device.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ComputePixelsBenchmark {
+    
+    // return gray(255-y)
+    static class InvertScript extends DexImageScript {
+        @Override public int getOutputColorForGrayscaleInput(int y, int row, int col, int width, int height) {
+            return script_gray(255-y);
+        }
+    }
+    
+    // return rgb(b, r, g)
+    static class SwapColorsScript extends DexImageScript {
+        @Override public int getOutputColorForColorInput(int y, int r, int g, int b, int row, int col, int width, int height) {
+            return script_rgb(b, r, g);
+        }
+    }
+    
+    // return gray((getbright(row-1,col) + getbright(row+1,col) + getbright(row,col-1) + getbright(row,col+1)) / 4),
+    // with the interior method the compiler would generate
+    static class BlurScript extends DexImageScript {
+        @Override public int getOutputColorForGrayscaleInput(int y, int row, int col, int width, int height) {
+            return script_gray((script_getbright(row-1, col) + script_getbright(row+1, col) + 
+                    script_getbright(row, col-1) + script_getbright(row, col+1)) / 4);
+        }
+        @Override public int getOutputColorForGrayscaleInputInterior(int y, int row, int col, int width, int height) {
+            return script_gray((unchecked_getbright(row-1, col) + unchecked_getbright(row+1, col) + 
+                    unchecked_getbright(row, col-1) + unchecked_getbright(row, col+1)) / 4);
+        }
+    }
+    
+    @Param({"640x480", "1280x720", "1920x1080"})
+    public String size;
+    
+    // 0 uses one worker per processor
+    @Param({"1", "0"})
+    public int workers;
+    
+    int width;
+    int height;
+    byte[] frame;
+    DexImageScript invert;
+    DexImageScript swapColors;
+    DexImageScript blur;
+    DexImageScript blurChecked;
+    
+    DexImageScript createScript(DexImageScript script, DexImageScript.ScriptType type, int samplingBorder) {
+        script.setScriptType(type);
+        script.samplingBorder = samplingBorder;
+        if (workers>0) script.numWorkers = workers;
+        return script;
+    }
+    
+    @Setup
+    public void setup() {
+        int[] dimensions = SyntheticFrames.parseSize(size);
+        width = dimensions[0];
+        height = dimensions[1];
+        frame = SyntheticFrames.createFrame(width, height, 1);
+        invert = createScript(new InvertScript(), DexImageScript.ScriptType.GRAYSCALE, -1);
+        swapColors = createScript(new SwapColorsScript(), DexImageScript.ScriptType.COLOR, -1);
+        blur = createScript(new BlurScript(), DexImageScript.ScriptType.GRAYSCALE, 1);
+        blurChecked = createScript(new BlurScript(), DexImageScript.ScriptType.GRAYSCALE, -1);
+    }
+    
+    @TearDown
+    public void tearDown() {
+        for(DexImageScript script : new DexImageScript[] {invert, swapColors, blur, blurChecked}) {
+            if (script.workerExecutor!=null) script.workerExecutor.shutdown();
+        }
+    }
+    
+    @Benchmark
+    public int[] grayscale() {
+        return invert.computeOutputPixels(frame, width, height);
+    }
+    
+    @Benchmark
+    public int[] color() {
+        return swapColors.computeOutputPixels(frame, width, height);
+    }
+    
+    @Benchmark
+    public int[] sampling() {
+        return blur.computeOutputPixels(frame, width, height);
+    }
+    
+    // the same script without the interior method, so every sample is bounds checked
+    @Benchmark
+    public int[] samplingChecked() {
+        return blurChecked.computeOutputPixels(frame, width, height);
+    }
+}
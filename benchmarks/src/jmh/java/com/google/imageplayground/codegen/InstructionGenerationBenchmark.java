@@ -0,0 +1,76 @@
+/* 
+ * Copyright 2012 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.imageplayground.codegen;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/** Parses scripts and generates instructions and the analyses createScript runs on them, which is the part of
+ * compiling a script that happens before dexmaker generates a class.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class InstructionGenerationBenchmark {
+    
+    @Param({"invert", "blur", "loop"})
+    public String script;
+    
+    static String scriptSource(String name) {
+        if ("invert".equals(name)) {
+            return "return gray(255-y)";
+        }
+        if ("blur".equals(name)) {
+            return "sum = getbright(row-1, col) + getbright(row+1, col) + getbright(row, col-1) + getbright(row, col+1)\n" +
+                   "return gray(sum/4)";
+        }
+        if ("loop".equals(name)) {
+            return "roi(width/4, height/4, width*3/4, height*3/4)\n" + 
+                   "total = 0\n" + 
+                   "for i,0,5 {\n" + 
+                   "  for j,0,5 {\n" + 
+                   "    total = total + getbright(row+i-2, col+j-2)\n" + 
+                   "  }\n" + 
+                   "}\n" + 
+                   "if (total > 25*128) return rgb(255, y, y)\n" + 
+                   "else return gray(total/25)";
+        }
+        throw new IllegalArgumentException(name);
+    }
+    
+    @Benchmark
+    public int createInstructionList() throws Exception {
+        DexCodeGenerator.InstructionContext context = DexCodeGenerator.createInstructionList(scriptSource(script));
+        return context.instructions.size();
+    }
+    
+    @Benchmark
+    public int createInstructionListAndAnalyze() throws Exception {
+        DexCodeGenerator.InstructionContext context = DexCodeGenerator.createInstructionList(scriptSource(script));
+        int result = DexCodeGenerator.maxSamplingOffset(context);
+        if (DexCodeGenerator.callsOnlyFunctions(context, DexCodeGenerator.STATELESS_FUNCTIONS)) result++;
+        result += DexCodeGenerator.maxFrameHistory(context, DexCodeGenerator.INPUT_HISTORY_FUNCTIONS);
+        return result + DexCodeGenerator.createUncheckedSamplingContext(context).instructions.size();
+    }
+}
@@ -0,0 +1,71 @@
+/* 
+ * Copyright 2012 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.imageplayground.codegen;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** The putint/getint and list storage builtins, which scripts use to keep state across pixels and frames. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StorageBenchmark {
+    
+    static final int NUM_KEYS = 1000;
+    
+    DexImageScript script;
+    
+    @Setup
+    public void setup() {
+        script = new DexImageScript();
+        for(int key=0; key<NUM_KEYS; key++) {
+            script.script_putint(key, key);
+        }
+    }
+    
+    @Benchmark
+    public int putintGetint() {
+        int sum = 0;
+        for(int key=0; key<NUM_KEYS; key++) {
+            script.script_putint(key, key+1);
+            sum += script.script_getint(key);
+        }
+        return sum;
+    }
+    
+    @Benchmark
+    public int listPushReadPop() {
+        int sum = 0;
+        for(int i=0; i<NUM_KEYS; i++) {
+            script.script_listpush(1, i);
+        }
+        for(int i=0; i<NUM_KEYS; i++) {
+            sum += script.script_listread(1, i);
+        }
+        while (script.script_listsize(1) > 0) {
+            sum += script.script_listpop(1);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,46 @@
+/* 
+ * Copyright 2012 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.imageplayground.util;
+
+/** Creates NV21 frames for benchmarks with smooth gradients and some noise, similar to a camera preview. */
+public class SyntheticFrames {
+    
+    /** Parses a size like "640x480" into {width, height}. */
+    public static int[] parseSize(String size) {
+        int x = size.indexOf('x');
+        return new int[] {Integer.parseInt(size.substring(0, x)), Integer.parseInt(size.substring(x+1))};
+    }
+    
+    public static byte[] createFrame(int width, int height, long seed) {
+        byte[] data = new byte[YuvUtils.bufferSize(width, height)];
+        FastRandom random = new FastRandom(seed);
+        for(int row=0; row<height; row++) {
+            for(int col=0; col<width; col++) {
+                int y = 255*(row+col)/(width+height) + random.nextInt(16) - 8;
+                data[YuvUtils.yIndex(width, row, col)] = (byte)Math.max(0, Math.min(255, y));
+            }
+        }
+        for(int row=0; row<height; row+=2) {
+            for(int col=0; col<width; col+=2) {
+                int index = YuvUtils.uvIndex(width, height, row, col);
+                data[index] = (byte)(128 + 96*col/width - 48);
+                data[index+1] = (byte)(128 + 96*row/height - 48);
+            }
+        }
+        return data;
+    }
+}
@@ -0,0 +1,86 @@
+/* 
+ * Copyright 2012 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.imageplayground.util;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Whole-frame YUV conversion and the per-frame analysis done before scripts run. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class YuvBenchmark {
+    
+    @Param({"640x480", "1280x720", "1920x1080"})
+    public String size;
+    
+    int width;
+    int height;
+    byte[] frame;
+    int[] rgb = new int[3];
+    short[] downsampled;
+    int[] rowSums;
+    TileChangeDetector changeDetector;
+    
+    @Setup
+    public void setup() {
+        int[] dimensions = SyntheticFrames.parseSize(size);
+        width = dimensions[0];
+        height = dimensions[1];
+        frame = SyntheticFrames.createFrame(width, height, 1);
+        downsampled = new short[(width/4)*(height/4)];
+        rowSums = new int[width/4];
+        changeDetector = new TileChangeDetector(16);
+        changeDetector.update(frame, width, height, 0);
+    }
+    
+    @Benchmark
+    public int yuvToRgb() {
+        int sum = 0;
+        for(int row=0; row<height; row++) {
+            int yindex = YuvUtils.yIndex(width, row, 0);
+            int uvbase = YuvUtils.uvRowStart(width, height, row);
+            for(int col=0; col<width; col++) {
+                int uvindex = uvbase + (col & ~1);
+                YuvUtils.yuvToRgb(frame[yindex], frame[uvindex+1], frame[uvindex], rgb);
+                sum += rgb[0] + rgb[1] + rgb[2];
+                yindex++;
+            }
+        }
+        return sum;
+    }
+    
+    @Benchmark
+    public short[] downsampleLuma() {
+        YuvUtils.downsampleLumaToRgb565(frame, width, height, 4, downsampled, width/4, height/4, rowSums);
+        return downsampled;
+    }
+    
+    // the common case for static scenes, where every tile has to be compared completely
+    @Benchmark
+    public int unchangedTiles() {
+        return changeDetector.update(frame, width, height, 0);
+    }
+}
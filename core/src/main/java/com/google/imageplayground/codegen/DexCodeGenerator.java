@@ -19,6 +19,8 @@ package com.google.imageplayground.codegen;
 import java.io.ByteArrayInputStream;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -39,6 +41,7 @@ import com.android.dx.TypeId;
 import com.android.dx.UnaryOp;
 import com.google.imageplayground.parser.ScriptGrammarLexer;
 import com.google.imageplayground.parser.ScriptGrammarParser;
+import com.google.imageplayground.util.Logging;
 
 public class DexCodeGenerator {
     static final boolean DEBUG = false;
@@ -79,10 +82,36 @@ public class DexCodeGenerator {
         COMPARISON_OPPOSITES.put(Comparison.LE, Comparison.GT);        
     }
     
+    // functions which set per-frame state, top-level statements calling them are moved into the prologue
+    static Set<String> PROLOGUE_FUNCTIONS = new HashSet<String>(Arrays.asList("roi", "faceroi"));
+    // locals that prologue statements can use, since the prologue isn't run for a particular pixel
+    static Set<String> PROLOGUE_LOCALS = new HashSet<String>(Arrays.asList("width", "height"));
+    
+    // functions which read earlier frames; their first argument is how many frames back to look
+    static Set<String> INPUT_HISTORY_FUNCTIONS = new HashSet<String>(Arrays.asList("prevbright"));
+    static Set<String> OUTPUT_HISTORY_FUNCTIONS = new HashSet<String>(Arrays.asList("prevout"));
+    
+    // functions whose results depend only on their arguments and the current input image. Scripts which call 
+    // anything else (framenumber, time, random, storage, faces, previous frames, drawing) can't skip unchanged tiles.
+    static Set<String> STATELESS_FUNCTIONS = new HashSet<String>(Arrays.asList(
+            "abs", "asangle", "atan2", "clamp", "cosmult", "sinmult", "hypot", "isqrt", "ifeq", "ifgt", "max", "min", 
+            "gray", "rgb", "getbright", "getcolor", "getred", "getgreen", "getblue", "hashnoise", "roi"));
+    
+    static final String SCRIPT_METHOD_PREFIX = "script_";
+    static final String UNCHECKED_METHOD_PREFIX = "unchecked_";
+    // functions which clamp their (row, col) arguments to the image bounds, and have unchecked_ variants
+    static Set<String> CLAMPED_SAMPLING_FUNCTIONS = new HashSet<String>(
+            Arrays.asList("getbright", "getcolor", "getred", "getgreen", "getblue"));
+    // functions which need face detection to run
+    static Set<String> FACE_FUNCTIONS = new HashSet<String>(
+            Arrays.asList("numfaces", "facex", "facey", "facedist", "faceconfidence"));
+    
     static class InstructionContext {
     	public Set<String> locals = new HashSet<String>();
     	public Map<String, Label> labels = new HashMap<String, Label>();
     	public List<Instruction> instructions = new ArrayList<Instruction>();
+    	// top-level statements that run once per frame before any pixels are computed, null if there are none
+    	public InstructionContext prologue;
     	
     	int syntheticLocalCounter = 0;
     	public String nextSyntheticLocal() {
@@ -117,7 +146,7 @@ public class DexCodeGenerator {
     static void getTreeDebugString(Tree tree, String prefix, StringBuilder sb) {
         String msg = prefix + tree.getText() + "\n";
         sb.append(msg);
-        android.util.Log.d("DexCodeGenerator.tree", msg);
+        Logging.d("DexCodeGenerator.tree", msg);
         for(int i=0; i<tree.getChildCount(); i++) {
             getTreeDebugString(tree.getChild(i), prefix+"  ", sb);
         }
@@ -135,10 +164,10 @@ public class DexCodeGenerator {
     	Tree tree = createParseTree(userScript);
     	if (DEBUG) {
     	    String ts = treeDebugString(tree);
-    	    android.util.Log.d("DexCodeGenerator.tree", ts);
+    	    Logging.d("DexCodeGenerator.tree", ts);
     	}
     	// generate instructions in memory
-    	generateInstructions(tree, context);
+    	generateTopLevelInstructions(tree, context);
     	return context;
     }
     
@@ -155,7 +184,7 @@ public class DexCodeGenerator {
     	// write code now that we have all the locals available
     	for(Instruction inst : context.instructions) {
     	    if (DEBUG) {
-                android.util.Log.i("DexCodeGenerator", "Generating instruction: " + inst);
+                Logging.i("DexCodeGenerator", "Generating instruction: " + inst);
     	    }
     		inst.generateCode(code, allLocals, context.labels, thisType);
     	}
@@ -169,6 +198,11 @@ public class DexCodeGenerator {
     static abstract class Instruction {
     	abstract void generateCode(Code code, Map<String, Local> localMap, Map<String, Label> labelMap, TypeId thisType);
     	
+    	/** Returns the local assigned by this instruction, or null if it doesn't assign one. */
+    	String getTargetLocal() {
+    	    return null;
+    	}
+    	
     	public boolean equals(Object other) {
     		return (other!=null && this.getClass()==other.getClass() && this.toString().equals(other.toString()));
     	}
@@ -189,6 +223,9 @@ public class DexCodeGenerator {
     	public void generateCode(Code code, Map<String, Local> localMap, Map<String, Label> labelMap, TypeId thisType) {
     		code.loadConstant(localMap.get(targetLocal), value);
     	}
+    	String getTargetLocal() {
+    	    return targetLocal;
+    	}
     	public String toString() {
     		return String.format("[%s] <- %s", targetLocal, value);
     	}
@@ -205,6 +242,9 @@ public class DexCodeGenerator {
 		public void generateCode(Code code, Map<String, Local> localMap, Map<String, Label> labelMap, TypeId thisType) {
     		code.move(localMap.get(targetLocal), localMap.get(sourceLocal));
     	}
+    	String getTargetLocal() {
+    	    return targetLocal;
+    	}
     	public String toString() {
     		return String.format("[%s] <- [%s]", targetLocal, sourceLocal);
     	}
@@ -225,6 +265,9 @@ public class DexCodeGenerator {
 		public void generateCode(Code code, Map<String, Local> localMap, Map<String, Label> labelMap, TypeId thisType) {
     		code.op(operator, localMap.get(targetLocal), localMap.get(leftLocal), localMap.get(rightLocal));
     	}
+    	String getTargetLocal() {
+    	    return targetLocal;
+    	}
     	public String toString() {
     		return String.format("[%s] <- %s([%s], [%s])", targetLocal, operator, leftLocal, rightLocal);
     	}
@@ -243,6 +286,9 @@ public class DexCodeGenerator {
 		public void generateCode(Code code, Map<String, Local> localMap, Map<String, Label> labelMap, TypeId thisType) {
     		code.op(operator, localMap.get(targetLocal), localMap.get(sourceLocal));
     	}
+    	String getTargetLocal() {
+    	    return targetLocal;
+    	}
     	public String toString() {
     		return String.format("[%s] <- %s([%s])", targetLocal, operator, sourceLocal);
     	}
@@ -252,16 +298,21 @@ public class DexCodeGenerator {
     	public final String functionName;
     	public final String[] argumentLocals;
     	public final String targetLocal;
-    	public FunctionCallInstruction(String targetLocal, String functionName, String[] argumentLocals) {
+    	public final String methodPrefix;
+    	public FunctionCallInstruction(String targetLocal, String functionName, String[] argumentLocals, String methodPrefix) {
 			this.functionName = functionName;
 			this.argumentLocals = argumentLocals;
 			this.targetLocal = targetLocal;
+			this.methodPrefix = methodPrefix;
 		}
+    	public FunctionCallInstruction(String targetLocal, String functionName, String[] argumentLocals) {
+    	    this(targetLocal, functionName, argumentLocals, SCRIPT_METHOD_PREFIX);
+    	}
 
 		public void generateCode(Code code, Map<String, Local> localMap, Map<String, Label> labelMap, TypeId thisType) {
-    		// call the superclass (DexImageScript) method with the script_ prefix
+    		// call the superclass (DexImageScript) method with the script_ (or unchecked_) prefix
     		TypeId superclass = TypeId.get(DexImageScript.class);
-    		String methodName = "script_" + functionName;
+    		String methodName = methodPrefix + functionName;
     		// get method parametesr
     		TypeId[] parameterTypes = null;
     		try {
@@ -291,6 +342,10 @@ public class DexCodeGenerator {
     		}
     		code.invokeSuper(methodId, localMap.get(targetLocal), code.getThis(thisType), parameterLocals);
     	}
+    	
+    	String getTargetLocal() {
+    	    return targetLocal;
+    	}
 
     	public String toString() {
     		StringBuilder argString = new StringBuilder();
@@ -300,7 +355,8 @@ public class DexCodeGenerator {
     				argString.append(String.format(", [%s]", argumentLocals[i]));
     			}
     		}
-    		return String.format("[%s] <- CALL %s(%s)", targetLocal, functionName, argString.toString());
+    		String name = SCRIPT_METHOD_PREFIX.equals(methodPrefix) ? functionName : methodPrefix + functionName;
+    		return String.format("[%s] <- CALL %s(%s)", targetLocal, name, argString.toString());
     	}
     }
     
@@ -379,6 +435,38 @@ public class DexCodeGenerator {
         }        
     }
     
+    // Like generateInstructions, but moves statements that only call a prologue function into context.prologue.
+    static void generateTopLevelInstructions(Tree root, InstructionContext context) {
+        if (root.getText()!=null) {
+            // this is a single instruction instead of a list of instructions
+            generateTopLevelStatement(root, context);
+        }
+        else {
+            int size = root.getChildCount();
+            for(int i=0; i<size; i++) {
+                generateTopLevelStatement(root.getChild(i), context);
+            }
+        }
+    }
+    
+    static void generateTopLevelStatement(Tree statement, InstructionContext context) {
+        if ("CALL".equals(statement.getText()) && PROLOGUE_FUNCTIONS.contains(statement.getChild(0).getText())) {
+            if (context.prologue==null) context.prologue = new InstructionContext();
+            generateInstructionsForSubtree(statement, context.prologue);
+            context.prologue.resetSyntheticLocals();
+            for(String local : context.prologue.locals) {
+                if (!local.startsWith("!") && !PROLOGUE_LOCALS.contains(local)) {
+                    throw new IllegalStateException(statement.getChild(0).getText() + 
+                            " can only use width, height, numbers, and functions: " + local);
+                }
+            }
+        }
+        else {
+            generateInstructionsForSubtree(statement, context);
+            context.resetSyntheticLocals();
+        }
+    }
+    
     static void generateInstructions(Tree root, InstructionContext context) {
     	if (root.getText()!=null) {
     		// this is a single instruction instead of a list of instructions
@@ -529,7 +617,7 @@ public class DexCodeGenerator {
             context.instructions.add(new LabelInstruction(exitLabelName));
         }
         else {
-            android.util.Log.w("DexCodeGenerator", "Unknown token: " + token);
+            Logging.w("DexCodeGenerator", "Unknown token: " + token);
         }
     	return "";
     }
@@ -564,5 +652,166 @@ public class DexCodeGenerator {
     	}
     	return text;
     }
+    
+    /** Returns the maximum distance from the current pixel of any (row, col) position read by the clamped sampling
+     * functions, if every call's arguments are "row" and "col" plus or minus constants. Returns -1 if the offset
+     * can't be determined for some call, or if "row" or "col" is reassigned by the script.
+     */
+    public static int maxSamplingOffset(InstructionContext context) {
+        Map<String, Integer> assignmentCounts = assignmentCounts(context);
+        if (assignmentCounts.containsKey("row") || assignmentCounts.containsKey("col")) return -1;
+        
+        int maxOffset = 0;
+        for(int i=0; i<context.instructions.size(); i++) {
+            Instruction inst = context.instructions.get(i);
+            if (!(inst instanceof FunctionCallInstruction)) continue;
+            FunctionCallInstruction call = (FunctionCallInstruction)inst;
+            if (!CLAMPED_SAMPLING_FUNCTIONS.contains(call.functionName) || call.argumentLocals.length!=2) continue;
+            
+            Integer rowOffset = offsetFromLocal(context.instructions, i, call.argumentLocals[0], "row", assignmentCounts);
+            Integer colOffset = offsetFromLocal(context.instructions, i, call.argumentLocals[1], "col", assignmentCounts);
+            if (rowOffset==null || colOffset==null) return -1;
+            maxOffset = Math.max(maxOffset, Math.max(Math.abs(rowOffset), Math.abs(colOffset)));
+        }
+        return maxOffset;
+    }
+    
+    /** Returns the largest number of frames back that calls to any of the given functions look, based on their 
+     * first argument. Returns 0 if there are no calls, and -1 if some call's first argument isn't a constant.
+     */
+    public static int maxFrameHistory(InstructionContext context, Collection<String> functionNames) {
+        Map<String, Integer> assignmentCounts = null;
+        int maxFrames = 0;
+        for(int i=0; i<context.instructions.size(); i++) {
+            Instruction inst = context.instructions.get(i);
+            if (!(inst instanceof FunctionCallInstruction)) continue;
+            FunctionCallInstruction call = (FunctionCallInstruction)inst;
+            if (!functionNames.contains(call.functionName) || call.argumentLocals.length==0) continue;
+            
+            if (assignmentCounts==null) assignmentCounts = assignmentCounts(context);
+            Integer frames = constantValueOfLocal(context.instructions, i, call.argumentLocals[0], assignmentCounts);
+            if (frames==null) return -1;
+            maxFrames = Math.max(maxFrames, frames);
+        }
+        return maxFrames;
+    }
+    
+    /** Returns true if the instructions call any of the clamped sampling functions. */
+    public static boolean usesClampedSampling(InstructionContext context) {
+        return callsAnyFunction(context, CLAMPED_SAMPLING_FUNCTIONS);
+    }
+    
+    /** Returns true if the instructions call any of the given functions (without the script_ prefix). */
+    public static boolean callsAnyFunction(InstructionContext context, Collection<String> functionNames) {
+        for(Instruction inst : context.instructions) {
+            if (inst instanceof FunctionCallInstruction && 
+                    functionNames.contains(((FunctionCallInstruction)inst).functionName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /** Returns true if every function the instructions call is one of the given functions. */
+    public static boolean callsOnlyFunctions(InstructionContext context, Collection<String> functionNames) {
+        for(Instruction inst : context.instructions) {
+            if (inst instanceof FunctionCallInstruction && 
+                    !functionNames.contains(((FunctionCallInstruction)inst).functionName)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    // Returns the number of instructions assigning to each local.
+    static Map<String, Integer> assignmentCounts(InstructionContext context) {
+        Map<String, Integer> assignmentCounts = new HashMap<String, Integer>();
+        for(Instruction inst : context.instructions) {
+            String target = inst.getTargetLocal();
+            if (target!=null) {
+                Integer count = assignmentCounts.get(target);
+                assignmentCounts.put(target, (count==null) ? 1 : count+1);
+            }
+        }
+        return assignmentCounts;
+    }
+    
+    // Returns the index of the instruction that sets the value of local as used by the instruction at position,
+    // or -1 if it can't be determined. Synthetic locals are only live within a single statement, so the nearest
+    // preceding assignment is the one used. Named locals must be assigned exactly once, before position.
+    static int definitionIndex(List<Instruction> instructions, int position, String local, Map<String, Integer> assignmentCounts) {
+        if (local.startsWith("!")) {
+            for(int i=position-1; i>=0; i--) {
+                if (local.equals(instructions.get(i).getTargetLocal())) return i;
+            }
+            return -1;
+        }
+        Integer count = assignmentCounts.get(local);
+        if (count==null || count!=1) return -1;
+        for(int i=0; i<position; i++) {
+            if (local.equals(instructions.get(i).getTargetLocal())) return i;
+        }
+        return -1;
+    }
+    
+    static Integer constantValueOfLocal(List<Instruction> instructions, int position, String local, Map<String, Integer> assignmentCounts) {
+        int index = definitionIndex(instructions, position, local, assignmentCounts);
+        if (index>=0 && instructions.get(index) instanceof ConstantIntAssignment) {
+            return ((ConstantIntAssignment)instructions.get(index)).value;
+        }
+        return null;
+    }
+    
+    // Returns k if the value of local as used by the instruction at position is always baseLocal+k, otherwise null.
+    static Integer offsetFromLocal(List<Instruction> instructions, int position, String local, String baseLocal, 
+            Map<String, Integer> assignmentCounts) {
+        if (local.equals(baseLocal)) return 0;
+        int index = definitionIndex(instructions, position, local, assignmentCounts);
+        if (index<0) return null;
+        Instruction def = instructions.get(index);
+        if (def instanceof IntAssignment) {
+            return offsetFromLocal(instructions, index, ((IntAssignment)def).sourceLocal, baseLocal, assignmentCounts);
+        }
+        if (def instanceof BinaryIntOperation) {
+            BinaryIntOperation op = (BinaryIntOperation)def;
+            Integer rightConstant = constantValueOfLocal(instructions, index, op.rightLocal, assignmentCounts);
+            if (op.operator==BinaryOp.ADD || op.operator==BinaryOp.SUBTRACT) {
+                if (rightConstant!=null) {
+                    Integer offset = offsetFromLocal(instructions, index, op.leftLocal, baseLocal, assignmentCounts);
+                    if (offset==null) return null;
+                    return (op.operator==BinaryOp.ADD) ? offset + rightConstant : offset - rightConstant;
+                }
+                Integer leftConstant = constantValueOfLocal(instructions, index, op.leftLocal, assignmentCounts);
+                if (leftConstant!=null && op.operator==BinaryOp.ADD) {
+                    Integer offset = offsetFromLocal(instructions, index, op.rightLocal, baseLocal, assignmentCounts);
+                    return (offset!=null) ? offset + leftConstant : null;
+                }
+            }
+        }
+        return null;
+    }
+    
+    /** Returns a copy of the instruction context in which calls to clamped sampling functions are replaced by calls
+     * to their unchecked variants, for generating a method that is only called for pixels far enough from the edges.
+     */
+    public static InstructionContext createUncheckedSamplingContext(InstructionContext context) {
+        InstructionContext unchecked = new InstructionContext();
+        unchecked.locals.addAll(context.locals);
+        // labels can only be marked in one method, so create new ones
+        for(String labelName : context.labels.keySet()) {
+            unchecked.labels.put(labelName, new Label());
+        }
+        for(Instruction inst : context.instructions) {
+            if (inst instanceof FunctionCallInstruction) {
+                FunctionCallInstruction call = (FunctionCallInstruction)inst;
+                if (CLAMPED_SAMPLING_FUNCTIONS.contains(call.functionName)) {
+                    inst = new FunctionCallInstruction(call.targetLocal, call.functionName, call.argumentLocals, 
+                            UNCHECKED_METHOD_PREFIX);
+                }
+            }
+            unchecked.instructions.add(inst);
+        }
+        return unchecked;
+    }
 
 }
@@ -0,0 +1,1243 @@
+/* 
+ * Copyright 2012 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.imageplayground.codegen;
+
+import java.io.File;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.android.dx.Code;
+import com.android.dx.DexMaker;
+import com.android.dx.Local;
+import com.android.dx.MethodId;
+import com.android.dx.TypeId;
+import com.google.imageplayground.drawing.DrawCommandBuffer;
+import com.google.imageplayground.drawing.DrawOperation;
+import com.google.imageplayground.drawing.OutputSurface;
+import com.google.imageplayground.drawing.SoftwareRasterizer;
+import com.google.imageplayground.util.FaceLocator;
+import com.google.imageplayground.util.FaceTracker;
+import com.google.imageplayground.util.FastRandom;
+import com.google.imageplayground.util.FrameHistory;
+import com.google.imageplayground.util.IntMath;
+import com.google.imageplayground.util.JavaUtils;
+import com.google.imageplayground.util.Logging;
+import com.google.imageplayground.util.TileChangeDetector;
+import com.google.imageplayground.util.YuvUtils;
+
+public class DexImageScript {
+    
+    static enum ScriptType {
+        GRAYSCALE(TypeId.INT, "getOutputColorForGrayscaleInput", "getOutputColorForGrayscaleInputInterior", 
+                Arrays.asList("y", "row", "col", "width", "height")),
+        COLOR(TypeId.INT, "getOutputColorForColorInput", "getOutputColorForColorInputInterior", 
+                Arrays.asList("y", "r", "g", "b", "row", "col", "width", "height")),
+        MANUAL(TypeId.VOID, "createOutputBitmap", null, Arrays.asList("width", "height"));
+        
+        public final TypeId returnType;
+        public final String methodName;
+        // method called for pixels whose sampling function calls never need clamping, null if not applicable
+        public final String interiorMethodName;
+        public final List<String> arguments;
+        
+        private ScriptType(TypeId returnType, String methodName, String interiorMethodName, List<String> arguments) {
+            this.returnType = returnType;
+            this.methodName = methodName;
+            this.interiorMethodName = interiorMethodName;
+            this.arguments = arguments;
+        }
+    }
+
+    ScriptType scriptType;
+    // pixels at least this far from every edge call the interior method, -1 if there is no interior method
+    int samplingBorder = -1;
+    int frameNumber = 0;
+	// used by script_random when not called from a worker, for example from MANUAL scripts
+	FastRandom random = new FastRandom();
+	// in seeded mode, random numbers are reseeded from (seed, frame, row) at the start of each row, so output
+	// doesn't depend on the number of workers or how they're scheduled
+	boolean useRandomSeed = false;
+	long randomSeed;
+	
+	ScriptType getScriptType() {
+	    return scriptType;
+	}
+	void setScriptType(ScriptType value) {
+	    scriptType = value;
+	}
+	
+	// one of the following three methods will get created from the user-entered script
+	public int getOutputColorForGrayscaleInput(int y, int row, int col, int width, int height) {
+		return 0;
+	}
+	
+	public int getOutputColorForColorInput(int y, int r, int g, int b, int row, int col, int width, int height) {
+		return 0;
+	}
+	
+	public void createOutputBitmap(int width, int height) {
+	    
+	}
+	
+	// overridden when the script has top-level roi or faceroi statements, called once per frame before any pixels
+	public void computeFramePrologue(int width, int height) {
+	    
+	}
+	
+	// overridden when the compiler can determine how far from the current pixel the script samples; these
+	// versions call unchecked_ sampling methods instead of the script_ methods which clamp to the image bounds
+	public int getOutputColorForGrayscaleInputInterior(int y, int row, int col, int width, int height) {
+	    return getOutputColorForGrayscaleInput(y, row, col, width, height);
+	}
+	
+	public int getOutputColorForColorInputInterior(int y, int r, int g, int b, int row, int col, int width, int height) {
+	    return getOutputColorForColorInput(y, r, g, b, row, col, width, height);
+	}
+	
+	static String CLASS_NAME = "com/google/imageplayground/codegen/Gen1";
+	
+	static TypeId generateClass(DexMaker dexMaker) {
+		TypeId<?> imageScript = TypeId.get("L" + CLASS_NAME + ";");
+		dexMaker.declare(imageScript, "ImageScript.generated", Modifier.PUBLIC, TypeId.get(DexImageScript.class));
+		// empty constructor
+		MethodId constructor = imageScript.getConstructor();
+		Code constructorCode = dexMaker.declare(constructor, Modifier.PUBLIC);
+		Local thisRef = constructorCode.getThis(imageScript);
+		MethodId parentConstructor = TypeId.get(DexImageScript.class).getConstructor();
+		constructorCode.invokeDirect(parentConstructor, null, thisRef);
+		constructorCode.returnVoid();
+		
+		return imageScript;
+	}
+	
+	static DexImageScript loadGeneratedClass(File dexCacheDir, DexMaker dexMaker) throws Exception {
+		// TODO: clean up temporary dex files
+		ClassLoader loader = dexMaker.generateAndLoad(DexImageScript.class.getClassLoader(), dexCacheDir);
+		Class<?> imageScriptClass = loader.loadClass(CLASS_NAME);
+		return (DexImageScript)imageScriptClass.newInstance();
+	}
+
+	/** Compiles the script and loads the generated class, writing the dex file to dexCacheDir (on Android, 
+	 * Context.getCacheDir()). Returns null if the script can't be compiled.
+	 */
+	public static DexImageScript createScript(File dexCacheDir, String userScript) {
+		try {
+			DexMaker dexMaker = new DexMaker();
+			// build list of instructions to see what variables are referenced
+			userScript = userScript.trim() + "\n";
+			DexCodeGenerator.InstructionContext instContext = DexCodeGenerator.createInstructionList(userScript);
+			ScriptType scriptType = scriptTypeForInstructions(instContext);
+			TypeId[] parameterTypes = new TypeId[scriptType.arguments.size()];
+			Arrays.fill(parameterTypes, TypeId.INT);
+			
+			TypeId<?> imageScriptType = generateClass(dexMaker);
+			MethodId generatedMethod = imageScriptType.getMethod(scriptType.returnType, scriptType.methodName, parameterTypes);
+			Code code = dexMaker.declare(generatedMethod,  Modifier.PUBLIC);
+			
+			Map<String, Local> localMap = new HashMap<String, Local>();
+			for(int i=0; i<scriptType.arguments.size(); i++) {
+				localMap.put(scriptType.arguments.get(i), code.getParameter(i, TypeId.INT));
+			}
+			
+			DexCodeGenerator.generateMethodCode(code, localMap, imageScriptType, instContext);
+			
+			// if the sampling offsets are known, generate a second method without bounds checks for interior pixels
+			int samplingBorder = interiorSamplingBorder(scriptType, instContext);
+			if (samplingBorder>=0) {
+			    MethodId interiorMethod = imageScriptType.getMethod(scriptType.returnType, scriptType.interiorMethodName, parameterTypes);
+			    Code interiorCode = dexMaker.declare(interiorMethod, Modifier.PUBLIC);
+			    Map<String, Local> interiorLocalMap = new HashMap<String, Local>();
+			    for(int i=0; i<scriptType.arguments.size(); i++) {
+			        interiorLocalMap.put(scriptType.arguments.get(i), interiorCode.getParameter(i, TypeId.INT));
+			    }
+			    DexCodeGenerator.generateMethodCode(interiorCode, interiorLocalMap, imageScriptType, 
+			            DexCodeGenerator.createUncheckedSamplingContext(instContext));
+			}
+			
+			// top-level roi statements go in a separate method that runs before the workers start
+			DexCodeGenerator.InstructionContext prologueContext = instContext.prologue;
+			if (prologueContext!=null) {
+			    MethodId prologueMethod = imageScriptType.getMethod(TypeId.VOID, "computeFramePrologue", TypeId.INT, TypeId.INT);
+			    Code prologueCode = dexMaker.declare(prologueMethod, Modifier.PUBLIC);
+			    Map<String, Local> prologueLocalMap = new HashMap<String, Local>();
+			    prologueLocalMap.put("width", prologueCode.getParameter(0, TypeId.INT));
+			    prologueLocalMap.put("height", prologueCode.getParameter(1, TypeId.INT));
+			    DexCodeGenerator.generateMethodCode(prologueCode, prologueLocalMap, imageScriptType, prologueContext);
+			}
+			
+			DexImageScript script = loadGeneratedClass(dexCacheDir, dexMaker);
+			script.configure(scriptType, instContext, samplingBorder);
+			return script;
+		}
+		catch(Throwable ex) {
+			Logging.e("DexImageScript", "Failed to create", ex);
+			return null;
+		}
+	}
+	
+	// Returns the type of script for the instructions. A script without a return statement is MANUAL, and gets a
+	// returnVoid instruction added. A prologue, if any, also gets a returnVoid instruction.
+	/** Returns true if a script with a return statement is run as a color script when its per-pixel code uses the
+	 * variable. That's any of the color script's arguments, which include the ones grayscale scripts get.
+	 */
+	public static boolean isColorScriptVariable(String name) {
+	    return ScriptType.COLOR.arguments.contains(name);
+	}
+	
+	/** Returns true if top-level statements that only call the function are moved into the prologue, which runs 
+	 * once per frame, so the variables they use don't affect the script type.
+	 */
+	public static boolean isPrologueFunction(String name) {
+	    return DexCodeGenerator.PROLOGUE_FUNCTIONS.contains(name);
+	}
+	
+	static ScriptType scriptTypeForInstructions(DexCodeGenerator.InstructionContext instContext) {
+	    if (instContext.prologue!=null) {
+	        instContext.prologue.instructions.add(new DexCodeGenerator.ReturnVoidInstruction());
+	    }
+	    // if no return statement, use createOutputImage method
+	    for(DexCodeGenerator.Instruction inst : instContext.instructions) {
+	        if (inst instanceof DexCodeGenerator.ReturnInstruction) {
+	            // use color arguments if user's code requires color-specific args
+	            for(String localName : instContext.locals) {
+	                if (isColorScriptVariable(localName)) {
+	                    return ScriptType.COLOR;
+	                }
+	            }
+	            return ScriptType.GRAYSCALE;
+	        }
+	    }
+	    // HACK: void method needs a returnVoid instruction
+	    instContext.instructions.add(new DexCodeGenerator.ReturnVoidInstruction());
+	    return ScriptType.MANUAL;
+	}
+	
+	// Returns how far from the edges a pixel must be for the interior method to be used, or -1 if the script 
+	// shouldn't have an interior method because it doesn't sample or samples at offsets that aren't known.
+	static int interiorSamplingBorder(ScriptType scriptType, DexCodeGenerator.InstructionContext instContext) {
+	    if (scriptType.interiorMethodName==null || !DexCodeGenerator.usesClampedSampling(instContext)) return -1;
+	    return DexCodeGenerator.maxSamplingOffset(instContext);
+	}
+	
+	// Sets the fields that depend on what the compiled script does, shared by every way of creating a script.
+	void configure(ScriptType scriptType, DexCodeGenerator.InstructionContext instContext, int samplingBorder) {
+	    DexCodeGenerator.InstructionContext prologueContext = instContext.prologue;
+	    setScriptType(scriptType);
+	    this.samplingBorder = samplingBorder;
+	    this.hasPrologue = (prologueContext!=null);
+	    // skipping unchanged tiles needs every output pixel to depend only on nearby input pixels
+	    this.supportsChangeDetection = scriptType!=ScriptType.MANUAL && 
+	            DexCodeGenerator.callsOnlyFunctions(instContext, DexCodeGenerator.STATELESS_FUNCTIONS) &&
+	            (prologueContext==null || DexCodeGenerator.callsOnlyFunctions(prologueContext, DexCodeGenerator.STATELESS_FUNCTIONS)) &&
+	            (!DexCodeGenerator.usesClampedSampling(instContext) || samplingBorder>=0);
+	    setFrameHistorySize(
+	            maxFrameHistory(instContext, prologueContext, DexCodeGenerator.INPUT_HISTORY_FUNCTIONS), 
+	            maxFrameHistory(instContext, prologueContext, DexCodeGenerator.OUTPUT_HISTORY_FUNCTIONS));
+	    this.usesFaceDetection = DexCodeGenerator.callsAnyFunction(instContext, DexCodeGenerator.FACE_FUNCTIONS) ||
+	            (prologueContext!=null && DexCodeGenerator.callsAnyFunction(prologueContext, DexCodeGenerator.FACE_FUNCTIONS));
+	}
+	
+	// Returns the frame history needed by calls to the given functions in the per-pixel code or the prologue, 
+	// as for DexCodeGenerator.maxFrameHistory.
+	static int maxFrameHistory(DexCodeGenerator.InstructionContext instContext, 
+	        DexCodeGenerator.InstructionContext prologueContext, Collection<String> functionNames) {
+	    int frames = DexCodeGenerator.maxFrameHistory(instContext, functionNames);
+	    if (prologueContext==null || frames<0) return frames;
+	    int prologueFrames = DexCodeGenerator.maxFrameHistory(prologueContext, functionNames);
+	    return (prologueFrames<0) ? -1 : Math.max(frames, prologueFrames);
+	}
+
+	int[] outputPixelBuffer;
+	
+	byte[] imageData;
+	// copy of the current frame for buffers without an accessible array, so the samplers can always index an array
+	byte[] bufferFrameCopy;
+	int imageWidth;
+	int imageHeight;
+	
+	// created when first needed, since face detection allocates objects most scripts don't need. For scripts 
+	// that use face functions that's in computeOutputPixels, before any workers start.
+	FaceTracker faceTracker;
+	// detector used by faceTracker, supplied by the app since detection needs Android
+	FaceLocator faceLocator = FaceLocator.NO_FACES;
+	// set if the script calls any face detection functions, so detection only runs when needed
+	boolean usesFaceDetection = false;
+	
+	// previous input and output frames for prevbright and prevout, null if the script doesn't call them
+	FrameHistory frameHistory;
+	// most frames kept for each history, used when the number of frames a script looks back isn't a constant
+	static final int MAX_FRAME_HISTORY = 8;
+	
+	// set by the compiler if the script's output for a pixel only depends on the current input near that pixel
+	boolean supportsChangeDetection = false;
+	boolean useChangeDetection = false;
+	int changeDetectionThreshold = 4;
+	// finds tiles whose input changed, only tiles which are dirty for the current frame are recomputed. Null if
+	// change detection is off or not supported by the script.
+	TileChangeDetector changeDetector;
+	static final int CHANGE_DETECTION_TILE_SIZE = 16;
+	int[] lastOutputPixelBuffer;
+	
+	// set if the script has a computeFramePrologue method
+	boolean hasPrologue = false;
+	// true while computeFramePrologue is running; roi functions have no effect at other times
+	boolean inPrologue = false;
+	// the script is only run for pixels in this region, other pixels show the input image. Right and bottom are exclusive.
+	int regionLeft = 0, regionTop = 0, regionRight = Integer.MAX_VALUE, regionBottom = Integer.MAX_VALUE;
+	
+	List<Worker> workers;
+	List<RasterizerWorker> rasterizerWorkers;
+	ExecutorService workerExecutor;
+	int numWorkers = Runtime.getRuntime().availableProcessors();
+	
+	// timings of recent frames, for lastframems() and the stats display
+	FrameStats frameStats = new FrameStats(FRAME_STATS_SIZE);
+	static final int FRAME_STATS_SIZE = 30;
+	int lastFrameMillis;
+	int averageFrameMillis;
+	
+	DrawCommandBuffer drawCommands = new DrawCommandBuffer();
+	// buffer of the worker running on the current thread, null when not called from a worker
+	ThreadLocal<DrawCommandBuffer> workerDrawCommands = new ThreadLocal<DrawCommandBuffer>();
+	// random number generator of the worker running on the current thread, so workers don't contend on one Random
+	ThreadLocal<FastRandom> workerRandom = new ThreadLocal<FastRandom>();
+	// if true, draw commands are drawn directly into outputPixelBuffer instead of by the OutputSurface
+	boolean useSoftwareRasterizer = false;
+	
+	/** Sets how many previous input and output frames are kept for prevbright and prevout, as returned by 
+	 * DexCodeGenerator.maxFrameHistory: 0 if none, -1 to keep MAX_FRAME_HISTORY.
+	 */
+	void setFrameHistorySize(int inputFrames, int outputFrames) {
+	    if (inputFrames<0 || inputFrames>MAX_FRAME_HISTORY) inputFrames = MAX_FRAME_HISTORY;
+	    if (outputFrames<0 || outputFrames>MAX_FRAME_HISTORY) outputFrames = MAX_FRAME_HISTORY;
+	    frameHistory = (inputFrames>0 || outputFrames>0) ? new FrameHistory(inputFrames, outputFrames) : null;
+	}
+	
+	/** Returns true if the script can skip recomputing tiles whose input hasn't changed. Scripts which call 
+	 * functions depending on anything except the current input, such as framenumber, time, random, or prevbright,
+	 * and scripts whose sampling offsets can't be determined, don't support it.
+	 */
+	public boolean supportsChangeDetection() {
+	    return supportsChangeDetection;
+	}
+	
+	public boolean getUseChangeDetection() {
+	    return useChangeDetection;
+	}
+	
+	/** Sets whether output pixels are reused for tiles whose input hasn't changed since they were last computed.
+	 * Has no effect if the script doesn't support change detection.
+	 */
+	public void setUseChangeDetection(boolean value) {
+	    useChangeDetection = value;
+	    changeDetector = null;
+	}
+	
+	/** Sets the mean absolute difference in a tile's input bytes above which the tile is recomputed, 0 to recompute 
+	 * on any change. Higher values ignore more camera noise but let small changes go unnoticed.
+	 */
+	public void setChangeDetectionThreshold(int value) {
+	    changeDetectionThreshold = value;
+	    if (changeDetector!=null) changeDetector.setThreshold(value);
+	}
+	
+	/** Makes random() return the same values every time the script is run with the same seed on the same frame 
+	 * numbers, regardless of how many workers are used. Intended for tests and benchmarks.
+	 */
+	public void setRandomSeed(long seed) {
+	    useRandomSeed = true;
+	    randomSeed = seed;
+	}
+	
+	/** Makes random() return different values on every run, which is the default. */
+	public void clearRandomSeed() {
+	    useRandomSeed = false;
+	}
+	
+	// Reseeds the generator for a row of the current frame in seeded mode, row -1 is used for the whole frame.
+	void seedRandomForRow(FastRandom generator, int row) {
+	    if (useRandomSeed) {
+	        generator.setSeed(FastRandom.hash((int)randomSeed ^ (int)(randomSeed>>>32), frameNumber, row));
+	    }
+	}
+	
+	/** Returns the timings of recent frames. The object is updated as frames are processed. */
+	public FrameStats getFrameStats() {
+	    return frameStats;
+	}
+	
+	FaceTracker getFaceTracker() {
+	    if (faceTracker==null) faceTracker = new FaceTracker(faceLocator, FaceTracker.DEFAULT_MAX_FACES);
+	    return faceTracker;
+	}
+	
+	/** Sets the detector used for face functions. Should be called before the first frame; without it scripts
+	 * never see any faces.
+	 */
+	public void setFaceLocator(FaceLocator locator) {
+	    faceLocator = locator;
+	    if (faceTracker!=null) {
+	        int interval = faceTracker.getDetectionInterval();
+	        faceTracker.shutdown();
+	        faceTracker = null;
+	        getFaceTracker().setDetectionInterval(interval);
+	    }
+	}
+	
+	/** Sets how often face detection runs for scripts that use face functions, in frames. */
+	public void setFaceDetectionInterval(int frames) {
+	    getFaceTracker().setDetectionInterval(frames);
+	}
+	
+	public boolean getUseSoftwareRasterizer() {
+	    return useSoftwareRasterizer;
+	}
+	
+	/** Sets whether drawing functions are rendered into the output pixels by SoftwareRasterizer before they're 
+	 * passed to the OutputSurface, rather than drawn by the surface afterwards. Software rendering is required
+	 * to use computeOutputPixels without a surface.
+	 */
+	public void setUseSoftwareRasterizer(boolean value) {
+	    useSoftwareRasterizer = value;
+	}
+	
+	// Returns the frame's data as an array starting at index 0, the buffer's own array if it has one
+	byte[] frameBytes(ByteBuffer frame, int width, int height) {
+		if (frame.hasArray() && frame.arrayOffset()==0) {
+			return frame.array();
+		}
+		int size = YuvUtils.bufferSize(width, height);
+		if (bufferFrameCopy==null || bufferFrameCopy.length!=size) {
+			bufferFrameCopy = new byte[size];
+		}
+		JavaUtils.copyBytes(frame, 0, bufferFrameCopy, 0, size);
+		return bufferFrameCopy;
+	}
+	
+	void createBuffers(int width, int height) {
+		if (outputPixelBuffer==null || outputPixelBuffer.length!=width*height) {
+			outputPixelBuffer = new int[width*height];
+		}
+	}
+	
+	/** Runs the script on the image data and sends the output pixels and any draw commands to the surface. */
+	public void renderFrame(byte[] imageData, int width, int height, OutputSurface surface) {
+		computeOutputPixels(imageData, width, height);
+		
+		long t1 = System.nanoTime();
+		surface.setPixels(outputPixelBuffer, width, height);
+		long t2 = System.nanoTime();
+		frameStats.addStageTime(FrameStats.Stage.UPLOAD, t2-t1);
+		if (!useSoftwareRasterizer && drawCommands.size() > 0) {
+		    surface.drawCommands(drawCommands);
+		    frameStats.addStageTime(FrameStats.Stage.CANVAS_DRAW, System.nanoTime()-t2);
+		}
+	}
+	
+	/** Same as renderFrame(byte[], int, int, OutputSurface) with the image data in a buffer, see 
+	 * computeOutputPixels(ByteBuffer, int, int).
+	 */
+	public void renderFrame(ByteBuffer imageData, int width, int height, OutputSurface surface) {
+		renderFrame(frameBytes(imageData, width, height), width, height, surface);
+	}
+	
+	/** Same as computeOutputPixels(byte[], int, int) with the image data in a buffer, such as a frame from a 
+	 * FrameStore. The data starts at index 0 of the buffer; its position and limit aren't used or changed. 
+	 * Heap buffers are read through their array; other buffers are copied once per frame so the samplers 
+	 * index an array rather than calling get() for every pixel.
+	 */
+	public int[] computeOutputPixels(ByteBuffer imageData, int width, int height) {
+		return computeOutputPixels(frameBytes(imageData, width, height), width, height);
+	}
+	
+	/** Runs the script on the image data and returns the output as an array of width*height ARGB values. 
+	 * The array is reused by later calls. Draw commands are only included in the output if the software 
+	 * rasterizer is enabled; otherwise they're left in drawCommands. Exceptions thrown by the script, including 
+	 * on worker threads, are thrown from here and the output is incomplete.
+	 */
+	public int[] computeOutputPixels(byte[] imageData, int width, int height) {
+		long t1 = System.nanoTime();
+		frameStats.startFrame(t1);
+		// read once per frame so scripts calling these for every pixel don't lock frameStats each time
+		lastFrameMillis = (int)(frameStats.getTotalNanos(1) / 1000000);
+		averageFrameMillis = (int)(frameStats.getAverageTotalNanos() / 1000000);
+		createBuffers(width, height);
+		
+		this.frameNumber++;
+		captureFrameTime(System.currentTimeMillis());
+		// semi-hack: copy data to instance variables so script_ methods below can access them
+		this.imageData = imageData;
+		this.imageWidth = width;
+		this.imageHeight = height;
+		this.drawCommands.clear();
+		seedRandomForRow(random, -1);
+		if (usesFaceDetection) {
+		    // starts background detection if needed; face functions return positions estimated for this frame
+		    getFaceTracker().update(imageData, width, height, frameNumber);
+		}
+		
+		regionLeft = 0;
+		regionTop = 0;
+		regionRight = Integer.MAX_VALUE;
+		regionBottom = Integer.MAX_VALUE;
+		if (hasPrologue) {
+		    inPrologue = true;
+		    try {
+		        computeFramePrologue(width, height);
+		    }
+		    finally {
+		        inPrologue = false;
+		    }
+		}
+		
+		if (useChangeDetection && supportsChangeDetection) {
+		    if (changeDetector==null) {
+		        changeDetector = new TileChangeDetector(CHANGE_DETECTION_TILE_SIZE);
+		        changeDetector.setThreshold(changeDetectionThreshold);
+		    }
+		    // a newly allocated output buffer has no previous output to reuse
+		    if (outputPixelBuffer!=lastOutputPixelBuffer) changeDetector.reset();
+		    lastOutputPixelBuffer = outputPixelBuffer;
+		    changeDetector.update(imageData, width, height, Math.max(samplingBorder, 0));
+		}
+		else {
+		    changeDetector = null;
+		}
+		
+		long t2 = System.nanoTime();
+		frameStats.addStageTime(FrameStats.Stage.SETUP, t2-t1);
+		
+		if (this.getScriptType()==ScriptType.MANUAL) {
+		    Arrays.fill(outputPixelBuffer, 255<<24); // solid black
+		    createOutputBitmap(width, height);
+		}
+		else {
+		    runWorkers();
+		}
+		this.imageData = null;
+		long t3 = System.nanoTime();
+		frameStats.addStageTime(FrameStats.Stage.COMPUTE, t3-t2);
+		
+		if (useSoftwareRasterizer && drawCommands.size() > 0) {
+		    runRasterizerWorkers();
+		}
+		long t4 = System.nanoTime();
+		frameStats.addStageTime(FrameStats.Stage.RASTERIZE, t4-t3);
+		if (frameHistory!=null) {
+		    // stored after the workers finish so they never see a partially copied frame. Output frames only
+		    // include draw commands when the software rasterizer is on.
+		    frameHistory.addInputFrame(imageData, width, height);
+		    frameHistory.addOutputFrame(outputPixelBuffer, width, height);
+		    frameStats.addStageTime(FrameStats.Stage.HISTORY, System.nanoTime()-t4);
+		}
+		return outputPixelBuffer;
+	}
+	
+	void createWorkers() {
+        if (workers==null) {
+            workers = new ArrayList<Worker>();
+            rasterizerWorkers = new ArrayList<RasterizerWorker>();
+            for(int i=0; i<numWorkers; i++) {
+                workers.add(new Worker());
+                rasterizerWorkers.add(new RasterizerWorker());
+            }
+            workerExecutor = Executors.newFixedThreadPool(workers.size());
+        }
+	}
+	
+	/** Stops the worker threads and the face detection thread. They're started again if another frame is computed. */
+	public void shutdown() {
+	    if (workerExecutor!=null) {
+	        workerExecutor.shutdown();
+	        workerExecutor = null;
+	        workers = null;
+	        rasterizerWorkers = null;
+	    }
+	    if (faceTracker!=null) {
+	        faceTracker.shutdown();
+	    }
+	}
+	
+	// Runs workers in parallel to compute the output pixels, then appends the commands each worker recorded
+	// to drawCommands in worker order, which is the same as row order.
+	void runWorkers() {
+        // create workers if needed and run them
+        createWorkers();
+        int nworkers = workers.size();
+        for(int i=0; i<workers.size(); i++) {
+            workers.get(i).setRowRange(i*imageHeight/nworkers, (i+1)*imageHeight/nworkers);
+        }
+        Throwable failure = null;
+        try {
+            // each worker returns the time it took
+            List<Future<Long>> results = workerExecutor.invokeAll((Collection)workers);
+            for(Future<Long> result : results) {
+                try {
+                    frameStats.addWorkerTime(result.get());
+                }
+                catch(ExecutionException ex) {
+                    // keep timing the other workers, then fail the frame with the first worker's error
+                    if (failure==null) failure = ex.getCause();
+                }
+            }
+        }
+        catch(InterruptedException ignored) {}
+        if (failure instanceof RuntimeException) throw (RuntimeException)failure;
+        if (failure instanceof Error) throw (Error)failure;
+        if (failure!=null) throw new RuntimeException(failure);
+        
+        for(Worker worker : workers) {
+            drawCommands.addAll(worker.drawCommands);
+        }
+	}
+	
+	// Draws drawCommands into outputPixelBuffer, with each worker drawing a band of rows.
+	void runRasterizerWorkers() {
+	    createWorkers();
+	    int nworkers = rasterizerWorkers.size();
+	    for(int i=0; i<nworkers; i++) {
+	        rasterizerWorkers.get(i).setRowRange(i*imageHeight/nworkers, (i+1)*imageHeight/nworkers);
+	    }
+        try {
+            workerExecutor.invokeAll((Collection)rasterizerWorkers);
+        }
+        catch(InterruptedException ignored) {}
+	}
+	
+	// worker objects which run in separate threads each computing a subset of the output rows
+    class Worker implements Callable<Long> {
+        int rowStart;
+        int rowEnd;
+        // drawing functions called while this worker is running record commands here instead of drawCommands
+        DrawCommandBuffer drawCommands = new DrawCommandBuffer();
+        FastRandom random = new FastRandom();
+        
+        public void setRowRange(int start, int end) {
+            rowStart = start;
+            rowEnd = end;
+        }
+        
+        public Long call() {
+            // interface wants us to return something, might as well collect timing data
+            long t1 = System.nanoTime();
+            drawCommands.clear();
+            workerDrawCommands.set(drawCommands);
+            workerRandom.set(random);
+            try {
+                computePixels(rowStart, rowEnd);
+            }
+            finally {
+                workerDrawCommands.remove();
+                workerRandom.remove();
+            }
+            return System.nanoTime() - t1;
+        }
+    }
+    
+    // worker objects which draw the commands from all workers into a subset of the output rows
+    class RasterizerWorker implements Callable<Long> {
+        int rowStart;
+        int rowEnd;
+        SoftwareRasterizer rasterizer = new SoftwareRasterizer();
+        
+        public void setRowRange(int start, int end) {
+            rowStart = start;
+            rowEnd = end;
+        }
+        
+        public Long call() {
+            long t1 = System.nanoTime();
+            rasterizer.draw(drawCommands, outputPixelBuffer, imageWidth, imageHeight, rowStart, rowEnd);
+            return System.nanoTime() - t1;
+        }
+    }
+	    
+	void computePixels(int rowStart, int rowEnd) {
+	    // Split each row into the left and right borders, where sampling functions may need to clamp coordinates,
+	    // and the interior, where they don't. If there's no interior method, the entire row is a border.
+	    int border = samplingBorder;
+	    boolean hasInterior = (border>=0 && 2*border<imageWidth && 2*border<imageHeight);
+	    int[] rgb = (this.getScriptType()==ScriptType.COLOR) ? new int[3] : null;
+	    TileChangeDetector detector = changeDetector;
+	    FastRandom rowRandom = workerRandom.get();
+	    if (rowRandom==null) rowRandom = random;
+	    for(int row=rowStart; row<rowEnd; row++) {
+	        seedRandomForRow(rowRandom, row);
+	        boolean rowInterior = hasInterior && row>=border && row<imageHeight-border;
+	        if (detector==null) {
+	            computeRowRange(row, 0, imageWidth, rowInterior, rgb);
+	            continue;
+	        }
+	        // only recompute runs of dirty tiles, other pixels keep the output from an earlier frame
+	        int tileSize = detector.getTileSize();
+	        int tileRow = row / tileSize;
+	        int numTiles = detector.getTileColumns();
+	        int tile = 0;
+	        while (tile<numTiles) {
+	            if (!detector.isTileDirty(tileRow, tile)) {
+	                tile++;
+	                continue;
+	            }
+	            int runStart = tile;
+	            while (tile<numTiles && detector.isTileDirty(tileRow, tile)) tile++;
+	            computeRowRange(row, runStart*tileSize, Math.min(imageWidth, tile*tileSize), rowInterior, rgb);
+	        }
+	    }
+	}
+	
+	// Computes output pixels for columns [colStart, colEnd) of a row. Pixels outside the region of interest are 
+	// copied from the input, and pixels inside it call the interior method where possible.
+	void computeRowRange(int row, int colStart, int colEnd, boolean rowInterior, int[] rgb) {
+	    if (row<regionTop || row>=regionBottom) {
+	        copyInputPixels(row, colStart, colEnd, rgb);
+	        return;
+	    }
+	    int left = Math.max(colStart, Math.min(regionLeft, colEnd));
+	    int right = Math.max(left, Math.min(regionRight, colEnd));
+	    copyInputPixels(row, colStart, left, rgb);
+	    if (rowInterior) {
+	        int border = samplingBorder;
+	        int interiorStart = Math.min(Math.max(left, border), right);
+	        int interiorEnd = Math.max(Math.min(right, imageWidth-border), interiorStart);
+	        computeRowPixels(row, left, interiorStart, false, rgb);
+	        computeRowPixels(row, interiorStart, interiorEnd, true, rgb);
+	        computeRowPixels(row, interiorEnd, right, false, rgb);
+	    }
+	    else {
+	        computeRowPixels(row, left, right, false, rgb);
+	    }
+	    copyInputPixels(row, right, colEnd, rgb);
+	}
+	
+	// Sets output pixels to the unmodified input: gray for grayscale scripts, converted RGB for color scripts.
+	void copyInputPixels(int row, int colStart, int colEnd, int[] rgb) {
+	    int index = YuvUtils.yIndex(imageWidth, row, colStart);
+	    if (this.getScriptType()==ScriptType.COLOR) {
+	        int uvbase = YuvUtils.uvRowStart(imageWidth, imageHeight, row);
+	        for(int col=colStart; col<colEnd; col++) {
+	            int uvindex = uvbase + (col & ~1);
+	            YuvUtils.yuvToRgb(imageData[index], imageData[uvindex+1], imageData[uvindex], rgb);
+	            outputPixelBuffer[index] = (255<<24) | (rgb[0]<<16) | (rgb[1]<<8) | rgb[2];
+	            index++;
+	        }
+	    }
+	    else {
+	        for(int col=colStart; col<colEnd; col++) {
+	            int y = 0xff & imageData[index];
+	            outputPixelBuffer[index] = (255<<24) | (y<<16) | (y<<8) | y;
+	            index++;
+	        }
+	    }
+	}
+	
+	void computeRowPixels(int row, int colStart, int colEnd, boolean interior, int[] rgb) {
+        if (this.getScriptType()==ScriptType.COLOR) {
+            int yindex = YuvUtils.yIndex(imageWidth, row, colStart);
+            int uvbase = YuvUtils.uvRowStart(imageWidth, imageHeight, row);
+            for(int col=colStart; col<colEnd; col++) {
+                // one VU pair of values for every two pixels, round to 2 and take it and the next byte
+                int uvindex = uvbase + (col & ~1);
+                YuvUtils.yuvToRgb(imageData[yindex], imageData[uvindex+1], imageData[uvindex], rgb);
+                int y = 0xff & imageData[yindex];
+                outputPixelBuffer[yindex] = (interior) ?
+                        getOutputColorForColorInputInterior(y, rgb[0], rgb[1], rgb[2], row, col, imageWidth, imageHeight) :
+                        getOutputColorForColorInput(y, rgb[0], rgb[1], rgb[2], row, col, imageWidth, imageHeight);
+                yindex++;
+            }
+        }
+        else {
+            int index = YuvUtils.yIndex(imageWidth, row, colStart);
+            for(int col=colStart; col<colEnd; col++) {
+                int y = 0xff & imageData[index];
+                outputPixelBuffer[index] = (interior) ?
+                        getOutputColorForGrayscaleInputInterior(y, row, col, imageWidth, imageHeight) :
+                        getOutputColorForGrayscaleInput(y, row, col, imageWidth, imageHeight);
+                index++;
+            }
+        }
+	}
+	
+	// Methods beginning with script_ can be called from scripts. All arguments and return values must be int.
+	public int script_max(int val1, int val2) {
+		return (val1 > val2) ? val1 : val2;
+	}
+	
+	public int script_min(int val1, int val2) {
+		return (val1 < val2) ? val1 : val2;
+	}
+	
+	public int script_clamp(int val, int min, int max) {
+		if (val < min) return min;
+		if (val > max) return max;
+		return val;
+	}
+	
+	public int script_abs(int val) {
+		return (val>=0) ? val : -val;
+	}
+	
+	public int script_ifeq(int val, int cmp, int trueval, int falseval) {
+		return (val==cmp) ? trueval : falseval;
+	}
+	
+	public int script_ifgt(int val, int cmp, int trueval, int falseval) {
+		return (val>cmp) ? trueval : falseval;
+	}
+
+	public int script_getbright(int row, int col) {
+		// if out of range, use nearest edge
+		if (row<0) row = 0;
+		if (row>=imageHeight) row = imageHeight-1;
+		if (col<0) col = 0;
+		if (col>=imageWidth) col = imageWidth-1;
+		return 0xff & imageData[YuvUtils.yIndex(imageWidth, row, col)];
+	}
+	
+    public int script_getcolor(int row, int col) {
+        // if out of range, use nearest edge
+        if (row<0) row = 0;
+        if (row>=imageHeight) row = imageHeight-1;
+        if (col<0) col = 0;
+        if (col>=imageWidth) col = imageWidth-1;
+        
+        byte y = imageData[YuvUtils.yIndex(imageWidth, row, col)];
+        int uvindex = YuvUtils.uvIndex(imageWidth, imageHeight, row, col);
+        return YuvUtils.colorFromYuv(y, imageData[uvindex+1], imageData[uvindex]);
+    }
+    
+    public int script_getred(int row, int col) {
+        // if out of range, use nearest edge
+        if (row<0) row = 0;
+        if (row>=imageHeight) row = imageHeight-1;
+        if (col<0) col = 0;
+        if (col>=imageWidth) col = imageWidth-1;
+        
+        byte y = imageData[YuvUtils.yIndex(imageWidth, row, col)];
+        int uvindex = YuvUtils.uvIndex(imageWidth, imageHeight, row, col);
+        return YuvUtils.redFromYuv(y, imageData[uvindex+1], imageData[uvindex]);
+    }
+    
+    public int script_getgreen(int row, int col) {
+        // if out of range, use nearest edge
+        if (row<0) row = 0;
+        if (row>=imageHeight) row = imageHeight-1;
+        if (col<0) col = 0;
+        if (col>=imageWidth) col = imageWidth-1;
+        
+        byte y = imageData[YuvUtils.yIndex(imageWidth, row, col)];
+        int uvindex = YuvUtils.uvIndex(imageWidth, imageHeight, row, col);
+        return YuvUtils.greenFromYuv(y, imageData[uvindex+1], imageData[uvindex]);
+    }
+    
+    public int script_getblue(int row, int col) {
+        // if out of range, use nearest edge
+        if (row<0) row = 0;
+        if (row>=imageHeight) row = imageHeight-1;
+        if (col<0) col = 0;
+        if (col>=imageWidth) col = imageWidth-1;
+        
+        byte y = imageData[YuvUtils.yIndex(imageWidth, row, col)];
+        int uvindex = YuvUtils.uvIndex(imageWidth, imageHeight, row, col);
+        return YuvUtils.blueFromYuv(y, imageData[uvindex+1], imageData[uvindex]);
+    }
+    
+    // Versions of the sampling functions without bounds checks, called from the generated interior method
+    // for pixels where the compiler has determined that the coordinates are always in range.
+    public int unchecked_getbright(int row, int col) {
+        return 0xff & imageData[YuvUtils.yIndex(imageWidth, row, col)];
+    }
+    
+    public int unchecked_getcolor(int row, int col) {
+        byte y = imageData[YuvUtils.yIndex(imageWidth, row, col)];
+        int uvindex = YuvUtils.uvIndex(imageWidth, imageHeight, row, col);
+        return YuvUtils.colorFromYuv(y, imageData[uvindex+1], imageData[uvindex]);
+    }
+    
+    public int unchecked_getred(int row, int col) {
+        byte y = imageData[YuvUtils.yIndex(imageWidth, row, col)];
+        int uvindex = YuvUtils.uvIndex(imageWidth, imageHeight, row, col);
+        return YuvUtils.redFromYuv(y, imageData[uvindex+1], imageData[uvindex]);
+    }
+    
+    public int unchecked_getgreen(int row, int col) {
+        byte y = imageData[YuvUtils.yIndex(imageWidth, row, col)];
+        int uvindex = YuvUtils.uvIndex(imageWidth, imageHeight, row, col);
+        return YuvUtils.greenFromYuv(y, imageData[uvindex+1], imageData[uvindex]);
+    }
+    
+    public int unchecked_getblue(int row, int col) {
+        byte y = imageData[YuvUtils.yIndex(imageWidth, row, col)];
+        int uvindex = YuvUtils.uvIndex(imageWidth, imageHeight, row, col);
+        return YuvUtils.blueFromYuv(y, imageData[uvindex+1], imageData[uvindex]);
+    }
+    
+	public int script_random(int rmax) {
+	    FastRandom generator = workerRandom.get();
+	    if (generator==null) generator = random;
+		return generator.nextInt(rmax);
+	}
+	
+	/** Returns a value from 0 to 255 which looks random but is always the same for the same arguments. Unlike 
+	 * random(), it can be used by scripts that skip unchanged tiles, and for noise that stays still between frames.
+	 */
+	public int script_hashnoise(int row, int col, int seed) {
+	    return FastRandom.hash(row, col, seed) & 0xff;
+	}
+	
+	public int script_gray(int gray) {
+		if (gray<0) gray = 0;
+		if (gray>255) gray = 255;
+		return 0xff000000 | (gray << 16) | (gray << 8) | gray;
+	}
+	
+	public int script_rgb(int r, int g, int b) {
+		if (r<0) r = 0;
+		if (r>255) r = 255;
+		if (g<0) g = 0;
+		if (g>255) g = 255;
+		if (b<0) b = 0;
+		if (b>255) b = 255;
+		return 0xff000000 | (r << 16) | (g << 8) | b;
+	}
+	
+	// these methods are used by manual user scripts to set individual pixels and perform drawing operations
+    public int script_setrgb(int row, int col, int r, int g, int b) {
+        if (row<0) row = 0;
+        if (row>=imageHeight) row = imageHeight-1;
+        if (col<0) col = 0;
+        if (col>=imageWidth) col = imageWidth-1;
+        
+        outputPixelBuffer[row*imageWidth + col] = 0xff000000 | (r << 16) | (g << 8) | b;
+        return 0;
+    }
+    
+    public int script_setgray(int row, int col, int gray) {
+        if (row<0) row = 0;
+        if (row>=imageHeight) row = imageHeight-1;
+        if (col<0) col = 0;
+        if (col>=imageWidth) col = imageWidth-1;
+        
+        outputPixelBuffer[row*imageWidth + col] = 0xff000000 | (gray << 16) | (gray << 8) | gray;
+        return 0;
+    }
+    
+    public int script_setcolor(int row, int col, int color) {
+        if (row<0) row = 0;
+        if (row>=imageHeight) row = imageHeight-1;
+        if (col<0) col = 0;
+        if (col>=imageWidth) col = imageWidth-1;
+        
+        outputPixelBuffer[row*imageWidth + col] = color;
+        return 0;
+    }
+    
+    public int script_framenumber() {
+        return frameNumber;
+    }
+    
+    // timing functions
+    /** Returns the time in milliseconds it took to process the previous frame, 0 for the first frame. 
+     */
+    public int script_lastframems() {
+        return lastFrameMillis;
+    }
+    
+    /** Returns the average time in milliseconds it took to process recent frames.
+     */
+    public int script_avgframems() {
+        return averageFrameMillis;
+    }
+    
+    // The time is captured once at the start of each frame, so every pixel sees the same values and the 
+    // functions don't allocate a Calendar per call. 
+    Calendar frameCalendar = Calendar.getInstance();
+    long frameTimeMillis;
+    int frameYear, frameMonth, frameDay, frameHour, frameMinute, frameSecond;
+    
+    void captureFrameTime(long millis) {
+        frameTimeMillis = millis;
+        frameCalendar.setTimeInMillis(millis);
+        frameYear = frameCalendar.get(Calendar.YEAR);
+        frameMonth = 1 + frameCalendar.get(Calendar.MONTH);
+        frameDay = frameCalendar.get(Calendar.DAY_OF_MONTH);
+        frameHour = frameCalendar.get(Calendar.HOUR);
+        frameMinute = frameCalendar.get(Calendar.MINUTE);
+        frameSecond = frameCalendar.get(Calendar.SECOND);
+    }
+    
+    public int script_time() {
+        return (int)frameTimeMillis;
+    }
+    
+    public int script_getyear() {
+        return frameYear;
+    }
+    public int script_getmonth() {
+        return frameMonth;
+    }
+    public int script_getday() {
+        return frameDay;
+    }
+    public int script_gethour() {
+        return frameHour;
+    }
+    public int script_getminute() {
+        return frameMinute;
+    }
+    public int script_getsecond() {
+        return frameSecond;
+    }
+    
+    // experimental storage APIs
+    Map<Integer, Integer> scriptIntStorage = new HashMap<Integer, Integer>();
+    Map<Integer, List<Integer>> scriptIntListStorage = new HashMap<Integer, List<Integer>>();
+    
+    public int script_putint(int key, int value) {
+        scriptIntStorage.put(key, value);
+        return value;
+    }
+    
+    public int script_getint(int key) {
+        Integer val = scriptIntStorage.get(key);
+        if (val==null) val = 0;
+        return val;
+    }
+    
+    public int script_listclear(int key) {
+        scriptIntListStorage.remove(key);
+        return 0;
+    }
+    
+    public int script_listsize(int key) {
+        List<Integer> list = scriptIntListStorage.get(key);
+        return (list!=null) ? list.size() : 0;
+    }
+    
+    public int script_listread(int key, int index) {
+        List<Integer> list = scriptIntListStorage.get(key);
+        if (list==null || index<0 || index>=list.size()) return 0;
+        return list.get(index);
+    }
+    
+    public int script_listpush(int key, int value) {
+        List<Integer> list = scriptIntListStorage.get(key);
+        if (list==null) scriptIntListStorage.put(key, list=new ArrayList<Integer>());
+        list.add(value);
+        return list.size();
+    }
+    
+    public int script_listpop(int key) {
+        List<Integer> list = scriptIntListStorage.get(key);
+        if (list==null) return 0;
+        int size = list.size();
+        if (size==0) return 0;
+        return list.remove(size-1);
+    }
+    
+    // math functions
+    // trig functions take integer arguments and scale by pi/(Integer.MAX_VALUE+1),
+    // this allows overflow to work correctly; MAX_VALUE scales to pi, MAX_VALUE+1=MIN_VALUE scales to -pi.
+    final static double INT_TO_ANGLE = Math.PI/Integer.MAX_VALUE;
+    final static double ANGLE_TO_INT = Integer.MAX_VALUE/Math.PI;
+    
+    // the trig and square root functions use IntMath's lookup tables and integer arithmetic, since they're often
+    // called for every pixel and Math.sin and Math.round on doubles are much slower
+    
+    /** Returns Math.atan2(y,x) scaled to an int value.
+     */
+    public int script_atan2(int y, int x) {
+        return IntMath.atan2(y, x);
+    }
+    
+    /** Returns Math.sqrt(x*x + y*y) rounded to the nearest int.
+     */
+    public int script_hypot(int x, int y) {
+        return IntMath.hypot(x, y);
+    }
+    
+    /** Returns the square root of val rounded down, or 0 if val is negative.
+     */
+    public int script_isqrt(int val) {
+        return (int)IntMath.isqrt(val);
+    }
+    
+    /** Converts a fraction of a full circle to an integer value usable with the sinmult and cosmult functions.
+     * For example, asangle(1,4) corresponds to tau/4 radians, or 90 degrees. (See http://tauday.com)
+     *  
+     */
+    public int script_asangle(int numerator, int denominator) {
+        return (int)(ANGLE_TO_INT*2*numerator/denominator);
+    }
+    
+    /** Computes the sine of the int-scaled angle multiplied by scale and rounded to the nearest int. 
+     */
+    public int script_sinmult(int angle, int scale) {
+        return IntMath.sinmult(angle, scale);
+    }
+    
+    /** Computes the cosine of the int-scaled angle multiplied by scale and rounded to the nearest int. 
+     */
+    public int script_cosmult(int angle, int scale) {
+        return IntMath.cosmult(angle, scale);
+    }
+    
+    // face detection functions
+    public int script_numfaces() {
+        return getFaceTracker().getNumberOfFaces();
+    }
+    
+    public int script_faceconfidence(int index) {
+        return getFaceTracker().getConfidence(index);
+    }
+    
+    public int script_facex(int index) {
+        return getFaceTracker().getMidpointX(index);
+    }
+    
+    public int script_facey(int index) {
+        return getFaceTracker().getMidpointY(index);
+    }
+    
+    public int script_facedist(int index) {
+        return getFaceTracker().getEyesDistance(index);
+    }
+    
+    // previous frame functions
+    /** Returns the brightness at (row, col) from n frames ago, where 1 is the previous frame. If fewer than n frames
+     * have been seen, uses the oldest available, or the current frame if this is the first.
+     */
+    public int script_prevbright(int n, int row, int col) {
+        if (frameHistory==null || frameHistory.getNumberOfInputFrames()==0) return script_getbright(row, col);
+        return frameHistory.getBrightness(n, row, col);
+    }
+    
+    /** Returns the output color at (row, col) from n frames ago, where 1 is the previous frame. If fewer than n frames
+     * have been output, uses the oldest available, or black if this is the first.
+     */
+    public int script_prevout(int n, int row, int col) {
+        if (frameHistory==null) return 255<<24;
+        return frameHistory.getOutputColor(n, row, col);
+    }
+    
+    // region of interest functions, only effective in top-level statements which run once per frame
+    /** Restricts the script to pixels with x1<=col<x2 and y1<=row<y2; other pixels show the input image. 
+     * The corners can be given in either order and are clamped to the image.
+     */
+    public int script_roi(int x1, int y1, int x2, int y2) {
+        if (!inPrologue) return 0;
+        regionLeft = Math.max(0, Math.min(x1, x2));
+        regionRight = Math.min(imageWidth, Math.max(x1, x2));
+        regionTop = Math.max(0, Math.min(y1, y2));
+        regionBottom = Math.min(imageHeight, Math.max(y1, y2));
+        return 0;
+    }
+    
+    /** Restricts the script to the smallest rectangle containing every detected face, extended by margin pixels. 
+     * If there are no faces, the script doesn't run for any pixels.
+     */
+    public int script_faceroi(int margin) {
+        if (!inPrologue) return 0;
+        int left = imageWidth, top = imageHeight, right = 0, bottom = 0;
+        FaceTracker faceTracker = getFaceTracker();
+        int count = faceTracker.getNumberOfFaces();
+        for(int i=0; i<count; i++) {
+            // eyes distance is about half of the face width, so a square of twice that around the midpoint covers it
+            int size = 2*faceTracker.getEyesDistance(i) + margin;
+            int x = faceTracker.getMidpointX(i);
+            int y = faceTracker.getMidpointY(i);
+            left = Math.min(left, x-size);
+            right = Math.max(right, x+size);
+            top = Math.min(top, y-size);
+            bottom = Math.max(bottom, y+size);
+        }
+        if (left>=right || top>=bottom) {
+            regionLeft = regionTop = regionRight = regionBottom = 0;
+        }
+        else {
+            script_roi(left, top, right, bottom);
+        }
+        return 0;
+    }
+    
+    // drawing functions
+    int addDrawCommand(DrawOperation operation, int arg0, int arg1, int arg2, int arg3) {
+        DrawCommandBuffer buffer = workerDrawCommands.get();
+        if (buffer==null) buffer = drawCommands;
+        buffer.add(operation, arg0, arg1, arg2, arg3);
+        return 0;
+    }
+    
+    int addDrawCommand(DrawOperation operation, int arg0, int arg1, int arg2) {
+        return addDrawCommand(operation, arg0, arg1, arg2, 0);
+    }
+    
+    public int script_setpaint(int r, int g, int b) {
+        return addDrawCommand(DrawOperation.SET_PAINT, r, g, b, 255);
+    }
+
+    public int script_setpaint(int r, int g, int b, int a) {
+        return addDrawCommand(DrawOperation.SET_PAINT, r, g, b, a);
+    }
+
+    public int script_drawline(int x1, int y1, int x2, int y2) {
+        return addDrawCommand(DrawOperation.LINE, x1, y1, x2, y2);
+    }
+    
+    public int script_fillrect(int x1, int y1, int x2, int y2) {
+        return addDrawCommand(DrawOperation.FILL_RECT, x1, y1, x2, y2);
+    }
+    
+    public int script_framerect(int x1, int y1, int x2, int y2) {
+        return addDrawCommand(DrawOperation.FRAME_RECT, x1, y1, x2, y2);
+    }
+    
+    public int script_fillcircle(int cx, int cy, int radius) {
+        return addDrawCommand(DrawOperation.FILL_CIRCLE, cx, cy, radius);
+    }
+
+    public int script_framecircle(int cx, int cy, int radius) {
+        return addDrawCommand(DrawOperation.FRAME_CIRCLE, cx, cy, radius);
+    }
+    
+    public int script_fillsquare(int midx, int midy, int radius) {
+        return addDrawCommand(DrawOperation.FILL_RECT, midx-radius, midy-radius, midx+radius, midy+radius);
+    }
+
+    public int script_framesquare(int midx, int midy, int radius) {
+        return addDrawCommand(DrawOperation.FRAME_RECT, midx-radius, midy-radius, midx+radius, midy+radius);
+    }
+
+    public int script_drawint(int x, int y, int value) {
+        return addDrawCommand(DrawOperation.DRAW_NUMBER, x, y, value);
+    }
+    
+    public int script_drawchar(int x, int y, int value) {
+        return addDrawCommand(DrawOperation.DRAW_CHAR, x, y, value);
+    }
+}
@@ -0,0 +1,122 @@
+/* 
+ * Copyright 2012 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.imageplayground.codegen;
+
+import java.nio.ByteBuffer;
+
+import com.google.imageplayground.drawing.OutputSurface;
+import com.google.imageplayground.util.FrameStore;
+
+/**
+ * Feeds the frames of a recording to a script, either as fast as possible or paced to the recorded timestamps like
+ * the camera would deliver them, and measures the frame rate. Replaying the same recording makes runtime changes 
+ * comparable, since every run sees identical input. Frames are passed to the script as slices of the store's 
+ * mapping, so replay doesn't copy frame data. Works the same on a device and on a desktop JVM.
+ */
+public class FrameReplayer {
+    
+    /** Timing of the measured frames of a replay. */
+    public static class Result {
+        public final int frames;
+        public final long elapsedNanos;
+        
+        Result(int frames, long elapsedNanos) {
+            this.frames = frames;
+            this.elapsedNanos = elapsedNanos;
+        }
+        
+        public double getFramesPerSecond() {
+            return (elapsedNanos > 0) ? frames * 1e9 / elapsedNanos : 0;
+        }
+        
+        public double getMillisPerFrame() {
+            return (frames > 0) ? elapsedNanos / 1e6 / frames : 0;
+        }
+        
+        public String toString() {
+            return String.format("%d frames, %.1f fps, %.2f ms/frame", frames, getFramesPerSecond(), getMillisPerFrame());
+        }
+    }
+    
+    DexImageScript script;
+    FrameStore frames;
+    OutputSurface outputSurface;
+    boolean realTime = false;
+    int loops = 1;
+    int warmupFrames = 0;
+    
+    public FrameReplayer(DexImageScript script, FrameStore frames) {
+        this.script = script;
+        this.frames = frames;
+    }
+    
+    /** If true, frames are delivered no faster than the intervals between their recorded timestamps. */
+    public void setRealTime(boolean value) {
+        realTime = value;
+    }
+    
+    /** Sets how many times the recording is played. */
+    public void setLoops(int value) {
+        loops = Math.max(1, value);
+    }
+    
+    /** Sets how many frames run before timing starts, so the result reflects steady-state performance. */
+    public void setWarmupFrames(int value) {
+        warmupFrames = Math.max(0, value);
+    }
+    
+    /** Sets a surface that output is sent to, to include its cost in the timing. If null, only 
+     * computeOutputPixels runs.
+     */
+    public void setOutputSurface(OutputSurface surface) {
+        outputSurface = surface;
+    }
+    
+    /** Plays the recording and returns the timing of the frames after the warmup frames. */
+    public Result run() throws InterruptedException {
+        int frameIndex = 0;
+        long measureStart = System.nanoTime();
+        for(int loop=0; loop<loops; loop++) {
+            // pacing is relative to the first frame of each loop
+            long loopStart = System.nanoTime();
+            for(int i=0; i<frames.getFrameCount(); i++) {
+                ByteBuffer data = frames.getFrame(i);
+                int width = frames.getWidth(i), height = frames.getHeight(i);
+                if (realTime) {
+                    long waitNanos = (frames.getTimestampNanos(i) - frames.getTimestampNanos(0)) - 
+                            (System.nanoTime() - loopStart);
+                    if (waitNanos > 0) {
+                        Thread.sleep(waitNanos / 1000000, (int)(waitNanos % 1000000));
+                    }
+                }
+                
+                if (frameIndex==warmupFrames) {
+                    measureStart = System.nanoTime();
+                }
+                if (outputSurface!=null) {
+                    script.renderFrame(data, width, height, outputSurface);
+                }
+                else {
+                    script.computeOutputPixels(data, width, height);
+                }
+                frameIndex++;
+            }
+        }
+        int measuredFrames = Math.max(0, frameIndex - warmupFrames);
+        return new Result(measuredFrames, (measuredFrames > 0) ? System.nanoTime() - measureStart : 0);
+    }
+}
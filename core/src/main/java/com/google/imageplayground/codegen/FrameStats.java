@@ -0,0 +1,150 @@
+/* 
+ * Copyright 2012 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.imageplayground.codegen;
+
+/** Records how long each stage of processing took for the most recent frames in a ring buffer. Frames are 
+ * recorded on the camera thread and read by views on the UI thread, so all methods are synchronized. 
+ * Frame n=1 is the most recently completed frame, n=2 the one before it, and so on; the frame currently being 
+ * processed isn't complete until the next frame starts.
+ */
+public class FrameStats {
+    
+    public static enum Stage {
+        // face tracking, change detection, and the roi prologue
+        SETUP,
+        // running the script for every pixel, including YUV to RGB conversion
+        COMPUTE,
+        // drawing commands into the output pixels with the software rasterizer
+        RASTERIZE,
+        // copying frames for prevbright and prevout
+        HISTORY,
+        // copying output pixels to the OutputSurface, such as the app's bitmap
+        UPLOAD,
+        // drawing commands on the OutputSurface, such as with a Canvas in the app
+        CANVAS_DRAW,
+        // handing the finished frame to the view that shows it, the view's own drawing happens later on the UI thread
+        VIEW_INVALIDATE
+    }
+    
+    static final Stage[] STAGES = Stage.values();
+    
+    final int capacity;
+    final long[] startNanos;
+    final long[] stageNanos;
+    final long[] minWorkerNanos;
+    final long[] maxWorkerNanos;
+    // index of the current frame, and the number of frames stored including it
+    int head = -1;
+    int numFrames = 0;
+    
+    /** Creates a FrameStats which keeps timings for the given number of completed frames. */
+    public FrameStats(int capacity) {
+        // one extra slot for the frame in progress
+        this.capacity = capacity + 1;
+        startNanos = new long[this.capacity];
+        stageNanos = new long[this.capacity * STAGES.length];
+        minWorkerNanos = new long[this.capacity];
+        maxWorkerNanos = new long[this.capacity];
+    }
+    
+    /** Starts recording a new frame, which completes the previous one. */
+    public synchronized void startFrame(long nanoTime) {
+        head = (head+1) % capacity;
+        if (numFrames<capacity) numFrames++;
+        startNanos[head] = nanoTime;
+        for(int i=0; i<STAGES.length; i++) {
+            stageNanos[head*STAGES.length + i] = 0;
+        }
+        minWorkerNanos[head] = maxWorkerNanos[head] = 0;
+    }
+    
+    /** Adds time spent in a stage of the current frame. */
+    public synchronized void addStageTime(Stage stage, long nanos) {
+        if (head<0) return;
+        stageNanos[head*STAGES.length + stage.ordinal()] += nanos;
+    }
+    
+    /** Records the time a single worker took to compute its rows of the current frame. */
+    public synchronized void addWorkerTime(long nanos) {
+        if (head<0) return;
+        if (maxWorkerNanos[head]==0 || nanos<minWorkerNanos[head]) minWorkerNanos[head] = nanos;
+        if (nanos>maxWorkerNanos[head]) maxWorkerNanos[head] = nanos;
+    }
+    
+    /** Returns the number of completed frames whose timings are available. */
+    public synchronized int getNumberOfCompletedFrames() {
+        return Math.max(0, numFrames-1);
+    }
+    
+    // returns the ring index of the frame n frames before the current one, or -1 if it isn't stored
+    int slot(int n) {
+        if (n<1 || n>=numFrames) return -1;
+        return (head - n + capacity) % capacity;
+    }
+    
+    /** Returns the time spent in a stage of the completed frame n, or 0 if that frame isn't stored. */
+    public synchronized long getStageNanos(int n, Stage stage) {
+        int slot = slot(n);
+        return (slot>=0) ? stageNanos[slot*STAGES.length + stage.ordinal()] : 0;
+    }
+    
+    /** Returns the total time of all stages of the completed frame n, or 0 if that frame isn't stored. */
+    public synchronized long getTotalNanos(int n) {
+        int slot = slot(n);
+        if (slot<0) return 0;
+        long total = 0;
+        for(int i=0; i<STAGES.length; i++) {
+            total += stageNanos[slot*STAGES.length + i];
+        }
+        return total;
+    }
+    
+    /** Returns the shortest time any worker took for the completed frame n, or 0 if it isn't stored. */
+    public synchronized long getMinWorkerNanos(int n) {
+        int slot = slot(n);
+        return (slot>=0) ? minWorkerNanos[slot] : 0;
+    }
+    
+    /** Returns the longest time any worker took for the completed frame n, or 0 if it isn't stored. A large
+     * difference from getMinWorkerNanos means some rows are much more expensive than others.
+     */
+    public synchronized long getMaxWorkerNanos(int n) {
+        int slot = slot(n);
+        return (slot>=0) ? maxWorkerNanos[slot] : 0;
+    }
+    
+    /** Returns the average total time of the stored completed frames, or 0 if there are none. */
+    public synchronized long getAverageTotalNanos() {
+        int count = getNumberOfCompletedFrames();
+        if (count==0) return 0;
+        long sum = 0;
+        for(int n=1; n<=count; n++) {
+            sum += getTotalNanos(n);
+        }
+        return sum / count;
+    }
+    
+    /** Returns the rate at which frames were started over the stored frames, or 0 if there aren't enough. This 
+     * includes time spent waiting for the camera, unlike the stage timings.
+     */
+    public synchronized double getFramesPerSecond() {
+        if (numFrames<2) return 0;
+        int oldest = (head - (numFrames-1) + capacity) % capacity;
+        long elapsed = startNanos[head] - startNanos[oldest];
+        return (elapsed>0) ? (numFrames-1) * 1e9 / elapsed : 0;
+    }
+}
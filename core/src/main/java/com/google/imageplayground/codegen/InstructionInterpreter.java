@@ -0,0 +1,288 @@
+/* 
+ * Copyright 2012 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.imageplayground.codegen;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.android.dx.BinaryOp;
+import com.android.dx.Comparison;
+import com.android.dx.UnaryOp;
+
+/**
+ * Runs the instructions from DexCodeGenerator directly, for environments such as a desktop JVM where generated dex 
+ * classes can't be loaded. The instructions are converted once into parallel arrays indexed by instruction, with 
+ * locals numbered so they can be stored in an int array. Builtin functions are called by reflection, the same 
+ * methods that generated code calls with invokeSuper. Each thread gets its own locals, so a single interpreter 
+ * can be used by all the script's workers.
+ */
+class InstructionInterpreter {
+    
+    static final int CONSTANT = 0;
+    static final int MOVE = 1;
+    static final int BINARY = 2;
+    static final int UNARY = 3;
+    static final int CALL = 4;
+    static final int RETURN = 5;
+    static final int COMPARE = 6;
+    static final int JUMP = 7;
+    static final int RETURN_VOID = 8;
+    
+    /** Locals and argument arrays for one thread. */
+    static class Frame {
+        final int[] locals;
+        final Object[][] callArguments;
+        
+        Frame(int numLocals, int[][] argumentSlots) {
+            locals = new int[numLocals];
+            callArguments = new Object[argumentSlots.length][];
+            for(int i=0; i<argumentSlots.length; i++) {
+                if (argumentSlots[i]!=null) callArguments[i] = new Object[argumentSlots[i].length];
+            }
+        }
+    }
+    
+    final int numLocals;
+    final int[] opcodes;
+    // local slot assigned by the instruction, or the slot compared/returned
+    final int[] targets;
+    // local slots read by the instruction, a constant value, or an instruction index for jumps
+    final int[] operands1;
+    final int[] operands2;
+    final BinaryOp[] binaryOps;
+    final UnaryOp[] unaryOps;
+    final Comparison[] comparisons;
+    final Method[] methods;
+    final int[][] argumentSlots;
+    
+    ThreadLocal<Frame> frames = new ThreadLocal<Frame>() {
+        protected Frame initialValue() {
+            return new Frame(numLocals, argumentSlots);
+        }
+    };
+    
+    /**
+     * @param context instructions to run, ending with a return or returnVoid instruction
+     * @param parameters names of the locals that are set by the caller, which get slots 0 to parameters.size()-1
+     */
+    InstructionInterpreter(DexCodeGenerator.InstructionContext context, List<String> parameters) {
+        Map<String, Integer> slots = new HashMap<String, Integer>();
+        for(String name : parameters) {
+            slots.put(name, slots.size());
+        }
+        for(String name : context.locals) {
+            if (!slots.containsKey(name)) slots.put(name, slots.size());
+        }
+        numLocals = slots.size();
+        
+        // labels aren't instructions here, they're the index of the instruction that follows them
+        List<DexCodeGenerator.Instruction> instructions = new ArrayList<DexCodeGenerator.Instruction>();
+        Map<String, Integer> labelIndexes = new HashMap<String, Integer>();
+        for(DexCodeGenerator.Instruction inst : context.instructions) {
+            if (inst instanceof DexCodeGenerator.LabelInstruction) {
+                labelIndexes.put(((DexCodeGenerator.LabelInstruction)inst).labelName, instructions.size());
+            }
+            else {
+                instructions.add(inst);
+            }
+        }
+        
+        int size = instructions.size();
+        opcodes = new int[size];
+        targets = new int[size];
+        operands1 = new int[size];
+        operands2 = new int[size];
+        binaryOps = new BinaryOp[size];
+        unaryOps = new UnaryOp[size];
+        comparisons = new Comparison[size];
+        methods = new Method[size];
+        argumentSlots = new int[size][];
+        for(int i=0; i<size; i++) {
+            DexCodeGenerator.Instruction inst = instructions.get(i);
+            if (inst instanceof DexCodeGenerator.ConstantIntAssignment) {
+                DexCodeGenerator.ConstantIntAssignment assign = (DexCodeGenerator.ConstantIntAssignment)inst;
+                opcodes[i] = CONSTANT;
+                targets[i] = slots.get(assign.targetLocal);
+                operands1[i] = assign.value;
+            }
+            else if (inst instanceof DexCodeGenerator.IntAssignment) {
+                DexCodeGenerator.IntAssignment assign = (DexCodeGenerator.IntAssignment)inst;
+                opcodes[i] = MOVE;
+                targets[i] = slots.get(assign.targetLocal);
+                operands1[i] = slots.get(assign.sourceLocal);
+            }
+            else if (inst instanceof DexCodeGenerator.BinaryIntOperation) {
+                DexCodeGenerator.BinaryIntOperation op = (DexCodeGenerator.BinaryIntOperation)inst;
+                opcodes[i] = BINARY;
+                targets[i] = slots.get(op.targetLocal);
+                operands1[i] = slots.get(op.leftLocal);
+                operands2[i] = slots.get(op.rightLocal);
+                binaryOps[i] = op.operator;
+            }
+            else if (inst instanceof DexCodeGenerator.UnaryIntOperation) {
+                DexCodeGenerator.UnaryIntOperation op = (DexCodeGenerator.UnaryIntOperation)inst;
+                opcodes[i] = UNARY;
+                targets[i] = slots.get(op.targetLocal);
+                operands1[i] = slots.get(op.sourceLocal);
+                unaryOps[i] = op.operator;
+            }
+            else if (inst instanceof DexCodeGenerator.FunctionCallInstruction) {
+                DexCodeGenerator.FunctionCallInstruction call = (DexCodeGenerator.FunctionCallInstruction)inst;
+                opcodes[i] = CALL;
+                targets[i] = slots.get(call.targetLocal);
+                methods[i] = findMethod(call.methodPrefix + call.functionName, call.argumentLocals.length);
+                argumentSlots[i] = new int[call.argumentLocals.length];
+                for(int j=0; j<argumentSlots[i].length; j++) {
+                    argumentSlots[i][j] = slots.get(call.argumentLocals[j]);
+                }
+            }
+            else if (inst instanceof DexCodeGenerator.ReturnInstruction) {
+                opcodes[i] = RETURN;
+                targets[i] = slots.get(((DexCodeGenerator.ReturnInstruction)inst).targetLocal);
+            }
+            else if (inst instanceof DexCodeGenerator.CompareInstruction) {
+                DexCodeGenerator.CompareInstruction compare = (DexCodeGenerator.CompareInstruction)inst;
+                opcodes[i] = COMPARE;
+                operands1[i] = slots.get(compare.leftLocal);
+                operands2[i] = slots.get(compare.rightLocal);
+                comparisons[i] = compare.compareOp;
+                targets[i] = labelIndexes.get(compare.trueLabel);
+            }
+            else if (inst instanceof DexCodeGenerator.JumpInstruction) {
+                opcodes[i] = JUMP;
+                targets[i] = labelIndexes.get(((DexCodeGenerator.JumpInstruction)inst).labelName);
+            }
+            else if (inst instanceof DexCodeGenerator.ReturnVoidInstruction) {
+                opcodes[i] = RETURN_VOID;
+            }
+            else {
+                throw new IllegalStateException("Unknown instruction: " + inst);
+            }
+        }
+    }
+    
+    // same lookup as FunctionCallInstruction.generateCode
+    static Method findMethod(String methodName, int numArguments) {
+        for(Method m : DexImageScript.class.getDeclaredMethods()) {
+            if (methodName.equals(m.getName()) && m.getParameterTypes().length==numArguments) {
+                m.setAccessible(true);
+                return m;
+            }
+        }
+        throw new IllegalStateException("Function " + methodName + " not found");
+    }
+    
+    /** Returns the locals for the current thread. The caller sets the parameters before calling execute. */
+    Frame getFrame() {
+        return frames.get();
+    }
+    
+    /** Runs the instructions with the locals in frame, calling builtin functions on script. Returns the value of
+     * the return instruction that ended execution, or 0 for returnVoid.
+     */
+    int execute(DexImageScript script, Frame frame) {
+        int[] locals = frame.locals;
+        int pc = 0;
+        while (true) {
+            switch(opcodes[pc]) {
+                case CONSTANT:
+                    locals[targets[pc]] = operands1[pc];
+                    break;
+                case MOVE:
+                    locals[targets[pc]] = locals[operands1[pc]];
+                    break;
+                case BINARY:
+                    locals[targets[pc]] = binaryOp(binaryOps[pc], locals[operands1[pc]], locals[operands2[pc]]);
+                    break;
+                case UNARY:
+                    int value = locals[operands1[pc]];
+                    locals[targets[pc]] = (unaryOps[pc]==UnaryOp.NEGATE) ? -value : ~value;
+                    break;
+                case CALL:
+                    locals[targets[pc]] = call(script, pc, frame);
+                    break;
+                case RETURN:
+                    return locals[targets[pc]];
+                case COMPARE:
+                    if (compare(comparisons[pc], locals[operands1[pc]], locals[operands2[pc]])) {
+                        pc = targets[pc];
+                        continue;
+                    }
+                    break;
+                case JUMP:
+                    pc = targets[pc];
+                    continue;
+                case RETURN_VOID:
+                    return 0;
+            }
+            pc++;
+        }
+    }
+    
+    int call(DexImageScript script, int pc, Frame frame) {
+        int[] slots = argumentSlots[pc];
+        Object[] arguments = frame.callArguments[pc];
+        for(int i=0; i<slots.length; i++) {
+            arguments[i] = frame.locals[slots[i]];
+        }
+        try {
+            return (Integer)methods[pc].invoke(script, arguments);
+        }
+        catch(InvocationTargetException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException)cause;
+            if (cause instanceof Error) throw (Error)cause;
+            throw new IllegalStateException(cause);
+        }
+        catch(IllegalAccessException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+    
+    static int binaryOp(BinaryOp op, int a, int b) {
+        switch(op) {
+            case ADD: return a + b;
+            case SUBTRACT: return a - b;
+            case MULTIPLY: return a * b;
+            case DIVIDE: return a / b;
+            case REMAINDER: return a % b;
+            case AND: return a & b;
+            case OR: return a | b;
+            case XOR: return a ^ b;
+            case SHIFT_LEFT: return a << b;
+            case SHIFT_RIGHT: return a >> b;
+            case UNSIGNED_SHIFT_RIGHT: return a >>> b;
+        }
+        throw new IllegalStateException("Unknown operator: " + op);
+    }
+    
+    static boolean compare(Comparison comparison, int a, int b) {
+        switch(comparison) {
+            case EQ: return a == b;
+            case NE: return a != b;
+            case LT: return a < b;
+            case LE: return a <= b;
+            case GT: return a > b;
+            case GE: return a >= b;
+        }
+        throw new IllegalStateException("Unknown comparison: " + comparison);
+    }
+}
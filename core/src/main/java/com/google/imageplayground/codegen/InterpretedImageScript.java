@@ -0,0 +1,121 @@
+/* 
+ * Copyright 2012 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.imageplayground.codegen;
+
+import java.util.Arrays;
+
+import com.google.imageplayground.util.Logging;
+
+/**
+ * DexImageScript that runs the script's instructions with an InstructionInterpreter instead of generating a dex 
+ * class, so scripts can be run on a desktop JVM. It's much slower than generated code, but produces the same
+ * output and has the same per-frame behavior, since everything except the generated methods is inherited.
+ */
+public class InterpretedImageScript extends DexImageScript {
+    
+    InstructionInterpreter interpreter;
+    // null if the script has no interior method
+    InstructionInterpreter interiorInterpreter;
+    // null if the script has no prologue
+    InstructionInterpreter prologueInterpreter;
+    
+    /** Compiles the script to instructions. Returns null if the script can't be compiled. */
+    public static InterpretedImageScript createScript(String userScript) {
+        try {
+            userScript = userScript.trim() + "\n";
+            DexCodeGenerator.InstructionContext instContext = DexCodeGenerator.createInstructionList(userScript);
+            ScriptType scriptType = scriptTypeForInstructions(instContext);
+            int samplingBorder = interiorSamplingBorder(scriptType, instContext);
+            
+            InterpretedImageScript script = new InterpretedImageScript();
+            script.interpreter = new InstructionInterpreter(instContext, scriptType.arguments);
+            if (samplingBorder>=0) {
+                script.interiorInterpreter = new InstructionInterpreter(
+                        DexCodeGenerator.createUncheckedSamplingContext(instContext), scriptType.arguments);
+            }
+            if (instContext.prologue!=null) {
+                script.prologueInterpreter = new InstructionInterpreter(instContext.prologue, Arrays.asList("width", "height"));
+            }
+            script.configure(scriptType, instContext, samplingBorder);
+            return script;
+        }
+        catch(Throwable ex) {
+            Logging.e("InterpretedImageScript", "Failed to create", ex);
+            return null;
+        }
+    }
+    
+    static int runGrayscale(DexImageScript script, InstructionInterpreter interpreter, 
+            int y, int row, int col, int width, int height) {
+        InstructionInterpreter.Frame frame = interpreter.getFrame();
+        int[] locals = frame.locals;
+        locals[0] = y;
+        locals[1] = row;
+        locals[2] = col;
+        locals[3] = width;
+        locals[4] = height;
+        return interpreter.execute(script, frame);
+    }
+    
+    static int runColor(DexImageScript script, InstructionInterpreter interpreter, 
+            int y, int r, int g, int b, int row, int col, int width, int height) {
+        InstructionInterpreter.Frame frame = interpreter.getFrame();
+        int[] locals = frame.locals;
+        locals[0] = y;
+        locals[1] = r;
+        locals[2] = g;
+        locals[3] = b;
+        locals[4] = row;
+        locals[5] = col;
+        locals[6] = width;
+        locals[7] = height;
+        return interpreter.execute(script, frame);
+    }
+    
+    static void runWithSize(DexImageScript script, InstructionInterpreter interpreter, int width, int height) {
+        InstructionInterpreter.Frame frame = interpreter.getFrame();
+        frame.locals[0] = width;
+        frame.locals[1] = height;
+        interpreter.execute(script, frame);
+    }
+    
+    @Override public int getOutputColorForGrayscaleInput(int y, int row, int col, int width, int height) {
+        return runGrayscale(this, interpreter, y, row, col, width, height);
+    }
+    
+    @Override public int getOutputColorForColorInput(int y, int r, int g, int b, int row, int col, int width, int height) {
+        return runColor(this, interpreter, y, r, g, b, row, col, width, height);
+    }
+    
+    @Override public int getOutputColorForGrayscaleInputInterior(int y, int row, int col, int width, int height) {
+        if (interiorInterpreter==null) return getOutputColorForGrayscaleInput(y, row, col, width, height);
+        return runGrayscale(this, interiorInterpreter, y, row, col, width, height);
+    }
+    
+    @Override public int getOutputColorForColorInputInterior(int y, int r, int g, int b, int row, int col, int width, int height) {
+        if (interiorInterpreter==null) return getOutputColorForColorInput(y, r, g, b, row, col, width, height);
+        return runColor(this, interiorInterpreter, y, r, g, b, row, col, width, height);
+    }
+    
+    @Override public void createOutputBitmap(int width, int height) {
+        runWithSize(this, interpreter, width, height);
+    }
+    
+    @Override public void computeFramePrologue(int width, int height) {
+        if (prologueInterpreter!=null) runWithSize(this, prologueInterpreter, width, height);
+    }
+}
@@ -0,0 +1,80 @@
+/* 
+ * Copyright 2012 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.imageplayground.drawing;
+
+/**
+ * Records drawing operations as ints in a growable array, so that scripts can issue thousands of drawing calls
+ * per frame without allocating objects. Each command is stored as the operation's ordinal followed by
+ * DrawOperation.MAX_ARGUMENTS arguments. The buffer is reused between frames by calling clear().
+ */
+public class DrawCommandBuffer {
+    
+    static final int COMMAND_SIZE = 1 + DrawOperation.MAX_ARGUMENTS;
+    static final DrawOperation[] OPERATIONS = DrawOperation.values();
+    
+    int[] commands = new int[64 * COMMAND_SIZE];
+    int numCommands = 0;
+    
+    /** Appends a command with the given operation and arguments. Unused arguments should be 0. */
+    public void add(DrawOperation operation, int arg0, int arg1, int arg2, int arg3) {
+        int index = numCommands * COMMAND_SIZE;
+        if (index + COMMAND_SIZE > commands.length) {
+            int[] newCommands = new int[2 * commands.length];
+            System.arraycopy(commands, 0, newCommands, 0, index);
+            commands = newCommands;
+        }
+        commands[index] = operation.ordinal();
+        commands[index+1] = arg0;
+        commands[index+2] = arg1;
+        commands[index+3] = arg2;
+        commands[index+4] = arg3;
+        numCommands++;
+    }
+    
+    /** Appends all commands from another buffer, in order. */
+    public void addAll(DrawCommandBuffer other) {
+        int length = numCommands * COMMAND_SIZE;
+        int otherLength = other.numCommands * COMMAND_SIZE;
+        if (length + otherLength > commands.length) {
+            int[] newCommands = new int[Math.max(length + otherLength, 2 * commands.length)];
+            System.arraycopy(commands, 0, newCommands, 0, length);
+            commands = newCommands;
+        }
+        System.arraycopy(other.commands, 0, commands, length, otherLength);
+        numCommands += other.numCommands;
+    }
+    
+    /** Returns the number of recorded commands. */
+    public int size() {
+        return numCommands;
+    }
+    
+    /** Returns the operation of the command at the given index. */
+    public DrawOperation getOperation(int index) {
+        return OPERATIONS[commands[index * COMMAND_SIZE]];
+    }
+    
+    /** Returns an argument of the command at the given index. */
+    public int getArgument(int index, int argIndex) {
+        return commands[index * COMMAND_SIZE + 1 + argIndex];
+    }
+    
+    /** Removes all commands, keeping the allocated storage. */
+    public void clear() {
+        numCommands = 0;
+    }
+}
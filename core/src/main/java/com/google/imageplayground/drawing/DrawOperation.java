@@ -16,20 +16,27 @@
 
 package com.google.imageplayground.drawing;
 
-import android.graphics.Canvas;
-import android.graphics.Paint;
-
-public class DrawCommand {
-    
-    private DrawOperation operation;
-    private Integer[] arguments;
+/** Drawing operations recorded in a DrawCommandBuffer. The comment on each value lists its arguments. */
+public enum DrawOperation {
+    // red, green, blue, alpha
+    SET_PAINT,
+    // x1, y1, x2, y2
+    LINE,
+    // x1, y1, x2, y2
+    FILL_RECT,
+    // x1, y1, x2, y2
+    FRAME_RECT,
+    // cx, cy, radius
+    FILL_CIRCLE,
+    // cx, cy, radius
+    FRAME_CIRCLE,
+    // x, y, value
+    DRAW_NUMBER,
+    // x, y, value
+    DRAW_CHAR,
+    ;
     
-    public DrawCommand(DrawOperation operation, Integer... arguments) {
-        this.operation = operation;
-        this.arguments = arguments.clone();
-    }
+    /** Maximum number of int arguments taken by any operation. */
+    public static final int MAX_ARGUMENTS = 4;
 
-    public void execute(Canvas canvas, Paint paint) {
-        operation.execute(canvas, paint, this.arguments);
-    }
 }
@@ -0,0 +1,34 @@
+/* 
+ * Copyright 2012 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.imageplayground.drawing;
+
+/**
+ * Destination for the output of DexImageScript.renderFrame. The app implements this with a Bitmap drawn by a 
+ * Canvas; other environments can write the pixels to a file or ignore draw commands and use the software rasterizer.
+ */
+public interface OutputSurface {
+    
+    /** Replaces the contents of the surface with width*height ARGB values. The array is reused for later frames,
+     * so implementations must copy any values they need to keep.
+     */
+    void setPixels(int[] pixels, int width, int height);
+    
+    /** Draws commands recorded by the script's drawing functions on top of the pixels from the last call to 
+     * setPixels. Only called if there are commands that weren't already rendered by the software rasterizer.
+     */
+    void drawCommands(DrawCommandBuffer commands);
+}
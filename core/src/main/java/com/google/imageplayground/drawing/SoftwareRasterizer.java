@@ -0,0 +1,391 @@
+/* 
+ * Copyright 2012 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.imageplayground.drawing;
+
+import java.math.BigInteger;
+
+import com.google.imageplayground.util.IntMath;
+
+/**
+ * Draws the commands in a DrawCommandBuffer directly into an ARGB int array, without using Canvas. Drawing can be
+ * restricted to a band of rows so that several rasterizers can draw the same commands into disjoint parts of the
+ * buffer in parallel; each band gives the same result as drawing the whole buffer at once.
+ * 
+ * Lines and outlines are one pixel wide. Text is drawn with a built-in 5x7 font that has glyphs for digits and
+ * '-', other characters are drawn as spaces. A SoftwareRasterizer holds drawing state and isn't thread-safe, 
+ * so use one instance per thread.
+ */
+public class SoftwareRasterizer {
+    
+    static final int GLYPH_WIDTH = 5;
+    static final int GLYPH_HEIGHT = 7;
+    static final int GLYPH_ADVANCE = GLYPH_WIDTH + 1;
+    // each glyph is GLYPH_HEIGHT rows from the top, bit 4 of each row is the leftmost column
+    static final int[][] DIGIT_GLYPHS = {
+        {0x0E, 0x11, 0x13, 0x15, 0x19, 0x11, 0x0E},
+        {0x04, 0x0C, 0x04, 0x04, 0x04, 0x04, 0x0E},
+        {0x0E, 0x11, 0x01, 0x02, 0x04, 0x08, 0x1F},
+        {0x1F, 0x02, 0x04, 0x02, 0x01, 0x11, 0x0E},
+        {0x02, 0x06, 0x0A, 0x12, 0x1F, 0x02, 0x02},
+        {0x1F, 0x10, 0x1E, 0x01, 0x01, 0x11, 0x0E},
+        {0x06, 0x08, 0x10, 0x1E, 0x11, 0x11, 0x0E},
+        {0x1F, 0x01, 0x02, 0x04, 0x08, 0x08, 0x08},
+        {0x0E, 0x11, 0x11, 0x0E, 0x11, 0x11, 0x0E},
+        {0x0E, 0x11, 0x11, 0x0F, 0x01, 0x02, 0x0C},
+    };
+    static final int[] MINUS_GLYPH = {0x00, 0x00, 0x00, 0x1F, 0x00, 0x00, 0x00};
+    
+    int[] pixels;
+    int width;
+    int height;
+    int clipTop;
+    int clipBottom;
+    
+    // current paint color as set by SET_PAINT
+    int red, green, blue, alpha;
+    // digits of the number being drawn by DRAW_NUMBER, least significant first
+    char[] digits = new char[11];
+    
+    /** Draws all commands into pixels, an array of width*height ARGB values, modifying only rows from rowStart
+     * (inclusive) to rowEnd (exclusive). The paint color starts as opaque white.
+     */
+    public void draw(DrawCommandBuffer commands, int[] pixels, int width, int height, int rowStart, int rowEnd) {
+        this.pixels = pixels;
+        this.width = width;
+        this.height = height;
+        this.clipTop = Math.max(0, rowStart);
+        this.clipBottom = Math.min(height, rowEnd);
+        setColor(255, 255, 255, 255);
+        
+        int[] args = commands.commands;
+        for(int i=0; i<commands.numCommands; i++) {
+            int index = i * DrawCommandBuffer.COMMAND_SIZE;
+            int a0 = args[index+1], a1 = args[index+2], a2 = args[index+3], a3 = args[index+4];
+            switch(DrawCommandBuffer.OPERATIONS[args[index]]) {
+                case SET_PAINT:
+                    setColor(a0, a1, a2, a3);
+                    break;
+                case LINE:
+                    drawLine(a0, a1, a2, a3);
+                    break;
+                case FILL_RECT:
+                    fillRect(a0, a1, a2, a3);
+                    break;
+                case FRAME_RECT:
+                    frameRect(a0, a1, a2, a3);
+                    break;
+                case FILL_CIRCLE:
+                    fillCircle(a0, a1, a2);
+                    break;
+                case FRAME_CIRCLE:
+                    frameCircle(a0, a1, a2);
+                    break;
+                case DRAW_NUMBER:
+                    drawNumber(a0, a1, a2);
+                    break;
+                case DRAW_CHAR:
+                    drawChar(a0, a1, (char)a2);
+                    break;
+            }
+        }
+        this.pixels = null;
+    }
+    
+    void setColor(int r, int g, int b, int a) {
+        // same as Paint.setARGB, which only uses the low 8 bits of each component
+        red = 0xff & r;
+        green = 0xff & g;
+        blue = 0xff & b;
+        alpha = 0xff & a;
+    }
+    
+    // blends the current color over the pixel at (x, y) if it's inside the clip region
+    void plot(int x, int y) {
+        if (x<0 || x>=width || y<clipTop || y>=clipBottom) return;
+        plotUnclipped(y*width + x);
+    }
+    
+    void plotUnclipped(int index) {
+        if (alpha==255) {
+            pixels[index] = 0xff000000 | (red << 16) | (green << 8) | blue;
+        }
+        else if (alpha > 0) {
+            int dst = pixels[index];
+            int inv = 255 - alpha;
+            int r = (red*alpha + (0xff & (dst>>16))*inv) / 255;
+            int g = (green*alpha + (0xff & (dst>>8))*inv) / 255;
+            int b = (blue*alpha + (0xff & dst)*inv) / 255;
+            pixels[index] = 0xff000000 | (r << 16) | (g << 8) | b;
+        }
+    }
+    
+    // fills columns x1 to x2 inclusive of row y
+    void fillSpan(int x1, int x2, int y) {
+        if (y<clipTop || y>=clipBottom) return;
+        if (x1<0) x1 = 0;
+        if (x2>=width) x2 = width-1;
+        int index = y*width + x1;
+        for(int x=x1; x<=x2; x++) {
+            plotUnclipped(index++);
+        }
+    }
+    
+    void drawLine(int x1, int y1, int x2, int y2) {
+        // skip lines entirely outside the clip region
+        if (Math.max(y1, y2)<clipTop || Math.min(y1, y2)>=clipBottom || Math.max(x1, x2)<0 || Math.min(x1, x2)>=width) {
+            return;
+        }
+        // Draws the same pixels as Bresenham's algorithm, which after k steps along the major axis has moved 
+        // floor((2*minorDelta*k + majorDelta) / (2*majorDelta)) steps along the minor axis. That gives the starting
+        // point for the first step inside the clip region, so only steps whose major coordinate is visible are 
+        // taken. Deltas are longs because they can exceed the int range.
+        long dx = Math.abs((long)x2 - x1);
+        long dy = Math.abs((long)y2 - y1);
+        boolean xMajor = (dx>=dy);
+        long majorDelta = xMajor ? dx : dy;
+        long minorDelta = xMajor ? dy : dx;
+        if (majorDelta==0) {
+            plot(x1, y1);
+            return;
+        }
+        int majorStart = xMajor ? x1 : y1;
+        int minorStart = xMajor ? y1 : x1;
+        int majorStep = xMajor ? ((x1<x2) ? 1 : -1) : ((y1<y2) ? 1 : -1);
+        int minorStep = xMajor ? ((y1<y2) ? 1 : -1) : ((x1<x2) ? 1 : -1);
+        long clipMin = xMajor ? 0 : clipTop;
+        long clipMax = xMajor ? width-1 : clipBottom-1;
+        long firstStep = Math.max(0, (majorStep>0) ? clipMin-majorStart : majorStart-clipMax);
+        long lastStep = Math.min(majorDelta, (majorStep>0) ? clipMax-majorStart : majorStart-clipMin);
+        if (firstStep>lastStep) return;
+        
+        // minor offset and remainder of 2*minorDelta*k + majorDelta divided by 2*majorDelta
+        long divisor = 2*majorDelta;
+        long minorOffset, remainder;
+        if (majorDelta < (1L<<30)) {
+            long numerator = 2*minorDelta*firstStep + majorDelta;
+            minorOffset = numerator / divisor;
+            remainder = numerator % divisor;
+        }
+        else {
+            BigInteger[] qr = BigInteger.valueOf(2*minorDelta).multiply(BigInteger.valueOf(firstStep))
+                    .add(BigInteger.valueOf(majorDelta)).divideAndRemainder(BigInteger.valueOf(divisor));
+            minorOffset = qr[0].longValue();
+            remainder = qr[1].longValue();
+        }
+        for(long k=firstStep; k<=lastStep; k++) {
+            long major = majorStart + majorStep*k;
+            long minor = minorStart + minorStep*minorOffset;
+            if (xMajor) {
+                if (minor>=clipTop && minor<clipBottom) plot((int)major, (int)minor);
+            }
+            else {
+                if (minor>=0 && minor<width) plot((int)minor, (int)major);
+            }
+            remainder += 2*minorDelta;
+            if (remainder>=divisor) {
+                remainder -= divisor;
+                minorOffset++;
+            }
+        }
+    }
+    
+    void fillRect(int x1, int y1, int x2, int y2) {
+        // like Canvas.drawRect, covers pixels from the left/top edge up to but not including the right/bottom edge
+        int left = Math.min(x1, x2), right = Math.max(x1, x2);
+        int top = Math.max(Math.min(y1, y2), clipTop), bottom = Math.min(Math.max(y1, y2), clipBottom);
+        for(int y=top; y<bottom; y++) {
+            fillSpan(left, right-1, y);
+        }
+    }
+    
+    void frameRect(int x1, int y1, int x2, int y2) {
+        int left = Math.min(x1, x2), right = Math.max(x1, x2);
+        int top = Math.min(y1, y2), bottom = Math.max(y1, y2);
+        fillSpan(left, right, top);
+        if (bottom!=top) fillSpan(left, right, bottom);
+        int rowStart = Math.max(top+1, clipTop), rowEnd = Math.min(bottom, clipBottom);
+        for(int y=rowStart; y<rowEnd; y++) {
+            plot(left, y);
+            if (right!=left) plot(right, y);
+        }
+    }
+    
+    void fillCircle(int cx, int cy, int radius) {
+        // longs so that cy+radius and the span ends don't overflow for coordinates near the int limits
+        if (radius<=0 || (long)cx+radius<0 || (long)cx-radius>=width) return;
+        // fill pixels whose centers are within radius of (cx, cy); using doubled coordinates so centers are integers
+        long diameter = 2L*radius;
+        int top = (int)Math.max((long)cy-radius, clipTop), bottom = (int)Math.min((long)cy+radius, clipBottom);
+        for(int y=top; y<bottom; y++) {
+            long dy = Math.abs(2L*y + 1 - 2L*cy);
+            if (dy>diameter) continue;
+            long halfSpan = sqrtOfProduct(diameter-dy, diameter+dy);
+            // columns x where |2x+1-2cx| <= halfSpan, shifts round toward negative infinity
+            long x1 = -((halfSpan - 2L*cx + 1) >> 1);
+            long x2 = (halfSpan + 2L*cx - 1) >> 1;
+            if (x1<=x2) fillSpan((int)Math.max(x1, -1), (int)Math.min(x2, width), y);
+        }
+    }
+    
+    // Returns the largest h with h*h <= a*b, for a and b from 0 to 2^33 whose product is less than 2^64. The squares
+    // can be too large for a signed long, so they're compared as unsigned values.
+    static long sqrtOfProduct(long a, long b) {
+        long product = a*b;
+        long root = (long)Math.sqrt((double)a * (double)b);
+        while (root>0 && unsignedLess(product, root*root)) root--;
+        while (!unsignedLess(product, (root+1)*(root+1))) root++;
+        return root;
+    }
+    
+    static boolean unsignedLess(long a, long b) {
+        return (a+Long.MIN_VALUE) < (b+Long.MIN_VALUE);
+    }
+    
+    void frameCircle(int cx, int cy, int radius) {
+        if (radius<0) return;
+        long r = radius;
+        // skip circles whose bounding box misses the clip region
+        if (cy+r<clipTop || cy-r>=clipBottom || cx+r<0 || cx-r>=width) return;
+        // and outlines that enclose it: every outline point is more than radius-1 from the center, and no pixel
+        // of the clip region is farther from the center than its farthest corner
+        double farX = Math.max(Math.abs((double)cx), Math.abs((double)width-1-cx));
+        double farY = Math.max(Math.abs((double)clipTop-cy), Math.abs((double)clipBottom-1-cy));
+        if (Math.hypot(farX, farY) < r-1) return;
+        
+        // The midpoint circle algorithm steps y from 0 while x>=y, plotting each octant; points on the diagonals 
+        // and axes are only plotted once so that translucent outlines don't get darker there. Points in the 
+        // octants plotted as (cx+-x, cy+-y) can only be visible when cy+-y is a visible row, and those plotted as
+        // (cx+-y, cy+-x) when cx+-y is a visible column, so only the steps in those ranges are run.
+        long[] ranges = {
+                (long)clipTop-cy, (long)clipBottom-1-cy, (long)cy-(clipBottom-1), (long)cy-clipTop, 
+                -(long)cx, (long)width-1-cx, (long)cx-(width-1), cx};
+        long nextStep = 0;
+        while (true) {
+            // the visible range with the lowest start that isn't finished, clamped to start at nextStep
+            long first = Long.MAX_VALUE, last = 0;
+            for(int i=0; i<ranges.length; i+=2) {
+                long rangeFirst = Math.max(ranges[i], nextStep);
+                if (rangeFirst<=ranges[i+1] && rangeFirst<first) {
+                    first = rangeFirst;
+                    last = ranges[i+1];
+                }
+            }
+            if (first==Long.MAX_VALUE) return;
+            // extend through ranges that overlap or touch it, so no step is plotted twice
+            for(boolean extended=true; extended; ) {
+                extended = false;
+                for(int i=0; i<ranges.length; i+=2) {
+                    if (ranges[i]<=last+1 && ranges[i+1]>last) {
+                        last = ranges[i+1];
+                        extended = true;
+                    }
+                }
+            }
+            if (!frameCircleSteps(cx, cy, r, first, last)) return;
+            nextStep = last+1;
+        }
+    }
+    
+    // Runs midpoint circle steps y=first to y=last, returning false if the octant ended before last. The error
+    // term of the step at y is x*x - x + (y+1)*(y+1) - r*r, and x is the value with x*(x-1) < r*r-y*y <= x*(x+1),
+    // so any step can be computed directly.
+    boolean frameCircleSteps(long cx, long cy, long r, long first, long last) {
+        long y = first;
+        long x = r;
+        if (y>0) {
+            long remaining = r*r - y*y;
+            if (remaining<0) return false;
+            x = IntMath.isqrt(remaining);
+            while (x*(x+1) < remaining) x++;
+            while (x>0 && x*(x-1) >= remaining) x--;
+        }
+        long err = x*x - x + (y+1)*(y+1) - r*r;
+        while (x>=y) {
+            if (y>last) return true;
+            plotCirclePoints(cx, cy, x, y);
+            y++;
+            if (err<0) {
+                err += 2*y + 1;
+            }
+            else {
+                x--;
+                err += 2*(y - x) + 1;
+            }
+        }
+        return false;
+    }
+    
+    void plotCirclePoints(long cx, long cy, long x, long y) {
+        plotPoint(cx+x, cy+y);
+        if (x!=0) plotPoint(cx-x, cy+y);
+        if (y!=0) plotPoint(cx+x, cy-y);
+        if (x!=0 && y!=0) plotPoint(cx-x, cy-y);
+        if (x!=y) {
+            plotPoint(cx+y, cy+x);
+            if (y!=0) plotPoint(cx-y, cy+x);
+            if (x!=0) plotPoint(cx+y, cy-x);
+            if (x!=0 && y!=0) plotPoint(cx-y, cy-x);
+        }
+    }
+    
+    // like plot, for coordinates that may be outside the int range
+    void plotPoint(long x, long y) {
+        if (x<0 || x>=width || y<clipTop || y>=clipBottom) return;
+        plotUnclipped((int)y*width + (int)x);
+    }
+    
+    // draws a glyph with its bottom row just above the baseline y, like Canvas.drawText
+    void drawGlyph(int[] glyph, int x, int y) {
+        int top = y - GLYPH_HEIGHT;
+        if (top>=clipBottom || y<=clipTop || x>=width || x+GLYPH_WIDTH<=0) return;
+        for(int row=0; row<GLYPH_HEIGHT; row++) {
+            int bits = glyph[row];
+            for(int col=0; col<GLYPH_WIDTH; col++) {
+                if ((bits & (0x10 >> col))!=0) {
+                    plot(x+col, top+row);
+                }
+            }
+        }
+    }
+    
+    void drawChar(int x, int y, char ch) {
+        if (ch>='0' && ch<='9') {
+            drawGlyph(DIGIT_GLYPHS[ch-'0'], x, y);
+        }
+        else if (ch=='-') {
+            drawGlyph(MINUS_GLYPH, x, y);
+        }
+    }
+    
+    void drawNumber(int x, int y, int value) {
+        // convert to digits without allocating a String, using a long so that -Integer.MIN_VALUE works
+        long remaining = Math.abs((long)value);
+        int numDigits = 0;
+        do {
+            digits[numDigits++] = (char)('0' + remaining%10);
+            remaining /= 10;
+        } while (remaining>0);
+        if (value<0) {
+            drawGlyph(MINUS_GLYPH, x, y);
+            x += GLYPH_ADVANCE;
+        }
+        for(int i=numDigits-1; i>=0; i--) {
+            drawChar(x, y, digits[i]);
+            x += GLYPH_ADVANCE;
+        }
+    }
+}
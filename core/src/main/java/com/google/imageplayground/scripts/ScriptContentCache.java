@@ -0,0 +1,133 @@
+/* 
+ * Copyright 2012 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.imageplayground.scripts;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least recently used cache of script contents and short previews of them, for showing scripts in a list without
+ * reading each one from storage every time it's displayed or selected. The content size limit is in characters. 
+ * Previews are kept separately with a limit on their number, so reading large scripts doesn't evict the previews
+ * of the rows being shown. Safe to use from multiple threads; files are read without holding the lock.
+ */
+public class ScriptContentCache {
+    
+    public static final int DEFAULT_MAX_SIZE = 256*1024;
+    public static final int DEFAULT_MAX_PREVIEWS = 2000;
+    static final int PREVIEW_MAX_LINES = 2;
+    static final int PREVIEW_MAX_LENGTH = 80;
+    
+    final int maxSize;
+    final int maxPreviews;
+    int size = 0;
+    // keyed by directory path, in access order so the first entry is the least recently used
+    LinkedHashMap<String, String> contents = new LinkedHashMap<String, String>(16, 0.75f, true);
+    LinkedHashMap<String, String> previews = new LinkedHashMap<String, String>(16, 0.75f, true) {
+        @Override protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > maxPreviews;
+        }
+    };
+    
+    public ScriptContentCache(int maxSize, int maxPreviews) {
+        this.maxSize = maxSize;
+        this.maxPreviews = maxPreviews;
+    }
+    
+    public ScriptContentCache(int maxSize) {
+        this(maxSize, DEFAULT_MAX_PREVIEWS);
+    }
+    
+    public ScriptContentCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+    
+    synchronized void put(String key, String content) {
+        String previous = contents.put(key, content);
+        if (previous!=null) size -= previous.length();
+        size += content.length();
+        previews.put(key, previewForContent(content));
+        // always keeps the newest content, even if it's larger than the limit by itself
+        Iterator<Map.Entry<String, String>> it = contents.entrySet().iterator();
+        while (size>maxSize && contents.size()>1) {
+            String evicted = it.next().getValue();
+            it.remove();
+            size -= evicted.length();
+        }
+    }
+    
+    /** Returns the content of the script if it's cached, otherwise null. Never reads from storage. */
+    public synchronized String getInMemoryContent(ScriptFile scriptFile) {
+        return contents.get(scriptFile.getDirectoryPath());
+    }
+    
+    /** Returns the preview of the script if it's cached, otherwise null. Never reads from storage. The preview may
+     * still be cached after the content has been evicted.
+     */
+    public synchronized String getInMemoryPreview(ScriptFile scriptFile) {
+        return previews.get(scriptFile.getDirectoryPath());
+    }
+    
+    /** Returns the content of the script, reading it if it's not cached. Call from a background thread. */
+    public String getContent(ScriptFile scriptFile) {
+        String content = getInMemoryContent(scriptFile);
+        if (content==null) {
+            content = scriptFile.getScriptContent();
+            put(scriptFile.getDirectoryPath(), content);
+        }
+        return content;
+    }
+    
+    /** Returns the preview of the script, reading it if it's not cached. Call from a background thread. */
+    public String getPreview(ScriptFile scriptFile) {
+        String preview = getInMemoryPreview(scriptFile);
+        return (preview!=null) ? preview : previewForContent(getContent(scriptFile));
+    }
+    
+    public synchronized void remove(ScriptFile scriptFile) {
+        String content = contents.remove(scriptFile.getDirectoryPath());
+        if (content!=null) size -= content.length();
+        previews.remove(scriptFile.getDirectoryPath());
+    }
+    
+    /** Returns the first non-blank lines of the script, trimmed and joined with spaces, shortened with "..." if 
+     * there's more. 
+     */
+    static String previewForContent(String content) {
+        StringBuilder preview = new StringBuilder();
+        int lines = 0;
+        boolean truncated = false;
+        for(String line : content.split("\n")) {
+            line = line.trim();
+            if (line.length()==0) continue;
+            if (lines==PREVIEW_MAX_LINES) {
+                truncated = true;
+                break;
+            }
+            if (preview.length()>0) preview.append(' ');
+            preview.append(line);
+            lines++;
+        }
+        if (preview.length()>PREVIEW_MAX_LENGTH) {
+            preview.setLength(PREVIEW_MAX_LENGTH);
+            truncated = true;
+        }
+        if (truncated) preview.append("...");
+        return preview.toString();
+    }
+}
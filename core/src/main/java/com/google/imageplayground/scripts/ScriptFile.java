@@ -0,0 +1,212 @@
+/* 
+ * Copyright 2012 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.imageplayground.scripts;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Date;
+
+import org.json.JSONObject;
+
+import com.google.imageplayground.util.JavaUtils;
+
+public class ScriptFile {
+    
+    static String PROPERTIES_FILENAME = "properties.json";
+    static String SCRIPT_NAME_ATTRIBUTE = "scriptName";
+    static String DATE_CREATED_ATTRIBUTE = "dateCreated";
+    static String DATE_MODIFIED_ATTRIBUTE = "dateModified";
+    
+    String directoryPath;
+    String scriptName;
+    Date dateCreated;
+    Date dateModified;
+    String scriptContent;
+    
+    public static ScriptFile loadFromDirectory(File dir) {
+        try {
+            JSONObject obj = new JSONObject(JavaUtils.readFileAsString(new File(dir, PROPERTIES_FILENAME)));
+            
+            long createdTS = obj.optLong(DATE_CREATED_ATTRIBUTE);
+            long modifiedTS = obj.optLong(DATE_MODIFIED_ATTRIBUTE);
+            Date createdDate = (createdTS==0) ? null : new Date(createdTS);
+            Date modifiedDate = (modifiedTS==0) ? null : new Date(modifiedTS);
+            return new ScriptFile(dir.getPath(), obj.getString(SCRIPT_NAME_ATTRIBUTE), createdDate, modifiedDate);
+        }
+        catch(Exception ex) {
+            return null;
+        }
+    }
+
+    public static ScriptFile createNewScriptFile(String directoryPath, String scriptName, String scriptContent) {
+        (new File(directoryPath)).mkdirs();
+        Date now = new Date();
+        JSONObject json = new JSONObject();
+        try {
+            json.put(SCRIPT_NAME_ATTRIBUTE, scriptName);
+            json.put(DATE_CREATED_ATTRIBUTE, now.getTime());
+            json.put(DATE_MODIFIED_ATTRIBUTE, now.getTime());
+            
+            Writer writer = new OutputStreamWriter(
+                    new FileOutputStream(directoryPath + File.separator + PROPERTIES_FILENAME), "utf-8");
+            try {
+                writer.write(json.toString(2));
+            }
+            finally {
+                writer.close();
+            }
+        }
+        catch(Exception ex) {
+            return null;
+        }
+        
+        ScriptFile sf = new ScriptFile(directoryPath, scriptName, now, now);
+        if (sf.saveScriptContent(scriptContent)) {
+            return sf;
+        }
+        return null;
+    }
+    
+    protected ScriptFile(String directoryPath, String scriptName, Date dateCreated, Date dateModified) {
+        this.directoryPath = directoryPath;
+        this.scriptName = scriptName;
+        this.dateCreated = dateCreated;
+        this.dateModified = dateModified;
+    }
+    
+    public String getScriptName() {
+        return scriptName;
+    }
+    
+    public String getDirectoryPath() {
+        return directoryPath;
+    }
+    
+    String scriptPath() {
+        String dirname = this.directoryPath.substring(this.directoryPath.lastIndexOf(File.separator)+1);
+        return this.directoryPath + File.separator + dirname + ".txt";
+    }
+    
+    public String getScriptContent() {
+        if (scriptContent==null) {
+            try {
+                return JavaUtils.readFileAsString(new File(scriptPath()));
+            }
+            catch(Exception ex) {
+                return "";
+            }
+        }
+        return scriptContent;
+    }
+    
+    public boolean saveScriptContent(String updatedContent) {
+        return saveScriptContent(updatedContent, false);
+    }
+    
+    /** Writes the script content to a temporary file and renames it over the script file. If sync is true the 
+     * content is flushed to disk before the rename, so it survives a crash or power loss once this returns.
+     */
+    public boolean saveScriptContent(String updatedContent, boolean sync) {
+        try {
+            String path = scriptPath();
+            String newScriptPath = path + ".new";
+            FileOutputStream out = new FileOutputStream(newScriptPath);
+            try {
+                out.write(updatedContent.getBytes("utf-8"));
+                if (sync) out.getFD().sync();
+            }
+            finally {
+                out.close();
+            }
+            // a script saved before history was kept gets its existing content as the first version
+            ScriptHistory history = getHistory();
+            File scriptFile = new File(path);
+            String previousContent = null;
+            long previousTimestamp = 0;
+            if (!history.exists() && scriptFile.exists()) {
+                previousContent = JavaUtils.readFileAsString(scriptFile);
+                previousTimestamp = scriptFile.lastModified();
+            }
+            if (!(new File(newScriptPath)).renameTo(scriptFile)) {
+                return false;
+            }
+            recordVersion(history, previousContent, previousTimestamp, updatedContent, sync);
+            libraryIndex().scriptSaved(this, updatedContent);
+            return true;
+        }
+        catch(Exception ex) {
+            return false;
+        }
+    }
+    
+    /** Returns the log of saved versions of this script. */
+    public ScriptHistory getHistory() {
+        return new ScriptHistory(new File(this.directoryPath, ScriptHistory.HISTORY_FILENAME));
+    }
+    
+    /** Saves the content of an earlier version as the newest version, so the versions since then are kept. Returns
+     * false if the version isn't in the history or the script couldn't be saved.
+     */
+    public boolean restoreVersion(int versionNumber) {
+        try {
+            String content = getHistory().getContent(versionNumber);
+            return content!=null && saveScriptContent(content, true);
+        }
+        catch(IOException ex) {
+            return false;
+        }
+    }
+    
+    // Adds saved content to the history, after the existing content of a script saved before history was kept if
+    // previousContent isn't null.
+    void recordVersion(ScriptHistory history, String previousContent, long previousTimestamp, String content, 
+            boolean sync) {
+        try {
+            if (previousContent!=null) {
+                history.append(previousContent, previousTimestamp, false);
+            }
+            history.append(content, System.currentTimeMillis(), sync);
+        }
+        catch(IOException ex) {
+            // the script is still saved, only this version is missing from its history
+        }
+    }
+    
+    public boolean deleteScript() {
+        File dir = new File(this.directoryPath);
+        File[] files = dir.listFiles();
+        if (files!=null) {
+            for(File f : files) {
+                f.delete();
+            }
+        }
+        if (!dir.delete()) {
+            return false;
+        }
+        libraryIndex().scriptDeleted(this);
+        return true;
+    }
+    
+    // the index of the library directory containing this script
+    ScriptIndex libraryIndex() {
+        return ScriptIndex.forDirectory(new File(this.directoryPath).getAbsoluteFile().getParent());
+    }
+    
+}
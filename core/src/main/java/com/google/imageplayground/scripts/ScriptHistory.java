@@ -0,0 +1,478 @@
+/* 
+ * Copyright 2012 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.imageplayground.scripts;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import com.google.imageplayground.util.JavaUtils;
+
+/**
+ * Append-only log of the saved versions of a script, stored in its directory. Most versions are stored as 
+ * line-based deltas against the previous version, with a full snapshot every SNAPSHOT_INTERVAL versions so that 
+ * restoring any version applies a bounded number of deltas. Each record has a checksum, so a record left partly 
+ * written by a crash is ignored and overwritten by the next append. Restoring a version saves it as a new version,
+ * so the log is never rewritten except by compact, which drops the oldest versions.
+ */
+public class ScriptHistory {
+    
+    static final String HISTORY_FILENAME = "history.log";
+    // a snapshot is stored at least this often
+    static final int SNAPSHOT_INTERVAL = 20;
+    // when an append makes the log longer than this, it's compacted to COMPACTED_VERSIONS
+    public static final int MAX_VERSIONS = 200;
+    public static final int COMPACTED_VERSIONS = 100;
+    // deltas between blocks of changed lines larger than this (in lines squared) store the new lines without
+    // searching for unchanged lines among them, to bound the time and memory used to save a very large script
+    static final int MAX_DIFF_CELLS = 250000;
+    
+    static final byte SNAPSHOT = 0;
+    static final byte DELTA = 1;
+    static final byte OP_COPY = 0;
+    static final byte OP_INSERT = 1;
+    // type, version number, timestamp and payload length; the record is followed by a CRC32 of all of it
+    static final int HEADER_SIZE = 1 + 4 + 8 + 4;
+    static final int CRC_SIZE = 4;
+    
+    // held while reading or writing any history file, so saves from different threads are appended in order
+    static final Object LOCK = new Object();
+    // the number of logs whose newest version is kept in memory, so saving a script doesn't read its whole log
+    static final int MAX_CACHED_TAILS = 16;
+    
+    // The end of a log as of the last append, used by the next append if the file hasn't changed since then.
+    static class Tail {
+        final int number;
+        final int validLength;
+        final int versionCount;
+        final int versionsSinceSnapshot;
+        final String content;
+        final long lastModified;
+        
+        Tail(int number, int validLength, int versionCount, int versionsSinceSnapshot, String content, 
+                long lastModified) {
+            this.number = number;
+            this.validLength = validLength;
+            this.versionCount = versionCount;
+            this.versionsSinceSnapshot = versionsSinceSnapshot;
+            this.content = content;
+            this.lastModified = lastModified;
+        }
+    }
+    
+    // keyed by absolute path of the log, least recently appended first; guarded by LOCK
+    static final Map<String, Tail> TAILS = new LinkedHashMap<String, Tail>(MAX_CACHED_TAILS, 0.75f, true) {
+        @Override protected boolean removeEldestEntry(Map.Entry<String, Tail> eldest) {
+            return size() > MAX_CACHED_TAILS;
+        }
+    };
+    
+    /** A saved version of the script. */
+    public static class Version {
+        public final int number;
+        public final long timestamp;
+        public final boolean isSnapshot;
+        final byte[] payload;
+        // position of the record in the log, and its length including the header and checksum
+        final int offset;
+        final int length;
+        
+        Version(int number, long timestamp, boolean isSnapshot, byte[] payload, int offset, int length) {
+            this.number = number;
+            this.timestamp = timestamp;
+            this.isSnapshot = isSnapshot;
+            this.payload = payload;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+    
+    final File file;
+    
+    public ScriptHistory(File file) {
+        this.file = file;
+    }
+    
+    /** Returns true if the log has been created. */
+    public boolean exists() {
+        return file.exists();
+    }
+    
+    /** Returns the saved versions, oldest first. */
+    public List<Version> getVersions() throws IOException {
+        synchronized(LOCK) {
+            return readVersions();
+        }
+    }
+    
+    /** Returns the content of the version with the given number, or null if it isn't in the log. */
+    public String getContent(int versionNumber) throws IOException {
+        synchronized(LOCK) {
+            List<Version> versions = readVersions();
+            for(int i=0; i<versions.size(); i++) {
+                if (versions.get(i).number==versionNumber) return contentAt(versions, i);
+            }
+            return null;
+        }
+    }
+    
+    /** Returns the content of the newest version, or null if the log is empty. */
+    public String getLatestContent() throws IOException {
+        synchronized(LOCK) {
+            List<Version> versions = readVersions();
+            return versions.isEmpty() ? null : contentAt(versions, versions.size()-1);
+        }
+    }
+    
+    /** Adds a version to the end of the log, unless it's the same as the newest version. If sync is true the log 
+     * is flushed to disk before returning. Returns the new version, or null if the content was unchanged.
+     */
+    public Version append(String content, long timestamp, boolean sync) throws IOException {
+        synchronized(LOCK) {
+            Tail tail = readTail();
+            byte[] contentBytes = content.getBytes("utf-8");
+            byte type = SNAPSHOT;
+            byte[] payload = contentBytes;
+            if (tail.content!=null) {
+                if (tail.content.equals(content)) return null;
+                if (tail.versionsSinceSnapshot < SNAPSHOT_INTERVAL-1) {
+                    byte[] delta = encodeDelta(splitLines(tail.content), splitLines(content));
+                    if (delta.length < contentBytes.length) {
+                        type = DELTA;
+                        payload = delta;
+                    }
+                }
+            }
+            int number = tail.number+1;
+            int validLength = tail.validLength;
+            byte[] record = encodeRecord(type, number, timestamp, payload);
+            
+            String key = file.getAbsolutePath();
+            TAILS.remove(key);
+            RandomAccessFile out = new RandomAccessFile(file, "rw");
+            try {
+                // drops a partly written record at the end of the log, if there is one
+                if (out.length()!=validLength) out.setLength(validLength);
+                out.seek(validLength);
+                out.write(record);
+                if (sync) out.getFD().sync();
+            }
+            finally {
+                out.close();
+            }
+            if (tail.versionCount+1 > MAX_VERSIONS) {
+                compact(COMPACTED_VERSIONS, sync);
+            }
+            else {
+                TAILS.put(key, new Tail(number, validLength + record.length, tail.versionCount+1, 
+                        (type==SNAPSHOT) ? 0 : tail.versionsSinceSnapshot+1, content, file.lastModified()));
+            }
+            return new Version(number, timestamp, type==SNAPSHOT, payload, validLength, record.length);
+        }
+    }
+    
+    // Returns the end of the log from the cache if the file is unchanged since the last append, otherwise by 
+    // reading the log. The content is null if the log is empty.
+    Tail readTail() throws IOException {
+        Tail tail = TAILS.get(file.getAbsolutePath());
+        if (tail!=null && file.length()==tail.validLength && file.lastModified()==tail.lastModified) {
+            return tail;
+        }
+        List<Version> versions = readVersions();
+        if (versions.isEmpty()) {
+            return new Tail(0, 0, 0, 0, null, 0);
+        }
+        Version last = versions.get(versions.size()-1);
+        return new Tail(last.number, last.offset + last.length, versions.size(), versionsSinceSnapshot(versions), 
+                contentAt(versions, versions.size()-1), 0);
+    }
+    
+    /** Removes all but the newest maxVersions versions. The oldest remaining version is stored as a snapshot, and
+     * the log is replaced atomically, so if this is interrupted the existing log is unchanged.
+     */
+    public void compact(int maxVersions) throws IOException {
+        compact(maxVersions, true);
+    }
+    
+    void compact(int maxVersions, boolean sync) throws IOException {
+        synchronized(LOCK) {
+            TAILS.remove(file.getAbsolutePath());
+            List<Version> versions = readVersions();
+            if (versions.size() <= maxVersions) return;
+            int first = versions.size() - maxVersions;
+            byte[] log = JavaUtils.readFile(file);
+            ByteArrayOutputStream compacted = new ByteArrayOutputStream();
+            if (maxVersions > 0) {
+                Version firstVersion = versions.get(first);
+                compacted.write(encodeRecord(SNAPSHOT, firstVersion.number, firstVersion.timestamp, 
+                        contentAt(versions, first).getBytes("utf-8")));
+                // the remaining records are deltas against versions that are kept, so they're copied unchanged
+                for(int i=first+1; i<versions.size(); i++) {
+                    Version version = versions.get(i);
+                    compacted.write(log, version.offset, version.length);
+                }
+            }
+            File newFile = new File(file.getPath() + ".new");
+            FileOutputStream out = new FileOutputStream(newFile);
+            try {
+                compacted.writeTo(out);
+                if (sync) out.getFD().sync();
+            }
+            finally {
+                out.close();
+            }
+            if (!newFile.renameTo(file)) {
+                throw new IOException("Unable to replace " + file);
+            }
+        }
+    }
+    
+    // Reads the records in the log, stopping at the end of the file or at the first incomplete or corrupt record.
+    List<Version> readVersions() throws IOException {
+        List<Version> versions = new ArrayList<Version>();
+        if (!file.exists()) return versions;
+        byte[] log = JavaUtils.readFile(file);
+        ByteBuffer buffer = ByteBuffer.wrap(log);
+        while (buffer.remaining() >= HEADER_SIZE + CRC_SIZE) {
+            int offset = buffer.position();
+            byte type = buffer.get();
+            int number = buffer.getInt();
+            long timestamp = buffer.getLong();
+            int payloadLength = buffer.getInt();
+            if ((type!=SNAPSHOT && type!=DELTA) || payloadLength<0 || buffer.remaining() < payloadLength + CRC_SIZE) {
+                break;
+            }
+            byte[] payload = new byte[payloadLength];
+            buffer.get(payload);
+            CRC32 crc = new CRC32();
+            crc.update(log, offset, HEADER_SIZE + payloadLength);
+            if (buffer.getInt()!=(int)crc.getValue()) break;
+            versions.add(new Version(number, timestamp, type==SNAPSHOT, payload, offset, 
+                    HEADER_SIZE + payloadLength + CRC_SIZE));
+        }
+        return versions;
+    }
+    
+    static byte[] encodeRecord(byte type, int number, long timestamp, byte[] payload) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(HEADER_SIZE + payload.length + CRC_SIZE);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(type);
+        out.writeInt(number);
+        out.writeLong(timestamp);
+        out.writeInt(payload.length);
+        out.write(payload);
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray(), 0, bytes.size());
+        out.writeInt((int)crc.getValue());
+        return bytes.toByteArray();
+    }
+    
+    static int versionsSinceSnapshot(List<Version> versions) {
+        int count = 0;
+        for(int i=versions.size()-1; i>=0 && !versions.get(i).isSnapshot; i--) {
+            count++;
+        }
+        return count;
+    }
+    
+    // Returns the content of versions[index], by applying deltas to the nearest snapshot before it.
+    static String contentAt(List<Version> versions, int index) throws IOException {
+        int start = index;
+        while (start>0 && !versions.get(start).isSnapshot) {
+            start--;
+        }
+        if (!versions.get(start).isSnapshot) {
+            throw new IOException("History has no snapshot before version " + versions.get(index).number);
+        }
+        String content = new String(versions.get(start).payload, "utf-8");
+        if (start==index) return content;
+        List<String> lines = splitLines(content);
+        for(int i=start+1; i<=index; i++) {
+            lines = applyDelta(lines, versions.get(i).payload);
+        }
+        return joinLines(lines);
+    }
+    
+    // Splits text into lines that keep their line terminators, so joining them gives back the same text.
+    static List<String> splitLines(String text) {
+        List<String> lines = new ArrayList<String>();
+        int start = 0;
+        while (start < text.length()) {
+            int end = text.indexOf('\n', start);
+            end = (end<0) ? text.length() : end+1;
+            lines.add(text.substring(start, end));
+            start = end;
+        }
+        return lines;
+    }
+    
+    static String joinLines(List<String> lines) {
+        StringBuilder builder = new StringBuilder();
+        for(String line : lines) {
+            builder.append(line);
+        }
+        return builder.toString();
+    }
+    
+    /** Encodes the changes from oldLines to newLines as a list of operations that either copy a range of old lines 
+     * or insert new lines. Lines shared at the start and end are found first, and the longest common subsequence 
+     * of the lines between them is copied, so an edit in the middle of a script stores only the edited lines.
+     */
+    static byte[] encodeDelta(List<String> oldLines, List<String> newLines) throws IOException {
+        int oldSize = oldLines.size();
+        int newSize = newLines.size();
+        int prefix = 0;
+        while (prefix<oldSize && prefix<newSize && oldLines.get(prefix).equals(newLines.get(prefix))) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix<oldSize-prefix && suffix<newSize-prefix && 
+                oldLines.get(oldSize-1-suffix).equals(newLines.get(newSize-1-suffix))) {
+            suffix++;
+        }
+        
+        DeltaWriter delta = new DeltaWriter(newLines);
+        delta.copy(0, prefix);
+        int oldMiddle = oldSize - prefix - suffix;
+        int newMiddle = newSize - prefix - suffix;
+        if (oldMiddle>0 && newMiddle>0 && (long)oldMiddle * newMiddle <= MAX_DIFF_CELLS) {
+            // lcs[i][j] is the length of the common subsequence of the middle lines from old i and new j onward
+            int[][] lcs = new int[oldMiddle+1][newMiddle+1];
+            for(int i=oldMiddle-1; i>=0; i--) {
+                for(int j=newMiddle-1; j>=0; j--) {
+                    lcs[i][j] = oldLines.get(prefix+i).equals(newLines.get(prefix+j)) ? 
+                            lcs[i+1][j+1]+1 : Math.max(lcs[i+1][j], lcs[i][j+1]);
+                }
+            }
+            int i = 0, j = 0;
+            while (i<oldMiddle && j<newMiddle) {
+                if (oldLines.get(prefix+i).equals(newLines.get(prefix+j))) {
+                    delta.copy(prefix+i, 1);
+                    i++;
+                    j++;
+                }
+                else if (lcs[i+1][j] >= lcs[i][j+1]) {
+                    i++;
+                }
+                else {
+                    delta.insert(prefix+j);
+                    j++;
+                }
+            }
+            while (j<newMiddle) {
+                delta.insert(prefix+j);
+                j++;
+            }
+        }
+        else {
+            for(int j=0; j<newMiddle; j++) {
+                delta.insert(prefix+j);
+            }
+        }
+        delta.copy(oldSize-suffix, suffix);
+        return delta.toByteArray();
+    }
+    
+    // Collects delta operations, merging adjacent copies of consecutive lines and adjacent inserts.
+    static class DeltaWriter {
+        final List<String> newLines;
+        final List<int[]> ops = new ArrayList<int[]>();
+        
+        DeltaWriter(List<String> newLines) {
+            this.newLines = newLines;
+        }
+        
+        // {OP_COPY, first old line, count} or {OP_INSERT, first new line, count}
+        void copy(int oldLine, int count) {
+            if (count==0) return;
+            int[] last = ops.isEmpty() ? null : ops.get(ops.size()-1);
+            if (last!=null && last[0]==OP_COPY && last[1]+last[2]==oldLine) {
+                last[2] += count;
+            }
+            else {
+                ops.add(new int[] {OP_COPY, oldLine, count});
+            }
+        }
+        
+        void insert(int newLine) {
+            int[] last = ops.isEmpty() ? null : ops.get(ops.size()-1);
+            if (last!=null && last[0]==OP_INSERT) {
+                last[2]++;
+            }
+            else {
+                ops.add(new int[] {OP_INSERT, newLine, 1});
+            }
+        }
+        
+        byte[] toByteArray() throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(ops.size());
+            for(int[] op : ops) {
+                out.writeByte(op[0]);
+                if (op[0]==OP_COPY) {
+                    out.writeInt(op[1]);
+                    out.writeInt(op[2]);
+                }
+                else {
+                    out.writeInt(op[2]);
+                    for(int i=0; i<op[2]; i++) {
+                        byte[] line = newLines.get(op[1]+i).getBytes("utf-8");
+                        out.writeInt(line.length);
+                        out.write(line);
+                    }
+                }
+            }
+            return bytes.toByteArray();
+        }
+    }
+    
+    static List<String> applyDelta(List<String> oldLines, byte[] delta) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(delta);
+        List<String> lines = new ArrayList<String>();
+        int opCount = buffer.getInt();
+        for(int i=0; i<opCount; i++) {
+            byte op = buffer.get();
+            if (op==OP_COPY) {
+                int start = buffer.getInt();
+                int count = buffer.getInt();
+                if (start<0 || count<0 || start+count>oldLines.size()) {
+                    throw new IOException("Invalid delta copying lines " + start + "+" + count);
+                }
+                lines.addAll(oldLines.subList(start, start+count));
+            }
+            else {
+                int count = buffer.getInt();
+                for(int j=0; j<count; j++) {
+                    byte[] line = new byte[buffer.getInt()];
+                    buffer.get(line);
+                    lines.add(new String(line, "utf-8"));
+                }
+            }
+        }
+        return lines;
+    }
+}
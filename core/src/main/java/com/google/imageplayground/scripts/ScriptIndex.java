@@ -0,0 +1,460 @@
+/* 
+ * Copyright 2012 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.imageplayground.scripts;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.google.imageplayground.util.JavaUtils;
+
+/**
+ * Names, dates, sizes and content hashes of the scripts in a library directory, kept in a single index file so the
+ * library can be listed with one read instead of parsing every script's properties.json. Entries are updated as 
+ * scripts are created, saved and deleted, and each one records its directory's modification time so that changes 
+ * made outside the app are noticed and only the changed directories are read again. There is one instance per 
+ * directory, shared by all ScriptLists and ScriptFiles in it; the index file is written on a background thread.
+ * Once the library is searched, the index also keeps its ScriptSearchIndex up to date and writes it with the index.
+ */
+public class ScriptIndex {
+    
+    static final String INDEX_FILENAME = "index.json";
+    static final int VERSION = 1;
+    
+    static final String VERSION_KEY = "version";
+    static final String SCRIPTS_KEY = "scripts";
+    static final String DIRECTORY_KEY = "dir";
+    static final String NAME_KEY = "name";
+    static final String CREATED_KEY = "created";
+    static final String MODIFIED_KEY = "modified";
+    static final String DIRECTORY_MODIFIED_KEY = "dirModified";
+    static final String SIZE_KEY = "size";
+    static final String HASH_KEY = "hash";
+    
+    /** Indexed information about one directory in the library. */
+    public static class Entry {
+        public final String directoryName;
+        // null if the directory isn't a valid script, so it isn't read again until it changes
+        public final String scriptName;
+        public final long dateCreated;
+        public final long dateModified;
+        public final long directoryModified;
+        public final int contentSize;
+        public final long contentHash;
+        
+        Entry(String directoryName, String scriptName, long dateCreated, long dateModified, long directoryModified, 
+                int contentSize, long contentHash) {
+            this.directoryName = directoryName;
+            this.scriptName = scriptName;
+            this.dateCreated = dateCreated;
+            this.dateModified = dateModified;
+            this.directoryModified = directoryModified;
+            this.contentSize = contentSize;
+            this.contentHash = contentHash;
+        }
+        
+        JSONObject toJSON() throws Exception {
+            JSONObject json = new JSONObject();
+            json.put(DIRECTORY_KEY, directoryName);
+            if (scriptName!=null) json.put(NAME_KEY, scriptName);
+            json.put(CREATED_KEY, dateCreated);
+            json.put(MODIFIED_KEY, dateModified);
+            json.put(DIRECTORY_MODIFIED_KEY, directoryModified);
+            json.put(SIZE_KEY, contentSize);
+            json.put(HASH_KEY, contentHash);
+            return json;
+        }
+        
+        static Entry fromJSON(JSONObject json) throws Exception {
+            return new Entry(json.getString(DIRECTORY_KEY), json.has(NAME_KEY) ? json.getString(NAME_KEY) : null, 
+                    json.optLong(CREATED_KEY), json.optLong(MODIFIED_KEY), json.optLong(DIRECTORY_MODIFIED_KEY), 
+                    json.optInt(SIZE_KEY), json.optLong(HASH_KEY));
+        }
+    }
+    
+    static Map<String, ScriptIndex> indexes = new HashMap<String, ScriptIndex>();
+    
+    // index writes and background refreshes for every library, in order
+    static ExecutorService backgroundExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "ScriptIndex");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    
+    final File baseDirectory;
+    // keyed by directory name, guarded by this
+    Map<String, Entry> entries = new HashMap<String, Entry>();
+    // true if the index file existed and was readable when loaded
+    boolean loadedFromFile = false;
+    boolean writeScheduled = false;
+    // held while writing the index file, so writes from different threads don't share the temporary file
+    final Object fileLock = new Object();
+    // null until getSearchIndex is first called, guarded by this
+    ScriptSearchIndex searchIndex;
+    
+    ScriptIndex(File baseDirectory) {
+        this.baseDirectory = baseDirectory;
+    }
+    
+    /** Returns the index for the library in the given directory, reading the index file the first time. */
+    public static ScriptIndex forDirectory(String baseDirectory) {
+        File dir = new File(baseDirectory).getAbsoluteFile();
+        synchronized(indexes) {
+            ScriptIndex index = indexes.get(dir.getPath());
+            if (index==null) {
+                index = new ScriptIndex(dir);
+                index.load();
+                indexes.put(dir.getPath(), index);
+            }
+            return index;
+        }
+    }
+    
+    File indexFile() {
+        return new File(baseDirectory, INDEX_FILENAME);
+    }
+    
+    File searchIndexFile() {
+        return new File(baseDirectory, ScriptSearchIndex.SEARCH_FILENAME);
+    }
+    
+    synchronized void load() {
+        entries.clear();
+        loadedFromFile = false;
+        try {
+            JSONObject json = new JSONObject(JavaUtils.readFileAsString(indexFile()));
+            if (json.optInt(VERSION_KEY)!=VERSION) return;
+            JSONArray scripts = json.getJSONArray(SCRIPTS_KEY);
+            for(int i=0; i<scripts.length(); i++) {
+                Entry entry = Entry.fromJSON(scripts.getJSONObject(i));
+                entries.put(entry.directoryName, entry);
+            }
+            loadedFromFile = true;
+        }
+        catch(Exception ex) {
+            // missing or corrupt, treated as empty and rebuilt
+            entries.clear();
+        }
+    }
+    
+    /** Returns true if the index was read from an existing index file, false if it has to be built from scratch. */
+    public synchronized boolean isLoadedFromFile() {
+        return loadedFromFile;
+    }
+    
+    /** Returns the indexed scripts sorted by name. */
+    public synchronized List<ScriptFile> getScriptFiles() {
+        List<ScriptFile> scriptFiles = new ArrayList<ScriptFile>();
+        for(Entry entry : entries.values()) {
+            if (entry.scriptName!=null) {
+                scriptFiles.add(new ScriptFile(new File(baseDirectory, entry.directoryName).getPath(), entry.scriptName,
+                        dateForTimestamp(entry.dateCreated), dateForTimestamp(entry.dateModified)));
+            }
+        }
+        Collections.sort(scriptFiles, SCRIPT_NAME_ORDER);
+        return scriptFiles;
+    }
+    
+    static final Comparator<ScriptFile> SCRIPT_NAME_ORDER = new Comparator<ScriptFile>() {
+        public int compare(ScriptFile sf1, ScriptFile sf2) {
+            int result = sf1.getScriptName().compareToIgnoreCase(sf2.getScriptName());
+            return (result!=0) ? result : sf1.getDirectoryPath().compareTo(sf2.getDirectoryPath());
+        }
+    };
+    
+    public synchronized Entry getEntry(String directoryName) {
+        return entries.get(directoryName);
+    }
+    
+    static Date dateForTimestamp(long timestamp) {
+        return (timestamp==0) ? null : new Date(timestamp);
+    }
+    
+    static long timestampForDate(Date date) {
+        return (date==null) ? 0 : date.getTime();
+    }
+    
+    /** Removes entries for directories that no longer exist, and returns true if every directory in the library 
+     * has an entry with its current modification time. Only checks modification times, it doesn't read any files.
+     */
+    public boolean isCurrent() {
+        File[] children = baseDirectory.listFiles();
+        if (children==null) children = new File[0];
+        boolean current = true;
+        synchronized(this) {
+            Map<String, Entry> remaining = new HashMap<String, Entry>(entries);
+            for(File child : children) {
+                Entry entry = remaining.remove(child.getName());
+                if (entry!=null) {
+                    if (entry.directoryModified!=child.lastModified()) current = false;
+                }
+                else if (child.isDirectory()) {
+                    current = false;
+                }
+            }
+            if (!remaining.isEmpty()) {
+                entries.keySet().removeAll(remaining.keySet());
+                scheduleWrite();
+            }
+        }
+        return current;
+    }
+    
+    /** Reads the properties and content of directories that were added or changed since they were indexed, drops 
+     * entries for directories that were removed, and writes the index file if anything changed. Returns true if 
+     * anything changed. Unchanged directories aren't read, so this is fast when the index is nearly current.
+     */
+    public boolean refresh() {
+        Map<String, Entry> current;
+        synchronized(this) {
+            current = new HashMap<String, Entry>(entries);
+        }
+        // listed after copying the entries, so a script created in between isn't treated as deleted
+        File[] children = baseDirectory.listFiles();
+        if (children==null) children = new File[0];
+        // files are read without holding the lock, so saves from other threads aren't blocked
+        Map<String, Entry> updated = new HashMap<String, Entry>();
+        for(File child : children) {
+            Entry entry = current.remove(child.getName());
+            if (entry!=null && entry.directoryModified==child.lastModified()) continue;
+            if (entry!=null || child.isDirectory()) {
+                updated.put(child.getName(), entryForDirectory(child));
+            }
+        }
+        boolean changed = !updated.isEmpty() || !current.isEmpty();
+        ScriptSearchIndex search;
+        synchronized(this) {
+            entries.keySet().removeAll(current.keySet());
+            entries.putAll(updated);
+            if (changed || !loadedFromFile) {
+                loadedFromFile = true;
+                scheduleWrite();
+            }
+            search = searchIndex;
+        }
+        if (changed && search!=null) {
+            updateSearchIndex(search);
+        }
+        return changed;
+    }
+    
+    /** Runs refresh on a background thread, and then runs onChange on that thread if anything changed. */
+    public void refreshInBackground(final Runnable onChange) {
+        backgroundExecutor.execute(new Runnable() {
+            public void run() {
+                if (refresh() && onChange!=null) {
+                    onChange.run();
+                }
+            }
+        });
+    }
+    
+    // Reads a script directory to create its entry. Directories that aren't valid scripts get entries with no name.
+    static Entry entryForDirectory(File dir) {
+        // read before the properties, so a change made while they're read makes the entry stale rather than wrong
+        long directoryModified = dir.lastModified();
+        ScriptFile scriptFile = ScriptFile.loadFromDirectory(dir);
+        if (scriptFile==null) {
+            return new Entry(dir.getName(), null, 0, 0, directoryModified, 0, 0);
+        }
+        byte[] content;
+        try {
+            content = JavaUtils.readFile(new File(scriptFile.scriptPath()));
+        }
+        catch(IOException ex) {
+            content = new byte[0];
+        }
+        return new Entry(dir.getName(), scriptFile.getScriptName(), timestampForDate(scriptFile.dateCreated), 
+                timestampForDate(scriptFile.dateModified), directoryModified, content.length, contentHash(content));
+    }
+    
+    static long contentHash(byte[] content) {
+        CRC32 crc = new CRC32();
+        crc.update(content, 0, content.length);
+        return crc.getValue();
+    }
+    
+    /** Updates the entry for a script whose properties or content were just written. */
+    void scriptSaved(ScriptFile scriptFile, String content) {
+        File dir = new File(scriptFile.getDirectoryPath());
+        byte[] bytes;
+        try {
+            bytes = content.getBytes("utf-8");
+        }
+        catch(IOException ex) {
+            throw new RuntimeException(ex);
+        }
+        Entry entry = new Entry(dir.getName(), scriptFile.getScriptName(), timestampForDate(scriptFile.dateCreated), 
+                timestampForDate(scriptFile.dateModified), dir.lastModified(), bytes.length, contentHash(bytes));
+        ScriptSearchIndex search;
+        synchronized(this) {
+            entries.put(entry.directoryName, entry);
+            scheduleWrite();
+            search = searchIndex;
+        }
+        if (search!=null) {
+            search.put(ScriptSearchIndex.documentForScript(entry.directoryName, entry.scriptName, content, 
+                    entry.contentHash));
+        }
+    }
+    
+    /** Removes the entry for a script whose directory was deleted. */
+    synchronized void scriptDeleted(ScriptFile scriptFile) {
+        String directoryName = new File(scriptFile.getDirectoryPath()).getName();
+        if (searchIndex!=null) {
+            searchIndex.remove(directoryName);
+        }
+        if (entries.remove(directoryName)!=null) {
+            scheduleWrite();
+        }
+    }
+    
+    /** Returns the token search index for the library, reading its file the first time and then tokenizing any 
+     * scripts whose content hashes differ from their indexed documents. This can read every script when the library
+     * is first searched, so it should be called on a background thread.
+     */
+    public ScriptSearchIndex getSearchIndex() {
+        ScriptSearchIndex search;
+        synchronized(this) {
+            search = searchIndex;
+        }
+        if (search==null) {
+            ScriptSearchIndex loaded = new ScriptSearchIndex();
+            loaded.load(searchIndexFile());
+            synchronized(this) {
+                if (searchIndex==null) searchIndex = loaded;
+                search = searchIndex;
+            }
+        }
+        updateSearchIndex(search);
+        return search;
+    }
+    
+    // Removes documents for scripts that are no longer indexed and tokenizes scripts whose documents are missing 
+    // or stale. Scripts are read without holding the lock; a document read while its script is being saved gets 
+    // the hash of the content that was read, so it's tokenized again on the next update if it was stale.
+    void updateSearchIndex(ScriptSearchIndex search) {
+        Map<String, Entry> current;
+        synchronized(this) {
+            current = new HashMap<String, Entry>(entries);
+        }
+        Set<String> indexed = search.getDirectoryNames();
+        for(String directoryName : indexed) {
+            Entry entry = current.get(directoryName);
+            if (entry==null || entry.scriptName==null) search.remove(directoryName);
+        }
+        for(Entry entry : current.values()) {
+            if (entry.scriptName==null) continue;
+            ScriptSearchIndex.Document document = search.getDocument(entry.directoryName);
+            if (document!=null && document.contentHash==entry.contentHash && 
+                    document.scriptName.equals(entry.scriptName)) {
+                continue;
+            }
+            ScriptFile scriptFile = new ScriptFile(new File(baseDirectory, entry.directoryName).getPath(), 
+                    entry.scriptName, null, null);
+            try {
+                byte[] content = JavaUtils.readFile(new File(scriptFile.scriptPath()));
+                search.put(ScriptSearchIndex.documentForScript(entry.directoryName, entry.scriptName, 
+                        new String(content, "utf-8"), contentHash(content)));
+            }
+            catch(IOException ex) {
+                // deleted since it was indexed, the next refresh removes its entry
+                search.remove(entry.directoryName);
+            }
+        }
+        if (search.isModified()) {
+            scheduleWrite();
+        }
+    }
+    
+    // Writes the index file on the background thread. Changes made before the write starts are included in it, 
+    // so a burst of saves results in one write.
+    synchronized void scheduleWrite() {
+        if (writeScheduled) return;
+        writeScheduled = true;
+        backgroundExecutor.execute(new Runnable() {
+            public void run() {
+                try {
+                    write();
+                }
+                catch(Exception ex) {
+                    // the index is rebuilt from the script directories if it's missing or stale
+                }
+            }
+        });
+    }
+    
+    /** Writes the index file now, replacing it atomically so a reader never sees a partial index. */
+    public void write() throws Exception {
+        synchronized(fileLock) {
+            writeFile();
+        }
+    }
+    
+    void writeFile() throws Exception {
+        String text;
+        synchronized(this) {
+            writeScheduled = false;
+            JSONArray scripts = new JSONArray();
+            for(Entry entry : entries.values()) {
+                scripts.put(entry.toJSON());
+            }
+            JSONObject json = new JSONObject();
+            json.put(VERSION_KEY, VERSION);
+            json.put(SCRIPTS_KEY, scripts);
+            text = json.toString();
+        }
+        if (!baseDirectory.isDirectory()) return;
+        File newFile = new File(baseDirectory, INDEX_FILENAME + ".new");
+        Writer out = new OutputStreamWriter(new FileOutputStream(newFile), "utf-8");
+        try {
+            out.write(text);
+        }
+        finally {
+            out.close();
+        }
+        if (!newFile.renameTo(indexFile())) {
+            throw new IOException("Unable to replace " + indexFile());
+        }
+        ScriptSearchIndex search;
+        synchronized(this) {
+            search = searchIndex;
+        }
+        if (search!=null) {
+            search.writeFile(searchIndexFile());
+        }
+    }
+}
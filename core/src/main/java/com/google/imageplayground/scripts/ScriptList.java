@@ -19,34 +19,67 @@ package com.google.imageplayground.scripts;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 public class ScriptList {
     
+    /** Notified when scripts that were added or changed outside the app have been indexed. */
+    public interface Listener {
+        /** Called on a background thread. A new ScriptList for the same directory will include the changes. */
+        void scriptFilesChanged(ScriptList scriptList);
+    }
+    
     String baseDirectory;
     List<ScriptFile> scriptFiles;
+    Listener listener;
     
     public ScriptList(String baseDirectory) {
         this.baseDirectory = baseDirectory;
     }
     
+    public void setListener(Listener value) {
+        listener = value;
+    }
+    
+    /** Returns the scripts in the directory sorted by name, from the library's index. If the index is out of date 
+     * because scripts were changed outside the app, the indexed scripts are returned immediately and the index is
+     * refreshed in the background, after which the listener is notified. If there's no index yet it's built first.
+     */
     public List<ScriptFile> getScriptFiles() {
         if (this.scriptFiles==null) {
-            this.scriptFiles = new ArrayList<ScriptFile>();
-            File dir = new File(baseDirectory);
-            if (dir.isDirectory()) {
-                for(File f : dir.listFiles()) {
-                    if (f.isDirectory()) {
-                        ScriptFile sf = ScriptFile.loadFromDirectory(f);
-                        if (sf!=null) {
-                            this.scriptFiles.add(sf);
-                        }
+            ScriptIndex index = ScriptIndex.forDirectory(baseDirectory);
+            if (!index.isLoadedFromFile()) {
+                index.refresh();
+            }
+            else if (!index.isCurrent()) {
+                index.refreshInBackground(new Runnable() {
+                    public void run() {
+                        Listener currentListener = listener;
+                        if (currentListener!=null) currentListener.scriptFilesChanged(ScriptList.this);
                     }
-                }
+                });
             }
+            this.scriptFiles = index.getScriptFiles();
         }
         return this.scriptFiles;
     }
     
+    /** Returns the scripts matching a query in the format of ScriptSearchIndex.Query.parse, sorted by name. The 
+     * library's search index is built or updated first, which reads any scripts changed since it was last written,
+     * so this should be called on a background thread.
+     */
+    public List<ScriptFile> search(String queryText) {
+        ScriptSearchIndex searchIndex = ScriptIndex.forDirectory(baseDirectory).getSearchIndex();
+        Set<String> directoryNames = searchIndex.search(ScriptSearchIndex.Query.parse(queryText));
+        List<ScriptFile> matches = new ArrayList<ScriptFile>();
+        for(ScriptFile scriptFile : getScriptFiles()) {
+            if (directoryNames.contains(new File(scriptFile.getDirectoryPath()).getName())) {
+                matches.add(scriptFile);
+            }
+        }
+        return matches;
+    }
+    
     public ScriptFile createNewScriptFile(String scriptName, String scriptContent) {
         // find a directory name that doesn't conflict
         String dirname = baseDirectory + File.separator + findUniqueDirectoryName(scriptName);
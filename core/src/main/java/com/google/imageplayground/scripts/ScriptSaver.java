@@ -0,0 +1,200 @@
+/* 
+ * Copyright 2012 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.imageplayground.scripts;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes scripts and other saved state on a background thread, so that editing a script doesn't cause disk I/O on
+ * the UI or camera threads. Writes are identified by keys, and a write that hasn't started yet is replaced by a 
+ * later one with the same key, so a burst of edits results in one write of the latest content. Scripts are saved
+ * without syncing to disk, which is enough for a rename to replace the old file atomically; flush saves each script
+ * saved since the last flush again with sync, and should be called when the app is paused and may be killed. Other
+ * writes, such as preference commits, are durable once made and aren't repeated by flush.
+ */
+public class ScriptSaver {
+    
+    /** A write that can be replaced by a later one with the same key. */
+    public interface Write {
+        /** Performs the write. If sync is true the data must be on disk when this returns. */
+        void write(boolean sync) throws Exception;
+    }
+    
+    // how long writeLater waits, so that further edits are included in the same write
+    public static final long DEFAULT_DELAY_MILLIS = 1000;
+    
+    static final String SCRIPT_KEY_PREFIX = "script:";
+    
+    final ScheduledExecutorService executor;
+    final long delayMillis;
+    // writes not yet started, in the order their keys were first added; guarded by this
+    Map<String, Write> pendingWrites = new LinkedHashMap<String, Write>();
+    // the last save of each script since the last flush, made again with sync when flushed; guarded by this
+    Map<String, Write> unsyncedWrites = new LinkedHashMap<String, Write>();
+    // time at which pending writes will be made, or 0 if none are scheduled
+    long scheduledTime = 0;
+    Future<?> scheduledRun;
+    boolean flushRequested = false;
+    // true while the background thread is making writes; guarded by this
+    boolean writing = false;
+    
+    public ScriptSaver() {
+        this(DEFAULT_DELAY_MILLIS);
+    }
+    
+    public ScriptSaver(long delayMillis) {
+        this.delayMillis = delayMillis;
+        this.executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "ScriptSaver");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+    
+    /** Writes after the delay given to the constructor, along with any other writes made in the meantime. */
+    public void writeLater(String key, Write write) {
+        schedule(key, write, delayMillis);
+    }
+    
+    /** Writes as soon as the background thread is free. Use for state that must not be lost if the app crashes 
+     * shortly afterwards.
+     */
+    public void writeSoon(String key, Write write) {
+        schedule(key, write, 0);
+    }
+    
+    /** Saves the content of a script after the delay, replacing any pending save of the same script. */
+    public void saveScriptLater(final ScriptFile scriptFile, final String content) {
+        writeLater(SCRIPT_KEY_PREFIX + scriptFile.getDirectoryPath(), new Write() {
+            public void write(boolean sync) throws Exception {
+                if (!scriptFile.saveScriptContent(content, sync)) {
+                    throw new IOException("Unable to save " + scriptFile.getDirectoryPath());
+                }
+            }
+        });
+    }
+    
+    synchronized void schedule(String key, Write write, long delay) {
+        pendingWrites.put(key, write);
+        long time = System.currentTimeMillis() + delay;
+        // an earlier scheduled run writes this too; a later one is left scheduled and does nothing
+        if (scheduledTime!=0 && scheduledTime<=time) return;
+        scheduledTime = time;
+        scheduledRun = executor.schedule(new Runnable() {
+            public void run() {
+                writePending();
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+    
+    /** Starts writing pending writes immediately, and syncs them and every script saved since the last flush to 
+     * disk. Returns without waiting for the writes to finish.
+     */
+    public void flush() {
+        synchronized(this) {
+            flushRequested = true;
+        }
+        executor.execute(new Runnable() {
+            public void run() {
+                writePending();
+            }
+        });
+    }
+    
+    /** Waits for writes scheduled before this call to finish, for up to the given time. Returns false if it timed 
+     * out or was interrupted.
+     */
+    public boolean waitForWrites(long timeoutMillis) {
+        Future<?> run;
+        synchronized(this) {
+            // a requested flush makes the pending writes without waiting for their scheduled time
+            run = (scheduledTime!=0 && !flushRequested) ? scheduledRun : null;
+        }
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        try {
+            if (run!=null) {
+                run.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            }
+            // runs after any flushes that were already queued
+            executor.submit(new Runnable() {
+                public void run() {}
+            }).get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            return true;
+        }
+        catch(Exception ex) {
+            return false;
+        }
+    }
+    
+    /** Returns true if there are writes that haven't been made yet or are in progress. */
+    public synchronized boolean hasPendingWrites() {
+        return writing || !pendingWrites.isEmpty();
+    }
+    
+    // Runs on the background thread. Writes are made without holding the lock, so new writes can be added while 
+    // a slow one is in progress; they're made by the run they scheduled.
+    void writePending() {
+        Map<String, Write> writes;
+        boolean sync;
+        synchronized(this) {
+            sync = flushRequested;
+            flushRequested = false;
+            scheduledTime = 0;
+            scheduledRun = null;
+            if (sync) {
+                writes = unsyncedWrites;
+                writes.putAll(pendingWrites);
+                unsyncedWrites = new LinkedHashMap<String, Write>();
+            }
+            else {
+                writes = pendingWrites;
+                for(Map.Entry<String, Write> entry : pendingWrites.entrySet()) {
+                    if (entry.getKey().startsWith(SCRIPT_KEY_PREFIX)) {
+                        unsyncedWrites.put(entry.getKey(), entry.getValue());
+                    }
+                }
+            }
+            pendingWrites = new LinkedHashMap<String, Write>();
+            if (writes.isEmpty()) return;
+            writing = true;
+        }
+        try {
+            for(Write write : writes.values()) {
+                try {
+                    write.write(sync);
+                }
+                catch(Exception ex) {
+                    // the content is still in the editor, and is written again by the next save
+                }
+            }
+        }
+        finally {
+            synchronized(this) {
+                writing = false;
+            }
+        }
+    }
+}
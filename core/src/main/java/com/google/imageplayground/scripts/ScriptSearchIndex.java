@@ -0,0 +1,454 @@
+/* 
+ * Copyright 2012 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.imageplayground.scripts;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.antlr.runtime.ANTLRStringStream;
+import org.antlr.runtime.Token;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.google.imageplayground.codegen.DexImageScript;
+import com.google.imageplayground.parser.ScriptGrammarLexer;
+import com.google.imageplayground.util.JavaUtils;
+
+/**
+ * Inverted index of the tokens in a script library, used to find scripts by the identifiers and builtin functions
+ * they use, their script type, and the words in their names. Each script's tokens are read with ScriptGrammarLexer
+ * and stored with its content hash, so a script is only tokenized again when its content changes. The tokens are
+ * persisted in a file next to the library's index file, and the inverted maps are rebuilt from them when loaded.
+ * Instances are owned by ScriptIndex, which keeps them in sync with the library; see ScriptIndex.getSearchIndex.
+ */
+public class ScriptSearchIndex {
+    
+    static final String SEARCH_FILENAME = "search.json";
+    // version 2 classifies script types with DexImageScript's variable rule, older files are rebuilt
+    static final int VERSION = 2;
+    
+    static final String VERSION_KEY = "version";
+    static final String SCRIPTS_KEY = "scripts";
+    static final String DIRECTORY_KEY = "dir";
+    static final String NAME_KEY = "name";
+    static final String HASH_KEY = "hash";
+    static final String TYPE_KEY = "type";
+    static final String IDENTIFIERS_KEY = "ids";
+    static final String BUILTINS_KEY = "builtins";
+    
+    // script types, matching the rules DexImageScript uses to choose how a script is run
+    public static final String TYPE_GRAYSCALE = "grayscale";
+    public static final String TYPE_COLOR = "color";
+    public static final String TYPE_MANUAL = "manual";
+    
+    static final String BUILTIN_PREFIX = "builtin:";
+    static final String TYPE_PREFIX = "type:";
+    
+    /** The searchable tokens of one script. Identifiers and builtins are lowercase. */
+    public static class Document {
+        public final String directoryName;
+        public final String scriptName;
+        public final long contentHash;
+        public final String scriptType;
+        public final Set<String> identifiers;
+        public final Set<String> builtins;
+        
+        Document(String directoryName, String scriptName, long contentHash, String scriptType,
+                Set<String> identifiers, Set<String> builtins) {
+            this.directoryName = directoryName;
+            this.scriptName = scriptName;
+            this.contentHash = contentHash;
+            this.scriptType = scriptType;
+            this.identifiers = identifiers;
+            this.builtins = builtins;
+        }
+        
+        JSONObject toJSON() throws Exception {
+            JSONObject json = new JSONObject();
+            json.put(DIRECTORY_KEY, directoryName);
+            json.put(NAME_KEY, scriptName);
+            json.put(HASH_KEY, contentHash);
+            json.put(TYPE_KEY, scriptType);
+            json.put(IDENTIFIERS_KEY, jsonArrayForSet(identifiers));
+            json.put(BUILTINS_KEY, jsonArrayForSet(builtins));
+            return json;
+        }
+        
+        static Document fromJSON(JSONObject json) throws Exception {
+            return new Document(json.getString(DIRECTORY_KEY), json.getString(NAME_KEY), json.getLong(HASH_KEY),
+                    json.getString(TYPE_KEY), setForJSONArray(json.getJSONArray(IDENTIFIERS_KEY)),
+                    setForJSONArray(json.getJSONArray(BUILTINS_KEY)));
+        }
+    }
+    
+    /**
+     * Conditions a script must meet to be returned by search. Every prefix must begin an identifier or builtin the
+     * script uses or a word of its name, every required builtin must be called by the script, and if a script type
+     * is set the script must have that type. All comparisons ignore case.
+     */
+    public static class Query {
+        final List<String> prefixes = new ArrayList<String>();
+        final Set<String> builtins = new HashSet<String>();
+        String scriptType;
+        
+        public void addPrefix(String prefix) {
+            prefixes.add(prefix.toLowerCase());
+        }
+        
+        public void requireBuiltin(String builtin) {
+            builtins.add(builtin.toLowerCase());
+        }
+        
+        public void setScriptType(String value) {
+            scriptType = (value!=null) ? value.toLowerCase() : null;
+        }
+        
+        /** Returns true if the query has no conditions, in which case it matches every script. */
+        public boolean isEmpty() {
+            return prefixes.isEmpty() && builtins.isEmpty() && scriptType==null;
+        }
+        
+        /** Parses a query from whitespace-separated terms, as typed in a search field. Terms of the form
+         * "builtin:name" require a builtin and "type:color" requires a script type, other terms are prefixes.
+         */
+        public static Query parse(String text) {
+            Query query = new Query();
+            for(String term : text.trim().split("\\s+")) {
+                String lower = term.toLowerCase();
+                if (lower.startsWith(BUILTIN_PREFIX)) {
+                    if (lower.length()>BUILTIN_PREFIX.length()) query.requireBuiltin(lower.substring(BUILTIN_PREFIX.length()));
+                }
+                else if (lower.startsWith(TYPE_PREFIX)) {
+                    if (lower.length()>TYPE_PREFIX.length()) query.setScriptType(lower.substring(TYPE_PREFIX.length()));
+                }
+                else if (lower.length()>0) {
+                    query.addPrefix(lower);
+                }
+            }
+            return query;
+        }
+    }
+    
+    // all of these are keyed by directory name and guarded by this
+    Map<String, Document> documents = new HashMap<String, Document>();
+    // identifiers, builtins and name words, sorted for prefix lookups
+    TreeMap<String, Set<String>> termIndex = new TreeMap<String, Set<String>>();
+    Map<String, Set<String>> builtinIndex = new HashMap<String, Set<String>>();
+    Map<String, Set<String>> typeIndex = new HashMap<String, Set<String>>();
+    // true if documents changed since the file was read or written
+    boolean modified = false;
+    
+    /** Returns the indexed document for a script directory, or null if it isn't indexed. */
+    public synchronized Document getDocument(String directoryName) {
+        return documents.get(directoryName);
+    }
+    
+    synchronized Set<String> getDirectoryNames() {
+        return new HashSet<String>(documents.keySet());
+    }
+    
+    synchronized boolean isModified() {
+        return modified;
+    }
+    
+    synchronized int size() {
+        return documents.size();
+    }
+    
+    /** Adds or replaces the document for its directory. */
+    synchronized void put(Document document) {
+        removeFromIndexes(documents.put(document.directoryName, document));
+        String dir = document.directoryName;
+        for(String identifier : document.identifiers) {
+            addPosting(termIndex, identifier, dir);
+        }
+        for(String builtin : document.builtins) {
+            addPosting(termIndex, builtin, dir);
+            addPosting(builtinIndex, builtin, dir);
+        }
+        for(String word : wordsInName(document.scriptName)) {
+            addPosting(termIndex, word, dir);
+        }
+        addPosting(typeIndex, document.scriptType, dir);
+        modified = true;
+    }
+    
+    /** Removes the document for a directory, if it's indexed. */
+    synchronized void remove(String directoryName) {
+        Document document = documents.remove(directoryName);
+        if (document!=null) {
+            removeFromIndexes(document);
+            modified = true;
+        }
+    }
+    
+    void removeFromIndexes(Document document) {
+        if (document==null) return;
+        String dir = document.directoryName;
+        for(String identifier : document.identifiers) {
+            removePosting(termIndex, identifier, dir);
+        }
+        for(String builtin : document.builtins) {
+            removePosting(termIndex, builtin, dir);
+            removePosting(builtinIndex, builtin, dir);
+        }
+        for(String word : wordsInName(document.scriptName)) {
+            removePosting(termIndex, word, dir);
+        }
+        removePosting(typeIndex, document.scriptType, dir);
+    }
+    
+    static void addPosting(Map<String, Set<String>> index, String term, String dir) {
+        Set<String> dirs = index.get(term);
+        if (dirs==null) {
+            dirs = new HashSet<String>();
+            index.put(term, dirs);
+        }
+        dirs.add(dir);
+    }
+    
+    static void removePosting(Map<String, Set<String>> index, String term, String dir) {
+        Set<String> dirs = index.get(term);
+        if (dirs!=null) {
+            dirs.remove(dir);
+            if (dirs.isEmpty()) index.remove(term);
+        }
+    }
+    
+    /** Returns the names of the directories whose scripts match the query. Each condition is a lookup in one of
+     * the inverted maps, and the results are intersected starting with the smallest, so the time taken depends on
+     * the number of matching scripts rather than the size of the library.
+     */
+    public synchronized Set<String> search(Query query) {
+        if (query.isEmpty()) return new HashSet<String>(documents.keySet());
+        List<Set<String>> matches = new ArrayList<Set<String>>();
+        for(String builtin : query.builtins) {
+            matches.add(postings(builtinIndex, builtin));
+        }
+        if (query.scriptType!=null) {
+            matches.add(postings(typeIndex, query.scriptType));
+        }
+        for(String prefix : query.prefixes) {
+            matches.add(prefixPostings(prefix));
+        }
+        Set<String> smallest = matches.get(0);
+        for(Set<String> match : matches) {
+            if (match.size()<smallest.size()) smallest = match;
+        }
+        Set<String> result = new HashSet<String>(smallest);
+        for(Set<String> match : matches) {
+            if (match!=smallest) result.retainAll(match);
+            if (result.isEmpty()) break;
+        }
+        return result;
+    }
+    
+    static Set<String> postings(Map<String, Set<String>> index, String term) {
+        Set<String> dirs = index.get(term);
+        return (dirs!=null) ? dirs : Collections.<String>emptySet();
+    }
+    
+    Set<String> prefixPostings(String prefix) {
+        Map<String, Set<String>> terms = termIndex.subMap(prefix, prefix + Character.MAX_VALUE);
+        if (terms.size()==1) return terms.values().iterator().next();
+        Set<String> dirs = new HashSet<String>();
+        for(Set<String> termDirs : terms.values()) {
+            dirs.addAll(termDirs);
+        }
+        return dirs;
+    }
+    
+    /** Returns the indexed identifiers and builtins that start with the given prefix, for completing search terms. */
+    public synchronized List<String> termsWithPrefix(String prefix) {
+        prefix = prefix.toLowerCase();
+        return new ArrayList<String>(termIndex.subMap(prefix, prefix + Character.MAX_VALUE).keySet());
+    }
+    
+    static List<String> wordsInName(String scriptName) {
+        List<String> words = new ArrayList<String>();
+        for(String word : scriptName.toLowerCase().split("[^\\p{L}\\p{N}]+")) {
+            if (word.length()>0) words.add(word);
+        }
+        return words;
+    }
+    
+    /** Tokenizes a script and returns its document. Content the lexer can't recognize is skipped, so scripts with
+     * syntax errors are still indexed by their valid tokens.
+     */
+    public static Document documentForScript(String directoryName, String scriptName, String content, long contentHash) {
+        ScriptGrammarLexer lexer = new ScriptGrammarLexer(new ANTLRStringStream(content)) {
+            @Override public void emitErrorMessage(String msg) {
+                // invalid characters are skipped silently, the compiler reports them when the script is run
+            }
+        };
+        List<Token> tokens = new ArrayList<Token>();
+        for(Token token=lexer.nextToken(); token.getType()!=ScriptGrammarLexer.EOF; token=lexer.nextToken()) {
+            tokens.add(token);
+        }
+        return documentForTokens(directoryName, scriptName, tokens, contentHash);
+    }
+    
+    static Document documentForTokens(String directoryName, String scriptName, List<Token> tokens, long contentHash) {
+        Set<String> identifiers = new TreeSet<String>();
+        Set<String> builtins = new TreeSet<String>();
+        boolean hasReturn = false;
+        boolean usesColor = false;
+        // top-level statements that only call a prologue function don't run per pixel; track them like the 
+        // compiler does so their variables don't make the script a color script
+        int depth = 0;
+        boolean statementStart = true;
+        int prologueEnd = -1;
+        for(int i=0; i<tokens.size(); i++) {
+            Token token = tokens.get(i);
+            if (i>prologueEnd && depth==0 && statementStart && token.getType()==ScriptGrammarLexer.ID && 
+                    DexImageScript.isPrologueFunction(token.getText())) {
+                int end = closingParenthesis(tokens, i+1);
+                if (end>=0 && (end+1==tokens.size() || tokens.get(end+1).getType()==ScriptGrammarLexer.NEWLINE)) {
+                    prologueEnd = end;
+                }
+            }
+            statementStart = (token.getType()==ScriptGrammarLexer.NEWLINE);
+            if ("{".equals(token.getText())) depth++;
+            if ("}".equals(token.getText())) depth = Math.max(0, depth-1);
+            
+            if (token.getType()==ScriptGrammarLexer.ID) {
+                String text = token.getText();
+                // the language has no user-defined functions, so every call is to a builtin
+                boolean isCall = (i+1<tokens.size()) && "(".equals(tokens.get(i+1).getText());
+                if (isCall) {
+                    builtins.add(text.toLowerCase());
+                }
+                else {
+                    identifiers.add(text.toLowerCase());
+                    if (i>prologueEnd && DexImageScript.isColorScriptVariable(text)) usesColor = true;
+                }
+            }
+            else if ("return".equals(token.getText())) {
+                hasReturn = true;
+            }
+        }
+        String scriptType = !hasReturn ? TYPE_MANUAL : (usesColor ? TYPE_COLOR : TYPE_GRAYSCALE);
+        return new Document(directoryName, scriptName, contentHash, scriptType, identifiers, builtins);
+    }
+    
+    // Returns the index of the ")" matching the "(" at index open, or -1 if there isn't one.
+    static int closingParenthesis(List<Token> tokens, int open) {
+        if (open>=tokens.size() || !"(".equals(tokens.get(open).getText())) return -1;
+        int depth = 0;
+        for(int i=open; i<tokens.size(); i++) {
+            String text = tokens.get(i).getText();
+            if ("(".equals(text)) depth++;
+            if (")".equals(text) && --depth==0) return i;
+        }
+        return -1;
+    }
+    
+    /** Reads the documents from a file written by writeFile, replacing any in memory. Returns false and leaves the
+     * index empty if the file is missing or can't be read.
+     */
+    synchronized boolean load(File file) {
+        documents.clear();
+        termIndex.clear();
+        builtinIndex.clear();
+        typeIndex.clear();
+        modified = false;
+        try {
+            JSONObject json = new JSONObject(JavaUtils.readFileAsString(file));
+            if (json.optInt(VERSION_KEY)!=VERSION) return false;
+            JSONArray scripts = json.getJSONArray(SCRIPTS_KEY);
+            for(int i=0; i<scripts.length(); i++) {
+                put(Document.fromJSON(scripts.getJSONObject(i)));
+            }
+            modified = false;
+            return true;
+        }
+        catch(Exception ex) {
+            // missing or corrupt, every script is tokenized again
+            documents.clear();
+            termIndex.clear();
+            builtinIndex.clear();
+            typeIndex.clear();
+            return false;
+        }
+    }
+    
+    /** Writes the documents to a file if they changed since they were last read or written, replacing it
+     * atomically. The caller must prevent concurrent writes to the same file.
+     */
+    void writeFile(File file) throws Exception {
+        String text;
+        synchronized(this) {
+            if (!modified) return;
+            modified = false;
+            JSONArray scripts = new JSONArray();
+            for(Document document : documents.values()) {
+                scripts.put(document.toJSON());
+            }
+            JSONObject json = new JSONObject();
+            json.put(VERSION_KEY, VERSION);
+            json.put(SCRIPTS_KEY, scripts);
+            text = json.toString();
+        }
+        File newFile = new File(file.getPath() + ".new");
+        try {
+            Writer out = new OutputStreamWriter(new FileOutputStream(newFile), "utf-8");
+            try {
+                out.write(text);
+            }
+            finally {
+                out.close();
+            }
+            if (!newFile.renameTo(file)) {
+                throw new IOException("Unable to replace " + file);
+            }
+        }
+        catch(Exception ex) {
+            synchronized(this) {
+                modified = true;
+            }
+            throw ex;
+        }
+    }
+    
+    static JSONArray jsonArrayForSet(Set<String> values) {
+        JSONArray array = new JSONArray();
+        for(String value : values) {
+            array.put(value);
+        }
+        return array;
+    }
+    
+    static Set<String> setForJSONArray(JSONArray array) throws Exception {
+        Set<String> values = new TreeSet<String>();
+        for(int i=0; i<array.length(); i++) {
+            values.add(array.getString(i));
+        }
+        return values;
+    }
+}
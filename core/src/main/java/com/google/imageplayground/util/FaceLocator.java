@@ -0,0 +1,63 @@
+/* 
+ * Copyright 2012 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.imageplayground.util;
+
+/**
+ * Finds faces in NV21 image data for FaceTracker. The app implements this with FaceFinder, which uses the Android 
+ * FaceDetector; NO_FACES is used where no detector is available.
+ */
+public interface FaceLocator {
+    
+    /**
+     * Detects faces in the image. After calling this method, the getter methods return values for the faces found.
+     * 
+     * @param data image data in NV21 format, only the brightness values are used
+     * @return number of faces detected in the image
+     */
+    int findFacesInCameraData(byte[] data, int width, int height);
+    
+    /** Returns the confidence value scaled from 0 to 100 for the given face index. */
+    int getConfidence(int index);
+    
+    /** Returns the x position of the face midpoint for the given face index. */
+    int getMidpointX(int index);
+    
+    /** Returns the y position of the face midpoint for the given face index. */
+    int getMidpointY(int index);
+    
+    /** Returns the distance between the eyes for the given face index. */
+    int getEyesDistance(int index);
+    
+    /** A FaceLocator that never finds any faces. */
+    static final FaceLocator NO_FACES = new FaceLocator() {
+        public int findFacesInCameraData(byte[] data, int width, int height) {
+            return 0;
+        }
+        public int getConfidence(int index) {
+            return -1;
+        }
+        public int getMidpointX(int index) {
+            return -1;
+        }
+        public int getMidpointY(int index) {
+            return -1;
+        }
+        public int getEyesDistance(int index) {
+            return -1;
+        }
+    };
+}
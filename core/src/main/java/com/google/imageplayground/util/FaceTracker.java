@@ -0,0 +1,228 @@
+/* 
+ * Copyright 2012 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.imageplayground.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs face detection on a background thread every few frames, and estimates face positions for the frames in 
+ * between by extrapolating each face's motion between the two most recent detections. Callers should call update()
+ * once per frame, which never waits for detection; the getter methods then return values for that frame.
+ */
+public class FaceTracker {
+    
+    static final int DEFAULT_DETECTION_INTERVAL = 3;
+    public static final int DEFAULT_MAX_FACES = 10;
+    
+    FaceLocator faceFinder;
+    int maxFaces;
+    ExecutorService detectionExecutor;
+    int detectionInterval = DEFAULT_DETECTION_INTERVAL;
+    
+    // brightness values copied from the frame being detected, since camera buffers are reused
+    byte[] detectionData;
+    int lastSubmittedFrame;
+    boolean hasSubmittedFrame = false;
+    
+    // results of the most recent detection and velocities in pixels per frame, guarded by this
+    boolean detectionRunning = false;
+    int detectedFrame;
+    int detectedCount = 0;
+    float[] detectedX, detectedY, velocityX, velocityY;
+    int[] detectedDistance, detectedConfidence;
+    
+    // estimated values for the current frame, only accessed from the thread calling update
+    int numFaces = 0;
+    int[] faceX, faceY, faceDistance, faceConfidence;
+    
+    public FaceTracker(FaceLocator faceFinder, int maxFaces) {
+        this.faceFinder = faceFinder;
+        this.maxFaces = maxFaces;
+        detectedX = new float[maxFaces];
+        detectedY = new float[maxFaces];
+        velocityX = new float[maxFaces];
+        velocityY = new float[maxFaces];
+        detectedDistance = new int[maxFaces];
+        detectedConfidence = new int[maxFaces];
+        faceX = new int[maxFaces];
+        faceY = new int[maxFaces];
+        faceDistance = new int[maxFaces];
+        faceConfidence = new int[maxFaces];
+    }
+    
+    /** Uses a FaceLocator that never finds faces, for tests and environments without a face detector. */
+    public FaceTracker() {
+        this(FaceLocator.NO_FACES, DEFAULT_MAX_FACES);
+    }
+    
+    /** Sets how often face detection runs, in frames. Detection may run less often if it takes longer than 
+     * the given number of frames. */
+    public void setDetectionInterval(int frames) {
+        detectionInterval = Math.max(1, frames);
+    }
+    
+    public int getDetectionInterval() {
+        return detectionInterval;
+    }
+    
+    /** Starts face detection on the image data in the background if the detection interval has passed and no
+     * detection is in progress, and updates the estimated face positions for the given frame number.
+     * 
+     * @param data image data in NV21 format, only the brightness values are used
+     */
+    public void update(byte[] data, int width, int height, int frameNumber) {
+        boolean startDetection;
+        synchronized(this) {
+            startDetection = !detectionRunning && 
+                    (!hasSubmittedFrame || frameNumber - lastSubmittedFrame >= detectionInterval);
+            if (startDetection) detectionRunning = true;
+        }
+        if (startDetection) {
+            submitDetection(data, width, height, frameNumber);
+        }
+        updateEstimates(frameNumber);
+    }
+    
+    void submitDetection(byte[] data, final int width, final int height, final int frameNumber) {
+        int size = width*height;
+        if (detectionData==null || detectionData.length!=size) {
+            detectionData = new byte[size];
+        }
+        System.arraycopy(data, 0, detectionData, 0, size);
+        lastSubmittedFrame = frameNumber;
+        hasSubmittedFrame = true;
+        
+        if (detectionExecutor==null) {
+            detectionExecutor = Executors.newSingleThreadExecutor();
+        }
+        detectionExecutor.execute(new Runnable() {
+            public void run() {
+                int count = 0;
+                int[] x = new int[0], y = x, distance = x, confidence = x;
+                try {
+                    int found = faceFinder.findFacesInCameraData(detectionData, width, height);
+                    x = new int[found];
+                    y = new int[found];
+                    distance = new int[found];
+                    confidence = new int[found];
+                    for(int i=0; i<found; i++) {
+                        x[i] = faceFinder.getMidpointX(i);
+                        y[i] = faceFinder.getMidpointY(i);
+                        distance[i] = faceFinder.getEyesDistance(i);
+                        confidence[i] = faceFinder.getConfidence(i);
+                    }
+                    count = found;
+                }
+                catch(RuntimeException ex) {
+                    // no faces for this frame, detection is retried with a later one
+                }
+                finally {
+                    // always record a result, even if the detector threw an Error, otherwise detectionRunning
+                    // would stay set and detection would never run again
+                    addDetection(frameNumber, count, x, y, distance, confidence);
+                }
+            }
+        });
+    }
+    
+    /** Stops the detection thread. A detection already running finishes in the background; the thread is started
+     * again if update() starts another detection.
+     */
+    public void shutdown() {
+        if (detectionExecutor!=null) {
+            detectionExecutor.shutdown();
+            detectionExecutor = null;
+        }
+    }
+    
+    /** Records the faces found in the given frame. Each face is matched to the nearest face from the previous 
+     * detection, if one is close enough, to estimate its velocity.
+     */
+    synchronized void addDetection(int frameNumber, int count, int[] x, int[] y, int[] distance, int[] confidence) {
+        count = Math.min(count, maxFaces);
+        int elapsedFrames = frameNumber - detectedFrame;
+        float[] newVelocityX = new float[count], newVelocityY = new float[count];
+        for(int i=0; i<count; i++) {
+            // faces that moved more than their eye distance probably aren't the same face
+            int match = -1;
+            float bestDistanceSquared = (float)distance[i] * distance[i];
+            for(int j=0; j<detectedCount; j++) {
+                float dx = x[i] - detectedX[j], dy = y[i] - detectedY[j];
+                if (dx*dx + dy*dy <= bestDistanceSquared) {
+                    bestDistanceSquared = dx*dx + dy*dy;
+                    match = j;
+                }
+            }
+            if (match>=0 && elapsedFrames>0) {
+                newVelocityX[i] = (x[i] - detectedX[match]) / elapsedFrames;
+                newVelocityY[i] = (y[i] - detectedY[match]) / elapsedFrames;
+            }
+        }
+        for(int i=0; i<count; i++) {
+            detectedX[i] = x[i];
+            detectedY[i] = y[i];
+            velocityX[i] = newVelocityX[i];
+            velocityY[i] = newVelocityY[i];
+            detectedDistance[i] = distance[i];
+            detectedConfidence[i] = confidence[i];
+        }
+        detectedCount = count;
+        detectedFrame = frameNumber;
+        detectionRunning = false;
+    }
+    
+    synchronized void updateEstimates(int frameNumber) {
+        int elapsedFrames = frameNumber - detectedFrame;
+        for(int i=0; i<detectedCount; i++) {
+            faceX[i] = Math.round(detectedX[i] + velocityX[i]*elapsedFrames);
+            faceY[i] = Math.round(detectedY[i] + velocityY[i]*elapsedFrames);
+            faceDistance[i] = detectedDistance[i];
+            faceConfidence[i] = detectedConfidence[i];
+        }
+        numFaces = detectedCount;
+    }
+    
+    /** Returns the number of faces for the frame passed to the last call to update. */
+    public int getNumberOfFaces() {
+        return numFaces;
+    }
+    
+    /** Returns the confidence value scaled from 0 to 100 for the given face index, or -1 if the index is out of range. */
+    public int getConfidence(int index) {
+        if (index<0 || index>=numFaces) return -1;
+        return faceConfidence[index];
+    }
+    
+    /** Returns the estimated x position of the face midpoint for the given face index, or -1 if the index is out of range. */
+    public int getMidpointX(int index) {
+        if (index<0 || index>=numFaces) return -1;
+        return faceX[index];
+    }
+    
+    /** Returns the estimated y position of the face midpoint for the given face index, or -1 if the index is out of range. */
+    public int getMidpointY(int index) {
+        if (index<0 || index>=numFaces) return -1;
+        return faceY[index];
+    }
+    
+    /** Returns the distance between the eyes for the given face index, or -1 if the index is out of range. */
+    public int getEyesDistance(int index) {
+        if (index<0 || index>=numFaces) return -1;
+        return faceDistance[index];
+    }
+}
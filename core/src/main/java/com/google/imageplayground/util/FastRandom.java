@@ -0,0 +1,73 @@
+/* 
+ * Copyright 2012 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.imageplayground.util;
+
+/** A small xorshift64* random number generator. Unlike java.util.Random it isn't thread safe, so each thread 
+ * should have its own instance, but it's much faster since it doesn't update an AtomicLong on every call.
+ */
+public class FastRandom {
+    
+    long state;
+    
+    /** Creates a generator seeded from the current time. */
+    public FastRandom() {
+        this(System.nanoTime() ^ System.identityHashCode(Thread.currentThread()));
+    }
+    
+    public FastRandom(long seed) {
+        setSeed(seed);
+    }
+    
+    /** Resets the generator so it produces the same sequence as any other generator with the same seed. */
+    public void setSeed(long seed) {
+        // xorshift state must not be 0, and similar seeds should give unrelated sequences
+        state = mix64(seed);
+        if (state==0) state = 0x9E3779B97F4A7C15L;
+    }
+    
+    /** Returns a random int with all 32 bits equally likely. */
+    public int nextInt() {
+        long x = state;
+        x ^= x >>> 12;
+        x ^= x << 25;
+        x ^= x >>> 27;
+        state = x;
+        return (int)((x * 0x2545F4914F6CDD1DL) >>> 32);
+    }
+    
+    /** Returns a random int from 0 to bound-1. Throws IllegalArgumentException if bound isn't positive, like Random. */
+    public int nextInt(int bound) {
+        if (bound<=0) throw new IllegalArgumentException("bound must be positive: " + bound);
+        // scale the 32 random bits to the range with a multiply instead of a slower and more biased remainder
+        return (int)(((nextInt() & 0xffffffffL) * bound) >>> 32);
+    }
+    
+    /** Returns a well-distributed 64-bit hash of the value (the finalizer from MurmurHash3). */
+    public static long mix64(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return z ^ (z >>> 33);
+    }
+    
+    /** Returns a hash of the three values, suitable for per-pixel noise which is the same every time it's computed. */
+    public static int hash(int a, int b, int c) {
+        long h = mix64(a + 0x9E3779B97F4A7C15L);
+        h = mix64(h ^ b);
+        h = mix64(h ^ c);
+        return (int)h;
+    }
+}
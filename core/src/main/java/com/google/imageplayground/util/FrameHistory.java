@@ -0,0 +1,125 @@
+/* 
+ * Copyright 2012 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.imageplayground.util;
+
+/** Stores copies of the brightness values of the most recent input frames and/or the most recent output pixels
+ * in ring buffers, so scripts can compare the current frame with earlier ones. The arrays are allocated once and 
+ * reused, unless the image size changes.
+ */
+public class FrameHistory {
+    
+    final int maxInputFrames;
+    final int maxOutputFrames;
+    
+    byte[][] inputFrames;
+    int[][] outputFrames;
+    // index of the most recently stored frame in each ring, and the number of frames stored
+    int inputHead = -1;
+    int outputHead = -1;
+    int numInputFrames = 0;
+    int numOutputFrames = 0;
+    
+    int width;
+    int height;
+    
+    /** Creates a history holding up to maxInputFrames brightness planes and maxOutputFrames output images. */
+    public FrameHistory(int maxInputFrames, int maxOutputFrames) {
+        this.maxInputFrames = maxInputFrames;
+        this.maxOutputFrames = maxOutputFrames;
+    }
+    
+    public int getMaxInputFrames() {
+        return maxInputFrames;
+    }
+    
+    public int getMaxOutputFrames() {
+        return maxOutputFrames;
+    }
+    
+    /** Returns the number of input frames stored, at most getMaxInputFrames(). */
+    public int getNumberOfInputFrames() {
+        return numInputFrames;
+    }
+    
+    /** Returns the number of output frames stored, at most getMaxOutputFrames(). */
+    public int getNumberOfOutputFrames() {
+        return numOutputFrames;
+    }
+    
+    // Allocates buffers for the image size, discarding stored frames if the size has changed.
+    void ensureSize(int width, int height) {
+        if (inputFrames!=null && width==this.width && height==this.height) return;
+        this.width = width;
+        this.height = height;
+        inputFrames = new byte[maxInputFrames][width*height];
+        outputFrames = new int[maxOutputFrames][width*height];
+        inputHead = outputHead = -1;
+        numInputFrames = numOutputFrames = 0;
+    }
+    
+    /** Copies the brightness values from NV21 image data into the input ring, replacing the oldest frame if it's full. */
+    public void addInputFrame(byte[] data, int width, int height) {
+        ensureSize(width, height);
+        if (maxInputFrames==0) return;
+        inputHead = (inputHead+1) % maxInputFrames;
+        System.arraycopy(data, 0, inputFrames[inputHead], 0, width*height);
+        if (numInputFrames<maxInputFrames) numInputFrames++;
+    }
+    
+    /** Copies ARGB output pixels into the output ring, replacing the oldest frame if it's full. */
+    public void addOutputFrame(int[] pixels, int width, int height) {
+        ensureSize(width, height);
+        if (maxOutputFrames==0) return;
+        outputHead = (outputHead+1) % maxOutputFrames;
+        System.arraycopy(pixels, 0, outputFrames[outputHead], 0, width*height);
+        if (numOutputFrames<maxOutputFrames) numOutputFrames++;
+    }
+    
+    // Returns the ring index of the frame n frames ago, where n=1 is the most recent. n is clamped to the
+    // stored frames, so asking for a frame older than any stored returns the oldest one.
+    static int ringIndex(int n, int head, int count, int capacity) {
+        if (n<1) n = 1;
+        if (n>count) n = count;
+        return (head - (n-1) + capacity) % capacity;
+    }
+    
+    /** Returns the brightness at the given position n frames ago, with row and col clamped to the image bounds. 
+     * Returns -1 if no input frames have been stored.
+     */
+    public int getBrightness(int n, int row, int col) {
+        if (numInputFrames==0) return -1;
+        byte[] frame = inputFrames[ringIndex(n, inputHead, numInputFrames, maxInputFrames)];
+        return 0xff & frame[clampedIndex(row, col)];
+    }
+    
+    /** Returns the ARGB output color at the given position n frames ago, with row and col clamped to the image bounds. 
+     * Returns opaque black if no output frames have been stored.
+     */
+    public int getOutputColor(int n, int row, int col) {
+        if (numOutputFrames==0) return 0xff000000;
+        int[] frame = outputFrames[ringIndex(n, outputHead, numOutputFrames, maxOutputFrames)];
+        return frame[clampedIndex(row, col)];
+    }
+    
+    int clampedIndex(int row, int col) {
+        if (row<0) row = 0;
+        if (row>=height) row = height-1;
+        if (col<0) col = 0;
+        if (col>=width) col = width-1;
+        return YuvUtils.yIndex(width, row, col);
+    }
+}
@@ -0,0 +1,105 @@
+/* 
+ * Copyright 2012 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.imageplayground.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Appends camera preview frames to a file so they can be replayed later from a FrameStore. The file is written 
+ * through a memory mapping that is extended in large chunks, so adding a frame is a copy into the mapped buffer
+ * rather than a write call. 
+ * <p>
+ * File format, big-endian: the int MAGIC and int VERSION, followed by frames which each have an int width, int 
+ * height, long timestamp in nanoseconds, int data length, and that many bytes of NV21 data.
+ */
+public class FrameRecorder {
+    
+    public static final String FILE_EXTENSION = ".nv21rec";
+    
+    static final int MAGIC = 0x4e563231; // "NV21"
+    static final int VERSION = 1;
+    static final int FILE_HEADER_SIZE = 8;
+    static final int FRAME_HEADER_SIZE = 20;
+    // the mapping grows by at least this much at a time; the file is truncated to the data written on close
+    static final int MAP_CHUNK_SIZE = 16 << 20;
+    
+    RandomAccessFile file;
+    FileChannel channel;
+    MappedByteBuffer buffer;
+    // file offset of the start of buffer
+    long bufferStart;
+    int frameCount = 0;
+    
+    /** Creates the file, replacing any existing file. */
+    public FrameRecorder(File path) throws IOException {
+        file = new RandomAccessFile(path, "rw");
+        file.setLength(0);
+        channel = file.getChannel();
+        mapFrom(0, FILE_HEADER_SIZE);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+    }
+    
+    void mapFrom(long start, int minimumSize) throws IOException {
+        bufferStart = start;
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, start, Math.max(minimumSize, MAP_CHUNK_SIZE));
+    }
+    
+    /** Returns the file offset at which the next frame will be written. */
+    long position() {
+        return bufferStart + buffer.position();
+    }
+    
+    /** Appends a frame of width*height NV21 data. */
+    public synchronized void addFrame(byte[] data, int width, int height, long timestampNanos) throws IOException {
+        if (channel==null) throw new IOException("Recorder is closed");
+        int length = YuvUtils.bufferSize(width, height);
+        int recordSize = FRAME_HEADER_SIZE + length;
+        if (buffer.remaining() < recordSize) {
+            mapFrom(position(), recordSize);
+        }
+        buffer.putInt(width);
+        buffer.putInt(height);
+        buffer.putLong(timestampNanos);
+        buffer.putInt(length);
+        buffer.put(data, 0, length);
+        frameCount++;
+    }
+    
+    public synchronized int getFrameCount() {
+        return frameCount;
+    }
+    
+    /** Writes any buffered data and truncates the file to the frames that were added. */
+    public synchronized void close() throws IOException {
+        if (channel==null) return;
+        try {
+            long end = position();
+            buffer.force();
+            buffer = null;
+            channel.truncate(end);
+        }
+        finally {
+            file.close();
+            channel = null;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/* 
+ * Copyright 2012 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.imageplayground.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Read-only random access to the frames of a file written by FrameRecorder, or of a raw file of back-to-back NV21 
+ * frames of one size. The file is indexed and memory mapped when it's opened, and getFrame returns a slice of the 
+ * mapping, so opening a large file doesn't read it and only the frames that are used get paged in. DexImageScript
+ * still copies each mapped frame into an array once per frame, because its samplers index an array; see 
+ * DexImageScript.computeOutputPixels(ByteBuffer, int, int). Files too large for one mapping are mapped as several 
+ * regions, with each frame entirely within one region.
+ */
+public class FrameStore {
+    
+    // smaller regions are easier to fit in a 32-bit address space than one large mapping
+    static final long MAX_REGION_SIZE = 256 << 20;
+    
+    List<MappedByteBuffer> regions = new ArrayList<MappedByteBuffer>();
+    int frameCount = 0;
+    long[] frameStart = new long[16];
+    int[] frameLength = new int[16];
+    int[] frameWidth = new int[16];
+    int[] frameHeight = new int[16];
+    long[] frameTimestamp = new long[16];
+    // region containing each frame, and the offset of its data in the region
+    int[] frameRegion;
+    int[] frameOffset;
+    
+    FrameStore() {
+    }
+    
+    /** Opens a file written by FrameRecorder. A recording that was never closed is read up to its last complete frame. */
+    public static FrameStore openRecording(File path) throws IOException {
+        return openRecording(path, MAX_REGION_SIZE);
+    }
+    
+    static FrameStore openRecording(File path, long maxRegionSize) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(path, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            long size = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(FrameRecorder.FRAME_HEADER_SIZE);
+            header.limit(FrameRecorder.FILE_HEADER_SIZE);
+            if (readFully(channel, header, 0)<FrameRecorder.FILE_HEADER_SIZE || header.getInt(0)!=FrameRecorder.MAGIC) {
+                throw new IOException("Not a frame recording: " + path);
+            }
+            int version = header.getInt(4);
+            if (version!=FrameRecorder.VERSION) {
+                throw new IOException("Unsupported recording version " + version + ": " + path);
+            }
+            
+            // only the frame headers are read here, the data is mapped once the frame positions are known
+            FrameStore store = new FrameStore();
+            long position = FrameRecorder.FILE_HEADER_SIZE;
+            while (true) {
+                header.clear();
+                if (readFully(channel, header, position) < FrameRecorder.FRAME_HEADER_SIZE) break;
+                int width = header.getInt(0), height = header.getInt(4), length = header.getInt(16);
+                long dataStart = position + FrameRecorder.FRAME_HEADER_SIZE;
+                // an unclosed recording ends with zeros or a partial frame
+                if (width<=0 || height<=0 || length<=0 || dataStart + length > size) break;
+                store.addFrame(dataStart, length, width, height, header.getLong(8));
+                position = dataStart + length;
+            }
+            store.mapRegions(channel, maxRegionSize);
+            return store;
+        }
+        finally {
+            // mappings stay valid after the file is closed
+            file.close();
+        }
+    }
+    
+    /** Opens a file of NV21 frames of the given size with nothing between them, such as a raw camera dump. Trailing
+     * bytes that don't make a whole frame are ignored, and every timestamp is 0.
+     */
+    public static FrameStore openRawFrames(File path, int width, int height) throws IOException {
+        int frameSize = YuvUtils.bufferSize(width, height);
+        RandomAccessFile file = new RandomAccessFile(path, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            long count = channel.size() / frameSize;
+            if (count > Integer.MAX_VALUE) {
+                throw new IOException("Too many frames in " + path);
+            }
+            FrameStore store = new FrameStore();
+            for(long i=0; i<count; i++) {
+                store.addFrame(i*frameSize, frameSize, width, height, 0);
+            }
+            store.mapRegions(channel, MAX_REGION_SIZE);
+            return store;
+        }
+        finally {
+            file.close();
+        }
+    }
+    
+    static int readFully(FileChannel channel, ByteBuffer dest, long position) throws IOException {
+        int total = 0;
+        while (dest.hasRemaining()) {
+            int count = channel.read(dest, position + total);
+            if (count<0) break;
+            total += count;
+        }
+        return total;
+    }
+    
+    void addFrame(long dataStart, int length, int width, int height, long timestamp) {
+        if (frameCount==frameStart.length) {
+            // Arrays.copyOf isn't available on API level 8
+            int capacity = frameCount * 2;
+            long[] newStart = new long[capacity], newTimestamp = new long[capacity];
+            int[] newLength = new int[capacity], newWidth = new int[capacity], newHeight = new int[capacity];
+            System.arraycopy(frameStart, 0, newStart, 0, frameCount);
+            System.arraycopy(frameTimestamp, 0, newTimestamp, 0, frameCount);
+            System.arraycopy(frameLength, 0, newLength, 0, frameCount);
+            System.arraycopy(frameWidth, 0, newWidth, 0, frameCount);
+            System.arraycopy(frameHeight, 0, newHeight, 0, frameCount);
+            frameStart = newStart;
+            frameTimestamp = newTimestamp;
+            frameLength = newLength;
+            frameWidth = newWidth;
+            frameHeight = newHeight;
+        }
+        frameStart[frameCount] = dataStart;
+        frameLength[frameCount] = length;
+        frameWidth[frameCount] = width;
+        frameHeight[frameCount] = height;
+        frameTimestamp[frameCount] = timestamp;
+        frameCount++;
+    }
+    
+    // Maps the frames in file order, starting a new region at a frame that would make the current one too large.
+    void mapRegions(FileChannel channel, long maxRegionSize) throws IOException {
+        frameRegion = new int[frameCount];
+        frameOffset = new int[frameCount];
+        int first = 0;
+        while (first<frameCount) {
+            long regionStart = frameStart[first];
+            int end = first + 1;
+            while (end<frameCount && frameStart[end] + frameLength[end] - regionStart <= maxRegionSize) {
+                end++;
+            }
+            long regionSize = frameStart[end-1] + frameLength[end-1] - regionStart;
+            regions.add(channel.map(FileChannel.MapMode.READ_ONLY, regionStart, regionSize));
+            for(int i=first; i<end; i++) {
+                frameRegion[i] = regions.size() - 1;
+                frameOffset[i] = (int)(frameStart[i] - regionStart);
+            }
+            first = end;
+        }
+    }
+    
+    public int getFrameCount() {
+        return frameCount;
+    }
+    
+    public int getWidth(int index) {
+        checkIndex(index);
+        return frameWidth[index];
+    }
+    
+    public int getHeight(int index) {
+        checkIndex(index);
+        return frameHeight[index];
+    }
+    
+    /** Returns the time the frame was recorded in nanoseconds, only meaningful relative to other frames. */
+    public long getTimestampNanos(int index) {
+        checkIndex(index);
+        return frameTimestamp[index];
+    }
+    
+    /** Returns a read-only buffer with the NV21 data of the frame, starting at index 0. The buffer shares the file 
+     * mapping, so it's cheap to create and doesn't copy the data. Each call returns a new buffer, so frames can be 
+     * read from several threads.
+     */
+    public ByteBuffer getFrame(int index) {
+        checkIndex(index);
+        // duplicate so the shared region's position and limit are never changed
+        ByteBuffer frame = regions.get(frameRegion[index]).duplicate();
+        frame.position(frameOffset[index]);
+        frame.limit(frameOffset[index] + frameLength[index]);
+        return frame.slice();
+    }
+    
+    void checkIndex(int index) {
+        if (index<0 || index>=frameCount) {
+            throw new IndexOutOfBoundsException("Frame " + index + " of " + frameCount);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/* 
+ * Copyright 2012 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.imageplayground.util;
+
+/** Integer versions of trig and square root functions using lookup tables instead of floating point. Angles are
+ * ints where Integer.MAX_VALUE is pi radians, so a full turn is 2^32 and angles wrap around on overflow.
+ */
+public class IntMath {
+    
+    // sin values for the first quadrant scaled by 2^30, plus an extra entry so interpolation can read index+1
+    static final int SIN_TABLE_BITS = 12;
+    static final int[] SIN_TABLE = new int[(1<<SIN_TABLE_BITS) + 2];
+    // atan of ratios from 0 to 1 as int angles, with the same extra entry
+    static final int ATAN_TABLE_BITS = 12;
+    static final int[] ATAN_TABLE = new int[(1<<ATAN_TABLE_BITS) + 2];
+    
+    static final double ANGLE_TO_INT = Integer.MAX_VALUE/Math.PI;
+    // pi and pi/2 as int angles, matching (int)(ANGLE_TO_INT*x) as used by DexImageScript
+    public static final int PI = (int)(ANGLE_TO_INT*Math.PI);
+    public static final int HALF_PI = (int)(ANGLE_TO_INT*Math.PI/2);
+    // largest value whose square fits in a long
+    static final long MAX_LONG_SQRT = 3037000499L;
+    
+    static {
+        int size = 1<<SIN_TABLE_BITS;
+        for(int i=0; i<=size; i++) {
+            SIN_TABLE[i] = (int)Math.round(Math.sin(Math.PI/2*i/size) * (1<<30));
+        }
+        SIN_TABLE[size+1] = SIN_TABLE[size];
+        
+        size = 1<<ATAN_TABLE_BITS;
+        for(int i=0; i<=size; i++) {
+            ATAN_TABLE[i] = (int)Math.round(ANGLE_TO_INT * Math.atan((double)i/size));
+        }
+        ATAN_TABLE[size+1] = ATAN_TABLE[size];
+    }
+    
+    /** Returns the sine of the angle scaled by 2^30. */
+    public static int sin30(int angle) {
+        // the top 2 bits are the quadrant, the other 30 are the position within it
+        int quadrant = angle >>> 30;
+        int offset = angle & 0x3fffffff;
+        // sin is symmetric around pi/2 and 3pi/2, so the second and fourth quadrants read the table backwards
+        if ((quadrant & 1)!=0) offset = 0x40000000 - offset;
+        int fractionBits = 30 - SIN_TABLE_BITS;
+        int index = offset >>> fractionBits;
+        int fraction = offset & ((1<<fractionBits) - 1);
+        int v0 = SIN_TABLE[index];
+        int value = v0 + (int)(((long)(SIN_TABLE[index+1] - v0) * fraction) >> fractionBits);
+        return (quadrant>=2) ? -value : value;
+    }
+    
+    /** Returns the cosine of the angle scaled by 2^30. */
+    public static int cos30(int angle) {
+        // cos(x) = sin(x + pi/2), and a quarter turn is 2^30
+        return sin30(angle + 0x40000000);
+    }
+    
+    /** Returns the sine of the angle multiplied by scale, rounded to the nearest int. */
+    public static int sinmult(int angle, int scale) {
+        return (int)((sin30(angle) * (long)scale + (1L<<29)) >> 30);
+    }
+    
+    /** Returns the cosine of the angle multiplied by scale, rounded to the nearest int. */
+    public static int cosmult(int angle, int scale) {
+        return (int)((cos30(angle) * (long)scale + (1L<<29)) >> 30);
+    }
+    
+    /** Returns the largest integer whose square is at most value, or 0 if value is negative. */
+    public static long isqrt(long value) {
+        if (value<=0) return 0;
+        // the double square root can be off by one for large values, so correct it without letting squares overflow
+        long root = Math.min((long)Math.sqrt(value), MAX_LONG_SQRT);
+        while (root*root > value) root--;
+        while (root<MAX_LONG_SQRT && (root+1)*(root+1) <= value) root++;
+        return root;
+    }
+    
+    /** Returns sqrt(x*x + y*y) rounded to the nearest int, computed without overflow. */
+    public static int hypot(int x, int y) {
+        long sum = (long)x*x + (long)y*y;
+        long root = isqrt(sum);
+        // round up if sum >= (root+0.5)^2, which for integers is sum > root*root + root
+        if (sum - root*root > root) root++;
+        return (root > Integer.MAX_VALUE) ? Integer.MAX_VALUE : (int)root;
+    }
+    
+    /** Returns atan2(y, x) as an int angle from -PI to PI. */
+    public static int atan2(int y, int x) {
+        if (x==0 && y==0) return 0;
+        long ax = Math.abs((long)x);
+        long ay = Math.abs((long)y);
+        // reduce to the first octant, where the ratio is at most 1
+        boolean steep = ay > ax;
+        long num = steep ? ax : ay;
+        long den = steep ? ay : ax;
+        int fractionBits = 16;
+        long ratio = (num << (ATAN_TABLE_BITS + fractionBits)) / den;
+        int index = (int)(ratio >>> fractionBits);
+        int fraction = (int)(ratio & ((1<<fractionBits) - 1));
+        int v0 = ATAN_TABLE[index];
+        int angle = v0 + (int)(((long)(ATAN_TABLE[index+1] - v0) * fraction) >> fractionBits);
+        
+        if (steep) angle = HALF_PI - angle;
+        if (x<0) angle = PI - angle;
+        return (y<0) ? -angle : angle;
+    }
+}
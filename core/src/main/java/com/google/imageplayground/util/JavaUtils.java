@@ -0,0 +1,84 @@
+/* 
+ * Copyright 2012 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.imageplayground.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+public class JavaUtils {
+    
+    /** Reads an entire stream whose length isn't known. For files use readFile, which doesn't need to grow a buffer. */
+    public static byte[] bytesForInputStream(InputStream in) throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int bytesRead = 0;
+        while ((bytesRead = in.read(buffer, 0, buffer.length)) >= 0) {
+            os.write(buffer, 0, bytesRead);
+        }
+        return os.toByteArray();
+    }
+    
+    /** Reads the contents of a file into an array allocated once from the file's size, and closes the file. */
+    public static byte[] readFile(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File is too large to read into memory: " + file);
+            }
+            byte[] data = new byte[(int)size];
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+            }
+            if (buffer.hasRemaining()) {
+                // the file was truncated while it was being read
+                byte[] partial = new byte[buffer.position()];
+                System.arraycopy(data, 0, partial, 0, partial.length);
+                return partial;
+            }
+            return data;
+        }
+        finally {
+            in.close();
+        }
+    }
+    
+    /** Reads a UTF-8 text file, decoding directly from the bytes read by readFile. */
+    public static String readFileAsString(File file) throws IOException {
+        return new String(readFile(file), "utf-8");
+    }
+    
+    /** Copies length bytes starting at absolute index srcIndex of the buffer into the array, without changing the
+     * buffer's position. Heap buffers are copied directly from their backing array.
+     */
+    public static void copyBytes(ByteBuffer src, int srcIndex, byte[] dest, int destIndex, int length) {
+        if (src.hasArray()) {
+            System.arraycopy(src.array(), src.arrayOffset()+srcIndex, dest, destIndex, length);
+        }
+        else {
+            ByteBuffer view = src.duplicate();
+            view.position(srcIndex);
+            view.get(dest, destIndex, length);
+        }
+    }
+}
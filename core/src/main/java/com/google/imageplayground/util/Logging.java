@@ -0,0 +1,64 @@
+/* 
+ * Copyright 2012 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.imageplayground.util;
+
+/**
+ * Logging for code that runs both in the app and on a plain JVM. Messages go to System.err unless a different 
+ * Handler is installed; the app installs one that forwards to android.util.Log.
+ */
+public class Logging {
+    
+    /** Receives log messages. Levels use the same values as android.util.Log. */
+    public static interface Handler {
+        void log(int level, String tag, String message, Throwable ex);
+    }
+    
+    public static final int DEBUG = 3;
+    public static final int INFO = 4;
+    public static final int WARN = 5;
+    public static final int ERROR = 6;
+    
+    static final Handler STANDARD_ERROR_HANDLER = new Handler() {
+        public void log(int level, String tag, String message, Throwable ex) {
+            System.err.println(tag + ": " + message);
+            if (ex!=null) ex.printStackTrace();
+        }
+    };
+    
+    static volatile Handler handler = STANDARD_ERROR_HANDLER;
+    
+    /** Sets the handler that receives all later messages, or restores the System.err handler if null. */
+    public static void setHandler(Handler value) {
+        handler = (value!=null) ? value : STANDARD_ERROR_HANDLER;
+    }
+    
+    public static void d(String tag, String message) {
+        handler.log(DEBUG, tag, message, null);
+    }
+    
+    public static void i(String tag, String message) {
+        handler.log(INFO, tag, message, null);
+    }
+    
+    public static void w(String tag, String message) {
+        handler.log(WARN, tag, message, null);
+    }
+    
+    public static void e(String tag, String message, Throwable ex) {
+        handler.log(ERROR, tag, message, ex);
+    }
+}
@@ -0,0 +1,168 @@
+/* 
+ * Copyright 2012 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.imageplayground.util;
+
+import java.util.Arrays;
+
+/** Divides NV21 frames into square tiles and finds the tiles whose brightness or color values have changed since
+ * they were last marked dirty, so callers can recompute only those tiles. Each tile is compared with its contents 
+ * when it was last dirty rather than with the previous frame, so slow changes still accumulate past the threshold.
+ */
+public class TileChangeDetector {
+    
+    final int tileSize;
+    // a tile changes if the mean absolute difference of its Y and VU bytes is more than this
+    int threshold = 0;
+    
+    int width;
+    int height;
+    int tileRows;
+    int tileColumns;
+    byte[] reference;
+    boolean[] changed;
+    boolean[] dirty;
+    
+    /** Creates a detector with the given tile size in pixels, which must be even so tiles share no VU values. */
+    public TileChangeDetector(int tileSize) {
+        if (tileSize<=0 || (tileSize & 1)!=0) {
+            throw new IllegalArgumentException("Tile size must be positive and even: " + tileSize);
+        }
+        this.tileSize = tileSize;
+    }
+    
+    public int getTileSize() {
+        return tileSize;
+    }
+    
+    public int getThreshold() {
+        return threshold;
+    }
+    
+    /** Sets the mean absolute difference per byte above which a tile is considered changed. 0 means any change. */
+    public void setThreshold(int value) {
+        threshold = value;
+    }
+    
+    /** Forgets the stored frame, so every tile is dirty on the next update. */
+    public void reset() {
+        reference = null;
+    }
+    
+    public int getTileRows() {
+        return tileRows;
+    }
+    
+    public int getTileColumns() {
+        return tileColumns;
+    }
+    
+    /** Returns true if the tile was marked dirty by the last call to update. */
+    public boolean isTileDirty(int tileRow, int tileCol) {
+        return dirty[tileRow*tileColumns + tileCol];
+    }
+    
+    /** Compares the image data with the stored tiles and marks the tiles that changed as dirty, along with every 
+     * tile within margin pixels of a changed tile. Dirty tiles are copied so later frames are compared to them.
+     * Every tile is dirty for the first frame and whenever the size changes. Returns the number of dirty tiles.
+     */
+    public int update(byte[] data, int width, int height, int margin) {
+        if (reference==null || width!=this.width || height!=this.height) {
+            this.width = width;
+            this.height = height;
+            tileRows = (height + tileSize - 1) / tileSize;
+            tileColumns = (width + tileSize - 1) / tileSize;
+            reference = new byte[YuvUtils.bufferSize(width, height)];
+            changed = new boolean[tileRows*tileColumns];
+            dirty = new boolean[tileRows*tileColumns];
+            System.arraycopy(data, 0, reference, 0, reference.length);
+            Arrays.fill(dirty, true);
+            return dirty.length;
+        }
+        
+        for(int tr=0; tr<tileRows; tr++) {
+            for(int tc=0; tc<tileColumns; tc++) {
+                changed[tr*tileColumns + tc] = tileChanged(data, tr, tc);
+            }
+        }
+        
+        // a tile also needs recomputing if the script can sample pixels in a changed tile from it
+        int marginTiles = (margin + tileSize - 1) / tileSize;
+        int numDirty = 0;
+        for(int tr=0; tr<tileRows; tr++) {
+            for(int tc=0; tc<tileColumns; tc++) {
+                boolean isDirty = false;
+                for(int r=Math.max(0, tr-marginTiles); r<=Math.min(tileRows-1, tr+marginTiles) && !isDirty; r++) {
+                    for(int c=Math.max(0, tc-marginTiles); c<=Math.min(tileColumns-1, tc+marginTiles); c++) {
+                        if (changed[r*tileColumns + c]) {
+                            isDirty = true;
+                            break;
+                        }
+                    }
+                }
+                dirty[tr*tileColumns + tc] = isDirty;
+                if (isDirty) {
+                    copyTile(data, tr, tc);
+                    numDirty++;
+                }
+            }
+        }
+        return numDirty;
+    }
+    
+    boolean tileChanged(byte[] data, int tileRow, int tileCol) {
+        int rowStart = tileRow*tileSize;
+        int rowEnd = Math.min(height, rowStart+tileSize);
+        int colStart = tileCol*tileSize;
+        int colEnd = Math.min(width, colStart+tileSize);
+        // stop as soon as the total difference exceeds the limit, so changed tiles are cheap to detect
+        int limit = threshold * ((rowEnd-rowStart)*(colEnd-colStart) * 3 / 2);
+        int sum = 0;
+        for(int row=rowStart; row<rowEnd; row++) {
+            int index = YuvUtils.yIndex(width, row, colStart);
+            int end = index + (colEnd-colStart);
+            for(; index<end; index++) {
+                sum += Math.abs((0xff & data[index]) - (0xff & reference[index]));
+            }
+            if (sum>limit) return true;
+        }
+        // tiles start on even rows and columns, so their VU pairs aren't shared with other tiles
+        for(int row=rowStart; row<rowEnd; row+=2) {
+            int index = YuvUtils.uvRowStart(width, height, row) + colStart;
+            int end = index + (colEnd-colStart);
+            for(; index<end; index++) {
+                sum += Math.abs((0xff & data[index]) - (0xff & reference[index]));
+            }
+            if (sum>limit) return true;
+        }
+        return false;
+    }
+    
+    void copyTile(byte[] data, int tileRow, int tileCol) {
+        int rowStart = tileRow*tileSize;
+        int rowEnd = Math.min(height, rowStart+tileSize);
+        int colStart = tileCol*tileSize;
+        int length = Math.min(width, colStart+tileSize) - colStart;
+        for(int row=rowStart; row<rowEnd; row++) {
+            int index = YuvUtils.yIndex(width, row, colStart);
+            System.arraycopy(data, index, reference, index, length);
+        }
+        for(int row=rowStart; row<rowEnd; row+=2) {
+            int index = YuvUtils.uvRowStart(width, height, row) + colStart;
+            System.arraycopy(data, index, reference, index, length);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/* 
+ * Copyright 2012 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.imageplayground.util;
+
+/** Methods for addressing pixels in image data in the NV21 format used by camera previews. The width*height
+ * brightness (Y) values come first, followed by interleaved V and U values at half resolution in both dimensions,
+ * so each VU pair is shared by a 2x2 block of pixels.
+ */
+public class YuvUtils {
+    
+    /** Returns the number of bytes in an NV21 image with the given width and height. */
+    public static int bufferSize(int width, int height) {
+        return width*height + 2*((width+1)/2)*((height+1)/2);
+    }
+    
+    /** Returns the index of the brightness value for the pixel at the given row and column. */
+    public static int yIndex(int width, int row, int col) {
+        return row*width + col;
+    }
+    
+    /** Returns the index of the first VU pair used by pixels in the given row. */
+    public static int uvRowStart(int width, int height, int row) {
+        // VU rows are only stored for every other pixel row, and each has width bytes
+        return width*height + (row>>1)*width;
+    }
+    
+    /** Returns the index of the V value for the pixel at the given row and column. The U value is at the next index. */
+    public static int uvIndex(int width, int height, int row, int col) {
+        // one VU pair for every two pixels, round down to an even column to get the V byte
+        return uvRowStart(width, height, row) + (col & ~1);
+    }
+    
+    /** Reduces the brightness values of an NV21 image by the given integer factor in each dimension by averaging 
+     * each scale*scale block of pixels, and stores the result as grayscale RGB_565 values in output, which must have 
+     * at least outWidth*outHeight elements. outWidth and outHeight must be at most width/scale and height/scale.
+     */
+    public static void downsampleLumaToRgb565(byte[] data, int width, int height, int scale, 
+            short[] output, int outWidth, int outHeight, int[] rowSums) {
+        int blockSize = scale*scale;
+        int outIndex = 0;
+        for(int outRow=0; outRow<outHeight; outRow++) {
+            for(int i=0; i<outWidth; i++) rowSums[i] = 0;
+            for(int row=outRow*scale; row<(outRow+1)*scale; row++) {
+                int index = row*width;
+                for(int outCol=0; outCol<outWidth; outCol++) {
+                    int sum = 0;
+                    for(int i=0; i<scale; i++) {
+                        sum += 0xff & data[index++];
+                    }
+                    rowSums[outCol] += sum;
+                }
+            }
+            for(int outCol=0; outCol<outWidth; outCol++) {
+                int gray = rowSums[outCol] / blockSize;
+                output[outIndex++] = (short)(((gray>>3)<<11) | ((gray>>2)<<5) | (gray>>3));
+            }
+        }
+    }
+    
+    /** Converts width*height ARGB values to NV21, the inverse of the conversions below, so that still images can be
+     * used as script input. Each VU pair is the average of the pixels in its 2x2 block. output must have at least 
+     * bufferSize(width, height) elements.
+     */
+    public static void argbToNv21(int[] argb, int width, int height, byte[] output) {
+        for(int row=0; row<height; row++) {
+            int index = row*width;
+            for(int col=0; col<width; col++) {
+                int color = argb[index+col];
+                int r = (color>>16) & 0xff, g = (color>>8) & 0xff, b = color & 0xff;
+                output[index+col] = (byte)(((66*r + 129*g + 25*b + 128) >> 8) + 16);
+            }
+        }
+        for(int row=0; row<height; row+=2) {
+            for(int col=0; col<width; col+=2) {
+                int rsum = 0, gsum = 0, bsum = 0, count = 0;
+                for(int r=row; r<row+2 && r<height; r++) {
+                    for(int c=col; c<col+2 && c<width; c++) {
+                        int color = argb[r*width + c];
+                        rsum += (color>>16) & 0xff;
+                        gsum += (color>>8) & 0xff;
+                        bsum += color & 0xff;
+                        count++;
+                    }
+                }
+                int red = rsum/count, green = gsum/count, blue = bsum/count;
+                int uvindex = uvIndex(width, height, row, col);
+                output[uvindex] = (byte)(((112*red - 94*green - 18*blue + 128) >> 8) + 128);
+                output[uvindex+1] = (byte)(((-38*red - 74*green + 112*blue + 128) >> 8) + 128);
+            }
+        }
+    }
+    
+    /** Converts YUV data for a pixel (such as from the camera preview data) to RGB values. */
+    public static void yuvToRgb(byte y, byte u, byte v, int[] rgb) {
+        // adapted from http://stackoverflow.com/questions/8399411/how-to-retrieve-rgb-value-for-each-color-apart-from-one-dimensional-integer-rgb
+    	// produces 18-bit RGB components, so shift by 10
+        int yy = (0xff & y) - 16;
+        if (yy < 0) yy = 0;
+        // u and v need to be translated to +-128
+        int uu = (0xff & u) - 128;
+        int vv = (0xff & v) - 128;
+        
+        int y1192 = 1192 * yy;
+        int red = (y1192 + 1634 * vv) >> 10;
+        int green = (y1192 - 833 * vv - 400 * uu) >> 10;
+        int blue = (y1192 + 2066 * uu) >> 10;
+
+        if (red<0) red=0; if (red>255) red=255;
+        if (green<0) green=0; if (green>255) green=255;
+        if (blue<0) blue=0; if (blue>255) blue=255;
+        
+        rgb[0] = red;
+        rgb[1] = green;
+        rgb[2] = blue;
+    }
+    
+    /** Returns a single RGB int value from YUV data, suitable for passing to Bitmap.setPixel and similar methods. */
+    public static int colorFromYuv(byte y, byte u, byte v) {
+        int yy = (0xff & y) - 16;
+        if (yy < 0) yy = 0;
+        // u and v need to be translated to +-128
+        int uu = (0xff & u) - 128;
+        int vv = (0xff & v) - 128;
+        
+        int y1192 = 1192 * yy;
+        int red = (y1192 + 1634 * vv) >> 10;
+        int green = (y1192 - 833 * vv - 400 * uu) >> 10;
+        int blue = (y1192 + 2066 * uu) >> 10;
+
+        if (red<0) red=0; if (red>255) red=255;
+        if (green<0) green=0; if (green>255) green=255;
+        if (blue<0) blue=0; if (blue>255) blue=255;
+        
+        return (0xff<<24) | (red<<16) | (green<<8) | blue;
+    }
+    
+    // methods to return individual color components from YUV data
+    public static int redFromYuv(byte y, byte u, byte v) {
+        int yy = (0xff & y) - 16;
+        if (yy < 0) yy = 0;
+
+        int vv = (0xff & v) - 128;
+        int y1192 = 1192 * yy;
+        
+        int red = (y1192 + 1634 * vv) >> 10;
+        if (red<0) red=0; if (red>255) red=255;
+        return red;
+    }
+
+    public static int greenFromYuv(byte y, byte u, byte v) {
+        int yy = (0xff & y) - 16;
+        if (yy < 0) yy = 0;
+
+        int uu = (0xff & u) - 128;
+        int vv = (0xff & v) - 128;
+        int y1192 = 1192 * yy;
+        
+        int green = (y1192 - 833 * vv - 400 * uu) >> 10;
+        if (green<0) green=0; if (green>255) green=255;
+        return green;
+    }
+
+    public static int blueFromYuv(byte y, byte u, byte v) {
+        int yy = (0xff & y) - 16;
+        if (yy < 0) yy = 0;
+
+        int uu = (0xff & u) - 128;       
+        int y1192 = 1192 * yy;
+        
+        int blue = (y1192 + 2066 * uu) >> 10;
+        if (blue<0) blue=0; if (blue>255) blue=255;
+        return blue;
+    }
+}
@@ -22,7 +22,7 @@ import org.antlr.runtime.CommonToken;
 import org.antlr.runtime.tree.CommonTree;
 import org.antlr.runtime.tree.Tree;
 
-import com.google.dexmaker.BinaryOp;
+import com.android.dx.BinaryOp;
 
 import junit.framework.TestCase;
 
@@ -159,5 +159,61 @@ public class DexCodeGeneratorTest extends TestCase {
 	        new DexCodeGenerator.FunctionCallInstruction("!1", "gray", new String[] {"y"}),
 	        new DexCodeGenerator.ReturnInstruction("!1"));
 	}
+	
+	public void testMaxSamplingOffset() throws Exception {
+	    DexCodeGenerator.InstructionContext context = DexCodeGenerator.createInstructionList(
+	            "return gray((getbright(row-1, col) + getbright(row, col+2) + getbright(row+1, 1+col)) / 3)");
+	    assertEquals(2, DexCodeGenerator.maxSamplingOffset(context));
+	}
+	
+	public void testMaxSamplingOffset_unknown() throws Exception {
+	    assertEquals(-1, DexCodeGenerator.maxSamplingOffset(
+	            DexCodeGenerator.createInstructionList("return gray(getbright(row*2, col))")));
+	    assertEquals(-1, DexCodeGenerator.maxSamplingOffset(
+	            DexCodeGenerator.createInstructionList("row = row+1\nreturn gray(getbright(row, col))")));
+	}
+	
+	public void testMaxFrameHistory() throws Exception {
+	    DexCodeGenerator.InstructionContext context = DexCodeGenerator.createInstructionList(
+	            "return gray(abs(y - prevbright(1, row, col)) + abs(y - prevbright(3, row, col)))");
+	    assertEquals(3, DexCodeGenerator.maxFrameHistory(context, DexCodeGenerator.INPUT_HISTORY_FUNCTIONS));
+	    assertEquals(0, DexCodeGenerator.maxFrameHistory(context, DexCodeGenerator.OUTPUT_HISTORY_FUNCTIONS));
+	    
+	    context = DexCodeGenerator.createInstructionList("return prevout(1+framenumber()%4, row, col)");
+	    assertEquals(-1, DexCodeGenerator.maxFrameHistory(context, DexCodeGenerator.OUTPUT_HISTORY_FUNCTIONS));
+	    
+	    // frames read by the prologue are kept too
+	    context = DexCodeGenerator.createInstructionList(
+	            "roi(prevbright(2, 0, 0), 0, width, height)\nreturn gray(prevbright(1, row, col))");
+	    assertEquals(2, DexImageScript.maxFrameHistory(context, context.prologue, DexCodeGenerator.INPUT_HISTORY_FUNCTIONS));
+	}
+	
+	public void testCallsOnlyStatelessFunctions() throws Exception {
+	    assertTrue(DexCodeGenerator.callsOnlyFunctions(DexCodeGenerator.createInstructionList(
+	            "return gray(max(y, getbright(row+1, col)))"), DexCodeGenerator.STATELESS_FUNCTIONS));
+	    assertFalse(DexCodeGenerator.callsOnlyFunctions(DexCodeGenerator.createInstructionList(
+	            "return gray(y + framenumber())"), DexCodeGenerator.STATELESS_FUNCTIONS));
+	    assertFalse(DexCodeGenerator.callsOnlyFunctions(DexCodeGenerator.createInstructionList(
+	            "return gray(prevbright(1, row, col))"), DexCodeGenerator.STATELESS_FUNCTIONS));
+	}
+	
+	public void testPrologue() throws Exception {
+	    DexCodeGenerator.InstructionContext context = DexCodeGenerator.createInstructionList(
+	            "roi(width/4, height/4, width*3/4, height*3/4)\nreturn gray(255-y)");
+	    assertNotNull(context.prologue);
+	    assertTrue(DexCodeGenerator.callsAnyFunction(context.prologue, Arrays.asList("roi")));
+	    assertFalse(DexCodeGenerator.callsAnyFunction(context, Arrays.asList("roi")));
+	    
+	    assertNull(DexCodeGenerator.createInstructionList("return gray(255-y)").prologue);
+	}
+	
+	public void testPrologue_pixelLocal() throws Exception {
+	    try {
+	        DexCodeGenerator.createInstructionList("roi(0, 0, col, row)\nreturn gray(255-y)");
+	        fail("roi using col should not compile");
+	    }
+	    catch(IllegalStateException expected) {
+	    }
+	}
 
 }
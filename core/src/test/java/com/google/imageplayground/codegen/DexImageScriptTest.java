@@ -0,0 +1,251 @@
+/* 
+ * Copyright 2012 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.imageplayground.codegen;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.imageplayground.drawing.DrawOperation;
+import com.google.imageplayground.util.YuvUtils;
+
+import junit.framework.TestCase;
+
+public class DexImageScriptTest extends TestCase {
+    
+    static DexImageScript createScriptWithImage(int width, int height) {
+        DexImageScript script = new DexImageScript();
+        byte[] data = new byte[YuvUtils.bufferSize(width, height)];
+        for(int i=0; i<data.length; i++) {
+            data[i] = (byte)(i*13 + (i>>4));
+        }
+        script.imageData = data;
+        script.imageWidth = width;
+        script.imageHeight = height;
+        return script;
+    }
+    
+    public void testColorSamplersAgree() {
+        int width = 40, height = 30;
+        DexImageScript script = createScriptWithImage(width, height);
+        for(int row=-2; row<height+2; row++) {
+            for(int col=-2; col<width+2; col++) {
+                int color = script.script_getcolor(row, col);
+                assertEquals(0xff & (color>>16), script.script_getred(row, col));
+                assertEquals(0xff & (color>>8), script.script_getgreen(row, col));
+                assertEquals(0xff & color, script.script_getblue(row, col));
+            }
+        }
+    }
+    
+    public void testUncheckedSamplersMatchInBounds() {
+        int width = 40, height = 30;
+        DexImageScript script = createScriptWithImage(width, height);
+        for(int row=0; row<height; row++) {
+            for(int col=0; col<width; col++) {
+                assertEquals(script.script_getbright(row, col), script.unchecked_getbright(row, col));
+                assertEquals(script.script_getcolor(row, col), script.unchecked_getcolor(row, col));
+                assertEquals(script.script_getred(row, col), script.unchecked_getred(row, col));
+                assertEquals(script.script_getgreen(row, col), script.unchecked_getgreen(row, col));
+                assertEquals(script.script_getblue(row, col), script.unchecked_getblue(row, col));
+            }
+        }
+    }
+    
+    public void testSamplersClampToEdges() {
+        int width = 40, height = 30;
+        DexImageScript script = createScriptWithImage(width, height);
+        assertEquals(script.script_getcolor(0, 0), script.script_getcolor(-5, -5));
+        assertEquals(script.script_getcolor(height-1, width-1), script.script_getcolor(height+5, width+5));
+        assertEquals(script.script_getbright(0, width-1), script.script_getbright(-1, width));
+    }
+    
+    // draws a line for one pixel in each row, so the commands should come out in row order
+    static class DrawingScript extends DexImageScript {
+        @Override public int getOutputColorForGrayscaleInput(int y, int row, int col, int width, int height) {
+            if (col==(row*7) % width) {
+                script_drawline(row, col, y, 0);
+            }
+            return y;
+        }
+    }
+    
+    public void testDrawCommandsFromWorkers() {
+        int width = 50, height = 400;
+        DexImageScript script = new DrawingScript();
+        script.setScriptType(DexImageScript.ScriptType.GRAYSCALE);
+        script.numWorkers = 16;
+        script.imageData = createScriptWithImage(width, height).imageData;
+        script.imageWidth = width;
+        script.imageHeight = height;
+        script.outputPixelBuffer = new int[width*height];
+        
+        for(int frame=0; frame<5; frame++) {
+            script.drawCommands.clear();
+            script.runWorkers();
+            assertEquals(height, script.drawCommands.size());
+            for(int i=0; i<height; i++) {
+                assertEquals(DrawOperation.LINE, script.drawCommands.getOperation(i));
+                assertEquals(i, script.drawCommands.getArgument(i, 0));
+                assertEquals((i*7) % width, script.drawCommands.getArgument(i, 1));
+            }
+        }
+    }
+    
+    // equivalent to "roi(10, 5, 30, 20); return 0" with the roi call in the prologue
+    static class RoiScript extends DexImageScript {
+        @Override public void computeFramePrologue(int width, int height) {
+            script_roi(30, 20, 10, 5);
+        }
+        @Override public int getOutputColorForGrayscaleInput(int y, int row, int col, int width, int height) {
+            return 0;
+        }
+    }
+    
+    public void testRegionOfInterest() {
+        int width = 40, height = 30;
+        DexImageScript script = new RoiScript();
+        script.setScriptType(DexImageScript.ScriptType.GRAYSCALE);
+        script.hasPrologue = true;
+        byte[] data = createScriptWithImage(width, height).imageData;
+        int[] pixels = script.computeOutputPixels(data, width, height);
+        for(int row=0; row<height; row++) {
+            for(int col=0; col<width; col++) {
+                int y = 0xff & data[row*width + col];
+                int expected = (col>=10 && col<30 && row>=5 && row<20) ? 0 : (0xff000000 | (y<<16) | (y<<8) | y);
+                assertEquals(expected, pixels[row*width + col]);
+            }
+        }
+        
+        // roi has no effect outside the prologue
+        script.script_roi(0, 0, 1, 1);
+        assertEquals(10, script.regionLeft);
+        assertEquals(30, script.regionRight);
+    }
+    
+    // inverts the brightness and counts how many pixels were computed
+    static class CountingScript extends DexImageScript {
+        AtomicInteger count = new AtomicInteger();
+        @Override public int getOutputColorForGrayscaleInput(int y, int row, int col, int width, int height) {
+            count.incrementAndGet();
+            return script_gray(255-y);
+        }
+    }
+    
+    public void testChangeDetection() {
+        int width = 64, height = 48;
+        CountingScript script = new CountingScript();
+        script.setScriptType(DexImageScript.ScriptType.GRAYSCALE);
+        script.supportsChangeDetection = true;
+        script.setUseChangeDetection(true);
+        script.setChangeDetectionThreshold(0);
+        byte[] data = createScriptWithImage(width, height).imageData;
+        
+        script.computeOutputPixels(data, width, height);
+        assertEquals(width*height, script.count.getAndSet(0));
+        script.computeOutputPixels(data, width, height);
+        assertEquals(0, script.count.getAndSet(0));
+        
+        data[YuvUtils.yIndex(width, 20, 40)] += 50;
+        int[] pixels = script.computeOutputPixels(data, width, height);
+        int tileSize = DexImageScript.CHANGE_DETECTION_TILE_SIZE;
+        assertEquals(tileSize*tileSize, script.count.getAndSet(0));
+        for(int i=0; i<width*height; i++) {
+            assertEquals(script.script_gray(255 - (0xff & data[i])), pixels[i]);
+        }
+        
+        // not used if the script doesn't support it
+        script.supportsChangeDetection = false;
+        script.computeOutputPixels(data, width, height);
+        assertEquals(width*height, script.count.getAndSet(0));
+    }
+    
+    static class NoiseScript extends DexImageScript {
+        @Override public int getOutputColorForGrayscaleInput(int y, int row, int col, int width, int height) {
+            return script_gray(script_random(256));
+        }
+    }
+    
+    public void testSeededRandom() {
+        int width = 40, height = 30;
+        byte[] data = createScriptWithImage(width, height).imageData;
+        int[][] outputs = new int[3][];
+        int[] numWorkers = {1, 7, 16};
+        for(int i=0; i<numWorkers.length; i++) {
+            NoiseScript script = new NoiseScript();
+            script.setScriptType(DexImageScript.ScriptType.GRAYSCALE);
+            script.numWorkers = numWorkers[i];
+            script.setRandomSeed(1234);
+            outputs[i] = script.computeOutputPixels(data, width, height).clone();
+        }
+        assertTrue(Arrays.equals(outputs[0], outputs[1]));
+        assertTrue(Arrays.equals(outputs[0], outputs[2]));
+        
+        // the next frame gets different noise
+        NoiseScript script = new NoiseScript();
+        script.setScriptType(DexImageScript.ScriptType.GRAYSCALE);
+        script.setRandomSeed(1234);
+        script.computeOutputPixels(data, width, height);
+        assertFalse(Arrays.equals(outputs[0], script.computeOutputPixels(data, width, height)));
+    }
+    
+    static class ColorSamplingScript extends DexImageScript {
+        @Override public int getOutputColorForColorInput(int y, int red, int green, int blue, int row, int col, int width, int height) {
+            return script_getcolor(row+1, col-1) ^ script_getbright(row-1, col+1);
+        }
+    }
+    
+    public void testDirectBufferInput() {
+        int width = 24, height = 18;
+        byte[] data = createScriptWithImage(width, height).imageData;
+        // like a frame mapped from a file: a read-only direct buffer that doesn't start at the beginning of its memory
+        ByteBuffer direct = ByteBuffer.allocateDirect(data.length + 10);
+        direct.position(10);
+        direct.put(data);
+        direct.position(10);
+        ByteBuffer frame = direct.slice().asReadOnlyBuffer();
+        
+        ColorSamplingScript script = new ColorSamplingScript();
+        script.setScriptType(DexImageScript.ScriptType.COLOR);
+        int[] expected = script.computeOutputPixels(data, width, height).clone();
+        assertTrue(Arrays.equals(expected, script.computeOutputPixels(frame, width, height)));
+        assertEquals(0, frame.position());
+        // heap buffers are sampled through their own array
+        assertSame(data, script.frameBytes(ByteBuffer.wrap(data), width, height));
+    }
+    
+    public void testFrameTime() {
+        DexImageScript script = new DexImageScript();
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(2012, Calendar.JULY, 4, 15, 30, 45);
+        script.captureFrameTime(calendar.getTimeInMillis());
+        assertEquals(2012, script.script_getyear());
+        assertEquals(7, script.script_getmonth());
+        assertEquals(4, script.script_getday());
+        assertEquals(3, script.script_gethour());
+        assertEquals(30, script.script_getminute());
+        assertEquals(45, script.script_getsecond());
+        assertEquals((int)calendar.getTimeInMillis(), script.script_time());
+        
+        // the next frame captures the current time
+        int width = 8, height = 8;
+        script.setScriptType(DexImageScript.ScriptType.GRAYSCALE);
+        script.computeOutputPixels(createScriptWithImage(width, height).imageData, width, height);
+        assertTrue(script.script_getyear()!=2012 || script.script_time()!=(int)calendar.getTimeInMillis());
+    }
+}
@@ -0,0 +1,72 @@
+/* 
+ * Copyright 2012 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.imageplayground.codegen;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.google.imageplayground.util.FrameRecorder;
+import com.google.imageplayground.util.FrameStore;
+
+import junit.framework.TestCase;
+
+public class FrameReplayerTest extends TestCase {
+    
+    File path;
+    
+    @Override protected void setUp() throws IOException {
+        path = File.createTempFile("FrameReplayerTest", FrameRecorder.FILE_EXTENSION);
+    }
+    
+    @Override protected void tearDown() {
+        path.delete();
+    }
+    
+    FrameStore record(int frames, int width, int height, long intervalNanos) throws IOException {
+        FrameRecorder recorder = new FrameRecorder(path);
+        byte[] data = DexImageScriptTest.createScriptWithImage(width, height).imageData;
+        for(int i=0; i<frames; i++) {
+            recorder.addFrame(data, width, height, i*intervalNanos);
+        }
+        recorder.close();
+        return FrameStore.openRecording(path);
+    }
+    
+    public void testReplaysEveryFrame() throws Exception {
+        int width = 16, height = 12;
+        DexImageScriptTest.CountingScript script = new DexImageScriptTest.CountingScript();
+        script.setScriptType(DexImageScript.ScriptType.GRAYSCALE);
+        FrameReplayer replayer = new FrameReplayer(script, record(5, width, height, 0));
+        replayer.setLoops(2);
+        replayer.setWarmupFrames(3);
+        FrameReplayer.Result result = replayer.run();
+        assertEquals(7, result.frames);
+        assertEquals(10*width*height, script.count.get());
+        assertEquals(10, script.frameNumber);
+    }
+    
+    public void testRealTimeWaitsForTimestamps() throws Exception {
+        DexImageScriptTest.CountingScript script = new DexImageScriptTest.CountingScript();
+        script.setScriptType(DexImageScript.ScriptType.GRAYSCALE);
+        // 4 frames 20ms apart take at least 60ms
+        FrameReplayer replayer = new FrameReplayer(script, record(4, 8, 8, 20000000L));
+        replayer.setRealTime(true);
+        FrameReplayer.Result result = replayer.run();
+        assertEquals(4, result.frames);
+        assertTrue(result.elapsedNanos >= 60000000L);
+    }
+}
@@ -0,0 +1,73 @@
+/* 
+ * Copyright 2012 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.imageplayground.codegen;
+
+import junit.framework.TestCase;
+
+public class FrameStatsTest extends TestCase {
+    
+    public void testCompletedFrames() {
+        FrameStats stats = new FrameStats(3);
+        assertEquals(0, stats.getNumberOfCompletedFrames());
+        assertEquals(0, stats.getTotalNanos(1));
+        
+        stats.startFrame(0);
+        stats.addStageTime(FrameStats.Stage.COMPUTE, 1000);
+        stats.addStageTime(FrameStats.Stage.UPLOAD, 200);
+        // the current frame isn't complete yet
+        assertEquals(0, stats.getNumberOfCompletedFrames());
+        
+        stats.startFrame(10000);
+        stats.addStageTime(FrameStats.Stage.COMPUTE, 3000);
+        assertEquals(1, stats.getNumberOfCompletedFrames());
+        assertEquals(1200, stats.getTotalNanos(1));
+        assertEquals(1000, stats.getStageNanos(1, FrameStats.Stage.COMPUTE));
+        assertEquals(0, stats.getStageNanos(1, FrameStats.Stage.SETUP));
+        
+        stats.startFrame(20000);
+        assertEquals(3000, stats.getTotalNanos(1));
+        assertEquals(1200, stats.getTotalNanos(2));
+        assertEquals(2100, stats.getAverageTotalNanos());
+        assertEquals(0, stats.getTotalNanos(3));
+    }
+    
+    public void testRingWraps() {
+        FrameStats stats = new FrameStats(3);
+        for(int i=1; i<=10; i++) {
+            stats.startFrame(i*1000000L);
+            stats.addStageTime(FrameStats.Stage.SETUP, i);
+        }
+        assertEquals(3, stats.getNumberOfCompletedFrames());
+        assertEquals(9, stats.getTotalNanos(1));
+        assertEquals(7, stats.getTotalNanos(3));
+        assertEquals(0, stats.getTotalNanos(4));
+        // 1ms between frame starts
+        assertEquals(1000.0, stats.getFramesPerSecond(), 1e-6);
+    }
+    
+    public void testWorkerTimes() {
+        FrameStats stats = new FrameStats(2);
+        stats.startFrame(0);
+        stats.addWorkerTime(500);
+        stats.addWorkerTime(300);
+        stats.addWorkerTime(800);
+        stats.startFrame(1);
+        assertEquals(300, stats.getMinWorkerNanos(1));
+        assertEquals(800, stats.getMaxWorkerNanos(1));
+        assertEquals(0, stats.getMaxWorkerNanos(2));
+    }
+}
@@ -0,0 +1,127 @@
+/* 
+ * Copyright 2012 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.imageplayground.codegen;
+
+import java.util.Arrays;
+
+import com.android.dx.BinaryOp;
+import com.android.dx.Comparison;
+import com.android.dx.UnaryOp;
+import com.google.imageplayground.codegen.DexCodeGenerator.InstructionContext;
+import com.google.imageplayground.util.YuvUtils;
+
+import junit.framework.TestCase;
+
+public class InstructionInterpreterTest extends TestCase {
+    
+    static InstructionContext createContext(String[] locals, DexCodeGenerator.Instruction... instructions) {
+        InstructionContext context = new InstructionContext();
+        context.locals.addAll(Arrays.asList(locals));
+        context.instructions.addAll(Arrays.asList(instructions));
+        return context;
+    }
+    
+    static int run(InstructionInterpreter interpreter, DexImageScript script, int... arguments) {
+        InstructionInterpreter.Frame frame = interpreter.getFrame();
+        System.arraycopy(arguments, 0, frame.locals, 0, arguments.length);
+        return interpreter.execute(script, frame);
+    }
+    
+    public void testLoop() {
+        // sum = 0; for i=1 to n-1 sum += i*i; return -sum
+        InstructionContext context = createContext(new String[] {"sum", "i", "one", "sq"},
+                new DexCodeGenerator.ConstantIntAssignment("sum", 0),
+                new DexCodeGenerator.ConstantIntAssignment("i", 1),
+                new DexCodeGenerator.ConstantIntAssignment("one", 1),
+                new DexCodeGenerator.LabelInstruction("L1"),
+                new DexCodeGenerator.CompareInstruction("i", Comparison.GE, "n", "L2"),
+                new DexCodeGenerator.BinaryIntOperation("sq", BinaryOp.MULTIPLY, "i", "i"),
+                new DexCodeGenerator.BinaryIntOperation("sum", BinaryOp.ADD, "sum", "sq"),
+                new DexCodeGenerator.BinaryIntOperation("i", BinaryOp.ADD, "i", "one"),
+                new DexCodeGenerator.JumpInstruction("L1"),
+                new DexCodeGenerator.LabelInstruction("L2"),
+                new DexCodeGenerator.UnaryIntOperation("sum", UnaryOp.NEGATE, "sum"),
+                new DexCodeGenerator.ReturnInstruction("sum"));
+        InstructionInterpreter interpreter = new InstructionInterpreter(context, Arrays.asList("n"));
+        assertEquals(0, run(interpreter, null, 0));
+        assertEquals(-(1+4+9+16), run(interpreter, null, 5));
+        // locals aren't reset between runs, every one is assigned before it's read
+        assertEquals(-(1+4+9+16), run(interpreter, null, 5));
+    }
+    
+    public void testBinaryOperators() {
+        assertEquals(-7/2, InstructionInterpreter.binaryOp(BinaryOp.DIVIDE, -7, 2));
+        assertEquals(-7%2, InstructionInterpreter.binaryOp(BinaryOp.REMAINDER, -7, 2));
+        assertEquals(-8>>1, InstructionInterpreter.binaryOp(BinaryOp.SHIFT_RIGHT, -8, 1));
+        assertEquals(-8>>>1, InstructionInterpreter.binaryOp(BinaryOp.UNSIGNED_SHIFT_RIGHT, -8, 1));
+        assertEquals(1<<3, InstructionInterpreter.binaryOp(BinaryOp.SHIFT_LEFT, 1, 35));
+        try {
+            InstructionInterpreter.binaryOp(BinaryOp.DIVIDE, 1, 0);
+            fail("Expected ArithmeticException");
+        }
+        catch(ArithmeticException expected) {}
+    }
+    
+    public void testFunctionCalls() {
+        InstructionContext context = createContext(new String[] {"lo", "hi", "!1"},
+                new DexCodeGenerator.ConstantIntAssignment("lo", 10),
+                new DexCodeGenerator.ConstantIntAssignment("hi", 20),
+                new DexCodeGenerator.FunctionCallInstruction("!1", "clamp", new String[] {"x", "lo", "hi"}),
+                new DexCodeGenerator.ReturnInstruction("!1"));
+        InstructionInterpreter interpreter = new InstructionInterpreter(context, Arrays.asList("x"));
+        DexImageScript script = new DexImageScript();
+        assertEquals(10, run(interpreter, script, 3));
+        assertEquals(15, run(interpreter, script, 15));
+        assertEquals(20, run(interpreter, script, 99));
+        
+        try {
+            new InstructionInterpreter(createContext(new String[] {"!1"},
+                    new DexCodeGenerator.FunctionCallInstruction("!1", "nosuchfunction", new String[0])), Arrays.asList("x"));
+            fail("Expected IllegalStateException");
+        }
+        catch(IllegalStateException expected) {}
+    }
+    
+    public void testInterpretedScriptMatchesInput() {
+        // return getbright(row, col-1), which only samples 1 pixel away so it has an interior method
+        int width = 20, height = 10;
+        InstructionContext context = createContext(new String[] {"!1", "!2", "!3"},
+                new DexCodeGenerator.ConstantIntAssignment("!1", 1),
+                new DexCodeGenerator.BinaryIntOperation("!2", BinaryOp.SUBTRACT, "col", "!1"),
+                new DexCodeGenerator.FunctionCallInstruction("!3", "getbright", new String[] {"row", "!2"}),
+                new DexCodeGenerator.ReturnInstruction("!3"));
+        DexImageScript.ScriptType scriptType = DexImageScript.scriptTypeForInstructions(context);
+        assertEquals(DexImageScript.ScriptType.GRAYSCALE, scriptType);
+        int samplingBorder = DexImageScript.interiorSamplingBorder(scriptType, context);
+        assertEquals(1, samplingBorder);
+        
+        InterpretedImageScript script = new InterpretedImageScript();
+        script.interpreter = new InstructionInterpreter(context, scriptType.arguments);
+        script.interiorInterpreter = new InstructionInterpreter(
+                DexCodeGenerator.createUncheckedSamplingContext(context), scriptType.arguments);
+        script.configure(scriptType, context, samplingBorder);
+        
+        byte[] data = DexImageScriptTest.createScriptWithImage(width, height).imageData;
+        int[] output = script.computeOutputPixels(data, width, height);
+        for(int row=0; row<height; row++) {
+            for(int col=0; col<width; col++) {
+                int expected = 0xff & data[YuvUtils.yIndex(width, row, Math.max(0, col-1))];
+                assertEquals(expected, output[row*width + col]);
+            }
+        }
+    }
+}
@@ -0,0 +1,275 @@
+/* 
+ * Copyright 2012 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.imageplayground.drawing;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+public class SoftwareRasterizerTest extends TestCase {
+    
+    static final int BLACK = 0xff000000;
+    static final int WHITE = 0xffffffff;
+    
+    static int[] draw(DrawCommandBuffer commands, int width, int height) {
+        int[] pixels = new int[width*height];
+        Arrays.fill(pixels, BLACK);
+        new SoftwareRasterizer().draw(commands, pixels, width, height, 0, height);
+        return pixels;
+    }
+    
+    static int countPixels(int[] pixels, int color) {
+        int count = 0;
+        for(int p : pixels) {
+            if (p==color) count++;
+        }
+        return count;
+    }
+    
+    public void testFillRect() {
+        DrawCommandBuffer commands = new DrawCommandBuffer();
+        commands.add(DrawOperation.FILL_RECT, 12, 8, 2, 3);
+        int[] pixels = draw(commands, 20, 10);
+        assertEquals(10*5, countPixels(pixels, WHITE));
+        assertEquals(WHITE, pixels[3*20 + 2]);
+        assertEquals(BLACK, pixels[8*20 + 12]);
+    }
+    
+    public void testLineIncludesEndpoints() {
+        DrawCommandBuffer commands = new DrawCommandBuffer();
+        commands.add(DrawOperation.SET_PAINT, 255, 0, 0, 255);
+        commands.add(DrawOperation.LINE, 1, 1, 8, 5);
+        int[] pixels = draw(commands, 10, 10);
+        int red = 0xffff0000;
+        assertEquals(red, pixels[1*10 + 1]);
+        assertEquals(red, pixels[5*10 + 8]);
+        assertEquals(8, countPixels(pixels, red));
+    }
+    
+    // the unclipped Bresenham loop that drawLine has to match
+    static void referenceLine(int[] pixels, int width, int height, int x1, int y1, int x2, int y2) {
+        int dx = Math.abs(x2-x1);
+        int dy = -Math.abs(y2-y1);
+        int sx = (x1<x2) ? 1 : -1;
+        int sy = (y1<y2) ? 1 : -1;
+        int err = dx + dy;
+        int x = x1, y = y1;
+        while (true) {
+            if (x>=0 && x<width && y>=0 && y<height) pixels[y*width + x] = WHITE;
+            if (x==x2 && y==y2) break;
+            int e2 = 2*err;
+            if (e2>=dy) {
+                err += dy;
+                x += sx;
+            }
+            if (e2<=dx) {
+                err += dx;
+                y += sy;
+            }
+        }
+    }
+    
+    public void testClippedLinesMatchBresenham() {
+        int width = 20, height = 15;
+        java.util.Random random = new java.util.Random(42);
+        for(int i=0; i<2000; i++) {
+            int x1 = random.nextInt(80)-30, y1 = random.nextInt(80)-30;
+            int x2 = random.nextInt(80)-30, y2 = random.nextInt(80)-30;
+            DrawCommandBuffer commands = new DrawCommandBuffer();
+            commands.add(DrawOperation.LINE, x1, y1, x2, y2);
+            int[] expected = new int[width*height];
+            Arrays.fill(expected, BLACK);
+            referenceLine(expected, width, height, x1, y1, x2, y2);
+            assertTrue("line " + x1 + "," + y1 + " " + x2 + "," + y2, 
+                    Arrays.equals(expected, draw(commands, width, height)));
+        }
+    }
+    
+    public void testLinesWithExtremeCoordinates() {
+        DrawCommandBuffer commands = new DrawCommandBuffer();
+        commands.add(DrawOperation.LINE, -1000000000, 5, 1000000000, 6);
+        commands.add(DrawOperation.LINE, Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE);
+        commands.add(DrawOperation.LINE, 50, Integer.MAX_VALUE, 50, Integer.MIN_VALUE);
+        commands.add(DrawOperation.LINE, Integer.MAX_VALUE, 0, Integer.MIN_VALUE, 99);
+        long start = System.currentTimeMillis();
+        int[] pixels = draw(commands, 100, 100);
+        assertTrue(System.currentTimeMillis()-start < 1000);
+        for(int i=0; i<100; i++) {
+            // the first line steps from y=5 to y=6 halfway along, at x=0
+            assertEquals(WHITE, pixels[6*100 + i]);
+            // the diagonal goes through (0,0) and (99,99), and the vertical line covers its whole column
+            assertEquals(WHITE, pixels[i*100 + i]);
+            assertEquals(WHITE, pixels[i*100 + 50]);
+        }
+    }
+    
+    public void testTranslucentPaint() {
+        DrawCommandBuffer commands = new DrawCommandBuffer();
+        commands.add(DrawOperation.SET_PAINT, 255, 255, 255, 51);
+        commands.add(DrawOperation.FILL_RECT, 0, 0, 1, 1);
+        assertEquals(0xff333333, draw(commands, 1, 1)[0]);
+    }
+    
+    // returns true if pixels are symmetric about the vertical line x=axis/2 and the horizontal line y=axis/2
+    static boolean isSymmetric(int[] pixels, int size, int axis) {
+        for(int y=0; y<size; y++) {
+            for(int x=0; x<size; x++) {
+                int mx = axis-x, my = axis-y;
+                if (mx<0 || mx>=size || my<0 || my>=size) continue;
+                if (pixels[y*size + x]!=pixels[y*size + mx] || pixels[y*size + x]!=pixels[my*size + x]) return false;
+            }
+        }
+        return true;
+    }
+    
+    public void testCirclesAreSymmetric() {
+        int size = 40;
+        DrawCommandBuffer commands = new DrawCommandBuffer();
+        commands.add(DrawOperation.FILL_CIRCLE, 20, 20, 9, 0);
+        int[] pixels = draw(commands, size, size);
+        // pixel centers within radius 9 of (20, 20), symmetric about the edge between pixels 19 and 20
+        assertTrue(countPixels(pixels, WHITE) > 0);
+        assertTrue(isSymmetric(pixels, size, 39));
+        assertEquals(WHITE, pixels[20*size + 28]);
+        assertEquals(BLACK, pixels[20*size + 29]);
+        
+        commands.clear();
+        commands.add(DrawOperation.FRAME_CIRCLE, 20, 20, 15, 0);
+        pixels = draw(commands, size, size);
+        // outline pixels are symmetric about pixel 20
+        assertTrue(isSymmetric(pixels, size, 40));
+        assertEquals(WHITE, pixels[20*size + 35]);
+        assertEquals(WHITE, pixels[5*size + 20]);
+        assertEquals(BLACK, pixels[20*size + 20]);
+    }
+    
+    // the unclipped midpoint circle loop that frameCircle has to match, blending translucent white once per point
+    static void referenceCircle(int[] pixels, int width, int rowStart, int rowEnd, int cx, int cy, int radius) {
+        int x = radius, y = 0;
+        int err = 1 - radius;
+        while (x>=y) {
+            int[][] points = {{x, y}, {-x, y}, {x, -y}, {-x, -y}, {y, x}, {-y, x}, {y, -x}, {-y, -x}};
+            Set<String> plotted = new HashSet<String>();
+            for(int[] point : points) {
+                int px = cx+point[0], py = cy+point[1];
+                if (plotted.add(px + "," + py) && px>=0 && px<width && py>=rowStart && py<rowEnd) {
+                    int index = py*width + px;
+                    int value = 0xff & pixels[index];
+                    value = (255*128 + value*127) / 255;
+                    pixels[index] = 0xff000000 | (value<<16) | (value<<8) | value;
+                }
+            }
+            y++;
+            if (err<0) {
+                err += 2*y + 1;
+            }
+            else {
+                x--;
+                err += 2*(y - x) + 1;
+            }
+        }
+    }
+    
+    public void testClippedCirclesMatchMidpoint() {
+        int width = 20, height = 15;
+        java.util.Random random = new java.util.Random(42);
+        for(int i=0; i<2000; i++) {
+            int cx = random.nextInt(100)-40, cy = random.nextInt(100)-40, radius = random.nextInt(50);
+            int rowStart = random.nextInt(height), rowEnd = rowStart + 1 + random.nextInt(height-rowStart);
+            DrawCommandBuffer commands = new DrawCommandBuffer();
+            commands.add(DrawOperation.SET_PAINT, 255, 255, 255, 128);
+            commands.add(DrawOperation.FRAME_CIRCLE, cx, cy, radius, 0);
+            int[] expected = new int[width*height];
+            Arrays.fill(expected, BLACK);
+            referenceCircle(expected, width, rowStart, rowEnd, cx, cy, radius);
+            int[] pixels = new int[width*height];
+            Arrays.fill(pixels, BLACK);
+            new SoftwareRasterizer().draw(commands, pixels, width, height, rowStart, rowEnd);
+            assertTrue("circle " + cx + "," + cy + " r=" + radius + " rows " + rowStart + "-" + rowEnd, 
+                    Arrays.equals(expected, pixels));
+        }
+    }
+    
+    public void testCirclesWithExtremeCoordinates() {
+        int size = 100;
+        DrawCommandBuffer commands = new DrawCommandBuffer();
+        // outlines that enclose the whole frame or are entirely outside it draw nothing
+        commands.add(DrawOperation.FRAME_CIRCLE, 50, 50, 1000000000, 0);
+        commands.add(DrawOperation.FRAME_CIRCLE, 50, 50, Integer.MAX_VALUE, 0);
+        commands.add(DrawOperation.FRAME_CIRCLE, Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE, 0);
+        commands.add(DrawOperation.FILL_CIRCLE, Integer.MIN_VALUE, 50, Integer.MAX_VALUE, 0);
+        long start = System.currentTimeMillis();
+        int[] pixels = draw(commands, size, size);
+        assertEquals(0, countPixels(pixels, WHITE));
+        
+        // an outline whose leftmost point is at x=10, which is nearly vertical across the frame
+        commands.clear();
+        commands.add(DrawOperation.FRAME_CIRCLE, 10+1000000000, 50, 1000000000, 0);
+        // and one through (0, 0) with the largest radius
+        commands.add(DrawOperation.FRAME_CIRCLE, Integer.MAX_VALUE, 0, Integer.MAX_VALUE, 0);
+        pixels = draw(commands, size, size);
+        for(int y=0; y<size; y++) {
+            assertEquals(WHITE, pixels[y*size + 10]);
+            assertEquals(WHITE, pixels[y*size]);
+        }
+        assertEquals(2*size, countPixels(pixels, WHITE));
+        
+        // a filled circle larger than the frame covers all of it
+        commands.clear();
+        commands.add(DrawOperation.FILL_CIRCLE, 50, 50, Integer.MAX_VALUE, 0);
+        pixels = draw(commands, size, size);
+        assertEquals(size*size, countPixels(pixels, WHITE));
+        assertTrue(System.currentTimeMillis()-start < 1000);
+    }
+    
+    public void testNumbers() {
+        DrawCommandBuffer commands = new DrawCommandBuffer();
+        commands.add(DrawOperation.DRAW_NUMBER, 0, 10, -8, 0);
+        commands.add(DrawOperation.DRAW_NUMBER, 0, 20, Integer.MIN_VALUE, 0);
+        int[] pixels = draw(commands, 100, 20);
+        // minus sign is 5 pixels, 8 is 17
+        int firstLinePixels = 0;
+        for(int i=0; i<100*10; i++) {
+            if (pixels[i]==WHITE) firstLinePixels++;
+        }
+        assertEquals(22, firstLinePixels);
+        assertTrue(countPixels(pixels, WHITE) > firstLinePixels);
+    }
+    
+    public void testBandsMatchFullFrame() {
+        int width = 64, height = 48;
+        DrawCommandBuffer commands = new DrawCommandBuffer();
+        commands.add(DrawOperation.SET_PAINT, 10, 200, 30, 128);
+        commands.add(DrawOperation.FILL_CIRCLE, 30, 20, 17, 0);
+        commands.add(DrawOperation.LINE, -5, 50, 70, -3);
+        commands.add(DrawOperation.SET_PAINT, 255, 255, 0, 255);
+        commands.add(DrawOperation.FRAME_RECT, 4, 4, 60, 44);
+        commands.add(DrawOperation.FRAME_CIRCLE, 40, 30, 12, 0);
+        commands.add(DrawOperation.DRAW_NUMBER, 10, 30, 1234567890, 0);
+        int[] expected = draw(commands, width, height);
+        
+        int[] banded = new int[width*height];
+        Arrays.fill(banded, BLACK);
+        int[] bandStarts = {0, 5, 6, 20, 31, 47, 48};
+        for(int i=0; i<bandStarts.length-1; i++) {
+            new SoftwareRasterizer().draw(commands, banded, width, height, bandStarts[i], bandStarts[i+1]);
+        }
+        assertTrue(Arrays.equals(expected, banded));
+    }
+}
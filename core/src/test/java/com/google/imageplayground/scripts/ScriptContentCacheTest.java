@@ -0,0 +1,97 @@
+/* 
+ * Copyright 2012 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.imageplayground.scripts;
+
+import java.io.File;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+import com.google.imageplayground.util.TempDirs;
+
+public class ScriptContentCacheTest extends TestCase {
+    
+    File baseDir;
+    ScriptList scriptList;
+    
+    @Override protected void setUp() throws IOException {
+        baseDir = TempDirs.createTempDir("ScriptContentCacheTest");
+        scriptList = new ScriptList(baseDir.getPath());
+    }
+    
+    @Override protected void tearDown() {
+        TempDirs.deleteRecursively(baseDir);
+    }
+    
+    public void testCachesContent() {
+        ScriptFile sf = scriptList.createNewScriptFile("Script", "return 1");
+        ScriptContentCache cache = new ScriptContentCache();
+        assertNull(cache.getInMemoryContent(sf));
+        assertEquals("return 1", cache.getContent(sf));
+        // the cached content is returned after the file changes
+        sf.saveScriptContent("return 2");
+        assertEquals("return 1", cache.getInMemoryContent(sf));
+        assertEquals("return 1", cache.getPreview(sf));
+        cache.remove(sf);
+        assertEquals("return 2", cache.getContent(sf));
+    }
+    
+    public void testEvictsLeastRecentlyUsed() {
+        ScriptFile sf1 = scriptList.createNewScriptFile("One", "return 11");
+        ScriptFile sf2 = scriptList.createNewScriptFile("Two", "return 22");
+        ScriptFile sf3 = scriptList.createNewScriptFile("Three", "return 33");
+        ScriptContentCache cache = new ScriptContentCache(20);
+        cache.getContent(sf1);
+        cache.getContent(sf2);
+        cache.getInMemoryContent(sf1);
+        cache.getContent(sf3);
+        assertNotNull(cache.getInMemoryContent(sf1));
+        assertNull(cache.getInMemoryContent(sf2));
+        assertNotNull(cache.getInMemoryContent(sf3));
+        assertEquals(18, cache.size);
+    }
+    
+    public void testPreviewsOutliveContent() {
+        ScriptFile sf1 = scriptList.createNewScriptFile("One", "return 11");
+        ScriptFile sf2 = scriptList.createNewScriptFile("Two", "return 22");
+        ScriptFile sf3 = scriptList.createNewScriptFile("Three", "return 33");
+        ScriptContentCache cache = new ScriptContentCache(10, 2);
+        cache.getContent(sf1);
+        cache.getContent(sf2);
+        // content is evicted by size, previews only by their own count
+        assertNull(cache.getInMemoryContent(sf1));
+        assertEquals("return 11", cache.getInMemoryPreview(sf1));
+        cache.getInMemoryPreview(sf1);
+        cache.getContent(sf3);
+        assertEquals("return 11", cache.getInMemoryPreview(sf1));
+        assertNull(cache.getInMemoryPreview(sf2));
+        assertEquals("return 33", cache.getInMemoryPreview(sf3));
+        cache.remove(sf1);
+        assertNull(cache.getInMemoryPreview(sf1));
+    }
+    
+    public void testPreview() {
+        assertEquals("", ScriptContentCache.previewForContent(""));
+        assertEquals("a = 1 return gray(a)", ScriptContentCache.previewForContent("\n  a = 1\n\n return gray(a)\n"));
+        assertEquals("a b...", ScriptContentCache.previewForContent("a\nb\nc"));
+        StringBuilder longLine = new StringBuilder();
+        for(int i=0; i<100; i++) longLine.append('x');
+        String preview = ScriptContentCache.previewForContent(longLine.toString());
+        assertEquals(ScriptContentCache.PREVIEW_MAX_LENGTH + 3, preview.length());
+        assertTrue(preview.endsWith("..."));
+    }
+}
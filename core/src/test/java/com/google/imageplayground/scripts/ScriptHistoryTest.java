@@ -0,0 +1,181 @@
+/* 
+ * Copyright 2012 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.imageplayground.scripts;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.google.imageplayground.util.TempDirs;
+
+public class ScriptHistoryTest extends TestCase {
+    
+    File baseDir;
+    ScriptHistory history;
+    
+    @Override protected void setUp() throws IOException {
+        baseDir = TempDirs.createTempDir("ScriptHistoryTest");
+        history = new ScriptHistory(new File(baseDir, ScriptHistory.HISTORY_FILENAME));
+    }
+    
+    @Override protected void tearDown() {
+        TempDirs.deleteRecursively(baseDir);
+    }
+    
+    static String script(int lineCount, int changedLine, String change) {
+        StringBuilder builder = new StringBuilder();
+        for(int i=0; i<lineCount; i++) {
+            builder.append((i==changedLine) ? change : "x" + i + " = x" + i + " + " + i).append("\n");
+        }
+        return builder.toString();
+    }
+    
+    public void testSplitAndJoinLines() {
+        assertEquals(Arrays.asList("a\n", "\n", "b"), ScriptHistory.splitLines("a\n\nb"));
+        assertEquals(Arrays.asList("a\n"), ScriptHistory.splitLines("a\n"));
+        assertEquals(0, ScriptHistory.splitLines("").size());
+        assertEquals("a\n\nb", ScriptHistory.joinLines(ScriptHistory.splitLines("a\n\nb")));
+    }
+    
+    public void testDeltas() throws Exception {
+        String[][] cases = {
+            {"a\nb\nc\n", "a\nB\nc\n"},
+            {"a\nb\nc\n", "a\nc"},
+            {"", "a\nb\n"},
+            {"a\nb\n", ""},
+            {"a\nb\nc\nd\n", "d\nc\nb\na\n"},
+            {"1\n2\n3\n4\n5\n", "0\n1\n3\n4\n4.5\n5\n6\n"},
+        };
+        for(String[] c : cases) {
+            List<String> oldLines = ScriptHistory.splitLines(c[0]);
+            byte[] delta = ScriptHistory.encodeDelta(oldLines, ScriptHistory.splitLines(c[1]));
+            assertEquals(c[1], ScriptHistory.joinLines(ScriptHistory.applyDelta(oldLines, delta)));
+        }
+        // a one line change to a long script stores only that line
+        String before = script(200, -1, null);
+        String after = script(200, 100, "return y");
+        byte[] delta = ScriptHistory.encodeDelta(ScriptHistory.splitLines(before), ScriptHistory.splitLines(after));
+        assertTrue(delta.length < 60);
+    }
+    
+    public void testAppendAndRestore() throws Exception {
+        assertFalse(history.exists());
+        assertNull(history.getLatestContent());
+        int count = ScriptHistory.SNAPSHOT_INTERVAL * 2 + 5;
+        for(int i=0; i<count; i++) {
+            assertEquals(i+1, history.append(script(50, i, "return " + i), 1000+i, false).number);
+        }
+        // unchanged content isn't added
+        assertNull(history.append(script(50, count-1, "return " + (count-1)), 5000, false));
+        
+        List<ScriptHistory.Version> versions = history.getVersions();
+        assertEquals(count, versions.size());
+        int snapshots = 0;
+        for(ScriptHistory.Version version : versions) {
+            if (version.isSnapshot) snapshots++;
+        }
+        assertEquals(3, snapshots);
+        assertEquals(1000+7, versions.get(7).timestamp);
+        for(int i=0; i<count; i++) {
+            assertEquals(script(50, i, "return " + i), history.getContent(i+1));
+        }
+        assertNull(history.getContent(count+1));
+        // deltas make the log much smaller than the versions it holds
+        assertTrue(history.file.length() < count * script(50, -1, null).length() / 5);
+    }
+    
+    public void testIgnoresPartialRecord() throws Exception {
+        history.append("a\n", 1, false);
+        history.append("a\nb\n", 2, false);
+        long length = history.file.length();
+        RandomAccessFile file = new RandomAccessFile(history.file, "rw");
+        file.setLength(length + 10);
+        file.close();
+        assertEquals(2, history.getVersions().size());
+        
+        history.append("a\nb\nc\n", 3, false);
+        assertEquals(3, history.getVersions().size());
+        assertEquals("a\nb\nc\n", history.getLatestContent());
+        
+        // a corrupt record hides the ones after it
+        file = new RandomAccessFile(history.file, "rw");
+        file.seek(length - 1);
+        file.write(0x55);
+        file.close();
+        assertEquals(1, history.getVersions().size());
+    }
+    
+    public void testCompact() throws Exception {
+        for(int i=0; i<30; i++) {
+            history.append(script(20, i % 20, "return " + i), i, false);
+        }
+        history.compact(12);
+        List<ScriptHistory.Version> versions = history.getVersions();
+        assertEquals(12, versions.size());
+        assertEquals(19, versions.get(0).number);
+        assertTrue(versions.get(0).isSnapshot);
+        for(int i=18; i<30; i++) {
+            assertEquals(script(20, i % 20, "return " + i), history.getContent(i+1));
+        }
+        assertNull(history.getContent(18));
+        assertEquals(31, history.append("return y\n", 31, false).number);
+    }
+    
+    public void testAppendUsesCurrentLog() throws Exception {
+        for(int i=0; i<ScriptHistory.MAX_VERSIONS; i++) {
+            history.append("return " + i + "\n", i, false);
+        }
+        assertEquals(ScriptHistory.MAX_VERSIONS, history.getVersions().size());
+        assertEquals(ScriptHistory.MAX_VERSIONS+1, history.append("return y\n", 0, false).number);
+        assertEquals(ScriptHistory.COMPACTED_VERSIONS, history.getVersions().size());
+        assertEquals("return y\n", history.getLatestContent());
+        assertNull(history.append("return y\n", 0, false));
+        
+        // a log replaced since the last append is read again
+        history.file.delete();
+        assertEquals(1, history.append("return y\n", 0, false).number);
+        assertEquals(2, history.append("return x\n", 0, false).number);
+        assertEquals(2, history.getVersions().size());
+    }
+    
+    public void testScriptFileHistory() throws Exception {
+        ScriptList scriptList = new ScriptList(baseDir.getPath());
+        ScriptFile scriptFile = scriptList.createNewScriptFile("Script", "return y");
+        scriptFile.saveScriptContent("return 255 - y");
+        scriptFile.saveScriptContent("return 255 - y");
+        scriptFile.saveScriptContent("return y / 2");
+        ScriptHistory scriptHistory = scriptFile.getHistory();
+        assertEquals(3, scriptHistory.getVersions().size());
+        
+        assertTrue(scriptFile.restoreVersion(2));
+        assertEquals("return 255 - y", scriptFile.getScriptContent());
+        assertEquals(4, scriptHistory.getVersions().size());
+        assertFalse(scriptFile.restoreVersion(10));
+        
+        // a script saved before history was kept gets its existing content as the first version
+        new File(scriptFile.getDirectoryPath(), ScriptHistory.HISTORY_FILENAME).delete();
+        scriptFile.saveScriptContent("return 0");
+        assertEquals("return 255 - y", scriptHistory.getContent(1));
+        assertEquals("return 0", scriptHistory.getContent(2));
+        
+        assertTrue(scriptFile.deleteScript());
+    }
+}
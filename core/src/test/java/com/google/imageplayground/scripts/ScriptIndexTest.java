@@ -0,0 +1,137 @@
+/* 
+ * Copyright 2012 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.imageplayground.scripts;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.google.imageplayground.util.TempDirs;
+
+public class ScriptIndexTest extends TestCase {
+    
+    File baseDir;
+    
+    @Override protected void setUp() throws IOException {
+        baseDir = TempDirs.createTempDir("ScriptIndexTest");
+    }
+    
+    @Override protected void tearDown() {
+        TempDirs.deleteRecursively(baseDir);
+    }
+    
+    static void writeFile(File file, String text) throws IOException {
+        FileWriter out = new FileWriter(file);
+        out.write(text);
+        out.close();
+    }
+    
+    // an index as a new process would see it, read from the index file
+    ScriptIndex reloadedIndex() throws Exception {
+        ScriptIndex.forDirectory(baseDir.getPath()).write();
+        ScriptIndex index = new ScriptIndex(baseDir.getAbsoluteFile());
+        index.load();
+        return index;
+    }
+    
+    static String names(List<ScriptFile> scriptFiles) {
+        StringBuilder builder = new StringBuilder();
+        for(ScriptFile sf : scriptFiles) {
+            if (builder.length()>0) builder.append(",");
+            builder.append(sf.getScriptName());
+        }
+        return builder.toString();
+    }
+    
+    public void testIndexUpdatedByCreateSaveAndDelete() throws Exception {
+        ScriptList scriptList = new ScriptList(baseDir.getPath());
+        assertEquals(0, scriptList.getScriptFiles().size());
+        ScriptFile zebra = scriptList.createNewScriptFile("Zebra", "return gray(y)");
+        ScriptFile apple = scriptList.createNewScriptFile("apple", "return 0");
+        
+        ScriptIndex index = reloadedIndex();
+        assertTrue(index.isLoadedFromFile());
+        assertTrue(index.isCurrent());
+        assertEquals("apple,Zebra", names(index.getScriptFiles()));
+        ScriptIndex.Entry entry = index.getEntry(new File(apple.getDirectoryPath()).getName());
+        assertEquals(8, entry.contentSize);
+        assertEquals(ScriptIndex.contentHash("return 0".getBytes("utf-8")), entry.contentHash);
+        assertEquals(apple.dateCreated.getTime(), entry.dateCreated);
+        
+        assertTrue(apple.saveScriptContent("return 255"));
+        assertTrue(zebra.deleteScript());
+        index = reloadedIndex();
+        assertTrue(index.isCurrent());
+        assertEquals("apple", names(index.getScriptFiles()));
+        assertEquals(10, index.getEntry(new File(apple.getDirectoryPath()).getName()).contentSize);
+    }
+    
+    public void testListingDoesntReadScriptDirectories() throws Exception {
+        ScriptFile sf = new ScriptList(baseDir.getPath()).createNewScriptFile("Indexed", "return 1");
+        ScriptIndex index = reloadedIndex();
+        // unreadable properties without a directory change aren't noticed, since only the index is read
+        File dir = new File(sf.getDirectoryPath());
+        long modified = dir.lastModified();
+        writeFile(new File(dir, ScriptFile.PROPERTIES_FILENAME), "not json");
+        dir.setLastModified(modified);
+        assertTrue(index.isCurrent());
+        assertEquals("Indexed", names(index.getScriptFiles()));
+    }
+    
+    public void testRefreshReadsOnlyChangedDirectories() throws Exception {
+        ScriptList scriptList = new ScriptList(baseDir.getPath());
+        ScriptFile changed = scriptList.createNewScriptFile("Changed", "return 1");
+        ScriptFile removed = scriptList.createNewScriptFile("Removed", "return 2");
+        ScriptFile unchanged = scriptList.createNewScriptFile("Unchanged", "return 3");
+        ScriptIndex index = reloadedIndex();
+        
+        // changes made outside the app: a new script, an edited script, a removed script, and a directory that 
+        // isn't a script
+        ScriptFile.createNewScriptFile(new File(baseDir, "added").getPath(), "Added", "return 4");
+        File changedDir = new File(changed.getDirectoryPath());
+        writeFile(new File(changedDir, changedDir.getName() + ".txt"), "return 100");
+        changedDir.setLastModified(changedDir.lastModified() + 5000);
+        TempDirs.deleteRecursively(new File(removed.getDirectoryPath()));
+        new File(baseDir, "notascript").mkdir();
+        File unchangedDir = new File(unchanged.getDirectoryPath());
+        long unchangedModified = unchangedDir.lastModified();
+        writeFile(new File(unchangedDir, ScriptFile.PROPERTIES_FILENAME), "not json");
+        unchangedDir.setLastModified(unchangedModified);
+        
+        assertFalse(index.isCurrent());
+        assertTrue(index.refresh());
+        assertTrue(index.isCurrent());
+        assertFalse(index.refresh());
+        // Unchanged is still listed because its directory wasn't read again
+        assertEquals("Added,Changed,Unchanged", names(index.getScriptFiles()));
+        assertEquals(10, index.getEntry(changedDir.getName()).contentSize);
+    }
+    
+    public void testRebuildsMissingOrCorruptIndex() throws Exception {
+        new ScriptList(baseDir.getPath()).createNewScriptFile("One", "return 1");
+        ScriptIndex.forDirectory(baseDir.getPath()).write();
+        writeFile(new File(baseDir, ScriptIndex.INDEX_FILENAME), "{");
+        ScriptIndex index = new ScriptIndex(baseDir.getAbsoluteFile());
+        index.load();
+        assertFalse(index.isLoadedFromFile());
+        index.refresh();
+        assertEquals("One", names(index.getScriptFiles()));
+    }
+}
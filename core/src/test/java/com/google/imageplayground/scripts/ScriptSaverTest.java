@@ -0,0 +1,133 @@
+/* 
+ * Copyright 2012 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.imageplayground.scripts;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.google.imageplayground.util.TempDirs;
+
+public class ScriptSaverTest extends TestCase {
+    
+    File baseDir;
+    
+    @Override protected void setUp() throws IOException {
+        baseDir = TempDirs.createTempDir("ScriptSaverTest");
+    }
+    
+    @Override protected void tearDown() {
+        TempDirs.deleteRecursively(baseDir);
+    }
+    
+    // records each write as "value" or "value!" if synced
+    static class RecordingWrite implements ScriptSaver.Write {
+        final List<String> log;
+        final String value;
+        
+        RecordingWrite(List<String> log, String value) {
+            this.log = log;
+            this.value = value;
+        }
+        
+        public void write(boolean sync) {
+            synchronized(log) {
+                log.add(sync ? value + "!" : value);
+            }
+        }
+    }
+    
+    public void testCoalescesWrites() {
+        List<String> log = new ArrayList<String>();
+        ScriptSaver saver = new ScriptSaver(200);
+        for(int i=1; i<=5; i++) {
+            saver.writeLater("a", new RecordingWrite(log, "a" + i));
+        }
+        saver.writeLater("b", new RecordingWrite(log, "b1"));
+        assertTrue(saver.hasPendingWrites());
+        assertEquals(0, log.size());
+        
+        assertTrue(saver.waitForWrites(5000));
+        assertFalse(saver.hasPendingWrites());
+        assertEquals("[a5, b1]", log.toString());
+    }
+    
+    public void testWriteSoonWritesPendingWrites() {
+        List<String> log = new ArrayList<String>();
+        ScriptSaver saver = new ScriptSaver(60000);
+        saver.writeLater("a", new RecordingWrite(log, "a1"));
+        saver.writeSoon("b", new RecordingWrite(log, "b1"));
+        assertTrue(saver.waitForWrites(5000));
+        assertEquals("[a1, b1]", log.toString());
+    }
+    
+    public void testFlushSyncsEarlierWrites() {
+        List<String> log = new ArrayList<String>();
+        ScriptSaver saver = new ScriptSaver(0);
+        String key = ScriptSaver.SCRIPT_KEY_PREFIX + "a";
+        saver.writeLater(key, new RecordingWrite(log, "a1"));
+        assertTrue(saver.waitForWrites(5000));
+        saver.writeLater(key, new RecordingWrite(log, "a2"));
+        saver.flush();
+        assertTrue(saver.waitForWrites(5000));
+        // a2 is either written and then synced, or only written synced if the flush ran first
+        String result = log.toString();
+        assertTrue(result, result.equals("[a1, a2, a2!]") || result.equals("[a1, a2!]"));
+        
+        // nothing to sync until the next write
+        saver.flush();
+        assertTrue(saver.waitForWrites(5000));
+        assertEquals(result, log.toString());
+    }
+    
+    public void testFlushDoesNotRepeatOtherWrites() {
+        List<String> log = new ArrayList<String>();
+        ScriptSaver saver = new ScriptSaver(0);
+        saver.writeLater("pref", new RecordingWrite(log, "p1"));
+        assertTrue(saver.waitForWrites(5000));
+        saver.flush();
+        assertTrue(saver.waitForWrites(5000));
+        assertEquals("[p1]", log.toString());
+        
+        // a pending write is made synced by a flush
+        saver = new ScriptSaver(60000);
+        saver.writeLater("pref", new RecordingWrite(log, "p2"));
+        saver.flush();
+        assertTrue(saver.waitForWrites(5000));
+        assertFalse(saver.hasPendingWrites());
+        assertEquals("[p1, p2!]", log.toString());
+    }
+    
+    public void testSaveScriptLater() throws Exception {
+        ScriptList scriptList = new ScriptList(baseDir.getPath());
+        ScriptFile scriptFile = scriptList.createNewScriptFile("Script", "return y");
+        ScriptSaver saver = new ScriptSaver(60000);
+        saver.saveScriptLater(scriptFile, "return 255 - y");
+        saver.saveScriptLater(scriptFile, "return 255 - y\n");
+        assertEquals("return y", scriptFile.getScriptContent());
+        
+        saver.flush();
+        assertTrue(saver.waitForWrites(5000));
+        assertEquals("return 255 - y\n", scriptFile.getScriptContent());
+        ScriptIndex.Entry entry = ScriptIndex.forDirectory(baseDir.getPath()).getEntry(
+                new File(scriptFile.getDirectoryPath()).getName());
+        assertEquals(ScriptIndex.contentHash("return 255 - y\n".getBytes("utf-8")), entry.contentHash);
+    }
+}
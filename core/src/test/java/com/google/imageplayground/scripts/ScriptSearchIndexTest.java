@@ -0,0 +1,130 @@
+/* 
+ * Copyright 2012 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.imageplayground.scripts;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import com.google.imageplayground.util.TempDirs;
+
+public class ScriptSearchIndexTest extends TestCase {
+    
+    File baseDir;
+    
+    @Override protected void setUp() throws IOException {
+        baseDir = TempDirs.createTempDir("ScriptSearchIndexTest");
+    }
+    
+    @Override protected void tearDown() {
+        TempDirs.deleteRecursively(baseDir);
+    }
+    
+    static Set<String> set(String... values) {
+        return new HashSet<String>(Arrays.asList(values));
+    }
+    
+    static ScriptSearchIndex.Document document(String dir, String name, String content) {
+        return ScriptSearchIndex.documentForScript(dir, name, content, 0);
+    }
+    
+    public void testDocumentForScript() {
+        ScriptSearchIndex.Document doc = document("d", "Faces", 
+                "drawCircle(faceX(0), faceY(0), 10)\nif (x > 0) {\n  count = count + 1\n}\n");
+        assertEquals(set("drawcircle", "facex", "facey"), doc.builtins);
+        assertEquals(set("x", "count"), doc.identifiers);
+        assertEquals(ScriptSearchIndex.TYPE_MANUAL, doc.scriptType);
+        
+        // like the compiler, any per-pixel use of a color script argument makes a color script, not just r, g and b
+        assertEquals(ScriptSearchIndex.TYPE_COLOR, document("d", "Invert", "return gray(255-y)").scriptType);
+        assertEquals(ScriptSearchIndex.TYPE_COLOR, document("d", "Swap", "return color(b, g, r)").scriptType);
+        assertEquals(ScriptSearchIndex.TYPE_GRAYSCALE, document("d", "Half", "level = 128\nreturn gray(level)").scriptType);
+        // variables in top-level roi statements are only used by the prologue
+        assertEquals(ScriptSearchIndex.TYPE_GRAYSCALE, 
+                document("d", "Left", "roi(0, 0, width/2, height)\nreturn gray(128)").scriptType);
+        assertEquals(ScriptSearchIndex.TYPE_COLOR, 
+                document("d", "Left", "roi(0, 0, width/2, height) + 0\nreturn gray(128)").scriptType);
+        // invalid characters are skipped
+        assertEquals(set("x", "y"), document("d", "Bad", "x = y # $").identifiers);
+    }
+    
+    public void testSearch() {
+        ScriptSearchIndex index = new ScriptSearchIndex();
+        index.put(document("faces", "Face Circles", "drawCircle(faceX(0), faceY(0), 10)"));
+        index.put(document("invert", "Invert", "return 255 - y"));
+        index.put(document("swap", "Swap Colors", "return color(b, g, r)"));
+        index.put(document("fade", "Fade", "fade = 2\nreturn 255 / fade"));
+        
+        assertEquals(set("faces", "fade"), index.search(ScriptSearchIndex.Query.parse("fa")));
+        assertEquals(set("faces"), index.search(ScriptSearchIndex.Query.parse("FA builtin:drawcircle")));
+        assertEquals(set("faces"), index.search(ScriptSearchIndex.Query.parse("circ")));
+        assertEquals(set("swap"), index.search(ScriptSearchIndex.Query.parse("col")));
+        assertEquals(set("fade"), index.search(ScriptSearchIndex.Query.parse("type:grayscale")));
+        assertEquals(set("invert", "swap"), index.search(ScriptSearchIndex.Query.parse("type:color")));
+        assertEquals(set("fade"), index.search(ScriptSearchIndex.Query.parse("type:grayscale fad")));
+        assertEquals(set(), index.search(ScriptSearchIndex.Query.parse("builtin:fa")));
+        assertEquals(set(), index.search(ScriptSearchIndex.Query.parse("zebra")));
+        assertEquals(4, index.search(ScriptSearchIndex.Query.parse("  ")).size());
+        assertEquals(Arrays.asList("face", "facex", "facey"), index.termsWithPrefix("Face"));
+        
+        index.put(document("fade", "Dim", "return y / 2"));
+        assertEquals(set("faces"), index.search(ScriptSearchIndex.Query.parse("fa")));
+        index.remove("faces");
+        assertEquals(set(), index.search(ScriptSearchIndex.Query.parse("fa")));
+    }
+    
+    public void testUpdatedBySaveAndDelete() throws Exception {
+        ScriptList scriptList = new ScriptList(baseDir.getPath());
+        ScriptFile faces = scriptList.createNewScriptFile("Faces", "drawCircle(faceX(0), faceY(0), 10)");
+        scriptList.createNewScriptFile("Invert", "return 255 - y");
+        assertEquals("Faces", ScriptIndexTest.names(scriptList.search("builtin:facex")));
+        
+        faces.saveScriptContent("drawRect(0, 0, 10, 10)");
+        assertEquals("", ScriptIndexTest.names(scriptList.search("builtin:facex")));
+        assertEquals("Faces", ScriptIndexTest.names(scriptList.search("drawr")));
+        
+        faces.deleteScript();
+        assertEquals(set("Invert"), 
+                set(ScriptIndexTest.names(new ScriptList(baseDir.getPath()).search("")).split(",")));
+        assertNull(ScriptIndex.forDirectory(baseDir.getPath()).getSearchIndex().getDocument(
+                new File(faces.getDirectoryPath()).getName()));
+    }
+    
+    public void testPersistedAndRefreshedByHash() throws Exception {
+        ScriptList scriptList = new ScriptList(baseDir.getPath());
+        ScriptFile invert = scriptList.createNewScriptFile("Invert", "return 255 - y");
+        ScriptIndex index = ScriptIndex.forDirectory(baseDir.getPath());
+        index.getSearchIndex();
+        index.write();
+        
+        ScriptSearchIndex reloaded = new ScriptSearchIndex();
+        assertTrue(reloaded.load(index.searchIndexFile()));
+        String dir = new File(invert.getDirectoryPath()).getName();
+        assertEquals(ScriptSearchIndex.TYPE_COLOR, reloaded.getDocument(dir).scriptType);
+        
+        // a document whose hash doesn't match the library index is tokenized again
+        reloaded.put(new ScriptSearchIndex.Document(dir, "Invert", 1, ScriptSearchIndex.TYPE_MANUAL, 
+                set("stale"), set()));
+        index.updateSearchIndex(reloaded);
+        assertEquals(ScriptSearchIndex.TYPE_COLOR, reloaded.getDocument(dir).scriptType);
+        assertEquals(set("y"), reloaded.getDocument(dir).identifiers);
+    }
+}
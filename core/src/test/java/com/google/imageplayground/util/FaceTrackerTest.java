@@ -0,0 +1,92 @@
+/* 
+ * Copyright 2012 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.imageplayground.util;
+
+import junit.framework.TestCase;
+
+public class FaceTrackerTest extends TestCase {
+    
+    public void testExtrapolatesBetweenDetections() {
+        FaceTracker tracker = new FaceTracker();
+        tracker.addDetection(0, 2, new int[] {100, 300}, new int[] {50, 60}, new int[] {40, 40}, new int[] {80, 90});
+        // first face moved by (6, -3) in 3 frames, second face moved too far to be matched
+        tracker.addDetection(3, 2, new int[] {106, 200}, new int[] {47, 60}, new int[] {40, 40}, new int[] {70, 90});
+        
+        tracker.updateEstimates(5);
+        assertEquals(2, tracker.getNumberOfFaces());
+        assertEquals(110, tracker.getMidpointX(0));
+        assertEquals(45, tracker.getMidpointY(0));
+        assertEquals(70, tracker.getConfidence(0));
+        assertEquals(200, tracker.getMidpointX(1));
+        assertEquals(60, tracker.getMidpointY(1));
+        assertEquals(-1, tracker.getMidpointX(2));
+    }
+    
+    static class ThrowingFaceLocator implements FaceLocator {
+        int calls = 0;
+        
+        public synchronized int findFacesInCameraData(byte[] data, int width, int height) {
+            if (++calls==1) throw new AssertionError("detector failed");
+            return 0;
+        }
+        public int getConfidence(int index) {return -1;}
+        public int getMidpointX(int index) {return -1;}
+        public int getMidpointY(int index) {return -1;}
+        public int getEyesDistance(int index) {return -1;}
+        
+        synchronized int getCalls() {
+            return calls;
+        }
+    }
+    
+    static void waitForDetection(FaceTracker tracker) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline) {
+            synchronized(tracker) {
+                if (!tracker.detectionRunning) return;
+            }
+            Thread.sleep(10);
+        }
+        fail("Detection didn't finish");
+    }
+    
+    public void testDetectionRunsAgainAfterError() throws Exception {
+        ThrowingFaceLocator locator = new ThrowingFaceLocator();
+        FaceTracker tracker = new FaceTracker(locator, FaceTracker.DEFAULT_MAX_FACES);
+        tracker.setDetectionInterval(1);
+        byte[] data = new byte[YuvUtils.bufferSize(8, 8)];
+        try {
+            tracker.update(data, 8, 8, 1);
+            waitForDetection(tracker);
+            tracker.update(data, 8, 8, 2);
+            waitForDetection(tracker);
+            assertEquals(2, locator.getCalls());
+            assertEquals(0, tracker.getNumberOfFaces());
+        }
+        finally {
+            tracker.shutdown();
+        }
+        assertNull(tracker.detectionExecutor);
+    }
+    
+    public void testNoFacesBeforeFirstDetection() {
+        FaceTracker tracker = new FaceTracker();
+        tracker.updateEstimates(1);
+        assertEquals(0, tracker.getNumberOfFaces());
+        assertEquals(-1, tracker.getEyesDistance(0));
+    }
+}
@@ -0,0 +1,79 @@
+/* 
+ * Copyright 2012 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.imageplayground.util;
+
+import junit.framework.TestCase;
+
+public class FastRandomTest extends TestCase {
+    
+    public void testSameSeedSameSequence() {
+        FastRandom r1 = new FastRandom(42);
+        FastRandom r2 = new FastRandom(1);
+        r2.setSeed(42);
+        for(int i=0; i<1000; i++) {
+            assertEquals(r1.nextInt(), r2.nextInt());
+        }
+    }
+    
+    public void testZeroSeed() {
+        FastRandom random = new FastRandom(0);
+        int nonzero = 0;
+        for(int i=0; i<100; i++) {
+            if (random.nextInt()!=0) nonzero++;
+        }
+        assertTrue(nonzero>90);
+    }
+    
+    public void testBoundedDistribution() {
+        FastRandom random = new FastRandom(7);
+        int[] counts = new int[10];
+        int n = 100000;
+        for(int i=0; i<n; i++) {
+            int value = random.nextInt(10);
+            assertTrue(value>=0 && value<10);
+            counts[value]++;
+        }
+        for(int count : counts) {
+            assertTrue("count=" + count, Math.abs(count - n/10) < n/100);
+        }
+        assertEquals(0, random.nextInt(1));
+    }
+    
+    public void testNonPositiveBound() {
+        try {
+            new FastRandom(1).nextInt(0);
+            fail("expected IllegalArgumentException");
+        }
+        catch(IllegalArgumentException expected) {
+        }
+    }
+    
+    public void testHash() {
+        assertEquals(FastRandom.hash(3, 4, 5), FastRandom.hash(3, 4, 5));
+        assertTrue(FastRandom.hash(3, 4, 5)!=FastRandom.hash(4, 3, 5));
+        // low bits should be spread evenly even for neighboring pixels
+        int[] counts = new int[4];
+        for(int row=0; row<100; row++) {
+            for(int col=0; col<100; col++) {
+                counts[FastRandom.hash(row, col, 0) & 3]++;
+            }
+        }
+        for(int count : counts) {
+            assertTrue("count=" + count, Math.abs(count - 2500) < 250);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/* 
+ * Copyright 2012 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.imageplayground.util;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class FrameHistoryTest extends TestCase {
+    
+    static byte[] frameWithBrightness(int width, int height, int value) {
+        byte[] data = new byte[YuvUtils.bufferSize(width, height)];
+        for(int i=0; i<width*height; i++) {
+            data[i] = (byte)(value + i);
+        }
+        return data;
+    }
+    
+    public void testInputRing() {
+        int width = 8, height = 6;
+        FrameHistory history = new FrameHistory(3, 0);
+        assertEquals(-1, history.getBrightness(1, 0, 0));
+        
+        for(int frame=1; frame<=5; frame++) {
+            history.addInputFrame(frameWithBrightness(width, height, 10*frame), width, height);
+        }
+        assertEquals(3, history.getNumberOfInputFrames());
+        assertEquals(50, history.getBrightness(1, 0, 0));
+        assertEquals(40, history.getBrightness(2, 0, 0));
+        assertEquals(30, history.getBrightness(3, 0, 0));
+        // older than the ring holds, use the oldest stored frame
+        assertEquals(30, history.getBrightness(10, 0, 0));
+        assertEquals(50, history.getBrightness(0, 0, 0));
+    }
+    
+    public void testPartiallyFilled() {
+        int width = 8, height = 6;
+        FrameHistory history = new FrameHistory(4, 0);
+        history.addInputFrame(frameWithBrightness(width, height, 10), width, height);
+        history.addInputFrame(frameWithBrightness(width, height, 20), width, height);
+        assertEquals(20, history.getBrightness(1, 0, 0));
+        assertEquals(10, history.getBrightness(2, 0, 0));
+        assertEquals(10, history.getBrightness(4, 0, 0));
+    }
+    
+    public void testClampsToBounds() {
+        int width = 8, height = 6;
+        FrameHistory history = new FrameHistory(1, 0);
+        history.addInputFrame(frameWithBrightness(width, height, 0), width, height);
+        assertEquals(0, history.getBrightness(1, -3, -3));
+        assertEquals(width*height-1, history.getBrightness(1, height+2, width+2));
+        assertEquals(2*width+3, history.getBrightness(1, 2, 3));
+    }
+    
+    public void testOutputRing() {
+        int width = 4, height = 4;
+        FrameHistory history = new FrameHistory(0, 2);
+        assertEquals(0xff000000, history.getOutputColor(1, 0, 0));
+        int[] pixels = new int[width*height];
+        for(int frame=1; frame<=3; frame++) {
+            Arrays.fill(pixels, frame);
+            history.addOutputFrame(pixels, width, height);
+        }
+        // the stored frames are copies, not the reused output array
+        Arrays.fill(pixels, 99);
+        assertEquals(3, history.getOutputColor(1, 1, 1));
+        assertEquals(2, history.getOutputColor(2, 1, 1));
+    }
+    
+    public void testSizeChangeDiscardsFrames() {
+        FrameHistory history = new FrameHistory(2, 0);
+        history.addInputFrame(frameWithBrightness(8, 6, 10), 8, 6);
+        history.addInputFrame(frameWithBrightness(4, 4, 20), 4, 4);
+        assertEquals(1, history.getNumberOfInputFrames());
+        assertEquals(20, history.getBrightness(2, 0, 0));
+    }
+}
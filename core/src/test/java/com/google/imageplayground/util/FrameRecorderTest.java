@@ -0,0 +1,104 @@
+/* 
+ * Copyright 2012 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.imageplayground.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class FrameRecorderTest extends TestCase {
+    
+    File path;
+    
+    @Override protected void setUp() throws IOException {
+        path = File.createTempFile("FrameRecorderTest", FrameRecorder.FILE_EXTENSION);
+    }
+    
+    @Override protected void tearDown() {
+        path.delete();
+    }
+    
+    static byte[] createFrame(int width, int height, int seed) {
+        byte[] data = new byte[YuvUtils.bufferSize(width, height)];
+        for(int i=0; i<data.length; i++) {
+            data[i] = (byte)(i*seed + (i>>7));
+        }
+        return data;
+    }
+    
+    static byte[] frameBytes(FrameStore store, int index) {
+        ByteBuffer frame = store.getFrame(index);
+        byte[] data = new byte[frame.capacity()];
+        JavaUtils.copyBytes(frame, 0, data, 0, data.length);
+        return data;
+    }
+    
+    public void testRoundTrip() throws IOException {
+        // large enough frames that the mapping has to be extended
+        int[][] sizes = {{16, 8}, {2000, 2000}, {2000, 2000}, {2000, 2000}, {30, 20}};
+        FrameRecorder recorder = new FrameRecorder(path);
+        for(int i=0; i<sizes.length; i++) {
+            recorder.addFrame(createFrame(sizes[i][0], sizes[i][1], i+1), sizes[i][0], sizes[i][1], 1000L*i);
+        }
+        assertEquals(sizes.length, recorder.getFrameCount());
+        recorder.close();
+        
+        long expectedLength = FrameRecorder.FILE_HEADER_SIZE;
+        for(int[] size : sizes) {
+            expectedLength += FrameRecorder.FRAME_HEADER_SIZE + YuvUtils.bufferSize(size[0], size[1]);
+        }
+        assertEquals(expectedLength, path.length());
+        
+        FrameStore store = FrameStore.openRecording(path);
+        assertEquals(sizes.length, store.getFrameCount());
+        for(int i=0; i<sizes.length; i++) {
+            assertEquals(sizes[i][0], store.getWidth(i));
+            assertEquals(sizes[i][1], store.getHeight(i));
+            assertEquals(1000L*i, store.getTimestampNanos(i));
+            assertTrue(Arrays.equals(createFrame(sizes[i][0], sizes[i][1], i+1), frameBytes(store, i)));
+        }
+    }
+    
+    public void testReadsRecordingThatWasntClosed() throws IOException {
+        FrameRecorder recorder = new FrameRecorder(path);
+        recorder.addFrame(createFrame(8, 4, 3), 8, 4, 0);
+        recorder.addFrame(createFrame(8, 4, 5), 8, 4, 1);
+        // the file is the size of the mapping, with zeros after the frames
+        assertTrue(path.length() >= FrameRecorder.MAP_CHUNK_SIZE);
+        
+        FrameStore store = FrameStore.openRecording(path);
+        assertEquals(2, store.getFrameCount());
+        assertTrue(Arrays.equals(createFrame(8, 4, 5), frameBytes(store, 1)));
+        recorder.close();
+    }
+    
+    public void testRejectsOtherFiles() throws IOException {
+        RandomAccessFile file = new RandomAccessFile(path, "rw");
+        file.writeInt(0x12345678);
+        file.writeInt(FrameRecorder.VERSION);
+        file.close();
+        try {
+            FrameStore.openRecording(path);
+            fail("Expected IOException");
+        }
+        catch(IOException expected) {}
+    }
+}
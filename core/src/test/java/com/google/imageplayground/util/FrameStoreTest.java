@@ -0,0 +1,102 @@
+/* 
+ * Copyright 2012 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.imageplayground.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class FrameStoreTest extends TestCase {
+    
+    File path;
+    
+    @Override protected void setUp() throws IOException {
+        path = File.createTempFile("FrameStoreTest", FrameRecorder.FILE_EXTENSION);
+    }
+    
+    @Override protected void tearDown() {
+        path.delete();
+    }
+    
+    public void testSplitsLargeRecordingIntoRegions() throws IOException {
+        FrameRecorder recorder = new FrameRecorder(path);
+        for(int i=0; i<5; i++) {
+            recorder.addFrame(FrameRecorderTest.createFrame(20, 10, i+1), 20, 10, i);
+        }
+        recorder.close();
+        
+        // each frame is 300 bytes, so only 2 fit in a region
+        FrameStore store = FrameStore.openRecording(path, 700);
+        assertEquals(5, store.getFrameCount());
+        assertEquals(3, store.regions.size());
+        for(int i=0; i<5; i++) {
+            assertEquals(i/2, store.frameRegion[i]);
+            assertTrue(Arrays.equals(FrameRecorderTest.createFrame(20, 10, i+1), FrameRecorderTest.frameBytes(store, i)));
+        }
+    }
+    
+    public void testFramesAreIndependentReadOnlySlices() throws IOException {
+        FrameRecorder recorder = new FrameRecorder(path);
+        recorder.addFrame(FrameRecorderTest.createFrame(4, 2, 1), 4, 2, 0);
+        recorder.addFrame(FrameRecorderTest.createFrame(4, 2, 2), 4, 2, 0);
+        recorder.close();
+        
+        FrameStore store = FrameStore.openRecording(path);
+        ByteBuffer frame = store.getFrame(1);
+        assertEquals(0, frame.position());
+        assertEquals(YuvUtils.bufferSize(4, 2), frame.capacity());
+        assertEquals(FrameRecorderTest.createFrame(4, 2, 2)[0], frame.get(0));
+        assertTrue(frame.isReadOnly());
+        try {
+            frame.put(0, (byte)1);
+            fail("Expected ReadOnlyBufferException");
+        }
+        catch(ReadOnlyBufferException expected) {}
+        
+        frame.position(3);
+        assertEquals(0, store.getFrame(1).position());
+        try {
+            store.getFrame(2);
+            fail("Expected IndexOutOfBoundsException");
+        }
+        catch(IndexOutOfBoundsException expected) {}
+    }
+    
+    public void testRawFrames() throws IOException {
+        int size = YuvUtils.bufferSize(8, 6);
+        FileOutputStream out = new FileOutputStream(path);
+        for(int i=0; i<3; i++) {
+            out.write(FrameRecorderTest.createFrame(8, 6, i+1));
+        }
+        // partial frame at the end is ignored
+        out.write(new byte[size/2]);
+        out.close();
+        
+        FrameStore store = FrameStore.openRawFrames(path, 8, 6);
+        assertEquals(3, store.getFrameCount());
+        for(int i=0; i<3; i++) {
+            assertEquals(8, store.getWidth(i));
+            assertEquals(6, store.getHeight(i));
+            assertTrue(Arrays.equals(FrameRecorderTest.createFrame(8, 6, i+1), FrameRecorderTest.frameBytes(store, i)));
+        }
+    }
+}
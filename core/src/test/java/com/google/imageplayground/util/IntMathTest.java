@@ -0,0 +1,113 @@
+/* 
+ * Copyright 2012 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.imageplayground.util;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+// compares IntMath with the floating point implementations that DexImageScript used previously
+public class IntMathTest extends TestCase {
+    
+    static final double INT_TO_ANGLE = Math.PI/Integer.MAX_VALUE;
+    static final double ANGLE_TO_INT = Integer.MAX_VALUE/Math.PI;
+    
+    static int referenceSinmult(int angle, int scale) {
+        return (int)Math.round(Math.sin(INT_TO_ANGLE*angle)*scale);
+    }
+    
+    static int referenceCosmult(int angle, int scale) {
+        return (int)Math.round(Math.cos(INT_TO_ANGLE*angle)*scale);
+    }
+    
+    public void testSinCos() {
+        Random random = new Random(1);
+        int[] scales = {1, 100, 255, 1000, 100000};
+        int mismatches = 0;
+        int total = 0;
+        for(int i=0; i<20000; i++) {
+            int angle = random.nextInt();
+            for(int scale : scales) {
+                int sin = IntMath.sinmult(angle, scale);
+                int cos = IntMath.cosmult(angle, scale);
+                // values can only differ when the exact result is very close to halfway between two ints
+                assertTrue(Math.abs(sin - referenceSinmult(angle, scale)) <= 1);
+                assertTrue(Math.abs(cos - referenceCosmult(angle, scale)) <= 1);
+                if (sin!=referenceSinmult(angle, scale)) mismatches++;
+                if (cos!=referenceCosmult(angle, scale)) mismatches++;
+                total += 2;
+            }
+        }
+        assertTrue("mismatches=" + mismatches, mismatches < total/1000);
+    }
+    
+    public void testSinCosExactAngles() {
+        int quarter = 1<<30;
+        assertEquals(0, IntMath.sinmult(0, 1000));
+        assertEquals(1000, IntMath.sinmult(quarter, 1000));
+        assertEquals(0, IntMath.sinmult(2*quarter, 1000));
+        assertEquals(-1000, IntMath.sinmult(3*quarter, 1000));
+        assertEquals(1000, IntMath.cosmult(0, 1000));
+        assertEquals(-1000, IntMath.cosmult(Integer.MIN_VALUE, 1000));
+        assertEquals(-1000, IntMath.cosmult(Integer.MAX_VALUE, 1000));
+        assertEquals(707, IntMath.sinmult(quarter/2, 1000));
+        assertEquals(-707, IntMath.sinmult(-quarter/2, 1000));
+    }
+    
+    public void testIsqrt() {
+        assertEquals(0, IntMath.isqrt(-5));
+        assertEquals(0, IntMath.isqrt(0));
+        assertEquals(1, IntMath.isqrt(3));
+        assertEquals(2, IntMath.isqrt(4));
+        for(long n=0; n<100000; n++) {
+            long root = IntMath.isqrt(n);
+            assertTrue(root*root<=n && (root+1)*(root+1)>n);
+        }
+        long big = 3037000499L;
+        assertEquals(big, IntMath.isqrt(big*big));
+        assertEquals(big-1, IntMath.isqrt(big*big-1));
+        assertEquals(big, IntMath.isqrt(Long.MAX_VALUE));
+    }
+    
+    public void testHypot() {
+        for(int x=-300; x<=300; x+=7) {
+            for(int y=-300; y<=300; y+=3) {
+                assertEquals((int)Math.round(Math.sqrt(x*x + y*y)), IntMath.hypot(x, y));
+            }
+        }
+        // the int expression x*x+y*y overflowed here
+        assertEquals(70711, IntMath.hypot(50000, 50000));
+    }
+    
+    public void testAtan2() {
+        Random random = new Random(2);
+        for(int i=0; i<100000; i++) {
+            // mix small and large coordinates, since small ones hit the same table entries often
+            int y = (i%2==0) ? random.nextInt(2001)-1000 : random.nextInt();
+            int x = (i%3==0) ? random.nextInt(2001)-1000 : random.nextInt();
+            int expected = (int)(ANGLE_TO_INT * Math.atan2(y, x));
+            // 16 parts in 2^31 is about 2e-8 radians
+            assertTrue("atan2(" + y + "," + x + ")", Math.abs(IntMath.atan2(y, x) - expected) <= 16);
+        }
+        assertEquals(0, IntMath.atan2(0, 0));
+        assertEquals(0, IntMath.atan2(0, 5));
+        assertEquals((int)(ANGLE_TO_INT * Math.PI), IntMath.atan2(0, -5));
+        assertEquals((int)(ANGLE_TO_INT * Math.PI/2), IntMath.atan2(5, 0));
+        assertEquals((int)(ANGLE_TO_INT * -Math.PI/2), IntMath.atan2(-5, 0));
+        assertTrue(Math.abs(IntMath.atan2(Integer.MIN_VALUE, Integer.MIN_VALUE) - (int)(ANGLE_TO_INT * -3*Math.PI/4)) <= 16);
+    }
+}
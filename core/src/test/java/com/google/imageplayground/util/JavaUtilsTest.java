@@ -0,0 +1,89 @@
+/* 
+ * Copyright 2012 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.imageplayground.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class JavaUtilsTest extends TestCase {
+    
+    File path;
+    
+    @Override protected void setUp() throws IOException {
+        path = File.createTempFile("JavaUtilsTest", ".txt");
+    }
+    
+    @Override protected void tearDown() {
+        path.delete();
+    }
+    
+    void writeFile(byte[] data) throws IOException {
+        FileOutputStream out = new FileOutputStream(path);
+        out.write(data);
+        out.close();
+    }
+    
+    public void testReadFile() throws IOException {
+        byte[] data = new byte[100000];
+        for(int i=0; i<data.length; i++) {
+            data[i] = (byte)(i*7);
+        }
+        writeFile(data);
+        assertTrue(Arrays.equals(data, JavaUtils.readFile(path)));
+        assertTrue(Arrays.equals(data, JavaUtils.bytesForInputStream(new ByteArrayInputStream(data))));
+        
+        writeFile(new byte[0]);
+        assertEquals(0, JavaUtils.readFile(path).length);
+    }
+    
+    public void testReadFileAsString() throws IOException {
+        String text = "return gray(y) // \u00e9\u4e2d\ud83d\ude00";
+        writeFile(text.getBytes("utf-8"));
+        assertEquals(text, JavaUtils.readFileAsString(path));
+    }
+    
+    public void testReadMissingFile() {
+        path.delete();
+        try {
+            JavaUtils.readFile(path);
+            fail("Expected IOException");
+        }
+        catch(IOException expected) {}
+    }
+    
+    public void testCopyBytes() {
+        byte[] data = {1, 2, 3, 4, 5, 6};
+        ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+        direct.put(data);
+        ByteBuffer[] buffers = {ByteBuffer.wrap(data, 1, 5).slice(), direct};
+        int[] offsets = {1, 0};
+        for(int i=0; i<buffers.length; i++) {
+            byte[] dest = new byte[4];
+            JavaUtils.copyBytes(buffers[i], 1, dest, 1, 3);
+            int start = offsets[i] + 1;
+            assertTrue(Arrays.equals(new byte[] {0, data[start], data[start+1], data[start+2]}, dest));
+        }
+        // doesn't move the position
+        assertEquals(data.length, direct.position());
+    }
+}
@@ -0,0 +1,43 @@
+/* 
+ * Copyright 2012 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.imageplayground.util;
+
+import java.io.File;
+import java.io.IOException;
+
+/** Creates and deletes temporary directories for tests that write files. */
+public class TempDirs {
+    
+    /** Creates an empty directory in the system temporary directory, with a name starting with prefix. */
+    public static File createTempDir(String prefix) throws IOException {
+        File dir = File.createTempFile(prefix, "");
+        dir.delete();
+        if (!dir.mkdirs()) {
+            throw new IOException("Unable to create " + dir);
+        }
+        return dir;
+    }
+    
+    /** Deletes a file, or a directory and everything in it. */
+    public static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children!=null) {
+            for(File child : children) deleteRecursively(child);
+        }
+        file.delete();
+    }
+}
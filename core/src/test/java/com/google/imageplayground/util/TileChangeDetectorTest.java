@@ -0,0 +1,93 @@
+/* 
+ * Copyright 2012 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.imageplayground.util;
+
+import junit.framework.TestCase;
+
+public class TileChangeDetectorTest extends TestCase {
+    
+    static int countDirty(TileChangeDetector detector) {
+        int count = 0;
+        for(int tr=0; tr<detector.getTileRows(); tr++) {
+            for(int tc=0; tc<detector.getTileColumns(); tc++) {
+                if (detector.isTileDirty(tr, tc)) count++;
+            }
+        }
+        return count;
+    }
+    
+    public void testFirstFrameAllDirty() {
+        int width = 40, height = 30;
+        TileChangeDetector detector = new TileChangeDetector(8);
+        byte[] data = new byte[YuvUtils.bufferSize(width, height)];
+        assertEquals(5*4, detector.update(data, width, height, 0));
+        assertEquals(5*4, countDirty(detector));
+        assertEquals(0, detector.update(data, width, height, 0));
+        assertEquals(0, countDirty(detector));
+    }
+    
+    public void testChangedTiles() {
+        int width = 40, height = 30;
+        TileChangeDetector detector = new TileChangeDetector(8);
+        byte[] data = new byte[YuvUtils.bufferSize(width, height)];
+        detector.update(data, width, height, 0);
+        
+        data[YuvUtils.yIndex(width, 9, 17)] = 1;
+        assertEquals(1, detector.update(data, width, height, 0));
+        assertTrue(detector.isTileDirty(1, 2));
+        // the tile was updated, so the same data doesn't change it again
+        assertEquals(0, detector.update(data, width, height, 0));
+        
+        // color changes are detected too, including in the partial tiles at the bottom and right
+        data[YuvUtils.uvIndex(width, height, 29, 39)] = 5;
+        assertEquals(1, detector.update(data, width, height, 0));
+        assertTrue(detector.isTileDirty(3, 4));
+    }
+    
+    public void testMargin() {
+        int width = 40, height = 40;
+        TileChangeDetector detector = new TileChangeDetector(8);
+        byte[] data = new byte[YuvUtils.bufferSize(width, height)];
+        detector.update(data, width, height, 3);
+        data[YuvUtils.yIndex(width, 20, 20)] = 1;
+        // a margin of up to one tile makes the 8 surrounding tiles dirty
+        assertEquals(9, detector.update(data, width, height, 3));
+        assertTrue(detector.isTileDirty(1, 1));
+        assertTrue(detector.isTileDirty(3, 3));
+        assertFalse(detector.isTileDirty(0, 0));
+    }
+    
+    public void testThreshold() {
+        int width = 16, height = 16;
+        TileChangeDetector detector = new TileChangeDetector(16);
+        detector.setThreshold(2);
+        byte[] data = new byte[YuvUtils.bufferSize(width, height)];
+        detector.update(data, width, height, 0);
+        // a mean difference of 1 per byte is below the threshold
+        for(int i=0; i<data.length; i++) data[i] = 1;
+        assertEquals(0, detector.update(data, width, height, 0));
+        // the stored tile wasn't updated, so further drift accumulates until it's detected
+        for(int i=0; i<data.length; i++) data[i] = 3;
+        assertEquals(1, detector.update(data, width, height, 0));
+    }
+    
+    public void testSizeChange() {
+        TileChangeDetector detector = new TileChangeDetector(8);
+        detector.update(new byte[YuvUtils.bufferSize(16, 16)], 16, 16, 0);
+        assertEquals(6, detector.update(new byte[YuvUtils.bufferSize(24, 16)], 24, 16, 0));
+    }
+}
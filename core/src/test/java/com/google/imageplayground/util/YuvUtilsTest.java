@@ -0,0 +1,143 @@
+/* 
+ * Copyright 2012 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.imageplayground.util;
+
+import junit.framework.TestCase;
+
+public class YuvUtilsTest extends TestCase {
+    
+    // reference NV21 layout: V and U bytes for each 2x2 block of pixels, blocks stored in row-major order
+    static int referenceVIndex(int width, int height, int row, int col) {
+        int blockIndex = (row/2)*(width/2) + (col/2);
+        return width*height + 2*blockIndex;
+    }
+    
+    // reference BT.601 conversion using floating point, as described at http://www.fourcc.org/fccyvrgb.php
+    static int[] referenceRgb(int y, int u, int v) {
+        double yy = 1.164 * Math.max(0, y-16);
+        double[] rgb = {yy + 1.596*(v-128), yy - 0.813*(v-128) - 0.391*(u-128), yy + 2.018*(u-128)};
+        int[] result = new int[3];
+        for(int i=0; i<3; i++) {
+            result[i] = (int)Math.max(0, Math.min(255, rgb[i]));
+        }
+        return result;
+    }
+    
+    static byte[] createTestImage(int width, int height) {
+        byte[] data = new byte[YuvUtils.bufferSize(width, height)];
+        for(int i=0; i<data.length; i++) {
+            data[i] = (byte)(i*7 + (i>>5));
+        }
+        return data;
+    }
+    
+    public void testBufferSize() {
+        assertEquals(640*480*3/2, YuvUtils.bufferSize(640, 480));
+        assertEquals(1920*1080*3/2, YuvUtils.bufferSize(1920, 1080));
+    }
+    
+    public void testIndexesMatchReferenceLayout() {
+        int[][] sizes = {{2, 2}, {16, 8}, {176, 144}, {640, 480}};
+        for(int[] size : sizes) {
+            int width = size[0], height = size[1];
+            for(int row=0; row<height; row++) {
+                for(int col=0; col<width; col++) {
+                    assertEquals(row*width + col, YuvUtils.yIndex(width, row, col));
+                    int uvindex = YuvUtils.uvIndex(width, height, row, col);
+                    assertEquals(referenceVIndex(width, height, row, col), uvindex);
+                    assertTrue(uvindex+1 < YuvUtils.bufferSize(width, height));
+                }
+            }
+        }
+    }
+    
+    public void testPixelsInBlockShareChroma() {
+        int width = 64, height = 48;
+        for(int row=0; row<height; row+=2) {
+            for(int col=0; col<width; col+=2) {
+                int uvindex = YuvUtils.uvIndex(width, height, row, col);
+                assertEquals(uvindex, YuvUtils.uvIndex(width, height, row, col+1));
+                assertEquals(uvindex, YuvUtils.uvIndex(width, height, row+1, col));
+                assertEquals(uvindex, YuvUtils.uvIndex(width, height, row+1, col+1));
+            }
+        }
+    }
+    
+    public void testConversionMatchesReference() {
+        int width = 32, height = 16;
+        byte[] data = createTestImage(width, height);
+        int[] rgb = new int[3];
+        for(int row=0; row<height; row++) {
+            for(int col=0; col<width; col++) {
+                byte y = data[YuvUtils.yIndex(width, row, col)];
+                int uvindex = YuvUtils.uvIndex(width, height, row, col);
+                byte v = data[uvindex];
+                byte u = data[uvindex+1];
+                int[] expected = referenceRgb(0xff & y, 0xff & u, 0xff & v);
+                
+                YuvUtils.yuvToRgb(y, u, v, rgb);
+                int color = YuvUtils.colorFromYuv(y, u, v);
+                int[] channels = {YuvUtils.redFromYuv(y, u, v), YuvUtils.greenFromYuv(y, u, v), YuvUtils.blueFromYuv(y, u, v)};
+                for(int i=0; i<3; i++) {
+                    // fixed point conversion may differ from floating point by rounding
+                    assertEquals(expected[i], rgb[i], 2);
+                    assertEquals(rgb[i], channels[i]);
+                    assertEquals(rgb[i], 0xff & (color >> (16 - 8*i)));
+                }
+            }
+        }
+    }
+    
+    public void testArgbToNv21RoundTrip() {
+        int width = 6, height = 4;
+        int[] argb = new int[width*height];
+        for(int i=0; i<argb.length; i++) {
+            // 2x2 blocks of the same color, so averaging the chroma doesn't change it
+            int block = (i/width/2)*(width/2) + (i%width)/2;
+            argb[i] = 0xff000000 | ((block*40) << 16) | ((200 - block*30) << 8) | (block*17 + 20);
+        }
+        byte[] data = new byte[YuvUtils.bufferSize(width, height)];
+        YuvUtils.argbToNv21(argb, width, height, data);
+        for(int row=0; row<height; row++) {
+            for(int col=0; col<width; col++) {
+                int uvindex = YuvUtils.uvIndex(width, height, row, col);
+                int color = YuvUtils.colorFromYuv(data[YuvUtils.yIndex(width, row, col)], data[uvindex+1], data[uvindex]);
+                int expected = argb[row*width + col];
+                for(int shift=0; shift<24; shift+=8) {
+                    assertEquals((expected>>shift) & 0xff, (color>>shift) & 0xff, 3);
+                }
+            }
+        }
+    }
+    
+    public void testDownsampleLuma() {
+        int width = 9, height = 6, scale = 3;
+        byte[] data = new byte[YuvUtils.bufferSize(width, height)];
+        // top left block averages to 40, bottom right to 255, others to 0
+        for(int row=0; row<3; row++) {
+            for(int col=0; col<3; col++) {
+                data[row*width + col] = (byte)(row==0 && col==0 ? 120 : 30);
+                data[(row+3)*width + col+6] = (byte)255;
+            }
+        }
+        short[] output = new short[6];
+        YuvUtils.downsampleLumaToRgb565(data, width, height, scale, output, 3, 2, new int[3]);
+        assertEquals((5<<11) | (10<<5) | 5, output[0]);
+        assertEquals(0, output[1]);
+        assertEquals((short)0xffff, output[5]);
+    }
+}